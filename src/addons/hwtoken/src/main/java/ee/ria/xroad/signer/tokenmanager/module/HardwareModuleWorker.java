@@ -185,6 +185,7 @@ public class HardwareModuleWorker extends AbstractModuleWorker {
                 tokenInfo.getLabel().trim(), // PKCS11 gives us only 32 bytes.
                 module.isPinVerificationPerSigning(),
                 module.isBatchSigningEnabled(),
+                module.getSignSessionPoolSize(),
                 Map.of(
                         KeyAlgorithm.RSA, module.getRsaSignMechanismName(),
                         KeyAlgorithm.EC, module.getEcSignMechanismName()
@@ -0,0 +1,357 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.State;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+/**
+ * Pool of PKCS#11 sessions used for concurrent signing on a single hardware token. Sessions are opened lazily
+ * up to the pool size. The login state of a token is shared by all of its sessions, so a pooled session can be
+ * used for signing as soon as the user has logged in on the active session of the token worker.
+ * <p>
+ * Every session is used by one thread at a time. A session that fails with an error indicating that it is no
+ * longer usable is closed instead of being returned to the pool, and the sessions are recovered before the action
+ * is retried. Recovery waits for the actions in progress to finish and keeps new ones out until it is done, so
+ * the token worker state reloaded by it is never used half-way. Threads that lose their sessions at the same time
+ * share a single recovery.
+ */
+@Slf4j
+final class HardwareTokenSessionPool {
+
+    /**
+     * Operation executed with a pooled session.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    interface SessionAction<T> {
+        T execute(Session session) throws Exception;
+    }
+
+    /**
+     * Restores the token state after the sessions have been lost, e.g. by reopening the active session and
+     * logging in again.
+     */
+    @FunctionalInterface
+    interface SessionRecovery {
+        void recover() throws Exception;
+    }
+
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000;
+
+    private final String workerId;
+    private final Token token;
+    private final int size;
+    private final long borrowTimeoutMillis;
+
+    // actions hold the read lock, recovery holds the write lock
+    private final ReadWriteLock recoveryLock = new ReentrantReadWriteLock();
+    // incremented by every successful recovery, guarded by recoveryLock
+    private long generation;
+
+    private final BlockingQueue<Session> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger maxInUse = new AtomicInteger();
+
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder discardedSessions = new LongAdder();
+
+    HardwareTokenSessionPool(String workerId, Token token, int size) {
+        this(workerId, token, size, BORROW_TIMEOUT_MILLIS);
+    }
+
+    HardwareTokenSessionPool(String workerId, Token token, int size, long borrowTimeoutMillis) {
+        this.workerId = workerId;
+        this.token = token;
+        this.size = size;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Executes the action with a session taken from the pool. If the action fails with an error indicating that
+     * the session has been lost, the sessions are recovered and the action is retried once.
+     * @param action the action
+     * @param recovery restores the token state after the sessions have been lost
+     * @param <T> the type of the result
+     * @return the result of the action
+     * @throws Exception if no session became available in time, the recovery failed or the action failed
+     */
+    <T> T execute(SessionAction<T> action, SessionRecovery recovery) throws Exception {
+        recoveryLock.readLock().lock();
+        final long failedGeneration = generation;
+        try {
+            return executeWithSession(action);
+        } catch (PKCS11Exception e) {
+            if (!isSessionLost(e)) {
+                throw e;
+            }
+
+            log.warn("Session lost on token '{}' ({}), recovering", workerId, e.getMessage());
+        } finally {
+            recoveryLock.readLock().unlock();
+        }
+
+        recover(failedGeneration, recovery);
+
+        recoveryLock.readLock().lock();
+        try {
+            return executeWithSession(action);
+        } finally {
+            recoveryLock.readLock().unlock();
+        }
+    }
+
+    private void recover(long failedGeneration, SessionRecovery recovery) throws Exception {
+        recoveryLock.writeLock().lock();
+        try {
+            if (generation != failedGeneration) {
+                log.debug("Sessions on token '{}' have already been recovered", workerId);
+
+                return;
+            }
+
+            clear();
+            recovery.recover();
+
+            generation++;
+        } finally {
+            recoveryLock.writeLock().unlock();
+        }
+    }
+
+    private <T> T executeWithSession(SessionAction<T> action) throws Exception {
+        Session session = borrow();
+        boolean healthy = true;
+
+        try {
+            return action.execute(session);
+        } catch (PKCS11Exception e) {
+            healthy = !isSessionLost(e);
+
+            throw e;
+        } finally {
+            release(session, healthy);
+        }
+    }
+
+    /**
+     * Closes the idle sessions that are no longer usable. Sessions in use are checked when they fail.
+     */
+    void validateIdleSessions() {
+        List<Session> sessions = new ArrayList<>();
+        idle.drainTo(sessions);
+
+        for (Session session : sessions) {
+            if (isValid(session)) {
+                idle.offer(session);
+            } else {
+                discard(session);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle sessions. Sessions in use are returned to the pool and discarded once they fail.
+     */
+    void clear() {
+        List<Session> sessions = new ArrayList<>();
+        idle.drainTo(sessions);
+
+        sessions.forEach(this::closeSession);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getOpenCount() {
+        return open.get();
+    }
+
+    int getInUseCount() {
+        return inUse.get();
+    }
+
+    int getMaxInUseCount() {
+        return maxInUse.get();
+    }
+
+    long getBorrowedCount() {
+        return borrowed.sum();
+    }
+
+    long getBorrowTimeoutCount() {
+        return borrowTimeouts.sum();
+    }
+
+    long getDiscardedSessionCount() {
+        return discardedSessions.sum();
+    }
+
+    long getAverageWaitNanos() {
+        long count = borrowed.sum();
+        return count == 0 ? 0 : waitNanos.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HardwareTokenSessionPool[token=%s, size=%d, open=%d, inUse=%d, maxInUse=%d, borrowed=%d, "
+                        + "avgWaitNanos=%d, borrowTimeouts=%d, discardedSessions=%d]",
+                workerId, size, getOpenCount(), getInUseCount(), getMaxInUseCount(), getBorrowedCount(),
+                getAverageWaitNanos(), getBorrowTimeoutCount(), getDiscardedSessionCount());
+    }
+
+    /**
+     * @param e the PKCS#11 error
+     * @return true if the error indicates that the session or the login state of the token has been lost
+     */
+    static boolean isSessionLost(PKCS11Exception e) {
+        long errorCode = e.getErrorCode();
+
+        return errorCode == PKCS11Constants.CKR_SESSION_HANDLE_INVALID
+                || errorCode == PKCS11Constants.CKR_SESSION_CLOSED
+                || errorCode == PKCS11Constants.CKR_USER_NOT_LOGGED_IN
+                || errorCode == PKCS11Constants.CKR_DEVICE_REMOVED
+                || errorCode == PKCS11Constants.CKR_DEVICE_ERROR
+                || errorCode == PKCS11Constants.CKR_TOKEN_NOT_PRESENT;
+    }
+
+    /**
+     * @param session the session
+     * @return true if the session is still open and the user is logged in
+     */
+    static boolean isValid(Session session) {
+        if (session == null) {
+            return false;
+        }
+
+        try {
+            State state = session.getSessionInfo().getState();
+
+            return State.RO_USER_FUNCTIONS.equals(state) || State.RW_USER_FUNCTIONS.equals(state);
+        } catch (Exception e) {
+            log.debug("Session check failed", e);
+
+            return false;
+        }
+    }
+
+    private Session borrow() throws Exception {
+        long start = System.nanoTime();
+        Session session = idle.poll();
+
+        if (session == null) {
+            session = openIfBelowSize();
+        }
+
+        if (session == null) {
+            session = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        if (session == null) {
+            borrowTimeouts.increment();
+
+            throw new CodedException(X_INTERNAL_ERROR, "No free session on token %s", workerId);
+        }
+
+        waitNanos.add(System.nanoTime() - start);
+        borrowed.increment();
+        maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+
+        return session;
+    }
+
+    private Session openIfBelowSize() throws Exception {
+        int count = open.get();
+
+        while (count < size) {
+            if (open.compareAndSet(count, count + 1)) {
+                try {
+                    log.trace("Opening pooled session {} on token '{}'", count + 1, workerId);
+
+                    return token.openSession(SERIAL_SESSION, false, null, null);
+                } catch (Exception e) {
+                    open.decrementAndGet();
+
+                    throw e;
+                }
+            }
+
+            count = open.get();
+        }
+
+        return null;
+    }
+
+    private void release(Session session, boolean healthy) {
+        inUse.decrementAndGet();
+
+        if (healthy) {
+            idle.offer(session);
+        } else {
+            discard(session);
+        }
+    }
+
+    private void discard(Session session) {
+        log.warn("Discarding lost session on token '{}'", workerId);
+
+        discardedSessions.increment();
+        closeSession(session);
+    }
+
+    private void closeSession(Session session) {
+        open.decrementAndGet();
+
+        try {
+            session.closeSession();
+        } catch (Exception e) {
+            log.debug("Failed to close pooled session on token '{}'", workerId, e);
+        }
+    }
+}
@@ -71,6 +71,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_KEY_NOT_FOUND;
@@ -115,10 +118,18 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     private final Map<SignAlgorithm, Mechanism> signMechanisms;
 
     // maps key id (hex) to PrivateKey
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
     private final Map<String, List<X509PublicKeyCertificate>> certs = new HashMap<>();
 
-    private Session activeSession;
+    private volatile Session activeSession;
+
+    // sessions for concurrent signing, null if signing is done with the active session
+    private final HardwareTokenSessionPool sessionPool;
+
+    private final LongAdder signOperations = new LongAdder();
+    private final LongAdder failedSignOperations = new LongAdder();
+    private final LongAdder signNanos = new LongAdder();
+    private final AtomicLong maxSignNanos = new AtomicLong();
 
     /**
      * @param tokenInfo the token info
@@ -139,6 +150,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                 .forEach(tempSignMechanisms::putAll);
 
         this.signMechanisms = Map.copyOf(tempSignMechanisms);
+        this.sessionPool = createSessionPool();
     }
 
     @Override
@@ -166,6 +178,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     public void destroy() {
         super.destroy();
 
+        if (sessionPool != null) {
+            sessionPool.clear();
+        }
+
         try {
             closeActiveSession();
         } catch (Exception e) {
@@ -187,6 +203,19 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             findPublicKeysForPrivateKeys();
             findCertificatesNotInConf();
         }
+
+        if (sessionPool != null) {
+            sessionPool.validateIdleSessions();
+
+            log.debug("{}, signOperations={}, failedSignOperations={}, avgSignNanos={}, maxSignNanos={}",
+                    sessionPool, signOperations.sum(), failedSignOperations.sum(), getAverageSignNanos(),
+                    maxSignNanos.get());
+        }
+    }
+
+    @Override
+    public boolean isConcurrentSigningSupported() {
+        return sessionPool != null;
     }
 
     @Override
@@ -353,23 +382,57 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         pinVerificationPerSigningLogin();
         assertKeyAvailable(keyId);
 
-        PrivateKey key = getPrivateKey(keyId);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            byte[] signature = sessionPool != null
+                    ? signWithPooledSession(keyId, signatureAlgorithmId, data)
+                    : sign(activeSession, keyId, signatureAlgorithmId, data);
+
+            success = true;
+            return signature;
+        } finally {
+            pinVerificationPerSigningLogout();
+            recordSignOperation(start, success);
+        }
+    }
+
+    private byte[] signWithPooledSession(String keyId, SignAlgorithm signatureAlgorithmId, byte[] data) throws Exception {
+        return sessionPool.execute(session -> sign(session, keyId, signatureAlgorithmId, data), this::recoverSessions);
+    }
+
+    private byte[] sign(Session session, String keyId, SignAlgorithm signatureAlgorithmId, byte[] data) throws Exception {
+        PrivateKey key = getPrivateKey(session, keyId);
         if (key == null) {
             throw CodedException.tr(X_KEY_NOT_FOUND, "key_not_found_on_token", "Key '%s' not found on token '%s'",
                     keyId, tokenId);
         }
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
-        try {
-            Mechanism signMechanism = verifyAndReturnSignMechanism(signatureAlgorithmId, KeyAlgorithm.valueOf(key.getKeyType().toString()));
 
-            activeSession.signInit(signMechanism, key);
-            return activeSession.sign(data);
-        } finally {
-            pinVerificationPerSigningLogout();
+        Mechanism signMechanism = verifyAndReturnSignMechanism(signatureAlgorithmId, KeyAlgorithm.valueOf(key.getKeyType().toString()));
+
+        session.signInit(signMechanism, key);
+        return session.sign(data);
+    }
+
+    private void recordSignOperation(long start, boolean success) {
+        long duration = System.nanoTime() - start;
+
+        signOperations.increment();
+        signNanos.add(duration);
+        maxSignNanos.accumulateAndGet(duration, Math::max);
+
+        if (!success) {
+            failedSignOperations.increment();
         }
     }
 
+    private long getAverageSignNanos() {
+        long count = signOperations.sum();
+        return count == 0 ? 0 : signNanos.sum() / count;
+    }
+
     private Mechanism verifyAndReturnSignMechanism(SignAlgorithm signatureAlgorithmId, KeyAlgorithm algorithm) throws CodedException {
         Mechanism signMechanism = signMechanisms.get(signatureAlgorithmId);
 
@@ -459,11 +522,17 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     }
 
     private PrivateKey getPrivateKey(String keyId) throws Exception {
+        return getPrivateKey(activeSession, keyId);
+    }
+
+    private PrivateKey getPrivateKey(Session session, String keyId) throws Exception {
         PrivateKey privateKey = privateKeys.get(keyId);
         if (privateKey == null) {
             log.debug("Key {} not found in cache, trying to find it from hardware token", keyId);
-            privateKey = findPrivateKey(activeSession, keyId, tokenType.getPrivKeyAttributes().getAllowedMechanisms());
-            privateKeys.put(keyId, privateKey);
+            privateKey = findPrivateKey(session, keyId, tokenType.getPrivKeyAttributes().getAllowedMechanisms());
+            if (privateKey != null) {
+                privateKeys.put(keyId, privateKey);
+            }
         }
         return privateKey;
     }
@@ -584,6 +653,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
         privateKeys.clear();
 
+        if (sessionPool != null) {
+            sessionPool.clear();
+        }
+
         log.trace("logout()");
 
         try {
@@ -632,6 +705,40 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    /**
+     * Reopens the active session if it has been lost and logs in again. Called by the session pool when a pooled
+     * session fails with an error indicating that the session or the login state of the token has been lost. The
+     * pool runs it exclusively of all signing on this token, so reloading the private keys and the token status is
+     * not observed by concurrent signers.
+     */
+    private void recoverSessions() throws Exception {
+        if (!HardwareTokenSessionPool.isValid(activeSession)) {
+            log.warn("Active session on token '{}' has been lost, opening a new session", getWorkerId());
+
+            try {
+                closeActiveSession();
+            } catch (Exception e) {
+                log.debug("Failed to close lost session on token '{}'", getWorkerId(), e);
+            }
+
+            createSession();
+        }
+
+        login();
+    }
+
+    private HardwareTokenSessionPool createSessionPool() {
+        int poolSize = ((HardwareTokenType) tokenType).getSignSessionPoolSize();
+
+        if (poolSize <= 1 || tokenType.isPinVerificationPerSigning() || getToken() == null) {
+            return null;
+        }
+
+        log.info("Using a pool of {} signing sessions for token '{}'", poolSize, getWorkerId());
+
+        return new HardwareTokenSessionPool(getWorkerId(), getToken(), poolSize);
+    }
+
     private void loadPrivateKeys() throws Exception {
         if (activeSession == null) {
             return;
@@ -688,6 +795,8 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         try {
             Map<String, String> tokenInfo = new HashMap<>();
             HardwareTokenInfo.fillInTokenInfo(getToken().getTokenInfo(), tokenInfo);
+            tokenInfo.put(TokenInfo.CONCURRENT_SIGNINGS, Integer.toString(isConcurrentSigningSupported()
+                    ? ((HardwareTokenType) tokenType).getSignSessionPoolSize() : 1));
 
             setTokenInfo(tokenId, tokenInfo);
         } catch (Exception e) {
@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link HardwareTokenSessionPool} borrowing and session recovery.
+ */
+public class HardwareTokenSessionPoolTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger recoveries = new AtomicInteger();
+
+    private Token token;
+
+    @Before
+    public void setUp() throws Exception {
+        token = mock(Token.class);
+        when(token.openSession(any(), anyBoolean(), any(), any())).thenAnswer(invocation -> mock(Session.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sessionsAreUsedConcurrentlyUpToPoolSize() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 2);
+        CyclicBarrier bothInUse = new CyclicBarrier(2);
+
+        List<Future<Session>> results = List.of(
+                executor.submit(() -> pool.execute(session -> awaitAndReturn(bothInUse, session), this::recover)),
+                executor.submit(() -> pool.execute(session -> awaitAndReturn(bothInUse, session), this::recover)));
+
+        Session first = results.get(0).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Session second = results.get(1).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(first != second);
+        assertEquals(2, pool.getOpenCount());
+        assertEquals(2, pool.getMaxInUseCount());
+        assertEquals(0, pool.getInUseCount());
+
+        // idle sessions are reused
+        pool.execute(session -> session, this::recover);
+        verify(token, times(2)).openSession(any(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    public void borrowFailsWhenPoolIsExhausted() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 1, 100);
+        CountDownLatch inUse = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Session> holder = executor.submit(() -> pool.execute(session -> {
+            inUse.countDown();
+            release.await();
+            return session;
+        }, this::recover));
+        assertTrue(inUse.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CodedException error = assertThrows(CodedException.class, () -> pool.execute(session -> session, this::recover));
+        assertTrue(error.getMessage().contains("No free session"));
+        assertEquals(1, pool.getBorrowTimeoutCount());
+
+        release.countDown();
+        holder.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(0, pool.getInUseCount());
+    }
+
+    @Test
+    public void lostSessionIsDiscardedAndActionRetriedAfterRecovery() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = pool.execute(session -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new PKCS11Exception(PKCS11Constants.CKR_SESSION_HANDLE_INVALID);
+            }
+            return "signature";
+        }, this::recover);
+
+        assertEquals("signature", result);
+        assertEquals(1, recoveries.get());
+        assertEquals(1, pool.getDiscardedSessionCount());
+    }
+
+    @Test
+    public void otherErrorsAreNotRecovered() {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 2);
+
+        assertThrows(PKCS11Exception.class, () -> pool.execute(session -> {
+            throw new PKCS11Exception(PKCS11Constants.CKR_KEY_HANDLE_INVALID);
+        }, this::recover));
+
+        assertEquals(0, recoveries.get());
+        assertEquals(0, pool.getDiscardedSessionCount());
+        assertEquals(1, pool.getOpenCount());
+    }
+
+    @Test
+    public void recoveryWaitsForActionsInProgressAndRunsOnce() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 3);
+        CyclicBarrier allInUse = new CyclicBarrier(3);
+        CountDownLatch releaseSlowAction = new CountDownLatch(1);
+        AtomicBoolean slowActionDone = new AtomicBoolean();
+        AtomicBoolean recoveredWhileInUse = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+
+        HardwareTokenSessionPool.SessionRecovery recovery = () -> {
+            recoveredWhileInUse.compareAndSet(false, !slowActionDone.get() || pool.getInUseCount() > 0);
+            recover();
+        };
+
+        HardwareTokenSessionPool.SessionAction<String> failingOnce = session -> {
+            if (failures.get() < 2) {
+                allInUse.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                failures.incrementAndGet();
+                throw new PKCS11Exception(PKCS11Constants.CKR_USER_NOT_LOGGED_IN);
+            }
+            return "signature";
+        };
+
+        Future<String> first = executor.submit(() -> pool.execute(failingOnce, recovery));
+        Future<String> second = executor.submit(() -> pool.execute(failingOnce, recovery));
+        Future<String> slow = executor.submit(() -> pool.execute(session -> {
+            allInUse.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            releaseSlowAction.await();
+            slowActionDone.set(true);
+            return "slow";
+        }, recovery));
+
+        // the failed actions wait for the recovery, which waits for the slow action
+        Thread.sleep(200);
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(0, recoveries.get());
+
+        releaseSlowAction.countDown();
+
+        assertEquals("slow", slow.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("signature", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("signature", second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(1, recoveries.get());
+        assertFalse(recoveredWhileInUse.get());
+        assertEquals(2, pool.getDiscardedSessionCount());
+    }
+
+    @Test
+    public void failedRecoveryIsRetriedByNextAction() throws Exception {
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        HardwareTokenSessionPool.SessionAction<String> action = session -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new PKCS11Exception(PKCS11Constants.CKR_DEVICE_REMOVED);
+            }
+            return "signature";
+        };
+
+        assertThrows(PKCS11Exception.class, () -> pool.execute(action, () -> {
+            throw new PKCS11Exception(PKCS11Constants.CKR_TOKEN_NOT_PRESENT);
+        }));
+        attempts.set(0);
+
+        assertEquals("signature", pool.execute(action, this::recover));
+        assertEquals(1, recoveries.get());
+    }
+
+    private void recover() {
+        recoveries.incrementAndGet();
+    }
+
+    private static Session awaitAndReturn(CyclicBarrier barrier, Session session) throws Exception {
+        barrier.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return session;
+    }
+}
@@ -31,6 +31,7 @@ import ee.ria.xroad.common.DiagnosticsStatus;
 import ee.ria.xroad.common.DiagnosticsUtils;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
@@ -82,6 +83,7 @@ public class LogManager extends AbstractLogManager {
 
     private final Timestamper timestamper;
     private final TimestamperJob timestamperJob;
+    private final MessageRecordWriter messageRecordWriter;
 
     // package private for testing
     final TaskQueue taskQueue;
@@ -94,14 +96,32 @@ public class LogManager extends AbstractLogManager {
         this.timestamper = getTimestamperImpl();
         this.taskQueue = getTaskQueueImpl(timestamper);
         this.timestamperJob = createTimestamperJob(taskQueue);
+        this.messageRecordWriter = createMessageRecordWriter();
     }
 
     @Override
     public void destroy() {
+        if (messageRecordWriter != null) {
+            messageRecordWriter.shutdown();
+            log.info("Message log group commit stopped: {}", messageRecordWriter);
+        }
         timestamperJob.shutdown();
         super.destroy();
     }
 
+    private static MessageRecordWriter createMessageRecordWriter() {
+        if (!MessageLogProperties.isGroupCommitEnabled()) {
+            return null;
+        }
+
+        return new MessageRecordWriter(LogRecordManager::saveMessageRecords,
+                MessageLogProperties.getGroupCommitWriters(),
+                MessageLogProperties.getGroupCommitQueueSize(),
+                MessageLogProperties.getGroupCommitMaxBatchSize(),
+                MessageLogProperties.getGroupCommitWindowMillis(),
+                MessageLogProperties.getGroupCommitTimeoutMillis());
+    }
+
     private TimestamperJob createTimestamperJob(TaskQueue taskQueueParam) {
         return new TimestamperJob(globalConfProvider, getTimestamperJobInitialDelay(), taskQueueParam);
     }
@@ -154,11 +174,23 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    @Override
+    public boolean isBodyLogged(ServiceId service, boolean clientSide) {
+        return MAX_LOGGABLE_BODY_SIZE > 0 && new MessageBodyManipulator().isBodyLogged(service.getClientId(), clientSide);
+    }
+
     @Override
     public Map<String, DiagnosticsStatus> getDiagnosticStatus() {
         return statusMap;
     }
 
+    @Override
+    public void logStatistics() {
+        if (messageRecordWriter != null) {
+            log.debug("Message log group commit: {}", messageRecordWriter);
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     protected TaskQueue getTaskQueueImpl(Timestamper timestamperParam) {
@@ -247,7 +279,11 @@ public class LogManager extends AbstractLogManager {
     }
 
     protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
-        LogRecordManager.saveMessageRecord(messageRecord);
+        if (messageRecordWriter != null) {
+            messageRecordWriter.save(messageRecord);
+        } else {
+            LogRecordManager.saveMessageRecord(messageRecord);
+        }
         return messageRecord;
     }
 
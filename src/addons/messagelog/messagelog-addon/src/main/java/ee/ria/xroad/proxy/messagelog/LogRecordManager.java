@@ -139,27 +139,49 @@ public final class LogRecordManager {
     static void saveMessageRecord(MessageRecord messageRecord) throws Exception {
 
         final MessageRecordEncryption encryption = MessageRecordEncryption.getInstance();
-        final boolean encrypt = encryption.encryptionEnabled();
 
         doInTransaction(session -> {
-            //the blob must be created within hibernate session
-            messageRecord.setId(getNextRecordId(session));
+            saveMessageRecord(session, encryption, messageRecord);
+            return null;
+        });
+    }
 
-            if (encrypt) {
-                encryption.prepareEncryption(messageRecord);
-            }
+    /**
+     * Saves the message records to database in a single transaction.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        log.trace("saveMessageRecords({})", messageRecords.size());
 
-            InputStream is = messageRecord.getAttachmentStream();
-            if (is != null) {
-                messageRecord.setAttachment(
-                        session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
-            }
+        final MessageRecordEncryption encryption = MessageRecordEncryption.getInstance();
 
-            save(session, messageRecord);
+        doInTransaction(session -> {
+            for (MessageRecord messageRecord : messageRecords) {
+                saveMessageRecord(session, encryption, messageRecord);
+            }
             return null;
         });
     }
 
+    private static void saveMessageRecord(Session session, MessageRecordEncryption encryption,
+                                          MessageRecord messageRecord) throws Exception {
+        //the blob must be created within hibernate session
+        messageRecord.setId(getNextRecordId(session));
+
+        if (encryption.encryptionEnabled()) {
+            encryption.prepareEncryption(messageRecord);
+        }
+
+        InputStream is = messageRecord.getAttachmentStream();
+        if (is != null) {
+            messageRecord.setAttachment(
+                    session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
+        }
+
+        save(session, messageRecord);
+    }
+
     /**
      * Saves the message record in the database.
      * @param messageRecord the message record to be updated.
@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit writer for message records. Records handed to {@link #save(MessageRecord)} are put into
+ * a bounded queue and persisted in batches by a small pool of writer threads, one transaction per batch.
+ * A writer takes the first waiting record, waits up to the flush window for more records and commits
+ * them together. The calling thread waits until the batch containing its record has been committed. If the
+ * record is still waiting in the queue when the commit timeout elapses, it is withdrawn and never saved;
+ * once a writer has taken it into a batch, the caller waits for the outcome of the batch.
+ * <p>
+ * If the queue is full, the record is saved directly by the calling thread (backpressure). If a batch
+ * fails, the transaction is rolled back and every record of the batch is saved again in its own transaction,
+ * so that one bad record fails only its own caller. A record whose attachment stream was already read by
+ * the failed transaction cannot be saved again and gets the failure of the batch.
+ */
+@Slf4j
+class MessageRecordWriter {
+
+    /**
+     * Persists a batch of message records in a single transaction.
+     */
+    @FunctionalInterface
+    interface Persister {
+        void persist(List<MessageRecord> records) throws Exception;
+    }
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final Persister persister;
+    private final int maxBatchSize;
+    private final long flushWindowNanos;
+    private final long commitTimeoutMillis;
+    private final BlockingQueue<PendingRecord> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean stopping;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder backpressureEvents = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    MessageRecordWriter(Persister persister, int writerCount, int queueSize, int maxBatchSize, long flushWindowMillis,
+                        long commitTimeoutMillis) {
+        this.persister = persister;
+        this.maxBatchSize = maxBatchSize;
+        this.flushWindowNanos = TimeUnit.MILLISECONDS.toNanos(flushWindowMillis);
+        this.commitTimeoutMillis = commitTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        for (int i = 0; i < writerCount; i++) {
+            Thread writer = new Thread(this::process, "messagelog-writer-" + i);
+            writer.setDaemon(true);
+            writers.add(writer);
+        }
+        writers.forEach(Thread::start);
+    }
+
+    /**
+     * Saves the message record and waits until the batch containing it has been committed.
+     * @param messageRecord the message record
+     * @throws Exception if saving the record failed
+     */
+    void save(MessageRecord messageRecord) throws Exception {
+        PendingRecord pending = new PendingRecord(messageRecord);
+
+        if (stopping || !queue.offer(pending)) {
+            backpressureEvents.increment();
+            log.trace("Group commit queue is full, saving message record directly");
+
+            persister.persist(List.of(messageRecord));
+            return;
+        }
+
+        if (stopping && queue.remove(pending)) {
+            // shutdown may have drained the queue before the record was added, nobody else will commit it
+            persister.persist(List.of(messageRecord));
+            return;
+        }
+
+        try {
+            try {
+                pending.committed().get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (pending.claim()) {
+                    // not taken by a writer yet, withdraw it so that it is not saved after the caller has failed
+                    queue.remove(pending);
+                    timeouts.increment();
+                    throw new TimeoutException("Message record was not committed within " + commitTimeoutMillis
+                            + " ms");
+                }
+                // a writer is committing the record, its outcome decides whether logging succeeded
+                pending.committed().get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the writer threads. Records still waiting in the queue are committed before the threads exit, and
+     * records queued after that are committed by this thread. If committing them fails, the failure is reported
+     * to their callers.
+     */
+    void shutdown() {
+        stopping = true;
+        writers.forEach(Thread::interrupt);
+
+        for (Thread writer : writers) {
+            try {
+                writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // commit anything that was queued after the writers had exited
+        List<PendingRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            commit(remaining);
+        }
+    }
+
+    private void process() {
+        while (!stopping || !queue.isEmpty()) {
+            List<PendingRecord> batch = new ArrayList<>();
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // stopping, commit what has been collected so far
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+        }
+        log.trace("Message log writer stopped");
+    }
+
+    private void collectBatch(List<PendingRecord> batch) throws InterruptedException {
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - 1);
+
+        long deadline = System.nanoTime() + flushWindowNanos;
+        long remaining = flushWindowNanos;
+        while (batch.size() < maxBatchSize && remaining > 0) {
+            PendingRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private void commit(List<PendingRecord> collected) {
+        // records whose callers have timed out are left out
+        List<PendingRecord> batch = collected.stream().filter(PendingRecord::claim).toList();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            persister.persist(batch.stream().map(PendingRecord::messageRecord).toList());
+            batch.forEach(PendingRecord::complete);
+        } catch (Exception e) {
+            failedBatches.increment();
+            log.warn("Saving batch of {} message records failed", batch.size(), e);
+            if (batch.size() == 1) {
+                batch.getFirst().fail(e);
+            } else {
+                commitEach(batch, e);
+            }
+        } finally {
+            long duration = System.nanoTime() - start;
+            batches.increment();
+            records.add(batch.size());
+            commitNanos.add(duration);
+            maxCommitNanos.accumulateAndGet(duration, Math::max);
+        }
+    }
+
+    private void commitEach(List<PendingRecord> batch, Exception batchFailure) {
+        for (PendingRecord pending : batch) {
+            if (!pending.reset()) {
+                pending.fail(batchFailure);
+                continue;
+            }
+            try {
+                persister.persist(List.of(pending.messageRecord()));
+                pending.complete();
+            } catch (Exception e) {
+                log.warn("Saving message record failed", e);
+                pending.fail(e);
+            }
+        }
+    }
+
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    long getRecordCount() {
+        return records.sum();
+    }
+
+    long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    long getBackpressureEventCount() {
+        return backpressureEvents.sum();
+    }
+
+    long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) records.sum() / count;
+    }
+
+    long getAverageCommitNanos() {
+        long count = batches.sum();
+        return count == 0 ? 0 : commitNanos.sum() / count;
+    }
+
+    long getMaxCommitNanos() {
+        return maxCommitNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MessageRecordWriter[queued=%d, batches=%d, records=%d, avgBatchSize=%.1f, "
+                        + "failedBatches=%d, backpressureEvents=%d, timeouts=%d, avgCommitNanos=%d, maxCommitNanos=%d]",
+                getQueuedCount(), getBatchCount(), getRecordCount(), getAverageBatchSize(), getFailedBatchCount(),
+                getBackpressureEventCount(), getTimeoutCount(), getAverageCommitNanos(), getMaxCommitNanos());
+    }
+
+    /**
+     * A record waiting to be committed. The state that saving changes (the message is replaced by its encrypted
+     * form, the attachment stream is read) is kept, so that the record can be saved again after a failed batch.
+     */
+    private static final class PendingRecord {
+        private final MessageRecord messageRecord;
+        private final CompletableFuture<Void> committed = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final String message;
+        private final CountingInputStream attachmentStream;
+        private final long attachmentStreamSize;
+
+        PendingRecord(MessageRecord messageRecord) {
+            this.messageRecord = messageRecord;
+            this.message = messageRecord.getMessage();
+            this.attachmentStreamSize = messageRecord.getAttachmentStreamSize();
+            if (messageRecord.getAttachmentStream() != null) {
+                attachmentStream = new CountingInputStream(messageRecord.getAttachmentStream());
+                messageRecord.setAttachmentStream(attachmentStream, attachmentStreamSize);
+            } else {
+                attachmentStream = null;
+            }
+        }
+
+        MessageRecord messageRecord() {
+            return messageRecord;
+        }
+
+        CompletableFuture<Void> committed() {
+            return committed;
+        }
+
+        /**
+         * Claims the record either for committing or for withdrawing it, only the first claim succeeds.
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Restores the record to its state before the failed save.
+         * @return false if the attachment stream has been read and the record cannot be saved again
+         */
+        boolean reset() {
+            if (attachmentStream != null && attachmentStream.getByteCount() > 0) {
+                return false;
+            }
+            messageRecord.setMessage(message);
+            messageRecord.setAttachment(null);
+            if (attachmentStream != null) {
+                messageRecord.setAttachmentStream(attachmentStream, attachmentStreamSize);
+            }
+            return true;
+        }
+
+        void complete() {
+            committed.complete(null);
+        }
+
+        void fail(Exception e) {
+            committed.completeExceptionally(e);
+        }
+    }
+}
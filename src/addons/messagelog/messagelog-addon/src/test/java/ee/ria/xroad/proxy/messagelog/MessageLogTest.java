@@ -44,6 +44,7 @@ import ee.ria.xroad.common.messagelog.archive.DigestEntry;
 import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.signature.SignatureData;
 import ee.ria.xroad.common.util.CacheInputStream;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.EncoderUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
@@ -56,6 +57,8 @@ import jakarta.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -76,6 +79,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -220,6 +224,48 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertArrayEquals(body, attachment);
     }
 
+    /**
+     * A logged REST body is read from its source once, while it is hashed for signing, and the message log
+     * gets the same bytes from the cache.
+     */
+    @Test
+    public void logRestMessageBodyReadOnce() throws Exception {
+        final String requestId = UUID.randomUUID().toString();
+        final RestRequest message = createRestRequest("q-" + requestId, requestId);
+
+        final byte[] body = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(body);
+        final CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(body));
+
+        final CachingStream cache = new CachingStream();
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(DigestAlgorithm.SHA256.name());
+            try (TeeInputStream tee = new TeeInputStream(source, cache)) {
+                final byte[] buf = new byte[8192];
+                int count;
+                while ((count = tee.read(buf)) >= 0) {
+                    digest.update(buf, 0, count);
+                }
+            }
+            assertEquals(body.length, source.getByteCount());
+            assertArrayEquals(MessageDigest.getInstance(DigestAlgorithm.SHA256.name()).digest(body), digest.digest());
+
+            final Instant atDate = TimeUtils.now();
+            logRecordTime = Date.from(atDate);
+            logManager.log(new RestLogMessage(message.getQueryId(), message.getClientId(), message.getServiceId(),
+                    message, createSignature(), cache.getCachedContents(), true, message.getXRequestId()));
+
+            final MessageRecord logRecord = (MessageRecord) findByQueryId(message.getQueryId(), atDate.minusMillis(1),
+                    atDate.plusMillis(1));
+            MessageRecordEncryption.getInstance().prepareDecryption(logRecord);
+            final byte[] attachment = IOUtils.toByteArray(logRecord.toAsicContainer().getAttachment());
+            assertArrayEquals(body, attachment);
+            assertEquals(body.length, source.getByteCount());
+        } finally {
+            cache.consume();
+        }
+    }
+
     /**
      * Test for system property timestamp-records-limit
      */
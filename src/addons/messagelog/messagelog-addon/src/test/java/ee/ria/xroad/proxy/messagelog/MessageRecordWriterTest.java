@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the group commit writer of message records.
+ */
+public class MessageRecordWriterTest {
+
+    private static final int RECORDS = 50;
+    private static final long COMMIT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Concurrently saved records are committed together and every record is committed exactly once.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void saveConcurrentRecordsInBatches() throws Exception {
+        List<MessageRecord> persisted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+        MessageRecordWriter writer = new MessageRecordWriter(records -> {
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await();
+            persisted.addAll(records);
+        }, 1, RECORDS, RECORDS, 1, COMMIT_TIMEOUT_MILLIS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(RECORDS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> save(writer, createRecord("q"))));
+            firstBatchStarted.await();
+
+            // these wait in the queue while the first batch is being committed
+            for (int i = 1; i < RECORDS; i++) {
+                futures.add(executor.submit(() -> save(writer, createRecord("q"))));
+            }
+            while (writer.getQueuedCount() < RECORDS - 1) {
+                Thread.sleep(1);
+            }
+            releaseFirstBatch.countDown();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            writer.shutdown();
+        }
+
+        assertEquals(RECORDS, persisted.size());
+        assertEquals(RECORDS, writer.getRecordCount());
+        assertTrue(writer.getBatchCount() < RECORDS);
+    }
+
+    /**
+     * A failed batch is reported to the callers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reportBatchFailure() throws Exception {
+        Exception failure = new IllegalStateException("database unavailable");
+        MessageRecordWriter writer = new MessageRecordWriter(records -> {
+            throw failure;
+        }, 1, RECORDS, RECORDS, 0, COMMIT_TIMEOUT_MILLIS);
+
+        try {
+            writer.save(createRecord("q"));
+            fail("Expected saving to fail");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        } finally {
+            writer.shutdown();
+        }
+
+        assertEquals(1, writer.getFailedBatchCount());
+    }
+
+    /**
+     * A record that is still queued when the commit timeout elapses is withdrawn and never saved, while the caller
+     * of a record that is already being committed waits for the outcome.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void withdrawQueuedRecordWhenCommitTimesOut() throws Exception {
+        List<MessageRecord> persisted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        MessageRecordWriter writer = new MessageRecordWriter(records -> {
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await();
+            persisted.addAll(records);
+        }, 1, RECORDS, RECORDS, 0, 100);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MessageRecord first = createRecord("q");
+            Future<?> firstSave = executor.submit(() -> save(writer, first));
+            firstBatchStarted.await();
+
+            try {
+                writer.save(createRecord("q"));
+                fail("Expected saving to time out");
+            } catch (TimeoutException e) {
+                assertEquals(1, writer.getTimeoutCount());
+            }
+            assertEquals(0, writer.getQueuedCount());
+
+            // the first record has been waiting longer than the timeout, but it is being committed
+            assertFalse(firstSave.isDone());
+            releaseFirstBatch.countDown();
+            firstSave.get();
+
+            assertEquals(1, persisted.size());
+            assertSame(first, persisted.getFirst());
+        } finally {
+            releaseFirstBatch.countDown();
+            executor.shutdownNow();
+            writer.shutdown();
+        }
+        assertEquals(1, persisted.size());
+    }
+
+    /**
+     * When a batch fails, its records are saved one by one, so that a bad record fails only its own caller.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void saveRecordsOfFailedBatchSeparately() throws Exception {
+        List<MessageRecord> persisted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        Exception failure = new IllegalStateException("bad record");
+        MessageRecordWriter writer = new MessageRecordWriter(records -> {
+            if (records.stream().anyMatch(r -> "first".equals(r.getQueryId()))) {
+                firstBatchStarted.countDown();
+                releaseFirstBatch.await();
+            }
+            if (records.stream().anyMatch(r -> "bad".equals(r.getQueryId()))) {
+                throw failure;
+            }
+            persisted.addAll(records);
+        }, 1, RECORDS, RECORDS, 0, COMMIT_TIMEOUT_MILLIS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> first = executor.submit(() -> save(writer, createRecord("first")));
+            firstBatchStarted.await();
+
+            // these wait in the queue and are committed in the same batch
+            Future<?> good = executor.submit(() -> save(writer, createRecord("good")));
+            Future<?> bad = executor.submit(() -> save(writer, createRecord("bad")));
+            while (writer.getQueuedCount() < 2) {
+                Thread.sleep(1);
+            }
+            releaseFirstBatch.countDown();
+
+            first.get();
+            good.get();
+            try {
+                bad.get();
+                fail("Expected saving the bad record to fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause().getCause());
+            }
+        } finally {
+            releaseFirstBatch.countDown();
+            executor.shutdownNow();
+            writer.shutdown();
+        }
+
+        assertEquals(List.of("first", "good"), persisted.stream().map(MessageRecord::getQueryId).toList());
+        assertEquals(1, writer.getFailedBatchCount());
+    }
+
+    /**
+     * Records saved while and after the writer is stopped are committed, so their callers do not wait in vain.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void commitRecordsSavedDuringShutdown() throws Exception {
+        List<MessageRecord> persisted = Collections.synchronizedList(new ArrayList<>());
+        MessageRecordWriter writer = new MessageRecordWriter(persisted::addAll, 2, RECORDS, RECORDS, 1,
+                COMMIT_TIMEOUT_MILLIS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < RECORDS; i++) {
+                futures.add(executor.submit(() -> save(writer, createRecord("q"))));
+            }
+            writer.shutdown();
+            save(writer, createRecord("q"));
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(RECORDS + 1, persisted.size());
+        assertEquals(0, writer.getTimeoutCount());
+    }
+
+    private static MessageRecord createRecord(String queryId) {
+        return new MessageRecord(queryId, "<message/>", "<signature/>", false,
+                ClientId.Conf.create("EE", "BUSINESS", "producer"), null);
+    }
+
+    private static void save(MessageRecordWriter writer, MessageRecord messageRecord) {
+        try {
+            writer.save(messageRecord);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
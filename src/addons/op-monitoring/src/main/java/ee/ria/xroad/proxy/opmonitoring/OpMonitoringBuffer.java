@@ -34,17 +34,20 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
  * monitoring daemon (using OpMonitoringDaemonSender).
+ * <p>
+ * Stored records are put into a fixed size ring buffer without blocking the calling thread. If the buffer
+ * is full, the oldest records are dropped. Records are taken from the buffer in batches and enriched with
+ * the security server address and the saved REST endpoint path just before sending.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -57,7 +60,10 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private final OpMonitoringDaemonSender sender;
     private final SavedServiceEndpoint savedServiceEndpoint;
 
-    final BlockingDeque<OpMonitoringData> buffer = new LinkedBlockingDeque<>();
+    private final AtomicBoolean sendScheduled = new AtomicBoolean();
+    private final Runnable sendTask = this::sendScheduled;
+
+    final OpMonitoringRingBuffer<OpMonitoringData> buffer;
 
     /**
      * Constructor.
@@ -74,7 +80,9 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
             taskScheduler = null;
             opMonitoringDataProcessor = null;
             savedServiceEndpoint = null;
+            buffer = null;
         } else {
+            buffer = new OpMonitoringRingBuffer<>(maxBufferSize);
             sender = createSender(serverConfProvider);
             executorService = Executors.newSingleThreadExecutor();
             taskScheduler = Executors.newSingleThreadScheduledExecutor();
@@ -96,51 +104,64 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             return;
         }
-        executorService.execute(() -> {
-            try {
-                data.setSecurityServerInternalIp(opMonitoringDataProcessor.getIpAddress());
-                data.setRestPath(savedServiceEndpoint.getPathIfExists(data));
+        if (!buffer.offer(data)) {
+            log.warn("Operational monitoring buffer overflow (limit: {}), oldest record was dropped. Dropped records: {}",
+                    maxBufferSize, buffer.getDroppedCount());
+        }
 
-                buffer.addLast(data);
-                if (buffer.size() > maxBufferSize) {
-                    synchronized (buffer) {
-                        if (buffer.size() > maxBufferSize) {
-                            buffer.removeFirst();
-                            log.warn("Operational monitoring buffer overflow (limit: {}), removing oldest record. Current size: {}",
-                                    maxBufferSize, buffer.size());
-                        }
-                    }
-                }
-                sendInternal();
-            } catch (Exception e) {
-                log.error("Failed to process OpMonitoringData..", e);
-            }
-        });
+        if (sender.isReady()) {
+            send();
+        }
     }
 
     private void send() {
-        executorService.execute(() -> {
-            try {
-                this.sendInternal();
-            } catch (Exception e) {
-                log.error("Failed to send message", e);
-            }
-        });
+        // at most one pending send task, records stored in the meantime are picked up by it
+        if (sendScheduled.compareAndSet(false, true)) {
+            executorService.execute(sendTask);
+        }
+    }
+
+    private void sendScheduled() {
+        sendScheduled.set(false);
+        try {
+            sendInternal();
+        } catch (Exception e) {
+            log.error("Failed to send message", e);
+        }
     }
 
     private void sendInternal() {
-        if (!canSend()) {
-            return;
+        // Keep sending batches while the sender accepts more messages in flight. Records put back
+        // after a failed send are not counted, so that they are retried by the next send task.
+        int remaining = buffer.size();
+        while (remaining > 0 && canSend()) {
+            remaining -= sendBatch();
         }
+    }
 
-        final List<OpMonitoringData> dataToProcess = new ArrayList<>();
+    private int sendBatch() {
+        final List<OpMonitoringData> dataToProcess = new ArrayList<>(Math.min(maxRecordsInMessage, buffer.size()));
 
         buffer.drainTo(dataToProcess, maxRecordsInMessage);
         if (log.isDebugEnabled()) {
             log.debug("Op monitoring remaining buffer records count {}", buffer.size());
         }
+        if (dataToProcess.isEmpty()) {
+            return 0;
+        }
+
+        for (OpMonitoringData data : dataToProcess) {
+            try {
+                data.setSecurityServerInternalIp(opMonitoringDataProcessor.getIpAddress());
+                data.setRestPath(savedServiceEndpoint.getPathIfExists(data));
+            } catch (Exception e) {
+                log.error("Failed to process OpMonitoringData..", e);
+            }
+        }
 
         sender.sendMessage(dataToProcess);
+
+        return dataToProcess.size();
     }
 
     private boolean canSend() {
@@ -156,7 +177,7 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     }
 
     void sendingFailure(List<OpMonitoringData> failedData) {
-        failedData.forEach(buffer::addFirst);
+        failedData.forEach(buffer::offer);
         // Do not worry, scheduled sending retries.
     }
 
@@ -193,4 +214,8 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         return buffer.size();
     }
 
+    long getDroppedRecordCount() {
+        return buffer.getDroppedCount();
+    }
+
 }
@@ -44,19 +44,25 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.springframework.beans.factory.DisposableBean;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_ERROR;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_OK;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Actor for sending operational data to the operational monitoring daemon. This actor is used by the
  * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer.
+ * <p>
+ * Up to the configured number of messages are sent concurrently, each on its own pooled connection,
+ * so that the buffer does not have to wait for the daemon to store a batch before sending the next one.
  */
 @Slf4j
 public class OpMonitoringDaemonSender implements DisposableBean {
@@ -72,10 +78,12 @@ public class OpMonitoringDaemonSender implements DisposableBean {
     private final OpMonitoringDataProcessor opMonitoringDataProcessor = new OpMonitoringDataProcessor();
     private final ServerConfProvider serverConfProvider;
     private final OpMonitoringBuffer opMonitoringBuffer;
+    private final int maxConcurrentSends =
+            Math.max(1, OpMonitoringSystemProperties.getOpMonitorBufferMaxConcurrentSends());
     private final CloseableHttpClient httpClient;
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService executorService = Executors.newFixedThreadPool(maxConcurrentSends);
 
-    private final AtomicBoolean processing = new AtomicBoolean(false);
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     OpMonitoringDaemonSender(ServerConfProvider serverConfProvider, OpMonitoringBuffer opMonitoringBuffer) throws Exception {
         this.serverConfProvider = serverConfProvider;
@@ -84,34 +92,47 @@ public class OpMonitoringDaemonSender implements DisposableBean {
     }
 
     void sendMessage(final List<OpMonitoringData> dataToProcess) {
-        executorService.execute(() -> {
-            try {
-                processing.set(true);
-                var json = opMonitoringDataProcessor.prepareMonitoringMessage(dataToProcess);
-                log.trace("onReceive: {}", json);
-
-                send(json);
+        // counted before queuing, so that isReady() reflects the message right away
+        inFlight.incrementAndGet();
+
+        try {
+            executorService.execute(() -> process(dataToProcess));
+        } catch (RejectedExecutionException e) {
+            // shutting down, the data is kept in the buffer
+            log.warn("Operational monitoring data not sent, the sender has been shut down");
+            inFlight.decrementAndGet();
+            opMonitoringBuffer.sendingFailure(dataToProcess);
+        }
+    }
 
-                processing.set(false);
-                opMonitoringBuffer.sendingSuccess(dataToProcess.size());
-            } catch (Exception e) {
-                log.error("Sending operational monitoring data failed", e);
-                processing.set(false);
-                opMonitoringBuffer.sendingFailure(dataToProcess);
+    private void process(List<OpMonitoringData> dataToProcess) {
+        try {
+            byte[] message = opMonitoringDataProcessor.prepareMonitoringMessage(dataToProcess);
+            if (log.isTraceEnabled()) {
+                log.trace("onReceive: {}", new String(message, UTF_8));
             }
-        });
+
+            send(message);
+
+            inFlight.decrementAndGet();
+            opMonitoringBuffer.sendingSuccess(dataToProcess.size());
+        } catch (Exception e) {
+            log.error("Sending operational monitoring data failed", e);
+            inFlight.decrementAndGet();
+            opMonitoringBuffer.sendingFailure(dataToProcess);
+        }
     }
 
     public boolean isReady() {
-        return Boolean.FALSE.equals(processing.get());
+        return inFlight.get() < maxConcurrentSends;
     }
 
-    private void send(String json) throws Exception {
+    private void send(byte[] message) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            sender.doPost(getAddress(), new ByteArrayInputStream(message), message.length, MimeTypes.JSON);
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
@@ -145,7 +166,7 @@ public class OpMonitoringDaemonSender implements DisposableBean {
 
     CloseableHttpClient createHttpClient() throws Exception {
         return OpMonitoringDaemonHttpClient.createHttpClient(serverConfProvider.getSSLKey(),
-                1, 1,
+                maxConcurrentSends, maxConcurrentSends,
                 TimeUtils.secondsToMillis(OpMonitoringSystemProperties.getOpMonitorBufferConnectionTimeoutSeconds()),
                 TimeUtils.secondsToMillis(OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds()));
     }
@@ -49,14 +49,14 @@ public class OpMonitoringDataProcessor {
 
     private String ipAddress;
 
-    String prepareMonitoringMessage(List<OpMonitoringData> dataToProcess) throws JsonProcessingException {
+    byte[] prepareMonitoringMessage(List<OpMonitoringData> dataToProcess) throws JsonProcessingException {
         StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
 
         for (OpMonitoringData data : dataToProcess) {
             request.addRecord(data.getData());
         }
 
-        return OBJECT_WRITER.writeValueAsString(request);
+        return OBJECT_WRITER.writeValueAsBytes(request);
     }
 
     String getIpAddress() {
@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed capacity multi-producer, single-consumer ring buffer with drop-oldest semantics. The capacity is
+ * split between shards and a producer writes to the shard selected by its thread, so concurrent producers
+ * rarely touch the same counters. When the shard of the producer is full, the element goes to another shard
+ * that has room, so elements are dropped only when the whole buffer is full. Adding an element never blocks
+ * and does not allocate: when all shards are full, the oldest element of the producer's shard is overwritten
+ * and counted as dropped. The fullness of the other shards is checked without locking, so concurrent
+ * producers may occasionally drop an element while another shard still has room.
+ * <p>
+ * Elements are removed in batches by {@link #drainTo(List, int)}, which must not be called concurrently.
+ * The order of elements is preserved within a shard but not between shards.
+ * <p>
+ * Producers claim slots with {@code getAndIncrement} and slots are taken with {@code getAndSet}, so every offered
+ * element is either drained or counted as dropped exactly once, even when producers and the consumer race for
+ * the same slot. {@link #size()} and {@link #isEmpty()} read the producer and consumer positions separately and
+ * are only approximate while elements are being added.
+ * @param <T> element type
+ */
+class OpMonitoringRingBuffer<T> {
+    private static final int MIN_SHARD_CAPACITY = 64;
+
+    private final Shard<T>[] shards;
+    private final int shardMask;
+    private final LongAdder dropped = new LongAdder();
+
+    OpMonitoringRingBuffer(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings("unchecked")
+    OpMonitoringRingBuffer(int capacity, int parallelism) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        int shardCount = Math.min(ceilingPowerOfTwo(parallelism), Integer.highestOneBit(Math.max(1, capacity / MIN_SHARD_CAPACITY)));
+        int shardCapacity = (capacity + shardCount - 1) / shardCount;
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<>(shardCapacity);
+        }
+        shardMask = shardCount - 1;
+    }
+
+    /**
+     * Adds the element to the shard of the calling thread, or to another shard if it is full. If all shards are
+     * full, the oldest element of the shard of the calling thread is overwritten.
+     * @param element the element to add
+     * @return false if an older element was dropped to make room for this one
+     */
+    boolean offer(T element) {
+        int start = (int) Thread.currentThread().threadId() & shardMask;
+        Shard<T> shard = shards[start];
+        if (shard.isFull()) {
+            // borrow the capacity of another shard before dropping anything
+            for (int i = 1; i < shards.length; i++) {
+                Shard<T> other = shards[(start + i) & shardMask];
+                if (!other.isFull()) {
+                    shard = other;
+                    break;
+                }
+            }
+        }
+
+        if (!shard.offer(element)) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves up to maxElements elements to the given list.
+     * @param target list to add the elements to
+     * @param maxElements maximum number of elements to move
+     * @return number of elements moved
+     */
+    int drainTo(List<? super T> target, int maxElements) {
+        int drained = 0;
+        for (int i = 0; i < shards.length && drained < maxElements; i++) {
+            drained += shards[i].drainTo(target, maxElements - drained);
+        }
+        return drained;
+    }
+
+    /**
+     * @return approximate number of elements in the buffer
+     */
+    int size() {
+        long size = 0;
+        for (Shard<T> shard : shards) {
+            size += shard.size();
+        }
+        return (int) size;
+    }
+
+    boolean isEmpty() {
+        for (Shard<T> shard : shards) {
+            if (shard.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return total number of elements dropped because their shard was full, exact once the producers are done
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * A single ring. Producers claim a sequence number, store the element in its slot and then publish the
+     * sequence number of the slot. The consumer only takes an element once the slot has been published for
+     * the sequence number it is waiting for (or a later one, if producers have lapped the consumer).
+     */
+    private static final class Shard<T> {
+        private final int capacity;
+        private final AtomicReferenceArray<T> slots;
+        private final AtomicLongArray published;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.published = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                published.set(i, -1);
+            }
+        }
+
+        boolean offer(T element) {
+            long sequence = tail.getAndIncrement();
+            int index = (int) (sequence % capacity);
+
+            T previous = slots.getAndSet(index, element);
+            // producers of different laps may finish out of order, the published sequence must never go backwards
+            published.accumulateAndGet(index, sequence, Math::max);
+            return previous == null;
+        }
+
+        int drainTo(List<? super T> target, int maxElements) {
+            long current = head;
+            long limit = tail.get();
+            if (limit - current > capacity) {
+                // elements older than one lap have been overwritten and counted as dropped
+                current = limit - capacity;
+            }
+
+            int drained = 0;
+            while (current < limit && drained < maxElements) {
+                int index = (int) (current % capacity);
+                if (published.get(index) < current) {
+                    // the producer of this slot has not finished yet, continue from here on the next drain
+                    break;
+                }
+                T element = slots.getAndSet(index, null);
+                if (element != null) {
+                    target.add(element);
+                    drained++;
+                }
+                current++;
+            }
+            head = current;
+            return drained;
+        }
+
+        long size() {
+            return Math.clamp(tail.get() - head, 0, capacity);
+        }
+
+        boolean isFull() {
+            return tail.get() - head >= capacity;
+        }
+    }
+}
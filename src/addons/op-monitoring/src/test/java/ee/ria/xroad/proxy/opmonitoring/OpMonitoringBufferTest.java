@@ -47,6 +47,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -54,7 +56,6 @@ import java.util.stream.IntStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
@@ -189,14 +190,33 @@ class OpMonitoringBufferTest {
                 .pollDelay(Duration.ofSeconds(1))
                 .untilAsserted(() -> {
                     assertEquals(2, opMonitoringBuffer.buffer.size());
-                    assertFalse(opMonitoringBuffer.buffer.contains(opMonitoringData1));
-                    assertTrue(opMonitoringBuffer.buffer.contains(opMonitoringData2));
-                    assertTrue(opMonitoringBuffer.buffer.contains(opMonitoringData3));
+                    assertEquals(1, opMonitoringBuffer.getDroppedRecordCount());
                 });
 
+        List<OpMonitoringData> buffered = new ArrayList<>();
+        opMonitoringBuffer.buffer.drainTo(buffered, 10);
+        assertEquals(List.of(opMonitoringData2, opMonitoringData3), buffered);
+
 //
     }
 
+    @Test
+    void sendingAfterShutdownKeepsDataInBuffer() throws Exception {
+        final TestOpMonitoringBuffer opMonitoringBuffer = new TestOpMonitoringBuffer();
+        final OpMonitoringDaemonSender sender = opMonitoringBuffer.createSender(mock(ServerConfProvider.class));
+        sender.destroy();
+
+        for (int i = 0; i < 10; i++) {
+            sender.sendMessage(List.of(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, i)));
+        }
+
+        // the rejected messages are not counted as in flight
+        assertTrue(sender.isReady());
+        assertEquals(10, opMonitoringBuffer.getCurrentBufferSize());
+
+        opMonitoringBuffer.destroy();
+    }
+
     @Test
     void noOpMonitoringDataIsStored() throws Exception {
         System.setProperty("xroad.op-monitor-buffer.size", "0");
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the operational monitoring ring buffer.
+ */
+class OpMonitoringRingBufferTest {
+
+    @Test
+    void drainsInBatchesInInsertionOrder() {
+        var ringBuffer = new OpMonitoringRingBuffer<Integer>(10, 1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(ringBuffer.offer(i));
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, ringBuffer.drainTo(drained, 3));
+        assertEquals(List.of(0, 1, 2), drained);
+        assertEquals(2, ringBuffer.size());
+
+        drained.clear();
+        assertEquals(2, ringBuffer.drainTo(drained, 3));
+        assertEquals(List.of(3, 4), drained);
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    void dropsOldestWhenFull() {
+        var ringBuffer = new OpMonitoringRingBuffer<Integer>(3, 1);
+        for (int i = 0; i < 5; i++) {
+            ringBuffer.offer(i);
+        }
+
+        assertEquals(3, ringBuffer.size());
+        assertEquals(2, ringBuffer.getDroppedCount());
+
+        List<Integer> drained = new ArrayList<>();
+        ringBuffer.drainTo(drained, 10);
+        assertEquals(List.of(2, 3, 4), drained);
+        assertTrue(ringBuffer.isEmpty());
+
+        ringBuffer.offer(5);
+        drained.clear();
+        ringBuffer.drainTo(drained, 10);
+        assertEquals(List.of(5), drained);
+    }
+
+    @Test
+    void fullShardBorrowsCapacityOfOtherShards() {
+        var ringBuffer = new OpMonitoringRingBuffer<Integer>(256, 4);
+        for (int i = 0; i < 256; i++) {
+            assertTrue(ringBuffer.offer(i));
+        }
+        assertEquals(0, ringBuffer.getDroppedCount());
+
+        // all shards are full now
+        assertFalse(ringBuffer.offer(256));
+        assertEquals(1, ringBuffer.getDroppedCount());
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(256, ringBuffer.drainTo(batch, 1000));
+        Set<Integer> drained = new HashSet<>(batch);
+        assertEquals(256, drained.size());
+        assertTrue(drained.contains(256));
+    }
+
+    @Test
+    void concurrentProducersLoseNothingWithinCapacity() throws Exception {
+        // capacity is large enough even if all producer threads end up in the same shard
+        int producers = 8;
+        int perProducer = 10_000;
+        var ringBuffer = new OpMonitoringRingBuffer<Integer>(producers * producers * perProducer, producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    ringBuffer.offer(offset + i);
+                }
+                done.countDown();
+            });
+        }
+
+        Set<Integer> received = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        while (done.getCount() > 0 || !ringBuffer.isEmpty()) {
+            batch.clear();
+            ringBuffer.drainTo(batch, 500);
+            received.addAll(batch);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, ringBuffer.getDroppedCount());
+        assertEquals(producers * perProducer, received.size());
+    }
+
+    @Test
+    void concurrentProducersOverflowingAreCountedExactly() throws Exception {
+        int producers = 8;
+        int perProducer = 10_000;
+        var ringBuffer = new OpMonitoringRingBuffer<Integer>(256, producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    ringBuffer.offer(offset + i);
+                }
+                done.countDown();
+            });
+        }
+
+        List<Integer> received = new ArrayList<>();
+        while (done.getCount() > 0 || !ringBuffer.isEmpty()) {
+            ringBuffer.drainTo(received, 50);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // every element is either drained once or counted as dropped
+        assertEquals(received.size(), new HashSet<>(received).size());
+        assertEquals(producers * perProducer, received.size() + ringBuffer.getDroppedCount());
+    }
+}
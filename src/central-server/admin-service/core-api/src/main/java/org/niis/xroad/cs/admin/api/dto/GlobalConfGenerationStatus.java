@@ -27,14 +27,23 @@
 
 package org.niis.xroad.cs.admin.api.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Value;
 
+import java.time.Duration;
 import java.time.Instant;
 
 @Value
+@AllArgsConstructor
 public class GlobalConfGenerationStatus {
     GlobalConfGenerationStatusEnum status;
     Instant time;
+    /** Duration of the generation run, null if unknown. */
+    Duration duration;
+
+    public GlobalConfGenerationStatus(GlobalConfGenerationStatusEnum status, Instant time) {
+        this(status, time, null);
+    }
 
     public enum GlobalConfGenerationStatusEnum {
         FAILURE,
@@ -26,6 +26,8 @@
  */
 package org.niis.xroad.cs.admin.globalconf.generator;
 
+import ee.ria.xroad.common.util.TimeUtils;
+
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -34,6 +36,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
@@ -69,6 +72,19 @@ public class ConfigurationDistributor {
         }
     }
 
+    public boolean confLocationExists() {
+        return Files.isDirectory(getConfigLocationPath());
+    }
+
+    /**
+     * Marks the configuration location as used now, so that it is not cleaned up while
+     * it is referred to by the directory content files.
+     */
+    @SneakyThrows
+    public void touchConfLocation() {
+        Files.setLastModifiedTime(getConfigLocationPath(), FileTime.from(TimeUtils.now()));
+    }
+
     public void writeConfigurationFiles(Collection<ConfigurationPart> configurationParts) {
         configurationParts.forEach(this::writeConfigurationFile);
     }
@@ -49,9 +49,14 @@ public class GlobalConfApplier {
     private final int confVersion;
     private final ConfigurationDistributor configurationDistributor;
     private final SystemParameterService systemParameterService;
+    /** True if the configuration files were written by an earlier generation and are reused. */
+    private final boolean confLocationReused;
     private final Set<ConfigurationPart> configurationParts = new HashSet<>();
 
     public void apply() {
+        if (confLocationReused) {
+            configurationDistributor.touchConfLocation();
+        }
         configurationDistributor.moveDirectoryContentFile(getTmpInternalDirectory(), getCenterInternalDirectory());
         configurationDistributor.moveDirectoryContentFile(getTmpExternalDirectory(), getCenterExternalDirectory());
 
@@ -64,7 +69,9 @@ public class GlobalConfApplier {
     public void rollback() {
         configurationDistributor.deleteDirectoryContentFile(getTmpInternalDirectory());
         configurationDistributor.deleteDirectoryContentFile(getTmpExternalDirectory());
-        delete(configurationDistributor.getConfigLocationPath());
+        if (!confLocationReused) {
+            delete(configurationDistributor.getConfigLocationPath());
+        }
     }
 
     public void addConfigurationParts(Set<ConfigurationPart> parts) {
@@ -27,7 +27,20 @@
 
 package org.niis.xroad.cs.admin.globalconf.generator;
 
-public enum GlobalConfGenerationEvent {
-    FAILURE,
-    SUCCESS,
+import java.time.Duration;
+
+/**
+ * Published after each global configuration generation run.
+ * @param success whether the configuration was generated for all the versions
+ * @param duration how long the generation took
+ */
+public record GlobalConfGenerationEvent(boolean success, Duration duration) {
+
+    public static GlobalConfGenerationEvent succeeded(Duration duration) {
+        return new GlobalConfGenerationEvent(true, duration);
+    }
+
+    public static GlobalConfGenerationEvent failed(Duration duration) {
+        return new GlobalConfGenerationEvent(false, duration);
+    }
 }
@@ -27,6 +27,7 @@
 package org.niis.xroad.cs.admin.globalconf.generator;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.crypto.Digests;
 import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
 import ee.ria.xroad.common.util.TimeUtils;
 
@@ -48,9 +49,14 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.conf.globalconf.ConfigurationConstants.CONTENT_ID_PRIVATE_PARAMETERS;
 import static ee.ria.xroad.common.conf.globalconf.ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS;
@@ -62,8 +68,6 @@ import static org.niis.xroad.cs.admin.api.service.ConfigurationSigningKeysServic
 import static org.niis.xroad.cs.admin.api.service.ConfigurationSigningKeysService.SOURCE_TYPE_INTERNAL;
 import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfApplier.getTmpExternalDirectory;
 import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfApplier.getTmpInternalDirectory;
-import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfGenerationEvent.FAILURE;
-import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfGenerationEvent.SUCCESS;
 
 @Component
 @Slf4j
@@ -85,11 +89,18 @@ public class GlobalConfGenerationServiceImpl implements GlobalConfGenerationServ
 
     private final List<ConfigurationPartsGenerator> configurationPartsGenerators;
 
+    /**
+     * Configuration directories of the last applied generation by configuration version. A directory
+     * is reused as long as the content of the configuration parts does not change.
+     */
+    private final Map<Integer, ConfLocation> confLocations = new ConcurrentHashMap<>();
+
     @SneakyThrows
     @Override
     @Transactional
     @Scheduled(fixedRateString = "${xroad.admin-service.global-configuration-generation-rate-in-seconds}", timeUnit = SECONDS)
     public void generate() {
+        long start = System.nanoTime();
         final var results = configurationPartsGenerators.stream()
                 .map(this::generate)
                 .filter(Optional::isPresent)
@@ -101,15 +112,19 @@ public class GlobalConfGenerationServiceImpl implements GlobalConfGenerationServ
         }
 
         if (results.stream().allMatch(Result::success)) {
-            results.stream()
-                    .map(Result::applier)
-                    .forEach(GlobalConfApplier::apply);
-            eventPublisher.publishEvent(SUCCESS);
+            results.forEach(result -> {
+                result.applier().apply();
+                confLocations.put(result.confVersion(), result.confLocation());
+            });
+            var duration = Duration.ofNanos(System.nanoTime() - start);
+            log.debug("Global conf generation took {} ms", duration.toMillis());
+            eventPublisher.publishEvent(GlobalConfGenerationEvent.succeeded(duration));
         } else {
             results.stream()
                     .map(Result::applier)
+                    .filter(Objects::nonNull)
                     .forEach(GlobalConfApplier::rollback);
-            eventPublisher.publishEvent(FAILURE);
+            eventPublisher.publishEvent(GlobalConfGenerationEvent.failed(Duration.ofNanos(System.nanoTime() - start)));
         }
     }
 
@@ -119,26 +134,34 @@ public class GlobalConfGenerationServiceImpl implements GlobalConfGenerationServ
             return Optional.empty();
         }
 
-        var configGenerationTime = TimeUtils.now();
         var generatedConfDir = Path.of(SystemProperties.getCenterGeneratedConfDir());
-        var configDistributor = new ConfigurationDistributor(generatedConfDir, confVersion, configGenerationTime);
-        var globalConfApplier = new GlobalConfApplier(confVersion, configDistributor, systemParameterService);
+        GlobalConfApplier globalConfApplier = null;
 
         try {
             log.debug("Starting global conf V{} generation", confVersion);
 
-            var configurationParts = generator.generateConfigurationParts();
-            configurationParts.forEach(gp -> configurationService
-                    .saveConfigurationPart(gp.getContentIdentifier(), gp.getFilename(), gp.getData(), confVersion));
+            var allConfigurationParts = saveConfigurationParts(generator.generateConfigurationParts(), confVersion);
+            var partDigests = partDigests(allConfigurationParts);
 
-            var allConfigurationParts = toConfigurationParts(configurationService.getAllConfigurationFiles(confVersion));
+            var previousConfLocation = confLocations.get(confVersion);
+            var confLocationReused = previousConfLocation != null && previousConfLocation.partDigests().equals(partDigests)
+                    && new ConfigurationDistributor(generatedConfDir, confVersion, previousConfLocation.timestamp())
+                    .confLocationExists();
+            var confLocation = confLocationReused ? previousConfLocation : new ConfLocation(TimeUtils.now(), partDigests);
+
+            var configDistributor = new ConfigurationDistributor(generatedConfDir, confVersion, confLocation.timestamp());
+            globalConfApplier = new GlobalConfApplier(confVersion, configDistributor, systemParameterService, confLocationReused);
             globalConfApplier.addConfigurationParts(allConfigurationParts);
 
             var internalConfigurationParts = internalConfigurationParts(allConfigurationParts);
             var externalConfigurationParts = externalConfigurationParts(allConfigurationParts);
 
             configDistributor.initConfLocation();
-            configDistributor.writeConfigurationFiles(allConfigurationParts);
+            if (confLocationReused) {
+                log.debug("Global conf V{} parts have not changed, reusing {}", confVersion, configDistributor.getSubPath());
+            } else {
+                configDistributor.writeConfigurationFiles(allConfigurationParts);
+            }
 
             var internalSigningKey = configurationSigningKeysService.findActiveForSource(SOURCE_TYPE_INTERNAL).orElseThrow();
             var externalSigningKey = configurationSigningKeysService.findActiveForSource(SOURCE_TYPE_EXTERNAL).orElseThrow();
@@ -147,11 +170,42 @@ public class GlobalConfGenerationServiceImpl implements GlobalConfGenerationServ
             writeDirectoryContentFile(configDistributor, externalConfigurationParts, externalSigningKey, getTmpExternalDirectory());
 
             log.debug("Global conf generated");
-            return Optional.of(new Result(true, globalConfApplier));
+            return Optional.of(new Result(true, confVersion, globalConfApplier, confLocation));
         } catch (Exception e) {
             log.error("Global conf generation failed", e);
-            return Optional.of(new Result(false, globalConfApplier));
+            return Optional.of(new Result(false, confVersion, globalConfApplier, null));
+        }
+    }
+
+    /**
+     * Saves the generated configuration parts that differ from the stored ones and returns all
+     * the configuration parts of the version.
+     */
+    private Set<ConfigurationPart> saveConfigurationParts(List<ConfigurationPart> generatedParts, int confVersion) {
+        var storedParts = toConfigurationParts(configurationService.getAllConfigurationFiles(confVersion));
+        var changedParts = generatedParts.stream()
+                .filter(part -> !storedParts.contains(part))
+                .toList();
+        if (changedParts.isEmpty()) {
+            return storedParts;
         }
+
+        log.debug("Saving changed global conf V{} parts {}", confVersion,
+                changedParts.stream().map(ConfigurationPart::getContentIdentifier).toList());
+        changedParts.forEach(gp -> configurationService
+                .saveConfigurationPart(gp.getContentIdentifier(), gp.getFilename(), gp.getData(), confVersion));
+        return toConfigurationParts(configurationService.getAllConfigurationFiles(confVersion));
+    }
+
+    private static Set<PartDigest> partDigests(Set<ConfigurationPart> configurationParts) {
+        return configurationParts.stream()
+                .map(cp -> new PartDigest(cp.getContentIdentifier(), cp.getFilename(), digest(cp.getData())))
+                .collect(toSet());
+    }
+
+    @SneakyThrows
+    private static String digest(byte[] data) {
+        return Digests.hexDigest(DigestAlgorithm.SHA256, data);
     }
 
     private static Set<ConfigurationPart> internalConfigurationParts(Set<ConfigurationPart> configurationParts) {
@@ -226,7 +280,13 @@ public class GlobalConfGenerationServiceImpl implements GlobalConfGenerationServ
                 .collect(toSet());
     }
 
-    private record Result(boolean success, GlobalConfApplier applier) {
+    private record Result(boolean success, int confVersion, GlobalConfApplier applier, ConfLocation confLocation) {
+    }
+
+    private record ConfLocation(Instant timestamp, Set<PartDigest> partDigests) {
+    }
+
+    private record PartDigest(String contentIdentifier, String filename, String digest) {
     }
 
 }
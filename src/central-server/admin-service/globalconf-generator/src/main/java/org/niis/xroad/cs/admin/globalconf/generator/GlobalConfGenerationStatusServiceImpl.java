@@ -39,6 +39,7 @@ import org.springframework.stereotype.Component;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
 
 import static ee.ria.xroad.common.util.TimeUtils.now;
@@ -57,22 +58,22 @@ public class GlobalConfGenerationStatusServiceImpl implements GlobalConfGenerati
 
     @EventListener
     public void handleGlobalConfGenerationEvent(GlobalConfGenerationEvent event) {
-        if (event == GlobalConfGenerationEvent.SUCCESS) {
-            saveSuccess();
+        if (event.success()) {
+            saveSuccess(event.duration());
         } else {
-            saveFailure();
+            saveFailure(event.duration());
         }
     }
 
-    private void saveSuccess() {
-        writeFile(new GlobalConfGenerationStatusInternal(now(), true));
+    private void saveSuccess(Duration duration) {
+        writeFile(new GlobalConfGenerationStatusInternal(now(), true, duration.toMillis()));
     }
 
-    private void saveFailure() {
+    private void saveFailure(Duration duration) {
         final GlobalConfGenerationStatus lastStatus = get();
 
         if (lastStatus.getStatus() != FAILURE) {
-            writeFile(new GlobalConfGenerationStatusInternal(now(), false));
+            writeFile(new GlobalConfGenerationStatusInternal(now(), false, duration.toMillis()));
         }
     }
 
@@ -91,14 +92,18 @@ public class GlobalConfGenerationStatusServiceImpl implements GlobalConfGenerati
             final String content = Files.readString(Paths.get(SystemProperties.getLogPath(), STATUS_FILE_NAME));
             final GlobalConfGenerationStatusInternal statusInternal =
                     objectMapper.readValue(content, GlobalConfGenerationStatusInternal.class);
-            return new GlobalConfGenerationStatus(statusInternal.success() ? SUCCESS : FAILURE, statusInternal.time());
+            return new GlobalConfGenerationStatus(statusInternal.success() ? SUCCESS : FAILURE, statusInternal.time(),
+                    statusInternal.durationMillis() != null ? Duration.ofMillis(statusInternal.durationMillis()) : null);
         } catch (Exception e) {
             log.warn("Failed to read global conf generation status file", e);
             return new GlobalConfGenerationStatus(UNKNOWN, null);
         }
     }
 
-    private record GlobalConfGenerationStatusInternal(Instant time, boolean success) {
+    /**
+     * Contents of the status file. The generation duration is missing from the files written by older versions.
+     */
+    private record GlobalConfGenerationStatusInternal(Instant time, boolean success, Long durationMillis) {
     }
 
 }
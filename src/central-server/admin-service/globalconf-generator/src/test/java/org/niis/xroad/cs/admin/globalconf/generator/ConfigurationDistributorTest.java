@@ -31,7 +31,9 @@ import ee.ria.xroad.common.util.TimeUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.List;
 
@@ -74,6 +76,20 @@ class ConfigurationDistributorTest {
                 .isDirectory();
     }
 
+    @Test
+    void touchConfLocation() throws Exception {
+        ConfigurationDistributor configurationDistributor = new ConfigurationDistributor(generatedConfDir, VERSION, TimeUtils.now());
+        assertThat(configurationDistributor.confLocationExists()).isFalse();
+
+        var path = configurationDistributor.initConfLocation();
+        assertThat(configurationDistributor.confLocationExists()).isTrue();
+        Files.setLastModifiedTime(path, FileTime.from(Instant.parse("2022-12-08T07:55:01Z")));
+
+        configurationDistributor.touchConfLocation();
+
+        assertThat(Files.getLastModifiedTime(path).toInstant()).isAfter(Instant.parse("2022-12-08T07:55:01Z"));
+    }
+
     @Test
     void writeFiles() {
         ConfigurationDistributor configurationDistributor = new ConfigurationDistributor(generatedConfDir, VERSION, TimeUtils.now());
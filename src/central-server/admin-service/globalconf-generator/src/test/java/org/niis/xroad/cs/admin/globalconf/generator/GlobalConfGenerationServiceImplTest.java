@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xroad.cs.admin.globalconf.generator;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.niis.xroad.cs.admin.api.domain.ConfigurationSigningKey;
+import org.niis.xroad.cs.admin.api.domain.DistributedFile;
+import org.niis.xroad.cs.admin.api.facade.SignerProxyFacade;
+import org.niis.xroad.cs.admin.api.service.ConfigurationService;
+import org.niis.xroad.cs.admin.api.service.ConfigurationSigningKeysService;
+import org.niis.xroad.cs.admin.api.service.SystemParameterService;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ee.ria.xroad.common.SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION;
+import static ee.ria.xroad.common.conf.globalconf.ConfigurationConstants.CONTENT_ID_PRIVATE_PARAMETERS;
+import static ee.ria.xroad.common.conf.globalconf.ConfigurationConstants.CONTENT_ID_SHARED_PARAMETERS;
+import static ee.ria.xroad.common.crypto.identifier.DigestAlgorithm.SHA512;
+import static ee.ria.xroad.common.crypto.identifier.SignMechanism.CKM_RSA_PKCS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.niis.xroad.cs.admin.api.service.ConfigurationSigningKeysService.SOURCE_TYPE_EXTERNAL;
+import static org.niis.xroad.cs.admin.api.service.ConfigurationSigningKeysService.SOURCE_TYPE_INTERNAL;
+
+class GlobalConfGenerationServiceImplTest {
+
+    private static final int VERSION = CURRENT_GLOBAL_CONFIGURATION_VERSION;
+    private static final String INSTANCE = "CS-INSTANCE";
+
+    private static final ConfigurationPart PRIVATE_PARAMS = part(CONTENT_ID_PRIVATE_PARAMETERS, "private-params.xml", "private");
+    private static final ConfigurationPart SHARED_PARAMS = part(CONTENT_ID_SHARED_PARAMETERS, "shared-params.xml", "shared");
+    private static final ConfigurationPart CHANGED_SHARED_PARAMS =
+            part(CONTENT_ID_SHARED_PARAMETERS, "shared-params.xml", "changed shared");
+
+    private static final List<String> PROPERTIES = List.of(SystemProperties.CENTER_GENERATED_CONF_DIR,
+            SystemProperties.CONFIGURATION_PATH, SystemProperties.CONF_PATH);
+
+    @TempDir
+    Path tempDir;
+
+    private final Map<String, String> savedProperties = new ConcurrentHashMap<>();
+    private final Map<String, DistributedFile> storedFiles = new ConcurrentHashMap<>();
+
+    private final SignerProxyFacade signerProxyFacade = mock(SignerProxyFacade.class);
+    private final SystemParameterService systemParameterService = mock(SystemParameterService.class);
+    private final ConfigurationService configurationService = mock(ConfigurationService.class);
+    private final ConfigurationSigningKeysService signingKeysService = mock(ConfigurationSigningKeysService.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final ConfigurationPartsGenerator partsGenerator = mock(ConfigurationPartsGenerator.class);
+
+    private GlobalConfGenerationServiceImpl service;
+
+    @BeforeEach
+    @SneakyThrows
+    void setUp() {
+        PROPERTIES.forEach(property -> Optional.ofNullable(System.getProperty(property))
+                .ifPresent(value -> savedProperties.put(property, value)));
+        System.setProperty(SystemProperties.CENTER_GENERATED_CONF_DIR, tempDir.resolve("generated").toString());
+        System.setProperty(SystemProperties.CONFIGURATION_PATH, tempDir.resolve("globalconf").toString());
+        System.setProperty(SystemProperties.CONF_PATH, tempDir.toString());
+
+        when(systemParameterService.getInstanceIdentifier()).thenReturn(INSTANCE);
+        when(systemParameterService.getConfExpireIntervalSeconds()).thenReturn(600);
+        when(systemParameterService.getConfHashAlgoUri()).thenReturn(SHA512);
+        when(systemParameterService.getConfSignDigestAlgoId()).thenReturn(SHA512);
+        when(systemParameterService.getConfSignCertHashAlgoUri()).thenReturn(SHA512);
+
+        when(signerProxyFacade.getSignMechanism(anyString())).thenReturn(CKM_RSA_PKCS);
+        when(signerProxyFacade.sign(anyString(), any(), any())).thenReturn("signature".getBytes(UTF_8));
+
+        when(signingKeysService.findActiveForSource(SOURCE_TYPE_INTERNAL)).thenReturn(Optional.of(signingKey("internal")));
+        when(signingKeysService.findActiveForSource(SOURCE_TYPE_EXTERNAL)).thenReturn(Optional.of(signingKey("external")));
+
+        when(configurationService.getAllConfigurationFiles(VERSION)).thenAnswer(inv -> new HashSet<>(storedFiles.values()));
+        doAnswer(inv -> storedFiles.put(inv.getArgument(0), distributedFile(inv.getArgument(0), inv.getArgument(1),
+                inv.getArgument(2)))).when(configurationService).saveConfigurationPart(anyString(), anyString(), any(), anyInt());
+
+        when(partsGenerator.getConfigurationVersion()).thenReturn(VERSION);
+
+        service = new GlobalConfGenerationServiceImpl(signerProxyFacade, systemParameterService, configurationService,
+                signingKeysService, eventPublisher, List.of(partsGenerator));
+    }
+
+    @AfterEach
+    void tearDown() {
+        PROPERTIES.forEach(property -> {
+            if (savedProperties.containsKey(property)) {
+                System.setProperty(property, savedProperties.get(property));
+            } else {
+                System.clearProperty(property);
+            }
+        });
+    }
+
+    @Test
+    @SneakyThrows
+    void unchangedPartsReuseConfDirectory() {
+        when(partsGenerator.generateConfigurationParts()).thenReturn(List.of(PRIVATE_PARAMS, SHARED_PARAMS));
+
+        service.generate();
+        var confDirs = confDirectories();
+        assertThat(confDirs).hasSize(1);
+        var sharedParamsFile = confDirs.getFirst().resolve(SHARED_PARAMS.getFilename());
+        var modified = Files.getLastModifiedTime(sharedParamsFile);
+
+        service.generate();
+
+        verify(configurationService, times(2)).saveConfigurationPart(anyString(), anyString(), any(), eq(VERSION));
+        assertThat(confDirectories()).containsExactlyElementsOf(confDirs);
+        assertThat(Files.getLastModifiedTime(sharedParamsFile)).isEqualTo(modified);
+        assertThat(versionDir().resolve(SystemProperties.getCenterInternalDirectory())).exists();
+        assertThat(versionDir().resolve(SystemProperties.getCenterExternalDirectory())).exists();
+        verify(eventPublisher, times(2)).publishEvent(argThat((GlobalConfGenerationEvent event) -> event.success()));
+    }
+
+    @Test
+    @SneakyThrows
+    void changedPartCreatesNewConfDirectory() {
+        when(partsGenerator.generateConfigurationParts())
+                .thenReturn(List.of(PRIVATE_PARAMS, SHARED_PARAMS))
+                .thenReturn(List.of(PRIVATE_PARAMS, CHANGED_SHARED_PARAMS));
+
+        service.generate();
+        var firstConfDir = confDirectories().getFirst();
+
+        service.generate();
+
+        verify(configurationService).saveConfigurationPart(CONTENT_ID_SHARED_PARAMETERS, CHANGED_SHARED_PARAMS.getFilename(),
+                CHANGED_SHARED_PARAMS.getData(), VERSION);
+        verify(configurationService, times(3)).saveConfigurationPart(anyString(), anyString(), any(), eq(VERSION));
+
+        var confDirs = confDirectories();
+        assertThat(confDirs).hasSize(2).contains(firstConfDir);
+        var newConfDir = confDirs.stream().filter(dir -> !dir.equals(firstConfDir)).findFirst().orElseThrow();
+        assertThat(newConfDir.resolve(CHANGED_SHARED_PARAMS.getFilename())).hasBinaryContent(CHANGED_SHARED_PARAMS.getData());
+        assertThat(newConfDir.resolve(PRIVATE_PARAMS.getFilename())).hasBinaryContent(PRIVATE_PARAMS.getData());
+    }
+
+    @Test
+    @SneakyThrows
+    void failedRunDoesNotDeleteReusedConfDirectory() {
+        when(partsGenerator.generateConfigurationParts()).thenReturn(List.of(PRIVATE_PARAMS, SHARED_PARAMS));
+
+        service.generate();
+        var confDirs = confDirectories();
+
+        when(signerProxyFacade.sign(anyString(), any(), any())).thenThrow(new IllegalStateException("signing failed"));
+        service.generate();
+
+        verify(eventPublisher).publishEvent(argThat((GlobalConfGenerationEvent event) -> !event.success()));
+        assertThat(confDirectories()).containsExactlyElementsOf(confDirs);
+        assertThat(confDirs.getFirst().resolve(SHARED_PARAMS.getFilename())).hasBinaryContent(SHARED_PARAMS.getData());
+        assertThat(versionDir().resolve(GlobalConfApplier.getTmpInternalDirectory())).doesNotExist();
+        assertThat(versionDir().resolve(GlobalConfApplier.getTmpExternalDirectory())).doesNotExist();
+    }
+
+    private Path versionDir() {
+        return tempDir.resolve("generated").resolve("V" + VERSION);
+    }
+
+    @SneakyThrows
+    private List<Path> confDirectories() {
+        try (var files = Files.list(versionDir())) {
+            return files.filter(Files::isDirectory).sorted().toList();
+        }
+    }
+
+    private static ConfigurationPart part(String contentIdentifier, String filename, String data) {
+        return ConfigurationPart.builder()
+                .contentIdentifier(contentIdentifier)
+                .filename(filename)
+                .data(data.getBytes(UTF_8))
+                .build();
+    }
+
+    private static DistributedFile distributedFile(String contentIdentifier, String fileName, byte[] data) {
+        var file = new DistributedFile();
+        file.setVersion(VERSION);
+        file.setContentIdentifier(contentIdentifier);
+        file.setFileName(fileName);
+        file.setFileData(data);
+        return file;
+    }
+
+    private static ConfigurationSigningKey signingKey(String keyIdentifier) {
+        return new ConfigurationSigningKey()
+                .setKeyIdentifier(keyIdentifier)
+                .setCert(keyIdentifier.getBytes(UTF_8));
+    }
+}
@@ -39,17 +39,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.niis.xroad.cs.admin.api.dto.GlobalConfGenerationStatus;
 
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfGenerationEvent.FAILURE;
-import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfGenerationEvent.SUCCESS;
 import static org.niis.xroad.cs.admin.globalconf.generator.GlobalConfGenerationStatusServiceImpl.STATUS_FILE_NAME;
 
 class GlobalConfGenerationStatusServiceImplTest {
 
     private static final ObjectMapper OBJECT_MAPPER;
 
+    private static final GlobalConfGenerationEvent SUCCESS = GlobalConfGenerationEvent.succeeded(Duration.ofMillis(1234));
+    private static final GlobalConfGenerationEvent FAILURE = GlobalConfGenerationEvent.failed(Duration.ofMillis(56));
+
     static {
         OBJECT_MAPPER = new ObjectMapper();
         OBJECT_MAPPER.registerModule(new JavaTimeModule());
@@ -125,12 +128,32 @@ class GlobalConfGenerationStatusServiceImplTest {
         assertThat(latestStatus.getStatus()).isEqualTo(GlobalConfGenerationStatus.GlobalConfGenerationStatusEnum.FAILURE);
     }
 
+    @Test
+    @SneakyThrows
+    void generationDurationWrittenToStatusFile() {
+        globalConfGenerationStatusService.handleGlobalConfGenerationEvent(SUCCESS);
+
+        var statusFile = OBJECT_MAPPER.readTree(
+                Files.readString(Paths.get(SystemProperties.getLogPath(), STATUS_FILE_NAME)));
+        assertThat(statusFile.get("durationMillis").asLong()).isEqualTo(1234);
+    }
+
+    @Test
+    void generationDurationIncludedInStatus() {
+        globalConfGenerationStatusService.handleGlobalConfGenerationEvent(FAILURE);
+        assertThat(globalConfGenerationStatusService.get().getDuration()).isEqualTo(Duration.ofMillis(56));
+
+        globalConfGenerationStatusService.handleGlobalConfGenerationEvent(SUCCESS);
+        assertThat(globalConfGenerationStatusService.get().getDuration()).isEqualTo(Duration.ofMillis(1234));
+    }
+
     @Test
     void unknownGlobalConfGenerationStatus() {
         var status = globalConfGenerationStatusService.get();
 
         assertThat(status.getStatus()).isEqualTo(GlobalConfGenerationStatus.GlobalConfGenerationStatusEnum.UNKNOWN);
         assertThat(status.getTime()).isNull();
+        assertThat(status.getDuration()).isNull();
     }
 
 }
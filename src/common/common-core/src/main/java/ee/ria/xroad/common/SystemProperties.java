@@ -261,6 +261,8 @@ public final class SystemProperties {
 
     public static final String SERVER_CONF_ACL_CACHE_SIZE = PROXY_PREFIX + "server-conf-acl-cache-size";
 
+    public static final String SERVER_CONF_CHANGE_POLL_INTERVAL = PROXY_PREFIX + "server-conf-change-poll-interval";
+
 
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
@@ -349,6 +351,43 @@ public final class SystemProperties {
     private static final String PROXY_BACKUP_ENCRYPTION_KEY_IDS = PROXY_PREFIX + "backup-encryption-keyids";
 
     private static final String HSM_HEALTH_CHECK_ENABLED = PROXY_PREFIX + "hsm-health-check-enabled";
+
+    /**
+     * Property name of the time in microseconds the batch signer waits for more signing requests to arrive
+     * before signing a batch, 0 disables waiting
+     */
+    private static final String PROXY_BATCH_SIGNER_MAX_WAIT_MICROS = PROXY_PREFIX + "batch-signer-max-wait-micros";
+
+    /** Property name of the maximum number of signing requests the batch signer signs with one signature */
+    private static final String PROXY_BATCH_SIGNER_MAX_BATCH_SIZE = PROXY_PREFIX + "batch-signer-max-batch-size";
+
+    /** Property name of the number of batches the batch signer may have in flight per signing key */
+    private static final String PROXY_BATCH_SIGNER_WORKERS_PER_KEY = PROXY_PREFIX + "batch-signer-workers-per-key";
+
+    /** Property name of the size (bytes) up to which cached message bodies and attachments are kept in memory */
+    private static final String PROXY_ATTACHMENT_MEMORY_THRESHOLD = PROXY_PREFIX + "attachment-memory-threshold";
+
+    /** Property name of the total size (bytes) of the off-heap buffers available for caching message bodies */
+    private static final String PROXY_ATTACHMENT_BUFFER_POOL_SIZE = PROXY_PREFIX + "attachment-buffer-pool-size";
+
+    /** Property name of the flag that lets the server proxy accept HTTP/2 (negotiated with ALPN) from other security servers */
+    private static final String SERVERPROXY_HTTP2_ENABLED = PROXY_PREFIX + "server-http2-enabled";
+
+    /** Property name of the maximum number of concurrent HTTP/2 streams per connection accepted by the server proxy */
+    private static final String SERVERPROXY_HTTP2_MAX_CONCURRENT_STREAMS = PROXY_PREFIX + "server-http2-max-concurrent-streams";
+
+    /** Property name of the flag that makes the client proxy offer HTTP/2 when sending messages to other security servers */
+    private static final String CLIENTPROXY_HTTP2_ENABLED = PROXY_PREFIX + "client-http2-enabled";
+
+    /** Property name of the flag that enables load balancing between the security servers of a service provider */
+    private static final String CLIENTPROXY_PROVIDER_LOAD_BALANCING_ENABLED = PROXY_PREFIX + "client-provider-load-balancing-enabled";
+
+    /** Property name of the maximum number of concurrent HTTP/2 requests the client proxy sends to one peer */
+    private static final String CLIENTPROXY_HTTP2_MAX_STREAMS_PER_PEER = PROXY_PREFIX + "client-http2-max-streams-per-peer";
+
+    /** Property name of the time (ms) a request waits for one of the HTTP/2 requests in progress to the same peer to end */
+    private static final String CLIENTPROXY_HTTP2_STREAM_ACQUIRE_TIMEOUT = PROXY_PREFIX + "client-http2-stream-acquire-timeout";
+
     private static final String PROXY_MESSAGE_SIGN_DIGEST_NAME = PROXY_PREFIX + "message-sign-digest-name";
 
     private static final String FALSE = Boolean.FALSE.toString();
@@ -459,6 +498,15 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SIGNER_OCSP_RETRY_DELAY = "60";
 
+    public static final String SIGNER_OCSP_FETCH_PARALLELISM = SIGNER_PREFIX + "ocsp-fetch-parallelism";
+
+    private static final String DEFAULT_SIGNER_OCSP_FETCH_PARALLELISM = "8";
+
+    public static final String SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS =
+            SIGNER_PREFIX + "ocsp-responder-max-concurrent-requests";
+
+    private static final String DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS = "4";
+
     public static final String SIGNER_MODULE_MANAGER_UPDATE_INTERVAL = SIGNER_PREFIX + "module-manager-update-interval";
     public static final String SOFT_TOKEN_RSA_SIGN_MECHANISM = SIGNER_PREFIX + "soft-token-rsa-sign-mechanism";
     public static final String SOFT_TOKEN_EC_SIGN_MECHANISM = SIGNER_PREFIX + "soft-token-ec-sign-mechanism";
@@ -533,7 +581,7 @@ public final class SystemProperties {
 
     public static final String CENTER_EXTERNAL_DIRECTORY = CENTER_PREFIX + "external-directory";
 
-    private static final String CENTER_GENERATED_CONF_DIR = CENTER_PREFIX + "generated-conf-dir";
+    public static final String CENTER_GENERATED_CONF_DIR = CENTER_PREFIX + "generated-conf-dir";
 
     /** Property name of the path where conf backups are created. */
     public static final String CONF_BACKUP_PATH = CENTER_PREFIX + "conf-backup-path";
@@ -1153,6 +1201,23 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_OCSP_RETRY_DELAY));
     }
 
+    /**
+     * @return the number of certificates whose OCSP responses are fetched concurrently during an OCSP-response
+     * refresh, 8 by default
+     */
+    public static int getOcspFetchParallelism() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_FETCH_PARALLELISM,
+                DEFAULT_SIGNER_OCSP_FETCH_PARALLELISM));
+    }
+
+    /**
+     * @return the maximum number of concurrent requests sent to a single OCSP responder, 4 by default
+     */
+    public static int getOcspResponderMaxConcurrentRequests() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS,
+                DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS));
+    }
+
     /**
      * @return the module manager update interval in seconds that should be set for signer, 60 by default
      */
@@ -1646,6 +1711,15 @@ public final class SystemProperties {
         return Integer.parseInt(System.getProperty(SERVER_CONF_CACHE_PERIOD, "60"));
     }
 
+    /**
+     * @return the interval in seconds at which the proxy checks the server conf for changes and refreshes
+     * its caches in the background, also when they have not been refreshed for the cache period,
+     * '0' (disabled, cached entries expire after the cache period) by default
+     */
+    public static int getServerConfChangePollInterval() {
+        return Integer.parseInt(System.getProperty(SERVER_CONF_CHANGE_POLL_INTERVAL, "0"));
+    }
+
     /**
      * @return the interval in seconds at which verifier caches results.
      * Max value is 180 seconds and cannot be exceeded in configuration.
@@ -1916,6 +1990,95 @@ public final class SystemProperties {
         return Boolean.parseBoolean(System.getProperty(HSM_HEALTH_CHECK_ENABLED, DEFAULT_HSM_HEALTH_CHECK_ENABLED));
     }
 
+    /**
+     * @return the time in microseconds the batch signer waits for more signing requests
+     * to fill a batch, '0' (sign whatever is queued) by default
+     */
+    public static long getBatchSignerMaxWaitMicros() {
+        return Long.parseLong(System.getProperty(PROXY_BATCH_SIGNER_MAX_WAIT_MICROS, "0"));
+    }
+
+    /**
+     * @return the maximum number of signing requests in one batch signature, '1000' by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getBatchSignerMaxBatchSize() {
+        return Math.max(1, Integer.getInteger(PROXY_BATCH_SIGNER_MAX_BATCH_SIZE, 1000));
+    }
+
+    /**
+     * @return the number of batches that may be signed concurrently with the same key, '1' by default. Limited to
+     * the number of signatures the token of the key can create concurrently.
+     */
+    public static int getBatchSignerWorkersPerKey() {
+        return Math.max(1, Integer.getInteger(PROXY_BATCH_SIGNER_WORKERS_PER_KEY, 1));
+    }
+
+    /**
+     * @return the size in bytes up to which a cached message body or attachment is kept in memory before
+     * it is spilled to a temporary file, '65536' by default. 0 disables in-memory caching.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getAttachmentMemoryThreshold() {
+        return Math.max(0, Integer.getInteger(PROXY_ATTACHMENT_MEMORY_THRESHOLD, 64 * 1024));
+    }
+
+    /**
+     * @return the total size in bytes of the off-heap buffers shared by all cached message bodies and
+     * attachments, '67108864' by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static long getAttachmentBufferPoolSize() {
+        return Math.max(0, Long.getLong(PROXY_ATTACHMENT_BUFFER_POOL_SIZE, 64L * 1024 * 1024));
+    }
+
+    /**
+     * @return whether the server proxy accepts HTTP/2 connections from client proxies, 'false' by default
+     */
+    public static boolean isServerProxyHttp2Enabled() {
+        return Boolean.parseBoolean(System.getProperty(SERVERPROXY_HTTP2_ENABLED, FALSE));
+    }
+
+    /**
+     * @return the maximum number of concurrent HTTP/2 streams per client proxy connection, '128' by default
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServerProxyHttp2MaxConcurrentStreams() {
+        return Integer.getInteger(SERVERPROXY_HTTP2_MAX_CONCURRENT_STREAMS, 128);
+    }
+
+    /**
+     * @return whether the client proxy sends messages to other security servers over HTTP/2 when the
+     * other side supports it, 'false' by default
+     */
+    public static boolean isClientProxyHttp2Enabled() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_HTTP2_ENABLED, FALSE));
+    }
+
+    /**
+     * @return the maximum number of concurrent HTTP/2 requests from the client proxy to one group of
+     * security servers, '100' by default
+     */
+    public static int getClientProxyHttp2MaxStreamsPerPeer() {
+        return Integer.getInteger(CLIENTPROXY_HTTP2_MAX_STREAMS_PER_PEER, 100);
+    }
+
+    /**
+     * @return the time in milliseconds a request waits for a free HTTP/2 stream when the maximum number of
+     * concurrent requests to the peer is in progress, the client proxy connect timeout by default
+     */
+    public static int getClientProxyHttp2StreamAcquireTimeout() {
+        return Integer.getInteger(CLIENTPROXY_HTTP2_STREAM_ACQUIRE_TIMEOUT, getClientProxyTimeout());
+    }
+
+    /**
+     * @return whether the client proxy balances requests between the security servers of a service provider
+     * based on their latency, error rate and load instead of using the fastest connecting one, 'false' by default
+     */
+    public static boolean isClientProxyProviderLoadBalancingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_PROVIDER_LOAD_BALANCING_ENABLED, FALSE));
+    }
+
     /**
      * @return Digest name used for signing proxy messages
      * 'SHA-512' by default
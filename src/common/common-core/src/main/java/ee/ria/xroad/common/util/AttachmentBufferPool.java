@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of fixed size direct byte buffers used by {@link CachingStream} to keep small message
+ * bodies and attachments off-heap instead of in temporary files. Buffers are allocated lazily until the
+ * configured pool size is reached; after that only released buffers are handed out.
+ */
+final class AttachmentBufferPool {
+
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final AttachmentBufferPool INSTANCE =
+            new AttachmentBufferPool((int) Math.min(Integer.MAX_VALUE,
+                    SystemProperties.getAttachmentBufferPoolSize() / BUFFER_SIZE));
+
+    private final int maxBuffers;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    AttachmentBufferPool(int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+    }
+
+    static AttachmentBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return a cleared buffer or null if the pool is exhausted
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+
+        if (allocated.incrementAndGet() > maxBuffers) {
+            allocated.decrementAndGet();
+            return null;
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the buffer to the pool. The buffer must not be used by the caller afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer);
+    }
+
+    int getAllocatedCount() {
+        return allocated.get();
+    }
+
+    int getFreeCount() {
+        return free.size();
+    }
+}
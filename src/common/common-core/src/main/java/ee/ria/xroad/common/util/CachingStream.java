@@ -27,42 +27,73 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory or in a temporary file. Contents up to the memory threshold are kept in pooled
+ * off-heap buffers; larger contents (or contents that do not fit into the exhausted buffer pool) are
+ * spilled to a temporary file.
+ * <p>
+ * Reads from the buffers and returning them to the pool are mutually exclusive, so a reader never sees a
+ * buffer after it has been handed to another stream. Buffers of a stream that is never consumed are returned
+ * to the pool once the stream becomes unreachable.
  */
 @Slf4j
 public class CachingStream extends FilterOutputStream {
+    private static final int BYTE_MASK = 0xFF;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final AttachmentBufferPool bufferPool;
+    private final int memoryThreshold;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private long size;
+    private final ReadWriteLock releaseLock = new ReentrantReadWriteLock();
+    private boolean consumed; // guarded by releaseLock
+    private boolean buffersReleased; // guarded by releaseLock
+    private final Cleaner.Cleanable bufferRelease;
+
     private SeekableByteChannel channel;
     private Path tempFile;
 
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream that caches data in memory or in a temporary file.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
+        this(AttachmentBufferPool.getInstance(), SystemProperties.getAttachmentMemoryThreshold());
+    }
+
+    CachingStream(AttachmentBufferPool bufferPool, int memoryThreshold) throws IOException {
+        // Construct the parent class with null stream and set it when spilling to a file.
         super(null);
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        this.bufferPool = bufferPool;
+        this.memoryThreshold = memoryThreshold;
+        // must not capture this, otherwise the stream never becomes unreachable
+        this.bufferRelease = CLEANER.register(this, new BufferRelease(bufferPool, buffers));
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+        if (memoryThreshold <= 0) {
+            spill();
+        }
     }
 
     @Override
@@ -71,34 +102,232 @@ public class CachingStream extends FilterOutputStream {
         flush();
     }
 
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+        if (out == null && !writeToBuffers(b, off, len)) {
+            spill();
+        }
+        if (out != null) {
+            // prevent FilterOutputStream from writing inefficiently
+            out.write(b, off, len);
+        }
+        size += len;
+    }
+
+    /**
+     * @return true if the contents are cached in a temporary file
+     */
+    public boolean isSpilled() {
+        return channel != null;
     }
 
     /**
      * @return input stream that contains the encoded attachment contents.
      * The returned stream does not support mark, and closing the stream has no effect.
+     * @throws IllegalStateException if the cache has already been consumed
      * @see #consume() to free resources used by the cache.
      */
     public CacheInputStream getCachedContents() {
+        Lock lock = releaseLock.readLock();
+        lock.lock();
         try {
+            if (consumed) {
+                throw new IllegalStateException("Cached contents have already been consumed");
+            }
+            if (channel == null) {
+                return new CacheInputStream(new BuffersInputStream(), size);
+            }
+
             return new CacheInputStream(channel);
         } catch (IOException ex) { // the position shouldn't really throw
             throw ErrorCodes.translateException(ex);
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Finalize caching stream. Use to avoid file handle leaks.
+     * Finalize caching stream. Use to avoid file handle leaks and to return the buffers to the pool.
      */
     public void consume() {
+        releaseBuffers(true);
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            }
+        }
+    }
+
+    private boolean writeToBuffers(byte[] b, int off, int len) {
+        if (size + len > memoryThreshold) {
+            return false;
+        }
+
+        long capacity = (long) buffers.size() * AttachmentBufferPool.BUFFER_SIZE - size;
+        while (capacity < len) {
+            ByteBuffer buffer = bufferPool.acquire();
+            if (buffer == null) {
+                return false;
+            }
+            buffers.add(buffer);
+            capacity += buffer.capacity();
+        }
+
+        int index = (int) (size / AttachmentBufferPool.BUFFER_SIZE);
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            ByteBuffer buffer = buffers.get(index++);
+            int count = Math.min(remaining, buffer.remaining());
+            buffer.put(b, offset, count);
+            offset += count;
+            remaining -= count;
+        }
+        return true;
+    }
+
+    private void spill() throws IOException {
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+
+        for (ByteBuffer buffer : buffers) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        releaseBuffers(false);
+
+        // Now that we are set up, we can set the output stream in the parent class.
+        out = Channels.newOutputStream(channel);
+    }
+
+    private void releaseBuffers(boolean consume) {
+        // waits for reads in progress, later reads from the buffers fail
+        releaseLock.writeLock().lock();
         try {
-            channel.close();
-        } catch (IOException e) {
-            log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            consumed |= consume;
+            buffersReleased = true;
+            bufferRelease.clean();
+        } finally {
+            releaseLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the buffers to the pool, either when the stream is consumed or spilled, or when it has become
+     * unreachable without being consumed.
+     */
+    private static final class BufferRelease implements Runnable {
+        private final AttachmentBufferPool bufferPool;
+        private final List<ByteBuffer> buffers;
+
+        BufferRelease(AttachmentBufferPool bufferPool, List<ByteBuffer> buffers) {
+            this.bufferPool = bufferPool;
+            this.buffers = buffers;
+        }
+
+        @Override
+        public void run() {
+            buffers.forEach(bufferPool::release);
+            buffers.clear();
         }
     }
 
+    /**
+     * Reads the contents cached in memory. Each instance has its own read position.
+     */
+    private final class BuffersInputStream extends InputStream {
+        private final List<ByteBuffer> contents = new ArrayList<>(buffers.size());
+        private int index;
+
+        BuffersInputStream() {
+            for (ByteBuffer buffer : buffers) {
+                contents.add(buffer.duplicate().flip());
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            Lock lock = lockContents();
+            try {
+                ByteBuffer buffer = current();
+                return buffer == null ? -1 : buffer.get() & BYTE_MASK;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            Lock lock = lockContents();
+            try {
+                ByteBuffer buffer = current();
+                if (buffer == null) {
+                    return -1;
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            Lock lock = lockContents();
+            try {
+                ByteBuffer buffer = current();
+                return buffer == null ? 0 : buffer.remaining();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Keeps the buffers from being returned to the pool until the returned lock is released.
+         */
+        private Lock lockContents() throws IOException {
+            Lock lock = releaseLock.readLock();
+            lock.lock();
+            if (buffersReleased) {
+                lock.unlock();
+                throw new IOException(consumed ? "Cached contents have already been consumed"
+                        : "Cached contents have been moved to a temporary file");
+            }
+            return lock;
+        }
+
+        private ByteBuffer current() {
+            while (index < contents.size()) {
+                ByteBuffer buffer = contents.get(index);
+                if (buffer.hasRemaining()) {
+                    return buffer;
+                }
+                index++;
+            }
+            return null;
+        }
+    }
 }
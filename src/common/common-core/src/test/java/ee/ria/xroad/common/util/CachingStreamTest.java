@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingStreamTest {
+
+    private static final int THRESHOLD = 3 * AttachmentBufferPool.BUFFER_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private String originalTempFilesPath;
+
+    @BeforeEach
+    void setUp() {
+        originalTempFilesPath = System.setProperty(SystemProperties.TEMP_FILES_PATH, tempDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (originalTempFilesPath == null) {
+            System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+        } else {
+            System.setProperty(SystemProperties.TEMP_FILES_PATH, originalTempFilesPath);
+        }
+    }
+
+    @Test
+    void keepsSmallContentsInMemory() throws IOException {
+        AttachmentBufferPool pool = new AttachmentBufferPool(10);
+        byte[] data = randomBytes(AttachmentBufferPool.BUFFER_SIZE + 123);
+
+        CachingStream cache = new CachingStream(pool, THRESHOLD);
+        writeInChunks(cache, data);
+        cache.close();
+
+        assertThat(cache.isSpilled()).isFalse();
+        assertThat(cache.getCachedContents().size()).isEqualTo(data.length);
+        assertThat(IOUtils.toByteArray(cache.getCachedContents())).isEqualTo(data);
+        // every call starts reading from the beginning
+        assertThat(IOUtils.toByteArray(cache.getCachedContents())).isEqualTo(data);
+
+        cache.consume();
+        assertThat(pool.getFreeCount()).isEqualTo(pool.getAllocatedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void spillsContentsAboveThresholdToFile() throws IOException {
+        AttachmentBufferPool pool = new AttachmentBufferPool(10);
+        byte[] data = randomBytes(THRESHOLD + 1);
+
+        CachingStream cache = new CachingStream(pool, THRESHOLD);
+        writeInChunks(cache, data);
+        cache.close();
+
+        assertThat(cache.isSpilled()).isTrue();
+        assertThat(pool.getFreeCount()).isEqualTo(pool.getAllocatedCount());
+        assertThat(cache.getCachedContents().size()).isEqualTo(data.length);
+        assertThat(IOUtils.toByteArray(cache.getCachedContents())).isEqualTo(data);
+
+        cache.consume();
+    }
+
+    @Test
+    void spillsWhenPoolIsExhausted() throws IOException {
+        AttachmentBufferPool pool = new AttachmentBufferPool(1);
+        byte[] data = randomBytes(AttachmentBufferPool.BUFFER_SIZE + 1);
+
+        CachingStream cache = new CachingStream(pool, THRESHOLD);
+        writeInChunks(cache, data);
+
+        assertThat(cache.isSpilled()).isTrue();
+        assertThat(IOUtils.toByteArray(cache.getCachedContents())).isEqualTo(data);
+
+        cache.consume();
+    }
+
+    @Test
+    void failsToReadConsumedContents() throws IOException {
+        CachingStream cache = new CachingStream(new AttachmentBufferPool(1), THRESHOLD);
+        cache.write(1);
+        CacheInputStream contents = cache.getCachedContents();
+
+        cache.consume();
+
+        assertThatThrownBy(contents::read).isInstanceOf(IOException.class);
+        assertThatThrownBy(cache::getCachedContents).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void failsToReadBuffersReleasedBySpill() throws IOException {
+        AttachmentBufferPool pool = new AttachmentBufferPool(10);
+        CachingStream cache = new CachingStream(pool, THRESHOLD);
+        cache.write(1);
+        CacheInputStream contents = cache.getCachedContents();
+
+        writeInChunks(cache, randomBytes(THRESHOLD));
+
+        assertThat(cache.isSpilled()).isTrue();
+        assertThat(pool.getFreeCount()).isEqualTo(pool.getAllocatedCount());
+        assertThatThrownBy(contents::read).isInstanceOf(IOException.class);
+
+        cache.consume();
+    }
+
+    @Test
+    void returnsBuffersOfUnconsumedStreamToPool() throws Exception {
+        AttachmentBufferPool pool = new AttachmentBufferPool(10);
+        fillAndDrop(pool, AttachmentBufferPool.BUFFER_SIZE + 1);
+
+        assertThat(pool.getAllocatedCount()).isEqualTo(2);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (pool.getFreeCount() < pool.getAllocatedCount() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(pool.getFreeCount()).isEqualTo(pool.getAllocatedCount());
+    }
+
+    @Test
+    void readersNeverSeeBuffersReusedByAnotherStream() throws Exception {
+        AttachmentBufferPool pool = new AttachmentBufferPool(1);
+        byte[] original = new byte[AttachmentBufferPool.BUFFER_SIZE];
+        Arrays.fill(original, (byte) 'A');
+        byte[] other = new byte[AttachmentBufferPool.BUFFER_SIZE];
+        Arrays.fill(other, (byte) 'B');
+
+        CachingStream cache = new CachingStream(pool, THRESHOLD);
+        cache.write(original, 0, original.length);
+
+        int readers = 4;
+        List<CacheInputStream> contents = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            contents.add(cache.getCachedContents());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (CacheInputStream in : contents) {
+                futures.add(executor.submit(() -> readOnly(in, (byte) 'A')));
+            }
+
+            cache.consume();
+            // takes the only buffer of the pool
+            CachingStream next = new CachingStream(pool, THRESHOLD);
+            next.write(other, 0, other.length);
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            next.consume();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Void readOnly(CacheInputStream in, byte expected) {
+        try {
+            int b;
+            while ((b = in.read()) != -1) {
+                assertThat((byte) b).isEqualTo(expected);
+            }
+        } catch (IOException e) {
+            // consumed while reading
+        }
+        return null;
+    }
+
+    private static void fillAndDrop(AttachmentBufferPool pool, int size) throws IOException {
+        CachingStream cache = new CachingStream(pool, THRESHOLD);
+        writeInChunks(cache, randomBytes(size));
+        cache.close();
+    }
+
+    private static void writeInChunks(CachingStream cache, byte[] data) throws IOException {
+        int chunk = 1000;
+        for (int off = 0; off < data.length; off += chunk) {
+            cache.write(data, off, Math.min(chunk, data.length - off));
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
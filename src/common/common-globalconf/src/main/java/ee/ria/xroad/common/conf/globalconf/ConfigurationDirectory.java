@@ -49,6 +49,12 @@ public interface ConfigurationDirectory {
     String FILES = "files";
     String METADATA_SUFFIX = ".metadata";
     String INSTANCE_IDENTIFIER_FILE = "instance-identifier";
+    String DIGEST_INDEX_FILE = "file-digests";
+    /**
+     * Suffix of the temporary files that are written next to the configuration files while they are being
+     * downloaded or saved. These files are not part of the configuration.
+     */
+    String TEMP_FILE_SUFFIX = ".tmp";
 
     // Logger specified here because annotation does not work in interface.
     Logger LOG = LoggerFactory.getLogger(ConfigurationDirectory.class);
@@ -81,6 +87,23 @@ public interface ConfigurationDirectory {
         saveMetadata(fileName, expirationDate);
     }
 
+    /**
+     * Moves the downloaded content file in place and saves the corresponding expiration date file.
+     * The content file must be in the same directory as the destination file.
+     *
+     * @param fileName the name of the file to save
+     * @param contentFile the file containing the content
+     * @param metadata the file metadata
+     * @throws Exception if an error occurs
+     */
+    static void save(Path fileName, Path contentFile, ConfigurationPartMetadata metadata) throws Exception {
+        LOG.info("Saving content to file {}", fileName);
+
+        Files.move(contentFile, fileName, StandardCopyOption.ATOMIC_MOVE);
+
+        saveMetadata(fileName, metadata);
+    }
+
     /**
      * Saves the expiration date for the given file.
      *
@@ -47,7 +47,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 @Getter
@@ -61,11 +60,12 @@ public class SharedParametersCache {
     private final Map<X509Certificate, List<SharedParameters.OcspInfo>> caCertsAndOcspData = new HashMap<>();
     private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
     private final Map<ClientId, Set<String>> memberAddresses = new HashMap<>();
-    private final Map<ClientId, Set<byte[]>> memberAuthCerts = new HashMap<>();
-    private final Map<String, SharedParameters.SecurityServer> serverByAuthCert = new HashMap<>();
+    private final Map<ClientId, Set<CertDigest>> memberAuthCerts = new HashMap<>();
+    private final Map<CertDigest, SharedParameters.SecurityServer> serverByAuthCert = new HashMap<>();
     private final Map<SecurityServerId, Set<ClientId>> securityServerClients = new HashMap<>();
     private final Set<String> knownAddresses = new HashSet<>();
     private final Map<SecurityServerId, SharedParameters.SecurityServer> securityServersById = new HashMap<>();
+    private final Map<String, Set<ClientId>> globalGroupMembers = new HashMap<>();
 
     public String getInstanceIdentifier() {
         return sharedParameters.getInstanceIdentifier();
@@ -78,6 +78,17 @@ public class SharedParametersCache {
         cacheCaCerts();
         cacheKnownAddresses();
         cacheSecurityServers();
+        cacheGlobalGroups();
+    }
+
+    /**
+     * @param groupCode code of a global group of this instance
+     * @param subject the client
+     * @return true if the client is a member of the global group
+     */
+    public boolean isGlobalGroupMember(String groupCode, ClientId subject) {
+        Set<ClientId> members = globalGroupMembers.get(groupCode);
+        return members != null && members.contains(subject);
     }
 
 
@@ -138,7 +149,7 @@ public class SharedParametersCache {
     private void cacheSecurityServers() {
         for (SharedParameters.SecurityServer securityServer : sharedParameters.getSecurityServers()) {
             for (CertHash certHash : securityServer.getAuthCertHashes()) {
-                serverByAuthCert.put(encodeBase64(certHash.getHash()), securityServer);
+                serverByAuthCert.put(CertDigest.of(certHash.getHash()), securityServer);
             }
 
             // Add owner of the security server
@@ -155,6 +166,19 @@ public class SharedParametersCache {
         }
     }
 
+    private void cacheGlobalGroups() {
+        if (sharedParameters.getGlobalGroups() == null) {
+            return;
+        }
+
+        for (SharedParameters.GlobalGroup globalGroup : sharedParameters.getGlobalGroups()) {
+            Set<ClientId> members = globalGroupMembers.computeIfAbsent(globalGroup.getGroupCode(), k -> new HashSet<>());
+            if (globalGroup.getGroupMembers() != null) {
+                members.addAll(globalGroup.getGroupMembers());
+            }
+        }
+    }
+
     private void addServerClient(ClientId client, SharedParameters.SecurityServer server) {
         // Add the mapping from client to security server address.
         if (isNotBlank(server.getAddress())) {
@@ -163,7 +187,7 @@ public class SharedParametersCache {
 
         // Add the mapping from client to authentication certificate.
         for (CertHash authCert : server.getAuthCertHashes()) {
-            addToMap(memberAuthCerts, client, authCert.getHash());
+            addToMap(memberAuthCerts, client, CertDigest.of(authCert.getHash()));
         }
 
         SecurityServerId securityServerId = SecurityServerId.Conf.create(
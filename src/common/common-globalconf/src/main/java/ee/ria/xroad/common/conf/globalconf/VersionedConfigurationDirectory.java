@@ -299,7 +299,9 @@ public class VersionedConfigurationDirectory implements ConfigurationDirectory {
         return stream.filter(Files::isRegularFile)
                 .filter(p -> !p.toString().endsWith(ConfigurationDirectory.FILES))
                 .filter(p -> !p.toString().endsWith(ConfigurationDirectory.INSTANCE_IDENTIFIER_FILE))
+                .filter(p -> !p.toString().endsWith(ConfigurationDirectory.DIGEST_INDEX_FILE))
                 .filter(p -> !p.toString().endsWith(ConfigurationDirectory.METADATA_SUFFIX))
+                .filter(p -> !p.toString().endsWith(ConfigurationDirectory.TEMP_FILE_SUFFIX))
                 .toList();
     }
 
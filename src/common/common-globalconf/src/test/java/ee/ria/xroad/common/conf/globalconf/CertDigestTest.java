@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CertDigestTest {
+
+    @Test
+    void equalDigestsAreEqualKeys() {
+        byte[] digest = {1, 2, 3};
+        CertDigest key = CertDigest.of(digest);
+
+        assertThat(key).isEqualTo(CertDigest.of(new byte[] {1, 2, 3}));
+        assertThat(key).hasSameHashCodeAs(CertDigest.of(new byte[] {1, 2, 3}));
+        assertThat(key).isNotEqualTo(CertDigest.of(new byte[] {1, 2, 4}));
+        assertThat(Set.of(key)).contains(CertDigest.of(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    void digestIsCopied() {
+        byte[] digest = {1, 2, 3};
+        CertDigest key = CertDigest.of(digest);
+
+        digest[0] = 0;
+        key.getBytes()[1] = 0;
+
+        assertThat(key.getBytes()).containsExactly(1, 2, 3);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global group membership lookup performance test program. Compares the linear scan over the members of
+ * a global group with the membership index built by {@link SharedParametersCache}.
+ */
+@Slf4j
+public final class GlobalGroupMembershipPerformanceTest {
+
+    // number of global groups
+    private static final int NUM_GROUPS = 20;
+
+    // number of members per global group
+    private static final int NUM_MEMBERS = 50_000;
+
+    // number of lookups per measurement
+    private static final int NUM_LOOKUPS = 100_000;
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private GlobalGroupMembershipPerformanceTest() {
+    }
+
+    /**
+     * Main program access point.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(String[] args) {
+        List<SharedParameters.GlobalGroup> groups = new ArrayList<>();
+        for (int g = 0; g < NUM_GROUPS; g++) {
+            List<ClientId> members = new ArrayList<>(NUM_MEMBERS);
+            for (int m = 0; m < NUM_MEMBERS; m++) {
+                members.add(ClientId.Conf.create("EE", "GOV", "member" + m, "subsystem" + g));
+            }
+            groups.add(new SharedParameters.GlobalGroup("group" + g, "Group " + g, members));
+        }
+
+        long start = System.nanoTime();
+        SharedParametersCache cache = new SharedParametersCache(
+                SharedParametersCacheTest.sharedParameters(groups.toArray(SharedParameters.GlobalGroup[]::new)));
+        log.info("Built membership index for {} groups with {} members each in {} ms", NUM_GROUPS, NUM_MEMBERS,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        // half of the subjects are members of the group they are looked up from
+        ClientId[] subjects = new ClientId[NUM_LOOKUPS];
+        String[] groupCodes = new String[NUM_LOOKUPS];
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            int group = i % NUM_GROUPS;
+            subjects[i] = ClientId.Conf.create("EE", "GOV", "member" + (i * 31 % NUM_MEMBERS),
+                    "subsystem" + (i % 2 == 0 ? group : group + 1));
+            groupCodes[i] = "group" + group;
+        }
+
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long linearNanos = measure(() -> linearLookups(groups, groupCodes, subjects));
+            long indexedNanos = measure(() -> indexedLookups(cache, groupCodes, subjects));
+
+            if (round == WARMUP_ROUNDS) {
+                log.info("Linear scan: {} ns/lookup, membership index: {} ns/lookup",
+                        linearNanos / NUM_LOOKUPS, indexedNanos / NUM_LOOKUPS);
+            }
+        }
+    }
+
+    private static long measure(Runnable lookups) {
+        long start = System.nanoTime();
+        lookups.run();
+        return System.nanoTime() - start;
+    }
+
+    private static void linearLookups(List<SharedParameters.GlobalGroup> groups, String[] groupCodes,
+                                      ClientId[] subjects) {
+        int found = 0;
+        for (int i = 0; i < subjects.length; i++) {
+            String groupCode = groupCodes[i];
+            ClientId subject = subjects[i];
+            if (groups.stream()
+                    .filter(g -> g.getGroupCode().equals(groupCode))
+                    .findFirst()
+                    .filter(g -> g.getGroupMembers().stream().anyMatch(m -> m.equals(subject)))
+                    .isPresent()) {
+                found++;
+            }
+        }
+        log.debug("Linear scan found {} members", found);
+    }
+
+    private static void indexedLookups(SharedParametersCache cache, String[] groupCodes, ClientId[] subjects) {
+        int found = 0;
+        for (int i = 0; i < subjects.length; i++) {
+            if (cache.isGlobalGroupMember(groupCodes[i], subjects[i])) {
+                found++;
+            }
+        }
+        log.debug("Membership index found {} members", found);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.identifier.ClientId;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedParametersCacheTest {
+    private static final String INSTANCE = "EE";
+
+    @Test
+    void isGlobalGroupMember() {
+        ClientId member = ClientId.Conf.create(INSTANCE, "GOV", "1234");
+        ClientId subsystem = ClientId.Conf.create(INSTANCE, "GOV", "1234", "SUB");
+        SharedParametersCache cache = new SharedParametersCache(sharedParameters(
+                new SharedParameters.GlobalGroup("group1", "Group 1", List.of(member, subsystem)),
+                new SharedParameters.GlobalGroup("group2", "Group 2", List.of())));
+
+        assertThat(cache.isGlobalGroupMember("group1", member)).isTrue();
+        assertThat(cache.isGlobalGroupMember("group1", ClientId.Conf.create(INSTANCE, "GOV", "1234", "SUB"))).isTrue();
+        assertThat(cache.isGlobalGroupMember("group1", ClientId.Conf.create(INSTANCE, "GOV", "4321"))).isFalse();
+        assertThat(cache.isGlobalGroupMember("group2", member)).isFalse();
+        assertThat(cache.isGlobalGroupMember("unknown", member)).isFalse();
+    }
+
+    static SharedParameters sharedParameters(SharedParameters.GlobalGroup... globalGroups) {
+        return SharedParameters.builder()
+                .instanceIdentifier(INSTANCE)
+                .approvedCAs(List.of())
+                .securityServers(List.of())
+                .globalGroups(List.of(globalGroups))
+                .build();
+    }
+}
@@ -27,18 +27,16 @@ package ee.ria.xroad.common.hashchain;
 
 import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
 
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.JAXBElement;
-import jakarta.xml.bind.Marshaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
+import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.hashchain.DigestList.digestHashStep;
 import static ee.ria.xroad.common.util.MessageFileNames.attachment;
 import static java.lang.Integer.numberOfLeadingZeros;
@@ -66,6 +64,10 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * treated as a single array consisting of nodes+inputs.
  *
  * For incomplete binary trees, some inputs and nodes can be null.
+ *
+ * The nodes of one tree level do not depend on each other, so for large
+ * trees the levels are hashed in parallel. Likewise, the hash chains are
+ * written in parallel. The XML is written directly by HashChainXmlWriter.
  */
 public final class HashChainBuilder {
 
@@ -74,8 +76,11 @@ public final class HashChainBuilder {
     private static final Logger LOG =
             LoggerFactory.getLogger(HashChainBuilder.class);
 
-    /** For accessing JAXB functionality. Shared between all the builders. */
-    private static JAXBContext jaxbCtx;
+    /**
+     * Number of independent hash operations (node pairs in a tree level or
+     * hash chains) from which on the work is done in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 512;
 
     /**
      * Index of the root of the tree.
@@ -105,12 +110,6 @@ public final class HashChainBuilder {
     /** Maximum index a tree node can have. */
     private int maxIndex;
 
-    /** Used for serializing XML objects. */
-    private Marshaller marshaller;
-
-    /** Factory for creating XML objects. */
-    private ObjectFactory objectFactory = new ObjectFactory();
-
     /**
      * Constructs a hash chain builder.
      * @param hashAlgorithm Identifier (not URL) of the hash algorithm
@@ -121,10 +120,6 @@ public final class HashChainBuilder {
      */
     public HashChainBuilder(DigestAlgorithm hashAlgorithm) throws Exception {
         this.hashAlgorithm = hashAlgorithm;
-
-        marshaller = jaxbCtx.createMarshaller();
-        // Format the XML, good for debugging.
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
     }
 
     /**
@@ -213,13 +208,9 @@ public final class HashChainBuilder {
                             + "without attachments.");
         }
 
-        HashChainResultType result = new HashChainResultType();
-
-        result.setDigestValue(getTreeTop());
-        result.setDigestMethod(digestMethod());
-        result.setURI(hashChainFileName + "#" + STEP + "0");
-
-        return elementToString(objectFactory.createHashChainResult(result));
+        return HashChainXmlWriter.hashChainResult(
+                hashChainFileName + "#" + STEP + "0", hashAlgorithm.uri(),
+                getTreeTop());
     }
 
     /**
@@ -251,7 +242,9 @@ public final class HashChainBuilder {
 
         String[] ret = new String[inputs.size()];
 
-        if (inputs.size() > 1) {
+        if (inputs.size() >= PARALLEL_THRESHOLD) {
+            forEachIndex(inputs.size(), i -> ret[i] = makeHashChain(i));
+        } else if (inputs.size() > 1) {
             for (int i = 0; i < inputs.size(); ++i) {
                 ret[i] = makeHashChain(i);
             }
@@ -273,20 +266,23 @@ public final class HashChainBuilder {
             // End of nodes for this level.
             int levelEnd = levelStart * 2;
 
-            LOG.trace("Combining: {}-{}", levelStart, levelEnd);
-            // Walk through the pairs in this level.
-            for (int i = levelStart;
-                    i < levelEnd && nodes[i] != null && nodes[i + 1] != null;
-                    i += 2) {
+            // Find the pairs in this level that have both nodes present.
+            // The missing nodes are only at the end of the level.
+            int pairsEnd = levelStart;
+            while (pairsEnd < levelEnd && nodes[pairsEnd] != null
+                    && nodes[pairsEnd + 1] != null) {
+                pairsEnd += 2;
+            }
+
+            LOG.trace("Combining: {}-{}", levelStart, pairsEnd);
+            int first = levelStart;
+            forEachPair((pairsEnd - levelStart) / 2, pair -> {
                 // Combine nodes[i] and nodes[i + 1]
-                LOG.trace("Nodes: Combining {} and {}", i, i + 1);
-                byte[] stepDigest = digestHashStep(hashAlgorithm,
+                int i = first + 2 * pair;
+                // Store the digest as parent of two nodes.
+                nodes[parentIdx(i)] = digestHashStep(hashAlgorithm,
                         nodes[i], nodes[i + 1]);
-
-                // Store the digest as parent of two inputs.
-                LOG.trace("Storing at {}", parentIdx(i));
-                nodes[parentIdx(i)] = stepDigest;
-            }
+            });
         }
     }
 
@@ -295,21 +291,44 @@ public final class HashChainBuilder {
      * level of non-leaf nodes.
      */
     private void hashInputs() throws Exception {
-        for (int i = 0; i < inputs.size() - 1; i += 2) {
-            // Compute the index for nodes.
-            int itemIdx = nodes.length + i;
-
+        LOG.trace("Combining {} inputs", inputs.size());
+        forEachPair(inputs.size() / 2, pair -> {
             // Combine inputs[i] and inputs[i + 1]
-            LOG.trace("Inputs: Combining {} and {}", i, i + 1);
-            byte[] stepDigest = digestHashStep(hashAlgorithm,
+            int i = 2 * pair;
+            // Store the digest as parent of two inputs.
+            nodes[parentIdx(nodes.length + i)] = digestHashStep(hashAlgorithm,
                     inputs.get(i), inputs.get(i + 1));
+        });
+    }
 
-            // Store the digest as parent of two inputs.
-            LOG.trace("Storing at {}", parentIdx(itemIdx));
-            nodes[parentIdx(itemIdx)] = stepDigest;
+    /**
+     * Hashes the given number of node pairs, in parallel if there
+     * are many of them.
+     */
+    private static void forEachPair(int pairCount, IndexTask task)
+            throws Exception {
+        if (pairCount >= PARALLEL_THRESHOLD) {
+            forEachIndex(pairCount, task);
+        } else {
+            for (int pair = 0; pair < pairCount; ++pair) {
+                task.run(pair);
+            }
         }
     }
 
+    /**
+     * Runs the task in parallel for indexes 0..count-1.
+     */
+    private static void forEachIndex(int count, IndexTask task) {
+        IntStream.range(0, count).parallel().forEach(i -> {
+            try {
+                task.run(i);
+            } catch (Exception e) {
+                throw translateException(e);
+            }
+        });
+    }
+
     /**
      * Returns the topmost hash of the Merkle tree.
      */
@@ -405,19 +424,20 @@ public final class HashChainBuilder {
     /**
      * Returns XML-encoded hash chain for a n-th input data item.
      */
-    private String makeHashChain(int itemIndex) throws Exception {
+    private String makeHashChain(int itemIndex) {
         LOG.trace("makeHashChain({})", itemIndex);
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        // current level will be height of non-leaf part of the tree.
+        int currentLevel = ceilingLog2(inputs.size()) - 1;
+
+        HashChainXmlWriter hashChain = HashChainXmlWriter.hashChain(
+                hashAlgorithm.uri(), currentLevel + 2);
 
         // Hash step count is used to generate references.
         int stepCount = 0;
 
         // Start with root node
         int currentNodeIdx = ROOT_IDX;
-        // current level will be height of non-leaf part of the tree.
-        int currentLevel = ceilingLog2(inputs.size()) - 1;
 
         // Walk the tree downwards from the root node.
         while (currentNodeIdx < nodes.length) {
@@ -438,35 +458,18 @@ public final class HashChainBuilder {
                 --currentLevel;
             }
 
-            // For the other node, we always use hash value.
-            AbstractValueType otherData = hashValue(getDeep(otherChildIdx));
-            AbstractValueType myData;
-
-            // If the child is leaf node and there are no attachments,
-            // use the data ref. Otherwise use the StepRef.
-            if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
-                // Plain data ref.
-                myData = dataRef(get(myChildIdx));
+            // Construct the hash step, the data items are in the
+            // order of the child nodes.
+            hashChain.startHashStep(STEP + stepCount);
+            if (myDirection == 0) {
+                myData(hashChain, itemIndex, myChildIdx, stepCount);
+                // For the other node, we always use hash value.
+                hashChain.hashValue(getDeep(otherChildIdx));
             } else {
-                // Non-leaf nodes refer to other hash steps.
-                myData = stepRef(stepCount + 1);
+                hashChain.hashValue(getDeep(otherChildIdx));
+                myData(hashChain, itemIndex, myChildIdx, stepCount);
             }
-
-            // Construct the hash step.
-            HashStepType hashStep = new HashStepType();
-            hashStep.setId(STEP + stepCount);
-            // Create two elements.
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-
-            // Set the data items.
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    myDirection, myData);
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    1 - myDirection, otherData);
-
-            // Add to chain
-            hashChain.getHashStep().add(hashStep);
+            hashChain.endHashStep();
 
             // Update state variables.
             ++stepCount;
@@ -478,99 +481,59 @@ public final class HashChainBuilder {
         // step that references all the individual parts.
         if (multiparts.containsKey(itemIndex)) {
             LOG.trace("Adding attachments");
-            hashChain.getHashStep().add(
-                    multipartStep(multiparts.get(itemIndex), stepCount));
+            multipartStep(hashChain, multiparts.get(itemIndex), stepCount);
         }
 
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    /**
-     * Creates reference to input data.
-     */
-    private DataRefType dataRef(byte[] digest) {
-        return dataRef(dataRefFileName, digest);
-    }
-
-    /**
-     * Creates reference to input data with given file name.
-     */
-    private static DataRefType dataRef(String fileName, byte[] digest) {
-        DataRefType dataRef = new DataRefType();
-        dataRef.setURI(fileName);
-        dataRef.setDigestValue(digest);
-        return dataRef;
-    }
-
-    /**
-     * Creates reference to another hash step.
-     */
-    private static StepRefType stepRef(int stepCount) {
-        StepRefType stepRef = new StepRefType();
-        stepRef.setURI("#" + STEP + stepCount);
-        return stepRef;
+        return hashChain.endHashChain();
     }
 
     /**
-     * Creates a concrete hash value.
+     * Writes the data item referring to the input data or the next step.
      */
-    private static HashValueType hashValue(byte[] data) {
-        HashValueType hashValue = new HashValueType();
-        hashValue.setDigestValue(data);
-        return hashValue;
+    private void myData(HashChainXmlWriter hashChain, int itemIndex,
+            int myChildIdx, int stepCount) {
+        // If the child is leaf node and there are no attachments,
+        // use the data ref. Otherwise use the StepRef.
+        if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
+            // Plain data ref.
+            hashChain.dataRef(dataRefFileName, get(myChildIdx));
+        } else {
+            // Non-leaf nodes refer to other hash steps.
+            hashChain.stepRef("#" + STEP + (stepCount + 1));
+        }
     }
 
     /**
      * Makes hash chain for special case of inputs.size() == 1.
      */
-    private String makeSingleInputHashChain() throws Exception {
+    private String makeSingleInputHashChain() {
         LOG.trace("makeSingleInputHashChain()");
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        HashChainXmlWriter hashChain = HashChainXmlWriter.hashChain(
+                hashAlgorithm.uri(), 1);
 
         // This is a multipart input. Add single step for all
         // the input parts
-        hashChain.getHashStep().add(multipartStep(multiparts.get(0), 0));
+        multipartStep(hashChain, multiparts.get(0), 0);
 
-        return elementToString(objectFactory.createHashChain(hashChain));
+        return hashChain.endHashChain();
     }
 
-    private HashStepType multipartStep(byte[][] inputSet, int stepCount) {
-        HashStepType ret = new HashStepType();
-        ret.setId(STEP + stepCount);
+    private void multipartStep(HashChainXmlWriter hashChain,
+            byte[][] inputSet, int stepCount) {
+        hashChain.startHashStep(STEP + stepCount);
 
         for (int i = 0; i < inputSet.length; ++i) {
             if (i == 0) {
                 // The first input is message
-                ret.getHashValueOrStepRefOrDataRef().add(dataRef(inputSet[i]));
+                hashChain.dataRef(dataRefFileName, inputSet[i]);
             } else {
                 // All the other inputs are attachments, starting from 1.
-                ret.getHashValueOrStepRefOrDataRef().add(
-                        dataRef(attachment(i), inputSet[i]));
+                hashChain.dataRef(attachment(i), inputSet[i]);
             }
         }
 
-        return ret;
-    }
-
-    /**
-     * Creates a DigestMethod element, based on the current hash algorithm.
-     */
-    private DigestMethodType digestMethod() {
-        DigestMethodType digestMethod = new DigestMethodType();
-        digestMethod.setAlgorithm(hashAlgorithm.uri());
-        return digestMethod;
-    }
-
-    /**
-     * Serializes the given XML element to a string.
-     */
-    private <T> String elementToString(JAXBElement<T> element)
-            throws Exception {
-        StringWriter writer = new StringWriter();
-        marshaller.marshal(element, writer);
-        return writer.toString();
+        hashChain.endHashStep();
     }
 
     /**
@@ -624,11 +587,8 @@ public final class HashChainBuilder {
         return 1 << n;
     }
 
-    static {
-        try {
-            jaxbCtx = JAXBContext.newInstance(ObjectFactory.class);
-        } catch (Exception ex) {
-            LOG.error("Failed to initialize JAXB context", ex);
-        }
+    @FunctionalInterface
+    private interface IndexTask {
+        void run(int index) throws Exception;
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
+
+/**
+ * Writes hash chain and hash chain result XML documents directly, without going through JAXB.
+ * The output is identical to what the JAXB marshaller produces for the hash chain schema with
+ * formatted output turned on: hash chain elements in the ns2 prefix, XML signature elements in
+ * the default namespace, four space indentation and a line break at the end of the document.
+ */
+final class HashChainXmlWriter {
+
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final String NAMESPACES =
+            " xmlns:ns2=\"http://cyber.ee/hashchain\" xmlns=\"http://www.w3.org/2000/09/xmldsig#\"";
+
+    private static final String INDENT = "    ";
+
+    // Rough size of a single hash step, used for sizing the buffer.
+    private static final int STEP_SIZE_ESTIMATE = 256;
+
+    private final StringBuilder xml;
+
+    private HashChainXmlWriter(int steps) {
+        xml = new StringBuilder(XML_DECLARATION.length() + STEP_SIZE_ESTIMATE * (steps + 1));
+        xml.append(XML_DECLARATION);
+    }
+
+    /**
+     * Returns the HashChainResult document referring to the given hash step.
+     */
+    static String hashChainResult(String uri, String digestMethodUri, byte[] digest) {
+        HashChainXmlWriter writer = new HashChainXmlWriter(0);
+        writer.xml.append("<ns2:HashChainResult URI=\"");
+        writer.escapeAttribute(uri);
+        writer.xml.append('"').append(NAMESPACES).append(">\n");
+        writer.digestMethod("DigestMethod", digestMethodUri, 1);
+        writer.digestValue(digest, 1);
+        writer.xml.append("</ns2:HashChainResult>\n");
+        return writer.toString();
+    }
+
+    /**
+     * Starts a HashChain document with the given default digest method.
+     */
+    static HashChainXmlWriter hashChain(String defaultDigestMethodUri, int steps) {
+        HashChainXmlWriter writer = new HashChainXmlWriter(steps);
+        writer.xml.append("<ns2:HashChain").append(NAMESPACES).append(">\n");
+        writer.digestMethod("ns2:DefaultDigestMethod", defaultDigestMethodUri, 1);
+        return writer;
+    }
+
+    HashChainXmlWriter startHashStep(String id) {
+        indent(1);
+        xml.append("<ns2:HashStep id=\"");
+        escapeAttribute(id);
+        xml.append("\">\n");
+        return this;
+    }
+
+    HashChainXmlWriter endHashStep() {
+        indent(1);
+        xml.append("</ns2:HashStep>\n");
+        return this;
+    }
+
+    HashChainXmlWriter hashValue(byte[] digest) {
+        indent(2);
+        xml.append("<ns2:HashValue>\n");
+        digestValue(digest, 3);
+        indent(2);
+        xml.append("</ns2:HashValue>\n");
+        return this;
+    }
+
+    HashChainXmlWriter stepRef(String uri) {
+        indent(2);
+        xml.append("<ns2:StepRef URI=\"");
+        escapeAttribute(uri);
+        xml.append("\"/>\n");
+        return this;
+    }
+
+    HashChainXmlWriter dataRef(String uri, byte[] digest) {
+        indent(2);
+        xml.append("<ns2:DataRef URI=\"");
+        escapeAttribute(uri);
+        xml.append("\">\n");
+        digestValue(digest, 3);
+        indent(2);
+        xml.append("</ns2:DataRef>\n");
+        return this;
+    }
+
+    /**
+     * Closes the HashChain document and returns it.
+     */
+    String endHashChain() {
+        xml.append("</ns2:HashChain>\n");
+        return toString();
+    }
+
+    @Override
+    public String toString() {
+        return xml.toString();
+    }
+
+    private void digestMethod(String element, String algorithmUri, int depth) {
+        indent(depth);
+        xml.append('<').append(element).append(" Algorithm=\"");
+        escapeAttribute(algorithmUri);
+        xml.append("\"/>\n");
+    }
+
+    private void digestValue(byte[] digest, int depth) {
+        indent(depth);
+        xml.append("<DigestValue>").append(encodeBase64(digest)).append("</DigestValue>\n");
+    }
+
+    private void indent(int depth) {
+        for (int i = 0; i < depth; i++) {
+            xml.append(INDENT);
+        }
+    }
+
+    /**
+     * Escapes an attribute value the same way the JAXB marshaller does by default.
+     */
+    private void escapeAttribute(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> xml.append("&amp;");
+                case '<' -> xml.append("&lt;");
+                case '>' -> xml.append("&gt;");
+                case '"' -> xml.append("&quot;");
+                default -> xml.append(c);
+            }
+        }
+    }
+}
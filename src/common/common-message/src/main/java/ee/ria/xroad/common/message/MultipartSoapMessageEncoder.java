@@ -28,6 +28,7 @@ package ee.ria.xroad.common.message;
 import ee.ria.xroad.common.util.MimeTypes;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -102,6 +103,27 @@ public class MultipartSoapMessageEncoder implements SoapMessageEncoder {
         IOUtils.copy(content, multipart);
     }
 
+    /**
+     * Starts a new attachment part and returns a stream for writing its content.
+     * Use this instead of {@link #attachment(String, InputStream, Map)} when the
+     * attachment content is produced while it is being written. Closing the returned
+     * stream does not close the underlying multipart stream.
+     * @param contentType content type of the attachment
+     * @param additionalHeaders additional headers of the attachment part
+     * @return output stream for writing the attachment content
+     * @throws IOException if writing the part headers failed
+     */
+    public OutputStream startAttachment(String contentType,
+                                        Map<String, String> additionalHeaders) throws IOException {
+        String[] headers = {};
+        if (additionalHeaders != null && !additionalHeaders.isEmpty()) {
+            headers = convertHeaders(additionalHeaders);
+        }
+
+        multipart.startPart(contentType, headers);
+        return CloseShieldOutputStream.wrap(multipart);
+    }
+
     private static String[] convertHeaders(Map<String, String> headers) {
         return headers.entrySet().stream()
                 .map(e -> e.getKey() + ": " + e.getValue())
@@ -43,6 +43,8 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.NullWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.xml.sax.Attributes;
@@ -56,9 +58,9 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Arrays;
@@ -67,6 +69,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.function.Consumer;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DUPLICATE_HEADER_FIELD;
@@ -171,6 +175,12 @@ public class SaxSoapParserImpl implements SoapParser {
 
     private static final SAXParserFactory PARSER_FACTORY = createSaxParserFactory();
 
+    // SAX parsers are not thread safe, but can be reused after reset. Messages are parsed on short-lived
+    // virtual threads, so the parsers are pooled rather than kept per thread. Parsing is CPU bound, so
+    // parsers needed beyond the number of processors are created for a single message only.
+    private static final BlockingQueue<SAXParser> PARSERS =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
     @Override
     @WithSpan
     public Soap parse(String contentType, InputStream is) {
@@ -195,28 +205,32 @@ public class SaxSoapParserImpl implements SoapParser {
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        // Only the processed XML is written if it is required. The raw XML
+        // is then kept only until it is known that the message is not a fault.
+        RawXmlCapture rawXml = new RawXmlCapture();
+        ByteArrayOutputStream processedXml = isProcessedXmlRequired() ? new ByteArrayOutputStream() : null;
 
         InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+        Writer outputWriter = processedXml != null
+                ? new OutputStreamWriter(processedXml, charset) : NullWriter.INSTANCE;
+        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream, rawXml);
 
         CodedException fault = handler.getFault();
         if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
+            return createSoapFault(charset, rawXml.isDiscarded() ? processedXml.toByteArray() : rawXml.toByteArray(),
+                    fault);
         }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+        byte[] xmlBytes = processedXml != null ? processedXml.toByteArray() : rawXml.toByteArray();
 
         return createSoapMessage(contentType, charset, handler, xmlBytes);
     }
 
-    private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
+    private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream, RawXmlCapture rawXml)
             throws Exception {
+        SAXParser saxParser = acquireParser();
         try (BufferedWriter out = new BufferedWriter(writer)) {
-            XRoadSoapHandler handler = new XRoadSoapHandler(out);
-            SAXParser saxParser = PARSER_FACTORY.newSAXParser();
+            XRoadSoapHandler handler = new XRoadSoapHandler(out, rawXml);
             XMLReader xmlReader = saxParser.getXMLReader();
             xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
             // ensure both builtin entities and character entities are reported to the parser
@@ -227,9 +241,32 @@ public class SaxSoapParserImpl implements SoapParser {
             return handler;
         } catch (SAXException ex) {
             throw new SOAPException(ex);
+        } finally {
+            releaseParser(saxParser);
         }
     }
 
+    private static SAXParser acquireParser() {
+        SAXParser saxParser = PARSERS.poll();
+        return saxParser != null ? saxParser : createSaxParser();
+    }
+
+    private static void releaseParser(SAXParser saxParser) {
+        try {
+            // do not keep the handler (and the message it refers to) reachable from the pooled parser
+            saxParser.getXMLReader().setProperty(LEXICAL_HANDLER_PROPERTY, null);
+            saxParser.reset();
+        } catch (SAXException e) {
+            log.debug("Failed to reset SAX parser, discarding it", e);
+            return;
+        }
+        PARSERS.offer(saxParser);
+    }
+
+    static int getPooledParserCount() {
+        return PARSERS.size();
+    }
+
     private static Soap createSoapMessage(String contentType, String charset,
                                           XRoadSoapHandler handler, byte[] xmlBytes) throws Exception {
         return new SoapMessageImpl(xmlBytes, charset, handler.getHeader(),
@@ -237,10 +274,15 @@ public class SaxSoapParserImpl implements SoapParser {
     }
 
     private static Soap createSoapFault(String charset,
-                                        ByteArrayOutputStream rawXml, CodedException fault) {
+                                        byte[] xmlBytes, CodedException fault) {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
-                rawXml.toByteArray(), charset);
+                xmlBytes, charset);
+    }
+
+    @SneakyThrows
+    private static SAXParser createSaxParser() {
+        return PARSER_FACTORY.newSAXParser();
     }
 
     @SneakyThrows
@@ -309,6 +351,8 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private final BufferedWriter out;
 
+        private final RawXmlCapture rawXml;
+
         private char[] xmlEntity;
 
         private Stack<XmlElementHandler> elementHandlers = new Stack<>();
@@ -361,6 +405,11 @@ public class SaxSoapParserImpl implements SoapParser {
             if (isProcessedXmlRequired()) {
                 String prefix = findNamespacePrefix(qName);
                 writeStartElementXml(prefix, element, attributes, out);
+
+                // the body is not a fault, so the raw XML will not be needed
+                if (getServiceName() != null) {
+                    rawXml.discard();
+                }
             }
         }
 
@@ -1087,4 +1136,38 @@ public class SaxSoapParserImpl implements SoapParser {
         }
 
     }
+
+    /**
+     * Captures the raw XML of the message. The captured data can be discarded
+     * once it is known not to be needed, after which writes are ignored.
+     */
+    private static final class RawXmlCapture extends OutputStream {
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            if (buffer != null) {
+                buffer.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (buffer != null) {
+                buffer.write(b, off, len);
+            }
+        }
+
+        void discard() {
+            buffer = null;
+        }
+
+        boolean isDiscarded() {
+            return buffer == null;
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
 }
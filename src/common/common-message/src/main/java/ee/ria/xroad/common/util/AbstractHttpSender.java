@@ -112,6 +112,15 @@ public abstract class AbstractHttpSender implements Closeable {
         context.setAttribute(name, value);
     }
 
+    /**
+     * Returns the value of an attribute.
+     * @param name attribute name
+     * @return attribute value or null if not set
+     */
+    public Object getAttribute(String name) {
+        return context.getAttribute(name);
+    }
+
     /**
      * Adds an additional header to the request.
      * @param name header name
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
+import static ee.ria.xroad.common.crypto.identifier.DigestAlgorithm.SHA256;
+import static ee.ria.xroad.common.util.MessageFileNames.MESSAGE;
+
+/**
+ * Hash chain builder performance test program. Measures building the Merkle tree and writing
+ * the hash chains for trees of different sizes.
+ */
+@Slf4j
+public final class HashChainBuilderPerformanceTest {
+
+    // number of leaves in the measured trees
+    private static final int[] TREE_SIZES = {10, 1_000, 50_000};
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private HashChainBuilderPerformanceTest() {
+    }
+
+    /**
+     * Main program access point.
+     *
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        for (int treeSize : TREE_SIZES) {
+            byte[][] inputs = new byte[treeSize][];
+            for (int i = 0; i < treeSize; i++) {
+                inputs[i] = calculateDigest(SHA256, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+                HashChainBuilder builder = new HashChainBuilder(SHA256);
+                for (byte[] input : inputs) {
+                    builder.addInputHash(input);
+                }
+
+                long start = System.nanoTime();
+                builder.finishBuilding();
+                long buildNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                builder.getHashChainResult("/hashchain.xml");
+                String[] hashChains = builder.getHashChains(MESSAGE);
+                long writeNanos = System.nanoTime() - start;
+
+                if (round == WARMUP_ROUNDS) {
+                    log.info("{} leaves: building the tree {} us, writing {} hash chains {} us ({} ns/chain)",
+                            treeSize, TimeUnit.NANOSECONDS.toMicros(buildNanos), hashChains.length,
+                            TimeUnit.NANOSECONDS.toMicros(writeNanos), writeNanos / hashChains.length);
+                }
+            }
+        }
+    }
+}
@@ -29,12 +29,19 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 
 import static ee.ria.xroad.common.crypto.Digests.calculateDigest;
 import static ee.ria.xroad.common.crypto.identifier.DigestAlgorithm.SHA256;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeHex;
+import static ee.ria.xroad.common.util.MessageFileNames.MESSAGE;
+import static ee.ria.xroad.common.util.MessageFileNames.attachment;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
@@ -45,6 +52,8 @@ import static org.junit.Assert.assertNull;
 public class HashChainBuilderTest {
     private static final Logger LOG = LoggerFactory.getLogger(HashChainBuilderTest.class);
 
+    private static final String HASH_CHAIN = "/hashchain.xml";
+
     /**
      * Test to ensure hash chain builder works with varying input sizes.
      * @throws Exception in case of unexpected errors
@@ -130,6 +139,76 @@ public class HashChainBuilderTest {
         printChains(builder);
     }
 
+    /**
+     * Test to ensure that the hash chain and hash chain result XML is
+     * identical to the documents produced by the JAXB marshaller.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void sameXmlAsJaxb() throws Exception {
+        HashChainBuilder builder = new HashChainBuilder(SHA256);
+        add(builder, "one");
+        add(builder, "two");
+        add(builder, "three");
+        add(builder, "four");
+        builder.finishBuilding();
+
+        assertEquals(load("hc-verifier1-hashchainresult.xml"),
+                builder.getHashChainResult(HASH_CHAIN));
+        assertEquals(load("hc-verifier1-hashchain.xml"),
+                builder.getHashChains(MESSAGE)[1]);
+    }
+
+    /**
+     * Test to ensure that the hash chains of trees with varying sizes and
+     * attachments pass the hash chain verification. The largest tree is big
+     * enough to be hashed in parallel.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void builtChainsVerify() throws Exception {
+        Random random = new Random(42);
+
+        for (int treeSize = 1; treeSize < 40; ++treeSize) {
+            verifyTree(random, treeSize, 1);
+        }
+        verifyTree(random, 2500, 97);
+    }
+
+    private static void verifyTree(Random random, int treeSize, int chainStep)
+            throws Exception {
+        LOG.debug("Running builtChainsVerify test, n = {}", treeSize);
+
+        byte[][][] items = new byte[treeSize][][];
+        HashChainBuilder builder = new HashChainBuilder(SHA256);
+        for (int i = 0; i < treeSize; ++i) {
+            // Single input trees must have attachments.
+            int parts = treeSize == 1 || random.nextInt(4) == 0
+                    ? 2 + random.nextInt(3) : 1;
+            items[i] = new byte[parts][];
+            for (int j = 0; j < parts; ++j) {
+                items[i][j] = calculateDigest(SHA256,
+                        (treeSize + "/" + i + "/" + j).getBytes(StandardCharsets.UTF_8));
+            }
+            builder.addInputHash(items[i]);
+        }
+        builder.finishBuilding();
+
+        String hashChainResult = builder.getHashChainResult(HASH_CHAIN);
+        String[] hashChains = builder.getHashChains(MESSAGE);
+
+        for (int i = 0; i < treeSize; i += chainStep) {
+            Map<String, DigestValue> inputs = new HashMap<>();
+            for (int j = 0; j < items[i].length; ++j) {
+                inputs.put(j == 0 ? MESSAGE : attachment(j),
+                        new DigestValue(SHA256, items[i][j]));
+            }
+
+            HashChainVerifier.verify(toStream(hashChainResult),
+                    new Resolver(hashChains[i]), inputs);
+        }
+    }
+
     private static void printChains(HashChainBuilder builder) throws Exception {
         String[] chains = builder.getHashChains("foo.xml");
         LOG.debug("Hash chains:");
@@ -212,4 +291,35 @@ public class HashChainBuilderTest {
         LOG.debug("Hash chain result:\n{}", builder.getHashChainResult("foo"));
         printChains(builder);
     }
+
+    private static String load(String fileName) throws Exception {
+        try (InputStream in = Thread.currentThread().getContextClassLoader()
+                .getResourceAsStream(fileName)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static InputStream toStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Resolver(String hashChain) implements HashChainReferenceResolver {
+
+        @Override
+        public InputStream resolve(String uri) {
+            if (HASH_CHAIN.equals(uri)) {
+                return toStream(hashChain);
+            }
+            throw new IllegalArgumentException("Invalid URI: " + uri);
+        }
+
+        @Override
+        public boolean shouldResolve(String uri, byte[] digestValue) {
+            return true;
+        }
+    }
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
 }
@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.common.message;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ExpectedCodedException;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
@@ -62,6 +63,7 @@ import static ee.ria.xroad.common.message.SoapUtils.getChildElements;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * This class tests the basic functionality (parsing the soap message etc.) of the SoapMessage class.
@@ -256,6 +258,77 @@ public class SoapMessageTest {
         assertEquals("yyy", fault.getDetail());
     }
 
+    /**
+     * Tests that the raw XML of a fault message is kept when the parser
+     * is producing processed XML.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void faultMessageWithProcessedXml() throws Exception {
+        String soapFaultXml = SoapFault.createFaultXml("foo.bar", "baz", "xxx", "yyy");
+        SaxSoapParserImpl parser = new SaxSoapParserImpl() {
+            @Override
+            protected boolean isProcessedXmlRequired() {
+                return true;
+            }
+        };
+        Soap message = parser.parse(MimeTypes.TEXT_XML_UTF8,
+                new ByteArrayInputStream(soapFaultXml.getBytes()));
+
+        assertTrue(message instanceof SoapFault);
+        assertEquals(soapFaultXml, message.getXml());
+    }
+
+    /**
+     * Tests that messages can be parsed after a parse error, since the
+     * SAX parser is reused.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void parseAfterMalformedXml() throws Exception {
+        SaxSoapParserImpl parser = new SaxSoapParserImpl();
+        try {
+            parser.parse(MimeTypes.TEXT_XML_UTF8,
+                    new ByteArrayInputStream("<foo".getBytes()));
+            fail("Parsing malformed XML should fail");
+        } catch (CodedException expected) {
+            // expected
+        }
+
+        try (FileInputStream in = new FileInputStream(QUERY_DIR + "simple.query")) {
+            Soap message = parser.parse(MimeTypes.TEXT_XML_UTF8, in);
+
+            assertTrue(message instanceof SoapMessageImpl);
+            assertEquals("1234567890", ((SoapMessageImpl) message).getQueryId());
+        }
+    }
+
+    /**
+     * Tests that a parser released by one thread is reused by another,
+     * since messages are parsed on short-lived virtual threads.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void parserIsReusedByOtherThreads() throws Exception {
+        byte[] query = fileToBytes("simple.query");
+        SaxSoapParserImpl parser = new SaxSoapParserImpl();
+        parser.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(query));
+
+        int pooled = SaxSoapParserImpl.getPooledParserCount();
+        assertTrue(pooled > 0);
+
+        for (int i = 0; i < 3; i++) {
+            Thread thread = Thread.ofVirtual().start(() ->
+                    parser.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(query)));
+            thread.join();
+
+            assertEquals(pooled, SaxSoapParserImpl.getPooledParserCount());
+        }
+    }
+
     /**
      * Checks that inconsistencies between two messages are detected.
      *
@@ -28,6 +28,7 @@ package ee.ria.xroad.common.messagelog;
 import ee.ria.xroad.common.DiagnosticsStatus;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.JobManager;
 
 import lombok.extern.slf4j.Slf4j;
@@ -61,6 +62,24 @@ public abstract class AbstractLogManager implements DisposableBean {
 
     public abstract Map<String, DiagnosticsStatus> getDiagnosticStatus();
 
+    /**
+     * Tells whether REST message bodies of the given service are stored in the message log. The proxy
+     * caches the body for logging only if this returns true.
+     * @param service the service
+     * @param clientSide whether the message is logged by the client proxy
+     * @return true if the message body would be logged
+     */
+    public boolean isBodyLogged(ServiceId service, boolean clientSide) {
+        return true;
+    }
+
+    /**
+     * Logs message log statistics.
+     */
+    public void logStatistics() {
+        // NO-OP
+    }
+
     @Override
     public void destroy() {
         // NO-OP
@@ -61,6 +61,12 @@ public final class MessageLogProperties {
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = 2;
+    private static final int DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = 100;
+    private static final int DEFAULT_GROUP_COMMIT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_GROUP_COMMIT_WRITERS = 2;
+    private static final int DEFAULT_GROUP_COMMIT_TIMEOUT = 60000;
+
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
 
@@ -103,6 +109,37 @@ public final class MessageLogProperties {
 
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
 
+    /**
+     * Property name for toggling group commit of message records, i.e. saving records of concurrent
+     * requests in shared database transactions.
+     */
+    public static final String GROUP_COMMIT_ENABLED = PREFIX + "group-commit-enabled";
+
+    /**
+     * Property name of the time (milliseconds) a group commit writer waits for more records before committing.
+     */
+    public static final String GROUP_COMMIT_WINDOW = PREFIX + "group-commit-window";
+
+    /**
+     * Property name of the maximum number of message records saved in one group commit transaction.
+     */
+    public static final String GROUP_COMMIT_MAX_BATCH_SIZE = PREFIX + "group-commit-max-batch-size";
+
+    /**
+     * Property name of the number of message records that may wait for a group commit writer.
+     */
+    public static final String GROUP_COMMIT_QUEUE_SIZE = PREFIX + "group-commit-queue-size";
+
+    /**
+     * Property name of the number of group commit writer threads.
+     */
+    public static final String GROUP_COMMIT_WRITERS = PREFIX + "group-commit-writers";
+
+    /**
+     * Property name of the time (milliseconds) a logging thread waits for its record to be committed.
+     */
+    public static final String GROUP_COMMIT_TIMEOUT = PREFIX + "group-commit-timeout";
+
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
 
     /**
@@ -231,6 +268,50 @@ public final class MessageLogProperties {
                 DEFAULT_ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD);
     }
 
+    /**
+     * @return true if message records are saved in shared transactions by group commit writers, 'false' by default.
+     */
+    public static boolean isGroupCommitEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(GROUP_COMMIT_ENABLED, "false"));
+    }
+
+    /**
+     * @return the time in milliseconds a group commit writer waits for more records to fill a batch, '2' by default.
+     */
+    public static int getGroupCommitWindowMillis() {
+        return getInt(System.getProperty(GROUP_COMMIT_WINDOW), DEFAULT_GROUP_COMMIT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @return the maximum number of message records saved in one group commit transaction, '100' by default.
+     */
+    public static int getGroupCommitMaxBatchSize() {
+        return Math.max(1, getInt(System.getProperty(GROUP_COMMIT_MAX_BATCH_SIZE), DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE));
+    }
+
+    /**
+     * @return the number of message records that may wait for a group commit writer, '10000' by default.
+     * When the queue is full, records are saved directly by the logging thread.
+     */
+    public static int getGroupCommitQueueSize() {
+        return Math.max(1, getInt(System.getProperty(GROUP_COMMIT_QUEUE_SIZE), DEFAULT_GROUP_COMMIT_QUEUE_SIZE));
+    }
+
+    /**
+     * @return the number of group commit writer threads, '2' by default.
+     */
+    public static int getGroupCommitWriters() {
+        return Math.max(1, getInt(System.getProperty(GROUP_COMMIT_WRITERS), DEFAULT_GROUP_COMMIT_WRITERS));
+    }
+
+    /**
+     * @return the time in milliseconds a logging thread waits for the group commit of its record before
+     * logging fails, '60000' by default.
+     */
+    public static int getGroupCommitTimeoutMillis() {
+        return Math.max(1, getInt(System.getProperty(GROUP_COMMIT_TIMEOUT), DEFAULT_GROUP_COMMIT_TIMEOUT));
+    }
+
     /**
      * @return the time interval as Cron expression for archiving time-stamped records.
      */
@@ -61,6 +61,13 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_SENDING_INTERVAL_SECONDS =
             PREFIX + "op-monitor-buffer.sending-interval-seconds";
 
+    /**
+     * Property name of the maximum number of messages the operational monitoring buffer
+     * may have in flight to the operational monitoring daemon at the same time.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_CONCURRENT_SENDS =
+            PREFIX + "op-monitor-buffer.max-concurrent-sends";
+
 
     /**
      * Property name of the operational monitoring buffer HTTP client SO_TIMEOUT seconds.
@@ -158,7 +165,8 @@ public final class OpMonitoringSystemProperties {
 
     /**
      * @return the size of the operational monitoring buffer, '20000' by default. In case buffer size < 1, operational
-     * monitoring data is not stored.
+     * monitoring data is not stored. The buffer is split into per-thread shards that share their free capacity, so the
+     * actual capacity may be rounded up to a multiple of the number of shards.
      */
     public static int getOpMonitorBufferSize() {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_SIZE, "20000"));
@@ -179,6 +187,13 @@ public final class OpMonitoringSystemProperties {
         return Long.parseLong(System.getProperty(OP_MONITOR_BUFFER_SENDING_INTERVAL_SECONDS, "5"));
     }
 
+    /**
+     * @return max number of messages in flight to the operational monitoring daemon at the same time, '4' by default.
+     */
+    public static int getOpMonitorBufferMaxConcurrentSends() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_CONCURRENT_SENDS, "4"));
+    }
+
     /**
      * @return the operational monitoring buffer HTTP client SO_TIMEOUT in seconds, '60' by default.
      */
@@ -30,17 +30,17 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.ocsp.OcspVerifier;
 import ee.ria.xroad.common.ocsp.OcspVerifierOptions;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 import java.security.cert.CertPath;
 import java.security.cert.CertPathBuilder;
 import java.security.cert.CertPathBuilderException;
 import java.security.cert.CertPathValidator;
-import java.security.cert.CertPathValidatorResult;
 import java.security.cert.CertStore;
 import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXBuilderParameters;
-import java.security.cert.PKIXCertPathValidatorResult;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
@@ -49,6 +49,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_CERT_PATH;
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
@@ -59,6 +60,12 @@ import static ee.ria.xroad.common.crypto.identifier.Providers.BOUNCY_CASTLE;
 
 /**
  * Certificate chain verifier.
+ * <p>
+ * Successfully built and validated certificate paths are cached, keyed by the end entity certificate,
+ * the trusted root certificate and the intermediate certificates. A cached path is reused only for dates
+ * within the validity periods of all of its certificates, so verifying a known chain only needs to check
+ * the OCSP responses. Since revocation checking is done using OCSP responses and not as part of
+ * the path validation, the validation result depends only on the key and the date.
  */
 public class CertChainVerifier {
 
@@ -67,12 +74,16 @@ public class CertChainVerifier {
      */
     private static final String VALIDATION_ALGORITHM = "PKIX";
 
-    private final GlobalConfProvider globalConfProvider;
+    private static final int CERT_PATH_CACHE_MAX_SIZE = 1000;
 
-    /**
-     * Holds the PKIX algorithm parameters.
-     */
-    private final PKIXBuilderParameters pkixParams;
+    private static final int CERT_PATH_CACHE_EXPIRATION_MINUTES = 60;
+
+    private static final Cache<CertPathKey, ValidatedCertPath> CERT_PATH_CACHE = CacheBuilder.newBuilder()
+            .expireAfterWrite(CERT_PATH_CACHE_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+            .maximumSize(CERT_PATH_CACHE_MAX_SIZE)
+            .build();
+
+    private final GlobalConfProvider globalConfProvider;
 
     /**
      * Holds the constructed certificate path.
@@ -85,8 +96,8 @@ public class CertChainVerifier {
     private final CertChain certChain;
 
     /**
-     * Builds the certificate path for the target certificate using a list
-     * of trust anchors and a list of intermediate certificates.
+     * Creates a verifier for the certificate path of the target certificate. The path is built
+     * using the trusted root certificate and the intermediate certificates of the chain.
      *
      * @param globalConfProvider the global configuration provider
      * @param certChain          the certificate chain object
@@ -94,28 +105,6 @@ public class CertChainVerifier {
     public CertChainVerifier(GlobalConfProvider globalConfProvider, CertChain certChain) {
         this.globalConfProvider = globalConfProvider;
         this.certChain = certChain;
-
-        Set<TrustAnchor> trustAnchors =
-                createTrustAnchorSet(
-                        Arrays.asList(certChain.getTrustedRootCert()));
-
-        X509CertSelector certSelector = new X509CertSelector();
-        certSelector.setCertificate(certChain.getEndEntityCert());
-
-        try {
-            pkixParams = new PKIXBuilderParameters(trustAnchors, certSelector);
-            pkixParams.setRevocationEnabled(false);
-
-            if (!certChain.getAdditionalCerts().isEmpty()) {
-                CertStore intermediateCertStore =
-                        CertStore.getInstance("Collection",
-                                new CollectionCertStoreParameters(
-                                        certChain.getAdditionalCerts()), BOUNCY_CASTLE);
-                pkixParams.addCertStore(intermediateCertStore);
-            }
-        } catch (Exception e) {
-            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
-        }
     }
 
     /**
@@ -161,16 +150,11 @@ public class CertChainVerifier {
     }
 
     private void verifyImpl(List<OCSPResp> ocspResponses, Date atDate) {
-        pkixParams.setDate(atDate);
         try {
-            certPath = buildCertPath(pkixParams);
-
-            PKIXCertPathValidatorResult pkixResult =
-                    verifyCertPath(certPath, pkixParams);
+            certPath = getValidatedCertPath(atDate);
 
             if (ocspResponses != null) {
-                verifyOcspResponses(
-                        getCerts(), ocspResponses, pkixResult, atDate);
+                verifyOcspResponses(getCerts(), ocspResponses, atDate);
             }
         } catch (CertPathBuilderException ex) {
             throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, ex);
@@ -179,8 +163,54 @@ public class CertChainVerifier {
         }
     }
 
+    private CertPath getValidatedCertPath(Date atDate) throws Exception {
+        CertPathKey key = new CertPathKey(certChain.getEndEntityCert(),
+                certChain.getTrustedRootCert(), certChain.getAdditionalCerts());
+
+        ValidatedCertPath cached = CERT_PATH_CACHE.getIfPresent(key);
+        if (cached != null && cached.isValidAt(atDate != null ? atDate : new Date())) {
+            return cached.certPath();
+        }
+
+        PKIXBuilderParameters pkixParams = createPkixParams();
+        pkixParams.setDate(atDate);
+
+        CertPath builtPath = buildCertPath(pkixParams);
+        verifyCertPath(builtPath, pkixParams);
+
+        CERT_PATH_CACHE.put(key, ValidatedCertPath.of(builtPath, certChain.getTrustedRootCert()));
+
+        return builtPath;
+    }
+
+    private PKIXBuilderParameters createPkixParams() {
+        Set<TrustAnchor> trustAnchors =
+                createTrustAnchorSet(
+                        Arrays.asList(certChain.getTrustedRootCert()));
+
+        X509CertSelector certSelector = new X509CertSelector();
+        certSelector.setCertificate(certChain.getEndEntityCert());
+
+        try {
+            PKIXBuilderParameters pkixParams = new PKIXBuilderParameters(trustAnchors, certSelector);
+            pkixParams.setRevocationEnabled(false);
+
+            if (!certChain.getAdditionalCerts().isEmpty()) {
+                CertStore intermediateCertStore =
+                        CertStore.getInstance("Collection",
+                                new CollectionCertStoreParameters(
+                                        certChain.getAdditionalCerts()), BOUNCY_CASTLE);
+                pkixParams.addCertStore(intermediateCertStore);
+            }
+
+            return pkixParams;
+        } catch (Exception e) {
+            throw translateWithPrefix(X_CANNOT_CREATE_CERT_PATH, e);
+        }
+    }
+
     private void verifyOcspResponses(List<X509Certificate> certs,
-                                     List<OCSPResp> ocspResponses, PKIXCertPathValidatorResult result,
+                                     List<OCSPResp> ocspResponses,
                                      Date atDate) throws Exception {
         for (X509Certificate subject : certs) {
             X509Certificate issuer =
@@ -211,15 +241,12 @@ public class CertChainVerifier {
         return certPathBuilder.build(pkixParams).getCertPath();
     }
 
-    private static PKIXCertPathValidatorResult verifyCertPath(CertPath certPath,
-                                                              PKIXBuilderParameters pkixParams) throws Exception {
+    private static void verifyCertPath(CertPath certPath,
+                                       PKIXBuilderParameters pkixParams) throws Exception {
         CertPathValidator certPathValidator =
                 CertPathValidator.getInstance(VALIDATION_ALGORITHM);
 
-        CertPathValidatorResult result =
-                certPathValidator.validate(certPath, pkixParams);
-
-        return (PKIXCertPathValidatorResult) result;
+        certPathValidator.validate(certPath, pkixParams);
     }
 
     private static Set<TrustAnchor> createTrustAnchorSet(
@@ -233,4 +260,30 @@ public class CertChainVerifier {
         return trustAnchors;
     }
 
+    private record CertPathKey(X509Certificate endEntityCert, X509Certificate trustedRootCert,
+                               List<X509Certificate> additionalCerts) {
+    }
+
+    /**
+     * Validated certificate path together with the period in which all of its certificates are valid.
+     */
+    private record ValidatedCertPath(CertPath certPath, long notBefore, long notAfter) {
+
+        @SuppressWarnings("unchecked")
+        static ValidatedCertPath of(CertPath certPath, X509Certificate trustedRootCert) {
+            long notBefore = trustedRootCert.getNotBefore().getTime();
+            long notAfter = trustedRootCert.getNotAfter().getTime();
+
+            for (X509Certificate cert : (List<X509Certificate>) certPath.getCertificates()) {
+                notBefore = Math.max(notBefore, cert.getNotBefore().getTime());
+                notAfter = Math.min(notAfter, cert.getNotAfter().getTime());
+            }
+
+            return new ValidatedCertPath(certPath, notBefore, notAfter);
+        }
+
+        boolean isValidAt(Date atDate) {
+            return atDate.getTime() >= notBefore && atDate.getTime() <= notAfter;
+        }
+    }
 }
@@ -39,6 +39,8 @@ import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.util.CertUtils;
 import ee.ria.xroad.common.util.CryptoUtils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -62,7 +64,6 @@ import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.util.CryptoUtils.certHash;
 import static ee.ria.xroad.common.util.CryptoUtils.certSha1Hash;
-import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.toSet;
 
@@ -72,10 +73,18 @@ import static java.util.stream.Collectors.toSet;
 @Slf4j
 public class GlobalConfImpl implements GlobalConfProvider {
 
+    private static final int CERT_DIGEST_CACHE_MAX_SIZE = 1000;
+
     private final GlobalConfSource globalConfSource;
     private final CertChainFactory certChainFactory;
     private final GlobalConfExtensions globalConfExtensions;
 
+    // digests of the authentication certificates seen in TLS handshakes, keyed by the certificate
+    private final Cache<X509Certificate, CertDigest> certDigests =
+            CacheBuilder.newBuilder().maximumSize(CERT_DIGEST_CACHE_MAX_SIZE).build();
+    private final Cache<X509Certificate, CertDigest> certSha1Digests =
+            CacheBuilder.newBuilder().maximumSize(CERT_DIGEST_CACHE_MAX_SIZE).build();
+
     public GlobalConfImpl(GlobalConfSource globalConfSource) {
         this.globalConfSource = globalConfSource;
         this.certChainFactory = new CertChainFactory(this);
@@ -420,9 +429,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public SecurityServerId.Conf getServerId(X509Certificate cert) throws Exception {
+        CertDigest certDigest = calculateCertDigest(cert);
         for (SharedParametersCache p : getSharedParametersCaches()) {
-            String b64 = encodeBase64(calculateCertHash(p.getInstanceIdentifier(), cert));
-            SharedParameters.SecurityServer server = p.getServerByAuthCert().get(b64);
+            SharedParameters.SecurityServer server = p.getServerByAuthCert().get(certDigest);
             if (server != null) {
                 return SecurityServerId.Conf.create(
                         p.getInstanceIdentifier(), server.getOwner().getMemberClass(),
@@ -434,14 +443,18 @@ public class GlobalConfImpl implements GlobalConfProvider {
         return null;
     }
 
-    private byte[] calculateCertHash(String instanceIdentifier, X509Certificate cert)
+    private CertDigest calculateCertDigest(X509Certificate cert)
             throws CertificateEncodingException, IOException, OperatorCreationException {
         Integer version = globalConfSource.getVersion();
-        if (version != null && version > 2) {
-            return certHash(cert.getEncoded());
-        } else {
-            return certSha1Hash(cert.getEncoded());
+        boolean sha1 = version == null || version <= 2;
+        Cache<X509Certificate, CertDigest> cache = sha1 ? certSha1Digests : certDigests;
+
+        CertDigest certDigest = cache.getIfPresent(cert);
+        if (certDigest == null) {
+            certDigest = CertDigest.of(sha1 ? certSha1Hash(cert.getEncoded()) : certHash(cert.getEncoded()));
+            cache.put(cert, certDigest);
         }
+        return certDigest;
     }
 
     @Override
@@ -458,12 +471,10 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean authCertMatchesMember(X509Certificate cert, ClientId memberId)
             throws CertificateEncodingException, IOException, OperatorCreationException {
+        CertDigest certDigest = calculateCertDigest(cert);
         for (SharedParametersCache p : getSharedParametersCaches()) {
-            byte[] inputCertHash = calculateCertHash(p.getInstanceIdentifier(), cert);
-            boolean match = Optional.ofNullable(p.getMemberAuthCerts().get(memberId)).stream()
-                    .flatMap(Collection::stream)
-                    .anyMatch(h -> Arrays.equals(inputCertHash, h));
-            if (match) {
+            Set<CertDigest> memberAuthCerts = p.getMemberAuthCerts().get(memberId);
+            if (memberAuthCerts != null && memberAuthCerts.contains(certDigest)) {
                 return true;
             }
         }
@@ -558,16 +569,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public boolean isSubjectInGlobalGroup(ClientId subjectId, GlobalGroupId groupId) {
-        return findGlobalGroup(groupId)
-                .filter(group -> group.getGroupMembers().stream().anyMatch(m -> m.equals(subjectId)))
-                .isPresent();
-    }
-
-    Optional<SharedParameters.GlobalGroup> findGlobalGroup(GlobalGroupId groupId) {
-        Optional<SharedParameters> sharedParameters = globalConfSource.findShared(groupId.getXRoadInstance());
-        return sharedParameters.flatMap(params -> params.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst());
+        return globalConfSource.findSharedParametersCache(groupId.getXRoadInstance())
+                .map(cache -> cache.isGlobalGroupMember(groupId.getGroupCode(), subjectId))
+                .orElse(false);
     }
 
     @Override
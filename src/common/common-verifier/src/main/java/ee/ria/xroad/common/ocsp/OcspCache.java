@@ -28,24 +28,32 @@ package ee.ria.xroad.common.ocsp;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Holds OCSP response per key. When getting the response, it is checked
- * if the response is expired at the specified date, and if it is, the
- * response is removed from the cache and null is returned.
+ * if the response is expired at the specified date, and if it is, null
+ * is returned.
+ * <p>
+ * The update time of a response is read once, when the response is put into the cache, so that the
+ * expiry check on lookup does not need to parse the response. Expired responses are removed from the
+ * cache by {@link #evictExpired()}, which is expected to be called periodically.
  */
 @Slf4j
 public class OcspCache {
     private final GlobalConfProvider globalConfProvider;
 
-    protected final Map<String, OCSPResp> cache = new ConcurrentHashMap<>();
+    protected final Map<String, CachedResponse> cache = new ConcurrentHashMap<>();
 
     public OcspCache(GlobalConfProvider globalConfProvider) {
         this.globalConfProvider = globalConfProvider;
@@ -69,7 +77,10 @@ public class OcspCache {
      */
     public OCSPResp put(String key, OCSPResp value) {
         log.trace("Setting OCSP response for '{}'", key);
-        return cache.put(key, value);
+
+        CachedResponse previous = cache.put(key, new CachedResponse(value, getThisUpdateMillis(value)));
+
+        return previous != null ? previous.response() : null;
     }
 
     /**
@@ -79,38 +90,98 @@ public class OcspCache {
         cache.clear();
     }
 
+    /**
+     * Removes the OCSP responses that are expired at the current date.
+     *
+     * @return the number of removed responses
+     */
+    public int evictExpired() {
+        long allowedThisUpdate = getAllowedThisUpdateMillis(new Date());
+        int evicted = 0;
+
+        for (Entry<String, CachedResponse> entry : cache.entrySet()) {
+            if (entry.getValue().isExpired(allowedThisUpdate) && cache.remove(entry.getKey(), entry.getValue())) {
+                log.trace("Cached OCSP response for certificate '{}' has expired", entry.getKey());
+                evicted(entry.getKey());
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Called when {@link #evictExpired()} has removed an expired response from the cache.
+     *
+     * @param key the key of the removed response
+     */
+    protected void evicted(String key) {
+        // nothing to clean up for the in-memory cache
+    }
+
     /**
      * @return a Set view of the mappings contained in this map.
      */
     public Set<Entry<String, OCSPResp>> entrySet() {
-        return cache.entrySet();
+        return cache.entrySet().stream()
+                .map(e -> new SimpleImmutableEntry<>(e.getKey(), e.getValue().response()))
+                .collect(Collectors.toSet());
     }
 
     protected OCSPResp getResponse(Object key, Date atDate) {
         log.trace("Retrieving OCSP response for certificate '{}' at {}", key,
                 atDate);
 
-        OCSPResp cachedResponse = cache.get(key);
-        try {
-            if (cachedResponse != null && isExpired(cachedResponse, atDate)) {
-                log.trace("Cached OCSP response for certificate "
-                        + "'{}' has expired", key);
-                cache.remove(key);
-                return null;
-            }
-        } catch (Exception e) {
-            log.error("Failed to check if OCSP response is expired", e);
-            cache.remove(key);
+        CachedResponse cachedResponse = cache.get(key);
+        if (cachedResponse == null) {
             return null;
         }
 
-        return cachedResponse;
+        if (cachedResponse.isExpired(getAllowedThisUpdateMillis(atDate))) {
+            log.trace("Cached OCSP response for certificate "
+                    + "'{}' has expired", key);
+            return null;
+        }
+
+        return cachedResponse.response();
     }
 
     protected boolean isExpired(OCSPResp response, Date atDate)
             throws Exception {
-        OcspVerifier verifier = new OcspVerifier(globalConfProvider,
-                new OcspVerifierOptions(globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate()));
-        return verifier.isExpired(response, atDate);
+        return readThisUpdate(response).getTime() < getAllowedThisUpdateMillis(atDate);
+    }
+
+    /**
+     * Same as {@link OcspVerifier#isExpired(OCSPResp, Date)}: the response is expired if it has been
+     * produced earlier than the OCSP freshness period before the date.
+     */
+    private long getAllowedThisUpdateMillis(Date atDate) {
+        return atDate.getTime() - TimeUnit.SECONDS.toMillis(globalConfProvider.getOcspFreshnessSeconds());
+    }
+
+    private static long getThisUpdateMillis(OCSPResp response) {
+        try {
+            return readThisUpdate(response).getTime();
+        } catch (Exception e) {
+            log.error("Failed to read the update time of OCSP response", e);
+            // considered expired
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static Date readThisUpdate(OCSPResp response) throws Exception {
+        BasicOCSPResp basicResp = (BasicOCSPResp) response.getResponseObject();
+        return basicResp.getResponses()[0].getThisUpdate();
+    }
+
+    /**
+     * OCSP response together with its update time.
+     * @param response the OCSP response
+     * @param thisUpdateMillis the time the response was produced, in milliseconds since the epoch
+     */
+    protected record CachedResponse(OCSPResp response, long thisUpdateMillis) {
+        boolean isExpired(long allowedThisUpdateMillis) {
+            return thisUpdateMillis < allowedThisUpdateMillis;
+        }
     }
 }
@@ -101,6 +101,30 @@ public class CertChainTest {
                 makeDate(rootCa.getNotBefore(), 1));
     }
 
+    /**
+     * Tests that a cached certificate path is not used for a date at which
+     * the certificates are no longer valid.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedChainIsNotUsedAfterCertsExpire() throws Exception {
+        X509Certificate rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        X509Certificate userCert = TestCertUtil.getCertChainCert("user_0.p12");
+
+        CertChain chain = new CertChain("EE", userCert, rootCa,
+                new ArrayList<>());
+        verifyChainOnly(chain, makeDate(userCert.getNotBefore(), 1));
+        verifyChainOnly(chain, makeDate(userCert.getNotBefore(), 2));
+
+        try {
+            verifyChainOnly(chain, makeDate(userCert.getNotAfter(), 1));
+            fail("Chain verification should fail");
+        } catch (CodedException e) {
+            assertTrue(e.getCause() instanceof CertPathBuilderException);
+        }
+    }
+
     /**
      * Test that verifying a chain with missing intermediate certificate fails.
      *
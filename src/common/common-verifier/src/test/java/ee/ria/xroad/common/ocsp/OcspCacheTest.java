@@ -44,6 +44,7 @@ import java.util.Date;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the OCSP cache.
@@ -106,4 +107,30 @@ public class OcspCacheTest {
         assertNull(cache.put("foo", ocsp));
         assertNull(cache.get("foo"));
     }
+
+    /**
+     * Tests that expired OCSP responses are kept until evicted, and that eviction
+     * removes only the expired responses.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void evictExpired() throws Exception {
+        OCSPResp fresh = OcspTestUtils.createOCSPResponse(subject, issuer, signer, signerKey,
+                CertificateStatus.GOOD, Date.from(TimeUtils.now().plus(1, ChronoUnit.DAYS)), null);
+        OCSPResp expired = OcspTestUtils.createOCSPResponse(subject, issuer, signer, signerKey,
+                CertificateStatus.GOOD, Date.from(TimeUtils.now().minus(1, ChronoUnit.DAYS)), null);
+
+        OcspCache cache = new OcspCache(globalConfProvider);
+        cache.put("fresh", fresh);
+        cache.put("expired", expired);
+
+        assertNull(cache.get("expired"));
+        assertEquals(2, cache.entrySet().size());
+
+        assertEquals(1, cache.evictExpired());
+        assertEquals(1, cache.entrySet().size());
+        assertTrue(cache.entrySet().stream().allMatch(e -> "fresh".equals(e.getKey())));
+        assertEquals(fresh, cache.get("fresh"));
+    }
 }
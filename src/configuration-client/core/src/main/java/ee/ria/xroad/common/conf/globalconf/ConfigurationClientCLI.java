@@ -32,11 +32,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.lang3.StringUtils;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.DiagnosticsErrorCodes.ERROR_CODE_ANCHOR_NOT_FOR_EXTERNAL_SOURCE;
 import static ee.ria.xroad.common.DiagnosticsErrorCodes.ERROR_CODE_MISSING_PRIVATE_PARAMS;
@@ -91,10 +95,32 @@ public final class ConfigurationClientCLI {
     public static int validate(String configurationAnchorFile, final CommandLine cmd) {
         log.trace("Downloading configuration using anchor {}", configurationAnchorFile);
         var paramsValidator = getParamsValidator(cmd);
-        // Create configuration that does not persist files to disk.
+
+        // Downloaded files are only validated, they are written to a temporary directory that is removed
+        // afterwards, so the global configuration directory is not touched.
+        final Path validationDir;
+        try {
+            Path tempFilesPath = Paths.get(SystemProperties.getTempFilesPath());
+            Files.createDirectories(tempFilesPath);
+            validationDir = Files.createTempDirectory(tempFilesPath, "globalconf-validate-");
+        } catch (Exception e) {
+            log.error("Failed to create directory for validating conf", e);
+
+            return ConfigurationClientUtils.getErrorCode(e);
+        }
+
+        try {
+            return validate(configurationAnchorFile, paramsValidator, validationDir);
+        } finally {
+            deleteValidationDir(validationDir);
+        }
+    }
+
+    private static int validate(String configurationAnchorFile, ParamsValidator paramsValidator, Path validationDir) {
         final String configurationPath = SystemProperties.getConfigurationPath();
 
-        var configurationDownloader = new ConfigurationDownloader(configurationPath) {
+        // Create configuration that does not persist files to disk and does not keep a digest index.
+        var configurationDownloader = new ConfigurationDownloader(new FileNameProviderImpl(validationDir.toString())) {
             @Override
             void validateContent(ConfigurationFile file) {
                 paramsValidator.tryMarkValid(file.getContentIdentifier());
@@ -138,6 +164,14 @@ public final class ConfigurationClientCLI {
         return result;
     }
 
+    private static void deleteValidationDir(Path validationDir) {
+        try (Stream<Path> files = Files.walk(validationDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (Exception e) {
+            log.warn("Failed to delete directory {}", validationDir, e);
+        }
+    }
+
     private static int execute(ConfigurationClient client) {
         try {
             client.execute();
@@ -26,31 +26,41 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.operator.DigestCalculator;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.ErrorCodes.X_IO_ERROR;
@@ -59,6 +69,7 @@ import static ee.ria.xroad.common.SystemProperties.MINIMUM_SUPPORTED_GLOBAL_CONF
 import static ee.ria.xroad.common.crypto.Digests.createDigestCalculator;
 import static ee.ria.xroad.common.util.EncoderUtils.decodeBase64;
 import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * Downloads configuration directory from a configuration location defined
@@ -70,12 +81,21 @@ import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
  * then traversed to find the first location where configuration * can be
  * downloaded. The successful location is remembered and used first next time
  * the configuration is downloaded.
+ * <p>
+ * Only the configuration files that have changed are downloaded. The digests of the local files
+ * are kept in a {@link DigestIndex}, so that the files are not hashed again on every download.
+ * The changed files are downloaded in parallel into temporary files next to the destination files
+ * and moved in place after all of them have been verified.
  */
 @Slf4j
 public class ConfigurationDownloader {
 
     public static final int READ_TIMEOUT = 30000;
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+
     protected final FileNameProvider fileNameProvider;
+    // null if the global configuration directory is not known, in which case the files are always hashed
+    private final DigestIndex digestIndex;
     private final Map<String, ConfigurationLocation> successfulLocations = new HashMap<>();
     private final SharedParametersConfigurationLocations sharedParametersConfigurationLocations;
 
@@ -84,18 +104,21 @@ public class ConfigurationDownloader {
 
     ConfigurationDownloader(String globalConfigurationDir, int configurationVersion) {
         fileNameProvider = new FileNameProviderImpl(globalConfigurationDir);
+        this.digestIndex = new DigestIndex(Path.of(globalConfigurationDir, ConfigurationDirectory.DIGEST_INDEX_FILE));
         this.sharedParametersConfigurationLocations = new SharedParametersConfigurationLocations(fileNameProvider);
         this.configurationVersion = configurationVersion;
     }
 
     ConfigurationDownloader(String globalConfigurationDir) {
         fileNameProvider = new FileNameProviderImpl(globalConfigurationDir);
+        this.digestIndex = new DigestIndex(Path.of(globalConfigurationDir, ConfigurationDirectory.DIGEST_INDEX_FILE));
         this.sharedParametersConfigurationLocations = new SharedParametersConfigurationLocations(fileNameProvider);
         this.configurationVersion = null;
     }
 
     public ConfigurationDownloader(FileNameProvider fileNameProvider) {
         this.fileNameProvider = fileNameProvider;
+        this.digestIndex = null;
         this.sharedParametersConfigurationLocations = new SharedParametersConfigurationLocations(fileNameProvider);
         this.configurationVersion = null;
     }
@@ -175,13 +198,20 @@ public class ConfigurationDownloader {
 
         Configuration configuration = getParser().parse(location, contentIdentifiers);
 
-        // first download all parts into memory and verify then
+        // first download all parts into temporary files and verify them
         List<DownloadedContent> downloadedContents = downloadAllContent(configuration);
 
-        // when everything is ok save contents and/or update expiry dates
-        Set<Path> neededFiles = persistAllContent(downloadedContents);
+        try {
+            // when everything is ok save contents and/or update expiry dates
+            Set<Path> neededFiles = persistAllContent(downloadedContents);
 
-        deleteExtraFiles(configuration.getInstanceIdentifier(), neededFiles);
+            deleteExtraFiles(configuration.getInstanceIdentifier(), neededFiles);
+        } finally {
+            // remove the contents that were not persisted
+            downloadedContents.forEach(DownloadedContent::deleteContent);
+        }
+
+        saveDigestIndex();
 
         return configuration;
     }
@@ -196,28 +226,77 @@ public class ConfigurationDownloader {
     List<DownloadedContent> downloadAllContent(Configuration configuration) throws Exception {
         log.trace("downloadAllContent");
 
+        List<ConfigurationFile> changedFiles = new ArrayList<>();
+        for (ConfigurationFile file : configuration.getFiles()) {
+            if (shouldDownload(file, fileNameProvider.getFileName(file))) {
+                changedFiles.add(file);
+            }
+        }
+
+        Map<ConfigurationFile, Path> contents = downloadContents(configuration.getLocation(), changedFiles);
+
         List<DownloadedContent> result = new ArrayList<>();
-        ConfigurationLocation location = configuration.getLocation();
+        try {
+            var contentHandler = ContentHandler.forVersion(configuration.getVersion());
+
+            for (ConfigurationFile file : configuration.getFiles()) {
+                Path content = contents.get(file);
+                if (content != null) {
+                    validateContent(file);
+                    contentHandler.handleContent(content, file);
+                } else {
+                    log.trace("{} is up to date", file.getContentLocation());
+                    validateContent(file);
+                }
+                result.add(new DownloadedContent(file, content));
+            }
+        } catch (Exception e) {
+            contents.values().forEach(ConfigurationDownloader::deleteContent);
+            throw e;
+        }
 
-        var contentHandler = ContentHandler.forVersion(configuration.getVersion());
+        return result;
+    }
 
-        for (ConfigurationFile file : configuration.getFiles()) {
-            Path contentFileName = fileNameProvider.getFileName(file);
-            if (shouldDownload(file, contentFileName)) {
-                byte[] content = downloadContent(location, file);
+    /**
+     * Downloads the given files in parallel. Either all the files are downloaded and verified, or
+     * none of the downloaded contents are kept.
+     */
+    private Map<ConfigurationFile, Path> downloadContents(ConfigurationLocation location, List<ConfigurationFile> files)
+            throws Exception {
+        Map<ConfigurationFile, Path> result = new IdentityHashMap<>();
+        if (files.size() == 1) {
+            result.put(files.getFirst(), downloadContent(location, files.getFirst()));
+            return result;
+        } else if (files.isEmpty()) {
+            return result;
+        }
 
-                verifyContent(content, file);
-                validateContent(file);
-                contentHandler.handleContent(content, file);
+        List<Future<Path>> downloads = new ArrayList<>();
+        Exception failure = null;
 
-                result.add(new DownloadedContent(file, content));
-            } else {
-                log.trace("{} is up to date", file.getContentLocation());
-                validateContent(file);
-                result.add(new DownloadedContent(file, null));
+        // closing the executor waits until the running downloads are finished
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.min(files.size(), MAX_PARALLEL_DOWNLOADS))) {
+            files.forEach(file -> downloads.add(executor.submit(() -> downloadContent(location, file))));
+
+            for (int i = 0; i < files.size() && failure == null; i++) {
+                try {
+                    result.put(files.get(i), downloads.get(i).get());
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                    executor.shutdownNow();
+                }
             }
         }
 
+        if (failure != null) {
+            downloads.stream()
+                    .filter(download -> download.state() == Future.State.SUCCESS)
+                    .map(Future::resultNow)
+                    .forEach(ConfigurationDownloader::deleteContent);
+            throw failure;
+        }
+
         return result;
     }
 
@@ -256,13 +335,39 @@ public class ConfigurationDownloader {
     protected static class DownloadedContent {
         ConfigurationFile file;
 
-        // if null content was not downloaded as it was not changed
-        byte[] content;
+        // temporary file containing the downloaded content, null if content was not downloaded as it was not changed
+        Path content;
 
-        DownloadedContent(ConfigurationFile file, byte[] content) {
+        DownloadedContent(ConfigurationFile file, Path content) {
             this.file = file;
             this.content = content;
         }
+
+        void deleteContent() {
+            ConfigurationDownloader.deleteContent(content);
+        }
+    }
+
+    private static void deleteContent(Path content) {
+        if (content == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(content);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary file {}", content, e);
+        }
+    }
+
+    private void saveDigestIndex() {
+        if (digestIndex == null) {
+            return;
+        }
+        try {
+            digestIndex.save();
+        } catch (Exception e) {
+            log.warn("Failed to save configuration file digests", e);
+        }
     }
 
     /**
@@ -278,9 +383,9 @@ public class ConfigurationDownloader {
     boolean shouldDownload(ConfigurationFile configurationFile, Path file) throws Exception {
         log.trace("shouldDownload({}, {})", configurationFile.getContentLocation(), configurationFile.getHash());
 
-        if (Files.exists(file)) {
+        String existingHash = getExistingHash(file, configurationFile.getHashAlgorithmId());
+        if (existingHash != null) {
             String contentHash = configurationFile.getHash();
-            String existingHash = encodeBase64(hash(file, configurationFile.getHashAlgorithmId()));
             if (StringUtils.equals(existingHash, contentHash)) {
                 return false;
             } else {
@@ -295,6 +400,13 @@ public class ConfigurationDownloader {
         return true;
     }
 
+    private String getExistingHash(Path file, DigestAlgorithm algorithm) throws Exception {
+        if (digestIndex != null) {
+            return digestIndex.getDigest(file, algorithm);
+        }
+        return Files.exists(file) ? encodeBase64(hash(file, algorithm)) : null;
+    }
+
     private LocationVersionResolver locationVersionResolver(ConfigurationLocation location) {
         if (configurationVersion == null) {
             return LocationVersionResolver.range(location,
@@ -309,21 +421,48 @@ public class ConfigurationDownloader {
         return this.locationVersionResolver(location).toVersionedLocation();
     }
 
-    byte[] downloadContent(ConfigurationLocation location, ConfigurationFile file) throws Exception {
+    Path downloadContent(ConfigurationLocation location, ConfigurationFile file) throws Exception {
         URLConnection connection = getDownloadURLConnection(getDownloadURL(location, file));
         log.info("Downloading content from {}", connection.getURL());
         try (InputStream in = connection.getInputStream()) {
-            return IOUtils.toByteArray(in);
+            return saveContent(in, file);
         }
     }
 
-    void verifyContent(byte[] content, ConfigurationFile file) throws Exception {
-        log.trace("verifyContent({}, {})", file.getHash(), file.getHashAlgorithmId());
+    /**
+     * Writes the content into a temporary file next to the destination file, hashing it on the way,
+     * and verifies the hash.
+     *
+     * @param in the content
+     * @param file the configuration file
+     * @return the temporary file
+     * @throws Exception if writing the content fails or the hash does not match
+     */
+    Path saveContent(InputStream in, ConfigurationFile file) throws Exception {
+        Path directory = fileNameProvider.getFileName(file).toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        // the suffix keeps the partial file out of the configuration files listed during the download
+        Path tempFile = DefaultFilepaths.createTempFile(directory, "conf", ConfigurationDirectory.TEMP_FILE_SUFFIX);
 
-        DigestCalculator dc = createDigestCalculator(file.getHashAlgorithmId());
-        dc.getOutputStream().write(content);
+        try {
+            DigestCalculator dc = createDigestCalculator(file.getHashAlgorithmId());
+            try (FileChannel channel = FileChannel.open(tempFile, WRITE)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                IOUtils.copy(in, new TeeOutputStream(out, dc.getOutputStream()));
+                channel.force(true);
+            }
+
+            verifyContent(dc.getDigest(), file);
+            return tempFile;
+        } catch (Exception e) {
+            deleteContent(tempFile);
+            throw e;
+        }
+    }
+
+    void verifyContent(byte[] hash, ConfigurationFile file) throws Exception {
+        log.trace("verifyContent({}, {})", file.getHash(), file.getHashAlgorithmId());
 
-        byte[] hash = dc.getDigest();
         if (!Arrays.equals(hash, decodeBase64(file.getHash()))) {
             log.trace("Content {} hash {} does not match expected hash {}", file, encodeBase64(hash), file.getHash());
             throw new CodedException(X_IO_ERROR, "Failed to verify content integrity (%s)", file);
@@ -334,10 +473,14 @@ public class ConfigurationDownloader {
         //make possible with current structure to be overridden and validations called
     }
 
-    void persistContent(byte[] content, Path destination, ConfigurationFile file) throws Exception {
+    void persistContent(Path content, Path destination, ConfigurationFile file) throws Exception {
         log.info("Saving {} to {}", file, destination);
 
         ConfigurationDirectory.save(destination, content, file.getMetadata());
+
+        if (digestIndex != null) {
+            digestIndex.putDigest(destination, file.getHashAlgorithmId(), file.getHash());
+        }
     }
 
     void updateExpirationDate(Path destination, ConfigurationFile file) throws Exception {
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+import ee.ria.xroad.common.util.AtomicSave;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
+
+/**
+ * Persisted index of the digests of the downloaded configuration files, so that the files do not have
+ * to be hashed on every download to find out whether they have changed. An index entry is used only
+ * while the size and the modification time of the file are the same as when the entry was recorded,
+ * otherwise the file is hashed again.
+ * <p>
+ * The index file is a properties file mapping the file paths to "size;modification time;hash algorithm;hash".
+ */
+@Slf4j
+final class DigestIndex {
+
+    private static final String SEPARATOR = ";";
+
+    private final Path indexFile;
+    private final Map<Path, Entry> entries = new HashMap<>();
+
+    private boolean loaded;
+    private boolean changed;
+
+    DigestIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Returns the base64 encoded digest of the file. The file is hashed only if the index does not contain
+     * a valid entry for it.
+     * @param file the file
+     * @param algorithm the hash algorithm
+     * @return the digest or null if the file does not exist
+     * @throws Exception if hashing the file fails
+     */
+    synchronized String getDigest(Path file, DigestAlgorithm algorithm) throws Exception {
+        load();
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        Entry entry = entries.get(key(file));
+        if (entry != null && entry.matches(attributes, algorithm)) {
+            return entry.digest();
+        }
+
+        log.trace("Hashing {}", file);
+        String digest = encodeBase64(ConfigurationDownloader.hash(file, algorithm));
+        put(file, attributes, algorithm, digest);
+        return digest;
+    }
+
+    /**
+     * Records the digest of a file that has just been written.
+     * @param file the file
+     * @param algorithm the hash algorithm
+     * @param digest the base64 encoded digest
+     * @throws IOException if reading the file attributes fails
+     */
+    synchronized void putDigest(Path file, DigestAlgorithm algorithm, String digest) throws IOException {
+        load();
+        put(file, Files.readAttributes(file, BasicFileAttributes.class), algorithm, digest);
+    }
+
+    /**
+     * Saves the index if it has changed. Entries of the files that no longer exist are dropped.
+     * @throws Exception if saving fails
+     */
+    synchronized void save() throws Exception {
+        if (!changed) {
+            return;
+        }
+
+        entries.keySet().removeIf(file -> !Files.exists(file));
+
+        Properties properties = new Properties();
+        entries.forEach((file, entry) -> properties.setProperty(file.toString(), entry.toString()));
+
+        Files.createDirectories(indexFile.getParent());
+        AtomicSave.execute(indexFile.toString(), "digests", out -> properties.store(out, null));
+        changed = false;
+    }
+
+    private void put(Path file, BasicFileAttributes attributes, DigestAlgorithm algorithm, String digest) {
+        entries.put(key(file), new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                algorithm.uri(), digest));
+        changed = true;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(indexFile)) {
+            properties.load(in);
+        } catch (Exception e) {
+            log.warn("Failed to read digest index {}, files will be hashed again", indexFile, e);
+            return;
+        }
+
+        properties.forEach((file, value) -> {
+            Entry entry = Entry.parse((String) value);
+            if (entry != null) {
+                entries.put(Path.of((String) file), entry);
+            }
+        });
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    private record Entry(long size, long lastModified, String algorithmUri, String digest) {
+
+        boolean matches(BasicFileAttributes attributes, DigestAlgorithm algorithm) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && algorithmUri.equals(algorithm.uri());
+        }
+
+        static Entry parse(String value) {
+            String[] parts = value.split(SEPARATOR);
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.join(SEPARATOR, String.valueOf(size), String.valueOf(lastModified), algorithmUri, digest);
+        }
+    }
+}
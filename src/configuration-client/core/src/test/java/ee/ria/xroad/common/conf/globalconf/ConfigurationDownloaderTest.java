@@ -26,6 +26,8 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+import ee.ria.xroad.common.util.MimeUtils;
 
 import lombok.Getter;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
@@ -34,20 +36,34 @@ import org.hamcrest.Matcher;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -136,6 +152,81 @@ class ConfigurationDownloaderTest {
         assertThat(connection.getHostnameVerifier()).isNotInstanceOf(NoopHostnameVerifier.class);
     }
 
+    /**
+     * A downloader with its own file name provider (as used for validating configuration) keeps the downloaded
+     * and persisted files in the directory of the provider and does not keep a digest index.
+     */
+    @Test
+    void downloaderWithFileNameProviderKeepsFilesInItsDirectory(@TempDir Path tempDir) throws Exception {
+        Path confDir = tempDir.resolve("conf");
+        var downloader = new ConfigurationDownloader(new FileNameProviderImpl(confDir.toString()));
+
+        byte[] content = "shared parameters".getBytes(StandardCharsets.UTF_8);
+        ConfigurationFile file = ConfigurationFile.of(Map.of(
+                        MimeUtils.HEADER_CONTENT_LOCATION, "/V3/20240101/shared-params.xml",
+                        MimeUtils.HEADER_HASH_ALGORITHM_ID, DigestAlgorithm.SHA512.uri(),
+                        MimeUtils.HEADER_CONTENT_IDENTIFIER, "SHARED-PARAMETERS; instance=\"EE\""),
+                OffsetDateTime.now().plusDays(1), "3",
+                encodeBase64(MessageDigest.getInstance(DigestAlgorithm.SHA512.name()).digest(content)));
+
+        Path destination = confDir.resolve("EE").resolve(ConfigurationConstants.FILE_NAME_SHARED_PARAMETERS);
+        Path downloaded = downloader.saveContent(new ByteArrayInputStream(content), file);
+        assertEquals(destination.getParent(), downloaded.getParent());
+
+        downloader.persistContent(downloaded, destination, file);
+        assertFalse(downloader.shouldDownload(file, destination));
+
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertTrue(files.allMatch(f -> f.startsWith(confDir) || f.equals(tempDir)));
+        }
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertTrue(files.noneMatch(f -> f.endsWith(ConfigurationDirectory.DIGEST_INDEX_FILE)));
+        }
+    }
+
+    /**
+     * Listing the configuration files while a file is being downloaded does not see the partial download,
+     * which has no metadata yet.
+     */
+    @Test
+    void downloadInProgressIsNotListedAsConfigurationFile(@TempDir Path tempDir) throws Exception {
+        Path confDir = tempDir.resolve("conf");
+        Files.createDirectories(confDir);
+        Files.writeString(confDir.resolve(ConfigurationDirectory.INSTANCE_IDENTIFIER_FILE), "EE");
+        var downloader = new ConfigurationDownloader(new FileNameProviderImpl(confDir.toString()));
+
+        byte[] content = "shared parameters".getBytes(StandardCharsets.UTF_8);
+        ConfigurationFile file = ConfigurationFile.of(Map.of(
+                        MimeUtils.HEADER_CONTENT_LOCATION, "/V3/20240101/shared-params.xml",
+                        MimeUtils.HEADER_HASH_ALGORITHM_ID, DigestAlgorithm.SHA512.uri(),
+                        MimeUtils.HEADER_CONTENT_IDENTIFIER, "SHARED-PARAMETERS; instance=\"EE\""),
+                OffsetDateTime.now().plusDays(1), "3",
+                encodeBase64(MessageDigest.getInstance(DigestAlgorithm.SHA512.name()).digest(content)));
+
+        List<Path> partialFiles = new ArrayList<>();
+        AtomicInteger listedFiles = new AtomicInteger();
+        InputStream download = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0 && partialFiles.isEmpty()) {
+                    // the first chunk has been received, the rest of the download is still pending
+                    try (Stream<Path> files = Files.walk(confDir.resolve("EE"))) {
+                        partialFiles.addAll(files.filter(Files::isRegularFile).toList());
+                    }
+                    new VersionedConfigurationDirectory(confDir.toString())
+                            .eachFile((metadata, in) -> listedFiles.incrementAndGet());
+                }
+                return count;
+            }
+        };
+
+        Path downloaded = downloader.saveContent(download, file);
+
+        assertEquals(List.of(downloaded), partialFiles);
+        assertEquals(0, listedFiles.get());
+    }
+
     private void resetParser(ConfigurationDownloader downloader) {
         getParser(downloader).reset();
     }
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ee.ria.xroad.common.util.EncoderUtils.encodeBase64;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DigestIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void digestIsPersisted() throws Exception {
+        Path indexFile = tempDir.resolve(ConfigurationDirectory.DIGEST_INDEX_FILE);
+        Path file = Files.writeString(tempDir.resolve("shared-params.xml"), "content");
+
+        DigestIndex index = new DigestIndex(indexFile);
+        index.putDigest(file, DigestAlgorithm.SHA512, "recorded");
+        index.save();
+
+        // the recorded digest is used as long as the file has not changed
+        assertEquals("recorded", new DigestIndex(indexFile).getDigest(file, DigestAlgorithm.SHA512));
+    }
+
+    @Test
+    void changedFileIsHashedAgain() throws Exception {
+        Path indexFile = tempDir.resolve(ConfigurationDirectory.DIGEST_INDEX_FILE);
+        Path file = Files.writeString(tempDir.resolve("shared-params.xml"), "content");
+
+        DigestIndex index = new DigestIndex(indexFile);
+        index.putDigest(file, DigestAlgorithm.SHA512, "recorded");
+
+        Files.writeString(file, "changed content");
+
+        assertEquals(encodeBase64(ConfigurationDownloader.hash(file, DigestAlgorithm.SHA512)),
+                index.getDigest(file, DigestAlgorithm.SHA512));
+        assertEquals(encodeBase64(ConfigurationDownloader.hash(file, DigestAlgorithm.SHA256)),
+                index.getDigest(file, DigestAlgorithm.SHA256));
+    }
+
+    @Test
+    void missingFiles() throws Exception {
+        Path indexFile = tempDir.resolve(ConfigurationDirectory.DIGEST_INDEX_FILE);
+        Path file = Files.writeString(tempDir.resolve("shared-params.xml"), "content");
+
+        DigestIndex index = new DigestIndex(indexFile);
+        assertNull(index.getDigest(tempDir.resolve("missing.xml"), DigestAlgorithm.SHA512));
+
+        // nothing has changed, so the index is not written
+        index.save();
+        assertFalse(Files.exists(indexFile));
+
+        index.getDigest(file, DigestAlgorithm.SHA512);
+        Files.delete(file);
+        index.save();
+
+        assertTrue(Files.exists(indexFile));
+        assertNull(new DigestIndex(indexFile).getDigest(file, DigestAlgorithm.SHA512));
+    }
+}
@@ -95,10 +95,12 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
     }
 
     // Queries for operational data are SOAP messages. Errors must be
-    // reported via SOAP faults, not plain HTTP responses.
+    // reported via SOAP faults, not plain HTTP responses. Once a part of
+    // the response has been sent, the response is aborted instead.
     private void handleQueryRequest(Request request,
                                     Response response,
                                     Callback callback) throws IOException {
+        QueryRequestProcessor processor = null;
         try {
             if (!isPostRequest(request)) {
                 throw new CodedException(X_INVALID_HTTP_METHOD,
@@ -116,9 +118,18 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
 
             log.info("Received query request from {}", getRemoteAddr(request));
 
-            new QueryRequestProcessor(globalConfProvider, RequestWrapper.of(request), ResponseWrapper.of(response),
-                    healthMetricRegistry).process();
+            processor = new QueryRequestProcessor(globalConfProvider, RequestWrapper.of(request),
+                    ResponseWrapper.of(response), healthMetricRegistry);
+            processor.process();
         } catch (Throwable t) { // We want to catch serious errors as well
+            if (processor != null && processor.isResponseStarted()) {
+                log.error("Error while sending query response, aborting the response", t);
+
+                callback.failed(t);
+
+                return;
+            }
+
             log.error("Error while handling query request", t);
 
             sendErrorResponse(request, response, callback, translateWithPrefix(
@@ -34,10 +34,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.MONITORING_DATA_TS;
@@ -56,6 +59,22 @@ final class OperationalDataRecordManager {
 
     private static int configuredBatchSize = 0;
 
+    /**
+     * Handles the result of an operational data query. The records are read from the database
+     * while the stream is consumed, so they must be consumed within the handler.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    interface QueryResultHandler<T> {
+        /**
+         * @param nextRecordsFrom indicates queried records overflow if not null
+         * @param records         the records in the ascending order of monitoring data timestamps
+         * @return the result
+         * @throws Exception if an error occurs
+         */
+        T handle(Long nextRecordsFrom, Stream<OperationalDataRecord> records) throws Exception;
+    }
+
     private OperationalDataRecordManager() {
     }
 
@@ -79,12 +98,20 @@ final class OperationalDataRecordManager {
     static OperationalDataRecords queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
                                                ClientId serviceProviderFilter,
                                                Set<String> outputFields) throws Exception {
-        OperationalDataRecords records = doInTransaction(session -> queryOperationalDataInTransaction(session,
-                recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields));
-
-        removeMonitoringDataTsIfNotSpecified(records, outputFields);
+        return queryRecords(recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields,
+                (nextRecordsFrom, stream) -> {
+                    OperationalDataRecords records = new OperationalDataRecords(
+                            stream.collect(Collectors.toCollection(ArrayList::new)));
+                    records.setNextRecordsFrom(nextRecordsFrom);
+
+                    return records;
+                });
+    }
 
-        return records;
+    static <T> T queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter, ClientId serviceProviderFilter,
+                              Set<String> outputFields, QueryResultHandler<T> handler) throws Exception {
+        return doInTransaction(session -> queryOperationalDataInTransaction(session,
+                recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields, handler));
     }
 
     private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
@@ -123,56 +150,64 @@ final class OperationalDataRecordManager {
      * Queries operational data records from the database using search criteria parameters. The number of returned
      * records is limited by the configured value maxRecordsInPayload plus overflow records with the same
      * monitorindDataTs timestamp as the last included record.
+     * <p>
+     * The bounds of the result are determined first, so that the records can be handed to the result handler
+     * as a stream that is read from the database while it is consumed. The records are not counted separately,
+     * as a count query could see a different set of records than the stream.
      * @param session               database session
      * @param recordsFrom           records from timestamp seconds
      * @param recordsTo             records to timestamp seconds
      * @param clientFilter          filter records by client (if not null)
      * @param serviceProviderFilter filter records by service provider (if not null)
      * @param outputFields          list of the requested operational data field
-     * @return operational data records.
+     * @param handler               handler of the query result
+     * @return the result of the handler
      */
-    @SuppressWarnings("unchecked")
-    private static OperationalDataRecords queryOperationalDataInTransaction(Session session, long recordsFrom,
-                                                                            long recordsTo, ClientId clientFilter,
-                                                                            ClientId serviceProviderFilter,
-                                                                            Set<String> outputFields) {
-
-        final OperationalDataRecordQuery
-                query = new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
-        query.between(recordsFrom, recordsTo);
-        query.orderByAsc(MONITORING_DATA_TS);
-        query.setMaxRecords(maxRecordsInPayload);
-        OperationalDataRecords records = new OperationalDataRecords(query.list());
+    private static <T> T queryOperationalDataInTransaction(Session session, long recordsFrom, long recordsTo,
+                                                           ClientId clientFilter, ClientId serviceProviderFilter,
+                                                           Set<String> outputFields, QueryResultHandler<T> handler)
+            throws Exception {
+        long lastRecordsTo = recordsTo;
+        Long nextRecordsFrom = null;
+
+        final OperationalDataRecordQuery limit =
+                new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
+        limit.between(recordsFrom, recordsTo);
+        Long lastMonitoringDataTs = limit.getMonitoringDataTsAt(maxRecordsInPayload - 1);
 
         // Check overflow.
-        if (records.size() == maxRecordsInPayload) {
+        if (lastMonitoringDataTs != null) {
             log.trace("Check possible records overflow");
 
-            long lastMonitoringDataTs = records.getLastMonitoringDataTs();
-            final OperationalDataRecordQuery overflow =
-                    new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
-            overflow.addOverflowCriteria(lastMonitoringDataTs);
-            OperationalDataRecords overflowRecords = new OperationalDataRecords(overflow.list());
-
-            records.removeRecordsByMonitoringDataTs(lastMonitoringDataTs);
-            records.append(overflowRecords);
+            // include all the records with the same timestamp as the last record that fits into the limit
+            lastRecordsTo = lastMonitoringDataTs;
 
             if (recordsOverflow(session, lastMonitoringDataTs, recordsTo, clientFilter, serviceProviderFilter)) {
                 log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
 
-                records.setNextRecordsFrom(lastMonitoringDataTs + 1);
+                nextRecordsFrom = lastMonitoringDataTs + 1;
             }
         }
 
-        return records;
-    }
+        final OperationalDataRecordQuery query =
+                new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
+        query.between(recordsFrom, lastRecordsTo);
+        query.orderByAsc(MONITORING_DATA_TS);
 
-    private static void removeMonitoringDataTsIfNotSpecified(OperationalDataRecords records, Set<String> outputFields) {
-        if (!outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS)) {
-            records.getRecords().forEach(i -> i.setMonitoringDataTs(null));
+        boolean hideMonitoringDataTs = !outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS);
+
+        try (Stream<OperationalDataRecord> records = query.stream()) {
+            return handler.handle(nextRecordsFrom,
+                    hideMonitoringDataTs ? records.map(OperationalDataRecordManager::removeMonitoringDataTs) : records);
         }
     }
 
+    private static OperationalDataRecord removeMonitoringDataTs(OperationalDataRecord record) {
+        record.setMonitoringDataTs(null);
+
+        return record;
+    }
+
     private static boolean recordsOverflow(Session session, long lastMonitoringDataTs, long recordsTo,
                                            ClientId clientFilter, ClientId serviceProviderFilter) {
         // Indicate overflow only if some records are not included.
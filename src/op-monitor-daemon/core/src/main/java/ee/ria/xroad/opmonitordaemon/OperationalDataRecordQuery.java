@@ -47,6 +47,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CLASS;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CODE;
@@ -64,6 +65,9 @@ import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.PUBLI
 @SuppressWarnings("checkstyle:magicnumber")
 final class OperationalDataRecordQuery {
 
+    // by default, PostgreSQL fetches the whole result set
+    private static final int FETCH_SIZE = 500;
+
     private final CriteriaBuilder cb;
     private final CriteriaQuery<Tuple> query;
     private final Root<OperationalDataRecord> from;
@@ -150,10 +154,6 @@ final class OperationalDataRecordQuery {
                         member.getSubsystemCode()));
     }
 
-    void addOverflowCriteria(long monitoringDataTs) {
-        pred = cb.and(pred, cb.equal(from.get(MONITORING_DATA_TS), monitoringDataTs));
-    }
-
     List<OperationalDataRecord> list() {
         query.multiselect(projection).where(pred);
         if (order != null) {
@@ -165,6 +165,40 @@ final class OperationalDataRecordQuery {
                 .getResultList());
     }
 
+    /**
+     * Returns the records one by one as they are read from the database. The stream must be closed
+     * and consumed within the transaction.
+     */
+    Stream<OperationalDataRecord> stream() {
+        query.multiselect(projection).where(pred);
+        if (order != null) {
+            query.orderBy(order);
+        }
+        return session.createQuery(query)
+                .setReadOnly(true)
+                .setMaxResults(maxRecords)
+                .setFetchSize(FETCH_SIZE)
+                .getResultStream()
+                .map(OperationalDataRecordQuery::transform);
+    }
+
+    /**
+     * @param position position of the record in the ascending order of monitoring data timestamps
+     * @return the monitoring data timestamp of the record at the given position or null if there are
+     * not that many records
+     */
+    Long getMonitoringDataTsAt(int position) {
+        query.multiselect(from.get(MONITORING_DATA_TS)).where(pred).orderBy(cb.asc(from.get(MONITORING_DATA_TS)));
+        return session.createQuery(query)
+                .setReadOnly(true)
+                .setFirstResult(position)
+                .setMaxResults(1)
+                .getResultStream()
+                .findFirst()
+                .map(t -> t.get(0, Long.class))
+                .orElse(null);
+    }
+
     void between(long fromTs, long toTs) {
         pred = cb.and(pred, cb.between(from.get(MONITORING_DATA_TS), fromTs, toTs));
     }
@@ -186,20 +220,24 @@ final class OperationalDataRecordQuery {
         List<OperationalDataRecord> tmp = new ArrayList<>(result.size());
 
         for (Tuple t : result) {
-            final OperationalDataRecord record = new OperationalDataRecord();
-            for (TupleElement<?> te : t.getElements()) {
-                final Method method = SETTERS.get(te.getAlias());
-                if (method != null) {
-                    try {
-                        method.invoke(record, t.get(te));
-                    } catch (InvocationTargetException | IllegalAccessException e) {
-                        throw new IllegalArgumentException("Unable to transform", e);
-                    }
+            tmp.add(transform(t));
+        }
+        return tmp;
+    }
+
+    private static OperationalDataRecord transform(Tuple t) {
+        final OperationalDataRecord record = new OperationalDataRecord();
+        for (TupleElement<?> te : t.getElements()) {
+            final Method method = SETTERS.get(te.getAlias());
+            if (method != null) {
+                try {
+                    method.invoke(record, t.get(te));
+                } catch (InvocationTargetException | IllegalAccessException e) {
+                    throw new IllegalArgumentException("Unable to transform", e);
                 }
             }
-            tmp.add(record);
         }
-        return tmp;
+        return record;
     }
 
     /*
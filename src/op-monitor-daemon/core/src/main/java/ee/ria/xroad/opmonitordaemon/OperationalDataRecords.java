@@ -64,18 +64,6 @@ class OperationalDataRecords {
         return records.size();
     }
 
-    void append(OperationalDataRecords operationalDataRecords) {
-        records.addAll(operationalDataRecords.getRecords());
-    }
-
-    void removeRecordsByMonitoringDataTs(long monitoringDataTs) {
-        records.removeIf(i -> i.getMonitoringDataTs() == monitoringDataTs);
-    }
-
-    Long getLastMonitoringDataTs() {
-        return records.isEmpty() ? null : records.getLast().getMonitoringDataTs();
-    }
-
     String getPayload(ObjectWriter objectWriter) throws JsonProcessingException {
         return objectWriter.writeValueAsString(this);
     }
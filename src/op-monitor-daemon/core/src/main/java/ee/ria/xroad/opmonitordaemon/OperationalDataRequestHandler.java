@@ -30,15 +30,18 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.message.MultipartSoapMessageEncoder;
-import ee.ria.xroad.common.message.SoapMessageEncoder;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataType;
 import ee.ria.xroad.opmonitordaemon.message.SearchCriteriaType;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.Marshaller;
 import lombok.RequiredArgsConstructor;
@@ -50,6 +53,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -70,6 +75,20 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
 
     protected static final String CID = "operational-monitoring-data.json.gz";
 
+    // the records are flushed by the GZIP stream, not after each record
+    private static final ObjectWriter RECORD_WRITER =
+            OBJECT_WRITER.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    /**
+     * Writes the operational data response. The records attachment of the
+     * response can only be written within this callback.
+     */
+    @FunctionalInterface
+    interface OperationalDataResponseWriter {
+        void write(GetSecurityServerOperationalDataResponseType response)
+                throws Exception;
+    }
+
     @Override
     public void handle(SoapMessageImpl requestSoap, OutputStream out,
                        Consumer<String> contentTypeCallback) throws Exception {
@@ -101,25 +120,30 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 clientId, recordsFrom, recordsTo, serviceProviderId,
                 outputFields);
 
-        GetSecurityServerOperationalDataResponseType opDataResponse =
-                buildOperationalDataResponse(
-                        getClientForFilter(clientId, serverId), recordsFrom,
-                        recordsTo, serviceProviderId, outputFields,
-                        recordsAvailableBefore);
-
-        try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
-            contentTypeCallback.accept(responseEncoder.getContentType());
-
-            SoapEncoderAttachmentMarshaller attachmentMarshaller =
-                    new SoapEncoderAttachmentMarshaller(responseEncoder);
-            Marshaller marshaller = createMarshaller(attachmentMarshaller);
-
-            SoapMessageImpl response = createResponse(requestSoap, marshaller,
-                    createResponseElement(opDataResponse));
-            responseEncoder.soap(response, new HashMap<>());
-
-            attachmentMarshaller.encodeAttachments();
-        }
+        // The records are read from the database before anything is
+        // written, so a failed query is still reported as a SOAP fault.
+        buildOperationalDataResponse(getClientForFilter(clientId, serverId),
+                recordsFrom, recordsTo, serviceProviderId, outputFields,
+                recordsAvailableBefore, opDataResponse -> {
+                    try (MultipartSoapMessageEncoder responseEncoder =
+                                 new MultipartSoapMessageEncoder(out)) {
+                        contentTypeCallback.accept(
+                                responseEncoder.getContentType());
+
+                        SoapEncoderAttachmentMarshaller attachmentMarshaller =
+                                new SoapEncoderAttachmentMarshaller(
+                                        responseEncoder);
+                        Marshaller marshaller =
+                                createMarshaller(attachmentMarshaller);
+
+                        SoapMessageImpl response = createResponse(requestSoap,
+                                marshaller,
+                                createResponseElement(opDataResponse));
+                        responseEncoder.soap(response, new HashMap<>());
+
+                        attachmentMarshaller.encodeAttachments();
+                    }
+                });
     }
 
     static void checkTimestamps(long recordsFrom, long recordsTo,
@@ -159,17 +183,15 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
         }
     }
 
-    protected GetSecurityServerOperationalDataResponseType buildOperationalDataResponse(
+    protected void buildOperationalDataResponse(
             ClientId filterByClient,
             long recordsFrom,
             long recordsTo,
             ClientId filterByServiceProvider,
             Set<String> outputFields,
-            long recordsAvailableBefore) throws IOException {
-        OperationalDataRecords responseRecords;
-        GetSecurityServerOperationalDataResponseType opDataResponse =
-                OBJECT_FACTORY
-                        .createGetSecurityServerOperationalDataResponseType();
+            long recordsAvailableBefore,
+            OperationalDataResponseWriter responseWriter) throws Exception {
+        Long availableRecordsFrom = null;
 
         if (recordsTo >= recordsAvailableBefore) {
             log.debug("recordsTo({}) >= recordsAvailableBefore({}),"
@@ -177,29 +199,66 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                     recordsAvailableBefore, recordsAvailableBefore);
 
             recordsTo = recordsAvailableBefore - 1;
-
-            opDataResponse.setNextRecordsFrom(recordsAvailableBefore);
+            availableRecordsFrom = recordsAvailableBefore;
         }
 
-        responseRecords = getOperationalDataRecords(filterByClient,
-                recordsFrom, recordsTo, filterByServiceProvider, outputFields);
-
-        opDataResponse.setRecordsCount(responseRecords.size());
-        String payload = responseRecords.getPayload(OBJECT_WRITER);
+        // The payload is written within the query transaction and the
+        // records are counted while they are written, so the count always
+        // matches the payload. The payload is cached, so the transaction is
+        // not kept open while the response is sent.
+        CachingStream payload = new CachingStream();
+        try {
+            RecordsPayload result = getOperationalDataRecords(filterByClient,
+                    recordsFrom, recordsTo, filterByServiceProvider,
+                    outputFields, (nextRecordsFrom, records) ->
+                            new RecordsPayload(writeRecords(records, payload),
+                                    nextRecordsFrom));
+
+            GetSecurityServerOperationalDataResponseType opDataResponse =
+                    OBJECT_FACTORY
+                            .createGetSecurityServerOperationalDataResponseType();
+
+            opDataResponse.setRecordsCount(
+                    Math.toIntExact(result.recordsCount()));
+            opDataResponse.setRecords(createStreamingAttachment(
+                    out -> payload.getCachedContents().transferTo(out),
+                    CID, MimeTypes.GZIP));
+            opDataResponse.setNextRecordsFrom(result.nextRecordsFrom() != null
+                    ? result.nextRecordsFrom() : availableRecordsFrom);
+
+            responseWriter.write(opDataResponse);
+        } finally {
+            payload.consume();
+        }
+    }
 
-        // Optimize memory usage: release records memory before compressing
-        // operation.
-        responseRecords.getRecords().clear();
+    private record RecordsPayload(long recordsCount, Long nextRecordsFrom) {
+    }
 
-        opDataResponse.setRecords(createAttachmentDataSource(compress(payload),
-                CID, MimeTypes.GZIP));
+    /**
+     * Writes the records as gzipped JSON payload one record at a time.
+     * @return the number of records written
+     */
+    private static long writeRecords(Stream<OperationalDataRecord> records,
+                                     OutputStream out) throws IOException {
+        long written = 0;
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out);
+             JsonGenerator generator = RECORD_WRITER.createGenerator(gzip)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("records");
+
+            for (OperationalDataRecord record
+                    : (Iterable<OperationalDataRecord>) records::iterator) {
+                RECORD_WRITER.writeValue(generator, record);
+                written++;
+            }
 
-        if (responseRecords.getNextRecordsFrom() != null) {
-            opDataResponse.setNextRecordsFrom(
-                    responseRecords.getNextRecordsFrom());
+            generator.writeEndArray();
+            generator.writeEndObject();
         }
 
-        return opDataResponse;
+        return written;
     }
 
     private static JAXBElement<?> createResponseElement(
@@ -208,13 +267,17 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 opDataResponse);
     }
 
-    protected OperationalDataRecords getOperationalDataRecords(
+    protected <T> T getOperationalDataRecords(
             ClientId filterByClient, long recordsFrom, long recordsTo,
-            ClientId filterByServiceProvider, Set<String> outputFields) {
+            ClientId filterByServiceProvider, Set<String> outputFields,
+            OperationalDataRecordManager.QueryResultHandler<T> handler)
+            throws Exception {
         try {
             return OperationalDataRecordManager.queryRecords(recordsFrom,
                     recordsTo, filterByClient, filterByServiceProvider,
-                    outputFields);
+                    outputFields, handler);
+        } catch (CodedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to get records for response", e);
 
@@ -27,7 +27,7 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.message.JaxbUtils;
-import ee.ria.xroad.common.message.SoapMessageEncoder;
+import ee.ria.xroad.common.message.MultipartSoapMessageEncoder;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.message.SoapUtils;
 import ee.ria.xroad.common.util.JsonUtils;
@@ -35,7 +35,6 @@ import ee.ria.xroad.common.util.ResourceUtils;
 import ee.ria.xroad.opmonitordaemon.message.ObjectFactory;
 
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.sun.istack.ByteArrayDataSource;
 import jakarta.activation.DataHandler;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBElement;
@@ -47,7 +46,7 @@ import jakarta.xml.bind.ValidationEvent;
 import jakarta.xml.bind.attachment.AttachmentMarshaller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.function.IOConsumer;
 import org.apache.commons.lang3.StringUtils;
 import org.glassfish.jaxb.runtime.api.AccessorException;
 import org.xml.sax.SAXException;
@@ -58,12 +57,10 @@ import javax.xml.validation.SchemaFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.function.Consumer;
-import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -179,27 +176,24 @@ abstract class QueryRequestHandler {
         return marshaller;
     }
 
-    static DataHandler createAttachmentDataSource(
-            byte[] payload, String cid, String contentType) {
-        return new DataHandler(new ByteArrayDataSource(payload, contentType)) {
+    /**
+     * Creates an attachment whose content is produced by the given writer
+     * only when the attachment is encoded into the response, so the content
+     * does not have to be held in memory.
+     */
+    static DataHandler createStreamingAttachment(
+            IOConsumer<OutputStream> writer, String cid, String contentType) {
+        return new DataHandler(writer, contentType) {
             @Override
             public String getName() {
                 return cid;
             }
-        };
-    }
-
-    static byte[] compress(String data) throws IOException {
-        byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
 
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(
-                dataBytes.length)) {
-            GZIPOutputStream gzip = new GZIPOutputStream(bos);
-            gzip.write(dataBytes);
-            gzip.close();
-
-            return bos.toByteArray();
-        }
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                writer.accept(os);
+            }
+        };
     }
 
     private static Map<String, String> getAdditionalAttachmentHeaders(
@@ -217,15 +211,17 @@ abstract class QueryRequestHandler {
             extends AttachmentMarshaller {
         private static final String CID_PREFIX = "cid:";
 
-        private final SoapMessageEncoder responseEncoder;
+        private final MultipartSoapMessageEncoder responseEncoder;
 
         private final Map<String, DataHandler> attachments = new HashMap<>();
 
         void encodeAttachments() throws Exception {
             for (Map.Entry<String, DataHandler> attach : attachments.entrySet()) {
-                responseEncoder.attachment(attach.getValue().getContentType(),
-                        attach.getValue().getInputStream(),
-                        getAdditionalAttachmentHeaders(attach.getKey()));
+                try (OutputStream out = responseEncoder.startAttachment(
+                        attach.getValue().getContentType(),
+                        getAdditionalAttachmentHeaders(attach.getKey()))) {
+                    attach.getValue().writeTo(out);
+                }
             }
         }
 
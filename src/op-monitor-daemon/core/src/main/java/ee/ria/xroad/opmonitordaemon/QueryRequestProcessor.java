@@ -38,6 +38,7 @@ import ee.ria.xroad.common.util.ResponseWrapper;
 
 import com.codahale.metrics.MetricRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CountingOutputStream;
 
 import java.io.InputStream;
 import java.util.Map;
@@ -66,6 +67,8 @@ class QueryRequestProcessor {
     private final OperationalDataRequestHandler operationalDataHandler;
     private final HealthDataRequestHandler healthDataHandler;
 
+    private CountingOutputStream responseOut;
+
     QueryRequestProcessor(GlobalConfProvider globalConfProvider,
                           RequestWrapper request,
                           ResponseWrapper response,
@@ -107,23 +110,27 @@ class QueryRequestProcessor {
 
             response.putHeader("Connection", "close");
 
-            try (var responseOut = response.getOutputStream()) {
-                switch (requestSoap.getService().getServiceCode()) {
-                    case GET_SECURITY_SERVER_OPERATIONAL_DATA:
-                        operationalDataHandler.handle(requestSoap,
-                                responseOut,
-                                responseContentTypeAssigner());
-                        break;
-                    case GET_SECURITY_SERVER_HEALTH_DATA:
-                        healthDataHandler.handle(requestSoap,
-                                responseOut,
-                                responseContentTypeAssigner());
-                        break;
-                    default:
-                        throw new CodedException(ErrorCodes.X_INTERNAL_ERROR,
-                                "Unknown service: '%s'", requestSoap.getService());
-                }
+            responseOut = new CountingOutputStream(response.getOutputStream());
+
+            switch (requestSoap.getService().getServiceCode()) {
+                case GET_SECURITY_SERVER_OPERATIONAL_DATA:
+                    operationalDataHandler.handle(requestSoap,
+                            responseOut,
+                            responseContentTypeAssigner());
+                    break;
+                case GET_SECURITY_SERVER_HEALTH_DATA:
+                    healthDataHandler.handle(requestSoap,
+                            responseOut,
+                            responseContentTypeAssigner());
+                    break;
+                default:
+                    throw new CodedException(ErrorCodes.X_INTERNAL_ERROR,
+                            "Unknown service: '%s'", requestSoap.getService());
             }
+
+            // Closing the stream completes the response, so it is closed
+            // only when the whole response has been written.
+            responseOut.close();
         }
 
         @Override
@@ -150,6 +157,14 @@ class QueryRequestProcessor {
         }
     }
 
+    /**
+     * @return true if a part of the response has already been written, in
+     * which case an error can no longer be reported with a SOAP fault
+     */
+    boolean isResponseStarted() {
+        return responseOut != null && responseOut.getByteCount() > 0;
+    }
+
     private Consumer<String> responseContentTypeAssigner() {
         return response::setContentType;
     }
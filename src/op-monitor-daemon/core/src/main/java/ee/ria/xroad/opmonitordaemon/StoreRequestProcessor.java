@@ -29,12 +29,11 @@ import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.RequestWrapper;
 
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.util.List;
 
 import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
@@ -45,7 +44,8 @@ import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 @Slf4j
 class StoreRequestProcessor {
 
-    private static final ObjectReader OBJECT_READER = JsonUtils.getObjectReader();
+    private static final ObjectReader OBJECT_READER =
+            JsonUtils.getObjectReader().forType(OperationalDataRecords.class);
 
     /**
      * The servlet request.
@@ -66,16 +66,17 @@ class StoreRequestProcessor {
     /**
      * Processes the incoming message: stores the data and updates the related
      * statistics.
+     * <p>
+     * The parsed records are kept in memory until they have been stored: they are stored in one transaction,
+     * and the health data is updated only after the commit, so that a batch the sender retries after a failed
+     * store is not counted twice. A request holds at most the sender's op-monitor-buffer.max-records-in-message
+     * records.
      *
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(request.getInputStream(),
-                StandardCharsets.UTF_8);
-
-        log.trace("Incoming JSON: {}", rawJson);
-
-        List<OperationalDataRecord> records = prepareRawStoreData(rawJson);
+        List<OperationalDataRecord> records =
+                prepareRawStoreData(request.getInputStream());
 
         log.debug("Process {} record{}", records.size(),
                 records.size() == 1 ? "" : "s");
@@ -86,22 +87,26 @@ class StoreRequestProcessor {
     }
 
     // Get usable operational data to be stored. If no such data is found,
-    // send an error message right away.
+    // send an error message right away. The records are parsed directly
+    // from the request stream without reading the body into memory first.
     private static List<OperationalDataRecord> prepareRawStoreData(
-            String rawJsonData) throws Exception {
-        if (StringUtils.isBlank(rawJsonData)) {
-            throw new Exception(
-                    "No data was found in the request to store data");
-        }
-
+            InputStream rawJsonData) throws Exception {
         OperationalDataRecords records;
 
-        try {
-            records = OBJECT_READER.readValue(rawJsonData, OperationalDataRecords.class);
+        try (JsonParser parser = OBJECT_READER.createParser(rawJsonData)) {
+            records = parser.nextToken() == null
+                    ? null : OBJECT_READER.readValue(parser);
         } catch (Exception e) {
             throw new Exception("Received invalid request", e);
         }
 
+        if (records == null) {
+            throw new Exception(
+                    "No data was found in the request to store data");
+        }
+
+        log.trace("Incoming records: {}", records);
+
         return records.getRecords();
     }
 
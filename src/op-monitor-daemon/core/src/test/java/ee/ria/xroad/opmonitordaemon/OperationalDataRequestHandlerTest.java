@@ -31,14 +31,23 @@ import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Sets;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
+import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.OBJECT_READER;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecords;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -75,12 +84,42 @@ public class OperationalDataRequestHandlerTest extends BaseTestUsingDB {
                 new OperationalDataRequestHandler(mock(GlobalConfProvider.class));
         long recordsAvailableBefore = TimeUtils.getEpochSecond();
 
-        GetSecurityServerOperationalDataResponseType response = handler
-                .buildOperationalDataResponse(client, 1474968960L,
-                        recordsAvailableBefore + 10, null,
-                        Collections.emptySet(), recordsAvailableBefore);
+        AtomicReference<GetSecurityServerOperationalDataResponseType> response =
+                new AtomicReference<>();
+        handler.buildOperationalDataResponse(client, 1474968960L,
+                recordsAvailableBefore + 10, null, Collections.emptySet(),
+                recordsAvailableBefore, response::set);
 
-        assertNotNull(response.getNextRecordsFrom());
+        assertNotNull(response.get());
+        assertNotNull(response.get().getNextRecordsFrom());
+    }
+
+    @Test
+    public void recordsCountMatchesRecordsInAttachment() throws Exception {
+        final long monitoringDataTs = 1474968100L;
+        storeFullOperationalDataRecords(3, monitoringDataTs);
+
+        OperationalDataRequestHandler handler =
+                new OperationalDataRequestHandler(mock(GlobalConfProvider.class));
+
+        AtomicReference<Integer> recordsCount = new AtomicReference<>();
+        AtomicReference<JsonNode> payload = new AtomicReference<>();
+        handler.buildOperationalDataResponse(null, monitoringDataTs,
+                monitoringDataTs, null, Collections.emptySet(),
+                TimeUtils.getEpochSecond(), response -> {
+                    ByteArrayOutputStream attachment =
+                            new ByteArrayOutputStream();
+                    response.getRecords().writeTo(attachment);
+
+                    recordsCount.set(response.getRecordsCount());
+                    payload.set(OBJECT_READER.readTree(new GZIPInputStream(
+                            new ByteArrayInputStream(
+                                    attachment.toByteArray()))));
+                    assertNull(response.getNextRecordsFrom());
+                });
+
+        assertEquals(Integer.valueOf(3), recordsCount.get());
+        assertEquals(3, payload.get().get("records").size());
     }
 
     @Test
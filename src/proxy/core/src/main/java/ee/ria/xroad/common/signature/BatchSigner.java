@@ -29,19 +29,26 @@ import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.crypto.identifier.SignAlgorithm;
 import ee.ria.xroad.signer.SignerProxy;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.DisposableBean;
 
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -58,7 +65,12 @@ import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
  * <p>
  * Moreover, multiple signing requests for the same signing certificate
  * (and thus the same key id) are signed in batch and the resulting hash
- * chain is produced for each request.
+ * chain is produced for each request. The size of a batch is limited by
+ * {@link SystemProperties#getBatchSignerMaxBatchSize()} and a worker may wait up to
+ * {@link SystemProperties#getBatchSignerMaxWaitMicros()} for the batch to fill up.
+ * Up to {@link SystemProperties#getBatchSignerWorkersPerKey()} batches of the same
+ * key can be in flight at the same time, but no more than the token of the key can
+ * sign concurrently.
  */
 @Slf4j
 public class BatchSigner implements DisposableBean {
@@ -82,7 +94,16 @@ public class BatchSigner implements DisposableBean {
     }
 
     /**
-     * Submits the given signing request for batch signing.
+     * Logs the metrics of the batch signer workers.
+     */
+    public static void logStatistics() {
+        if (instance != null && log.isDebugEnabled()) {
+            instance.workers.values().forEach(worker -> log.debug("{}", worker.getMetrics()));
+        }
+    }
+
+    /**
+     * Submits the given signing request for batch signing and waits for the result.
      *
      * @param keyId                the signing key
      * @param signatureAlgorithmId ID of the signature algorithm to use
@@ -92,6 +113,44 @@ public class BatchSigner implements DisposableBean {
      */
     public static SignatureData sign(String keyId, SignAlgorithm signatureAlgorithmId, SigningRequest request)
             throws Exception {
+        CompletableFuture<SignatureData> completableFuture = submit(keyId, signatureAlgorithmId, request);
+
+        try {
+            return completableFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException timeoutException) {
+            throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
+        }
+    }
+
+    /**
+     * Submits the given signing request for batch signing without blocking the calling thread.
+     * The returned stage is completed by the batch signer worker thread, so dependent stages that
+     * do blocking work should be run on a separate executor. If the signature is not created within
+     * the signer client timeout, the stage completes exceptionally with a {@link CodedException}.
+     *
+     * @param keyId                the signing key
+     * @param signatureAlgorithmId ID of the signature algorithm to use
+     * @param request              the signing request
+     * @return stage that is completed with the signature data
+     */
+    public static CompletionStage<SignatureData> signAsync(String keyId, SignAlgorithm signatureAlgorithmId,
+                                                           SigningRequest request) {
+        CompletableFuture<SignatureData> completableFuture;
+        try {
+            completableFuture = submit(keyId, signatureAlgorithmId, request);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return completableFuture
+                .orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(e instanceof TimeoutException
+                        ? new CodedException(X_INTERNAL_ERROR, "Signature creation timed out")
+                        : e));
+    }
+
+    private static CompletableFuture<SignatureData> submit(String keyId, SignAlgorithm signatureAlgorithmId,
+                                                           SigningRequest request) {
         if (instance == null) {
             throw new IllegalStateException("BatchSigner is not initialized");
         }
@@ -102,11 +161,7 @@ public class BatchSigner implements DisposableBean {
                 keyId, signatureAlgorithmId, request);
         instance.handle(signRequestWrapper);
 
-        try {
-            return completableFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException timeoutException) {
-            throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
-        }
+        return completableFuture;
     }
 
     private void handle(SigningRequestWrapper signRequest) {
@@ -122,7 +177,7 @@ public class BatchSigner implements DisposableBean {
 
             return workers.computeIfAbsent(name, key -> {
                 log.trace("Creating new worker for cert '{}'", name);
-                return new WorkerImpl(signRequest.getKeyId());
+                return new WorkerImpl(name, signRequest.getKeyId());
             });
         } catch (Exception e) {
             throw new RuntimeException("Unable to get worker", e);
@@ -130,30 +185,103 @@ public class BatchSigner implements DisposableBean {
     }
 
     /**
-     * This is the worker that does the heavy lifting.
+     * Creates the signature value of a digest with the given key.
      */
-    private static class WorkerImpl {
+    @FunctionalInterface
+    interface KeySigner {
+        byte[] sign(String keyId, SignAlgorithm signatureAlgorithmId, byte[] digest) throws Exception;
+    }
+
+    /**
+     * This is the worker that does the heavy lifting. Requests of one signing
+     * certificate are consumed from a shared queue by one or more worker threads,
+     * each of which signs one batch at a time.
+     */
+    static class WorkerImpl {
 
+        private final KeySigner signer;
         private final boolean batchSigningEnabled;
+        private final int maxBatchSize;
+        private final long maxWaitNanos;
         private final BlockingQueue<SigningRequestWrapper> requestsQueue = new LinkedBlockingQueue<>();
-        private boolean stopping;
-        private final Thread workerThread;
+        private final List<Thread> workerThreads = new ArrayList<>();
+        @Getter
+        private final BatchSignerMetrics metrics;
+        private volatile boolean stopping;
 
-        protected WorkerImpl(String keyId) {
+        protected WorkerImpl(String certHash, String keyId) {
+            this(certHash, keyId, SignerProxy::sign, isBatchSigningEnabled(keyId),
+                    SystemProperties.getBatchSignerMaxBatchSize(), SystemProperties.getBatchSignerMaxWaitMicros(),
+                    getWorkerCount(keyId));
+        }
+
+        WorkerImpl(String certHash, String keyId, KeySigner signer, boolean batchSigningEnabled, int maxBatchSize,
+                   long maxWaitMicros, int threadCount) {
+            this.signer = signer;
+            this.batchSigningEnabled = batchSigningEnabled;
+            this.maxBatchSize = maxBatchSize;
+            this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+            this.metrics = new BatchSignerMetrics(certHash);
+
+            for (int i = 0; i < threadCount; i++) {
+                Thread workerThread = new Thread(this::process, "batch-signer-" + keyId + "-" + i);
+                workerThread.setDaemon(true);
+                workerThreads.add(workerThread);
+            }
+            workerThreads.forEach(Thread::start);
+        }
+
+        private static int getWorkerCount(String keyId) {
+            int configured = SystemProperties.getBatchSignerWorkersPerKey();
+            if (configured <= 1) {
+                return configured;
+            }
             try {
-                batchSigningEnabled = SignerProxy.isTokenBatchSigningEnabled(keyId);
+                return getWorkerCount(configured, SignerProxy.getTokenForKeyId(keyId).getTokenInfo());
+            } catch (Exception e) {
+                log.warn("Failed to query the signing concurrency of the token with key {}, using one worker", keyId, e);
+                return 1;
+            }
+        }
+
+        /**
+         * @return the configured number of workers, limited to the number of signatures the token can create
+         * concurrently according to its token info
+         */
+        static int getWorkerCount(int configured, Map<String, String> tokenInfo) {
+            int supported = 1;
+            String concurrentSignings = tokenInfo.get(TokenInfo.CONCURRENT_SIGNINGS);
+            if (concurrentSignings != null) {
+                try {
+                    supported = Integer.parseInt(concurrentSignings);
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid number of concurrent signings '{}' in token info", concurrentSignings);
+                }
+            }
+            int workers = Math.max(1, Math.min(configured, supported));
+            if (workers < configured) {
+                log.info("Using {} batch signer workers instead of {}, the token signs {} at a time",
+                        workers, configured, supported);
+            }
+            return workers;
+        }
+
+        private static boolean isBatchSigningEnabled(String keyId) {
+            try {
+                return SignerProxy.isTokenBatchSigningEnabled(keyId);
             } catch (Exception e) {
                 log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
                 throw new RuntimeException(e);
             }
-            workerThread = new Thread(this::process);
-            workerThread.setDaemon(true);
-            workerThread.start();
         }
 
         public void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
             requestsQueue.add(signRequest);
+            if (stopping && requestsQueue.remove(signRequest)) {
+                // the worker threads may have exited already, nobody would answer the request
+                failStopped(List.of(signRequest));
+            }
         }
 
         private void sendSignatureResponse(BatchSignatureCtx ctx, byte[] signatureValue) throws Exception {
@@ -181,48 +309,162 @@ public class BatchSigner implements DisposableBean {
             return System.currentTimeMillis() - requestWrapper.getCreatedOn() > TIMEOUT_MILLIS;
         }
 
-        private synchronized void process() {
-            while (!stopping) {
-                log.trace("polling queue");
-                List<SigningRequestWrapper> requests = new LinkedList<>();
-                try {
-                    SigningRequestWrapper first;
-                    do {
-                        first = requestsQueue.take();
-                    } while (isExpired(first));
-
-                    requests.add(first);
-                    if (batchSigningEnabled) {
-                        // poll all remaining
-                        requestsQueue.drainTo(requests);
-                    }
-
-                    log.trace("processing {} sign requests", requests.size());
-                    BatchSignatureCtx ctx = new BatchSignatureCtx(first.getKeyId(), first.getSignatureAlgorithmId());
-                    requests.stream()
-                            .filter(req -> !isExpired(req))
-                            .forEach(req -> ctx.add(req.getClientFuture(), req.getRequest()));
-
-                    try {
-                        byte[] digest = calculateDigest(ctx.getSignatureAlgorithmId().digest(),
-                                ctx.getDataToBeSigned());
-                        final byte[] response = SignerProxy.sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest);
-                        sendSignatureResponse(ctx, response);
-                    } catch (Exception exception) {
-                        sendException(ctx, exception);
-                    }
-                } catch (InterruptedException interruptedException) {
-                    log.trace("queue polling interrupted");
-                    Thread.currentThread().interrupt();
+        private void process() {
+            // requests that could not join the previous batch of this thread, signed before the queued ones
+            Deque<SigningRequestWrapper> deferred = new ArrayDeque<>();
+            List<SigningRequestWrapper> requests = new ArrayList<>();
+            try {
+                while (!stopping) {
+                    log.trace("polling queue");
+                    collectBatch(requests, deferred);
+                    signBatch(requests);
+                    requests.clear();
                 }
+            } catch (InterruptedException interruptedException) {
+                log.trace("queue polling interrupted");
+                Thread.currentThread().interrupt();
+            } finally {
+                // answer the requests this thread has taken but not signed, and those nobody will take anymore
+                failStopped(requests);
+                failStopped(deferred);
+                List<SigningRequestWrapper> queued = new ArrayList<>();
+                requestsQueue.drainTo(queued);
+                failStopped(queued);
             }
             log.trace("Worker thread stopped");
         }
 
+        private void signBatch(List<SigningRequestWrapper> requests) {
+            log.trace("processing {} sign requests", requests.size());
+            SigningRequestWrapper first = requests.get(0);
+            BatchSignatureCtx ctx = new BatchSignatureCtx(first.getKeyId(), first.getSignatureAlgorithmId());
+            requests.forEach(req -> ctx.add(req.getClientFuture(), req.getRequest()));
+
+            long signStart = System.nanoTime();
+            boolean success = false;
+            try {
+                byte[] digest = calculateDigest(ctx.getSignatureAlgorithmId().digest(),
+                        ctx.getDataToBeSigned());
+                final byte[] response = signer.sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest);
+                sendSignatureResponse(ctx, response);
+                success = true;
+            } catch (Exception exception) {
+                sendException(ctx, exception);
+            } finally {
+                metrics.batchSigned(requests.size(), System.nanoTime() - signStart, success);
+            }
+        }
+
+        private static void failStopped(Collection<SigningRequestWrapper> requests) {
+            for (SigningRequestWrapper request : requests) {
+                request.getClientFuture().completeExceptionally(
+                        new CodedException(X_INTERNAL_ERROR, "Batch signer stopped"));
+            }
+        }
+
+        /**
+         * Blocks until at least one non-expired request is available and then collects a batch
+         * of requests that share the key and signature algorithm of the first one into the given list.
+         * If batch signing is enabled, the batch is filled with the deferred and already queued requests and,
+         * if configured, with requests arriving within the max wait window. Requests that cannot be part of the
+         * batch are deferred to the next batch of the same thread.
+         */
+        private void collectBatch(List<SigningRequestWrapper> requests, Deque<SigningRequestWrapper> deferred)
+                throws InterruptedException {
+            SigningRequestWrapper first = nextDeferred(deferred);
+            while (first == null) {
+                first = dequeued(requestsQueue.take());
+            }
+
+            requests.add(first);
+            if (!batchSigningEnabled || maxBatchSize == 1) {
+                return;
+            }
+
+            for (Iterator<SigningRequestWrapper> it = deferred.iterator(); it.hasNext() && requests.size() < maxBatchSize;) {
+                SigningRequestWrapper request = it.next();
+                if (isExpired(request)) {
+                    metrics.requestExpired();
+                    it.remove();
+                } else if (isSameSignature(first, request)) {
+                    requests.add(request);
+                    it.remove();
+                }
+            }
+
+            List<SigningRequestWrapper> drained = new ArrayList<>();
+            requestsQueue.drainTo(drained, maxBatchSize - requests.size());
+            drained.forEach(req -> addToBatch(requests, deferred, req));
+
+            long deadline = System.nanoTime() + maxWaitNanos;
+            long remaining = maxWaitNanos;
+            while (requests.size() < maxBatchSize && remaining > 0) {
+                SigningRequestWrapper next = requestsQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                addToBatch(requests, deferred, next);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+
+        /**
+         * Returns the oldest non-expired deferred request, or null if there is none. Deferred requests
+         * have been dequeued already, so their queue wait is not recorded again.
+         */
+        private SigningRequestWrapper nextDeferred(Deque<SigningRequestWrapper> deferred) {
+            SigningRequestWrapper request;
+            while ((request = deferred.poll()) != null) {
+                if (!isExpired(request)) {
+                    return request;
+                }
+                metrics.requestExpired();
+            }
+            return null;
+        }
+
+        private void addToBatch(List<SigningRequestWrapper> batch, Deque<SigningRequestWrapper> deferred,
+                                SigningRequestWrapper request) {
+            SigningRequestWrapper valid = dequeued(request);
+            if (valid == null) {
+                return;
+            }
+            if (isSameSignature(batch.get(0), valid)) {
+                batch.add(valid);
+            } else {
+                // cannot be part of the same signature, keep it for the next batch
+                deferred.add(valid);
+            }
+        }
+
+        private static boolean isSameSignature(SigningRequestWrapper first, SigningRequestWrapper request) {
+            return first.getSignatureAlgorithmId() == request.getSignatureAlgorithmId()
+                    && first.getKeyId().equals(request.getKeyId());
+        }
+
+        /**
+         * Records the queue wait of the request and returns it, or null if the request has already expired.
+         */
+        private SigningRequestWrapper dequeued(SigningRequestWrapper request) {
+            metrics.requestDequeued(System.nanoTime() - request.getEnqueuedNanos());
+            if (isExpired(request)) {
+                metrics.requestExpired();
+                return null;
+            }
+            return request;
+        }
+
         protected void stop() {
             log.trace("stop()");
+            log.info("Stopping batch signer worker: {}", metrics);
             this.stopping = true;
-            this.workerThread.interrupt();
+            this.workerThreads.forEach(Thread::interrupt);
+        }
+
+        void awaitStopped(long timeoutMillis) throws InterruptedException {
+            for (Thread workerThread : workerThreads) {
+                workerThread.join(timeoutMillis);
+            }
         }
 
     }
@@ -232,13 +474,20 @@ public class BatchSigner implements DisposableBean {
      * and algorithm id.
      */
     @Data
-    private static final class SigningRequestWrapper {
-        private final long createdOn = System.currentTimeMillis();
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    static final class SigningRequestWrapper {
+        private final long createdOn;
+        private final long enqueuedNanos;
         private final CompletableFuture<SignatureData> clientFuture;
         private final String keyId;
         private final SignAlgorithm signatureAlgorithmId;
         private final SigningRequest request;
 
+        SigningRequestWrapper(CompletableFuture<SignatureData> clientFuture, String keyId,
+                              SignAlgorithm signatureAlgorithmId, SigningRequest request) {
+            this(System.currentTimeMillis(), System.nanoTime(), clientFuture, keyId, signatureAlgorithmId, request);
+        }
+
         X509Certificate getSigningCert() {
             return request.getSigningCert();
         }
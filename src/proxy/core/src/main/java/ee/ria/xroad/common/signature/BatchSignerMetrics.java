@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a single batch signer worker (i.e. a single signing certificate).
+ * Batch sizes are collected into a histogram with power-of-two buckets, the last
+ * bucket holds all batches of size {@code 2^(BUCKETS - 1)} and larger.
+ */
+public final class BatchSignerMetrics {
+
+    static final int BUCKETS = 12;
+    private static final double NANOS_IN_MICRO = 1000d;
+
+    @Getter
+    private final String certHash;
+
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(BUCKETS);
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder expiredRequests = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final LongAdder signNanos = new LongAdder();
+    private final AtomicLong maxSignNanos = new AtomicLong();
+
+    BatchSignerMetrics(String certHash) {
+        this.certHash = certHash;
+    }
+
+    void batchSigned(int size, long signDurationNanos, boolean success) {
+        batches.increment();
+        requests.add(size);
+        batchSizeHistogram.incrementAndGet(bucketOf(size));
+        signNanos.add(signDurationNanos);
+        maxSignNanos.accumulateAndGet(signDurationNanos, Math::max);
+        if (!success) {
+            failedBatches.increment();
+        }
+    }
+
+    void requestDequeued(long waitNanos) {
+        queueWaitNanos.add(waitNanos);
+        maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    void requestExpired() {
+        expiredRequests.increment();
+    }
+
+    static int bucketOf(int size) {
+        int bucket = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(Math.max(1, size));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * @return number of signed batches per histogram bucket; bucket {@code i} counts
+     * batches with size in range {@code [2^i, 2^(i+1))}
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = batchSizeHistogram.get(i);
+        }
+        return result;
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getExpiredRequestCount() {
+        return expiredRequests.sum();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    /**
+     * @return average time in microseconds a request spent in the queue before being taken into a batch
+     */
+    public double getAverageQueueWaitMicros() {
+        long count = requests.sum() + expiredRequests.sum();
+        return count == 0 ? 0 : queueWaitNanos.sum() / NANOS_IN_MICRO / count;
+    }
+
+    public long getMaxQueueWaitMicros() {
+        return (long) (maxQueueWaitNanos.get() / NANOS_IN_MICRO);
+    }
+
+    /**
+     * @return average duration in microseconds of the signer call for a batch
+     */
+    public double getAverageSignMicros() {
+        long count = batches.sum();
+        return count == 0 ? 0 : signNanos.sum() / NANOS_IN_MICRO / count;
+    }
+
+    public long getMaxSignMicros() {
+        return (long) (maxSignNanos.get() / NANOS_IN_MICRO);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchSignerMetrics[cert=%s, batches=%d, requests=%d, expired=%d, failed=%d, "
+                        + "avgQueueWaitUs=%.1f, maxQueueWaitUs=%d, avgSignUs=%.1f, maxSignUs=%d]",
+                certHash, getBatchCount(), getRequestCount(), getExpiredRequestCount(), getFailedBatchCount(),
+                getAverageQueueWaitMicros(), getMaxQueueWaitMicros(), getAverageSignMicros(), getMaxSignMicros());
+    }
+}
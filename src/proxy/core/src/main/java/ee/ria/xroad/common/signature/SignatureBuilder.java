@@ -34,6 +34,7 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Collects all the parts to be signed and creates the signature.
@@ -90,11 +91,26 @@ public class SignatureBuilder {
     public SignatureData build(SigningKey signingKey, DigestAlgorithm signatureDigestAlgorithmId) throws Exception {
         log.trace("Sign, {} part(s)", parts.size());
 
+        return signingKey.calculateSignature(createRequest(), signatureDigestAlgorithmId);
+    }
+
+    /**
+     * Builds signature data asynchronously using the given signing key and signature digest algorithm.
+     * @param signingKey the signing key
+     * @param signatureDigestAlgorithmId ID of the signature digest algorithm
+     * @return stage that is completed with the signature data
+     */
+    public CompletionStage<SignatureData> buildAsync(SigningKey signingKey, DigestAlgorithm signatureDigestAlgorithmId) {
+        log.trace("Sign asynchronously, {} part(s)", parts.size());
+
+        return signingKey.calculateSignatureAsync(createRequest(), signatureDigestAlgorithmId);
+    }
+
+    private SigningRequest createRequest() {
         SigningRequest request = new SigningRequest(signingCert, parts);
         request.getExtraCertificates().addAll(extraCertificates);
         request.getOcspResponses().addAll(ocspResponses);
-
-        return signingKey.calculateSignature(request, signatureDigestAlgorithmId);
+        return request;
     }
 
 }
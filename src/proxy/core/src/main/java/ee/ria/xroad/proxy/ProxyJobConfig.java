@@ -27,6 +27,8 @@ package ee.ria.xroad.proxy;
 
 import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.common.util.SpringAwareJobManager;
+import ee.ria.xroad.proxy.util.BatchSignerStatsLogger;
+import ee.ria.xroad.proxy.util.MessageLogStatsLogger;
 import ee.ria.xroad.proxy.util.ServerConfStatsLogger;
 
 import org.quartz.SchedulerException;
@@ -43,6 +45,8 @@ public class ProxyJobConfig {
         final var jobManager = new SpringAwareJobManager(springBeanJobFactory);
 
         jobManager.registerRepeatingJob(ServerConfStatsLogger.class, STATS_LOG_REPEAT_INTERVAL);
+        jobManager.registerRepeatingJob(MessageLogStatsLogger.class, STATS_LOG_REPEAT_INTERVAL);
+        jobManager.registerRepeatingJob(BatchSignerStatsLogger.class, STATS_LOG_REPEAT_INTERVAL);
 
         return jobManager;
     }
@@ -75,6 +75,11 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
     protected final IsAuthenticationData clientCert;
     protected final OpMonitoringData opMonitoringData;
 
+    /**
+     * Load balancer of the client proxy, null if load balancing is not enabled.
+     */
+    private final ProviderLoadBalancer loadBalancer;
+
     private static final URI DUMMY_SERVICE_ADDRESS;
 
     static {
@@ -91,10 +96,12 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
                                              ServerConfProvider serverConfProvider,
                                              CertChainFactory certChainFactory,
                                              RequestWrapper request, ResponseWrapper response,
-                                             HttpClient httpClient, IsAuthenticationData clientCert,
+                                             HttpClient httpClient, ProviderLoadBalancer loadBalancer,
+                                             IsAuthenticationData clientCert,
                                              OpMonitoringData opMonitoringData) throws Exception {
         super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, request, response, httpClient);
 
+        this.loadBalancer = loadBalancer;
         this.clientCert = clientCert;
         this.opMonitoringData = opMonitoringData;
     }
@@ -123,14 +130,23 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
         Collections.shuffle(tmp);
         URI[] addresses = tmp.toArray(new URI[0]);
 
+        boolean balanced = loadBalancer != null && addresses.length > 1;
+        if (balanced) {
+            // the chosen address comes first, the others are used only if connecting to it fails
+            addresses = loadBalancer.order(addresses);
+            httpSender.setAttribute(ProviderLoadBalancer.ID_LOAD_BALANCER, loadBalancer);
+        }
+
         updateOpMonitoringServiceSecurityServerAddress(addresses, httpSender);
 
         httpSender.setAttribute(ID_TARGETS, addresses);
 
         if (SystemProperties.isEnableClientProxyPooledConnectionReuse()) {
             // set the servers with this subsystem as the user token, this will pool the connections per groups of
-            // security servers.
-            httpSender.setAttribute(HttpClientContext.USER_TOKEN, new TargetHostsUserToken(addresses));
+            // security servers. With load balancing, connections are pooled per chosen server instead, and
+            // connections that failed over to another server are not pooled (see ProviderLoadBalancer).
+            httpSender.setAttribute(HttpClientContext.USER_TOKEN,
+                    new TargetHostsUserToken(balanced ? new URI[]{addresses[0]} : addresses));
         }
 
         httpSender.setConnectionTimeout(SystemProperties.getClientProxyTimeout());
@@ -147,6 +163,40 @@ abstract class AbstractClientMessageProcessor extends MessageProcessorBase {
         return addresses;
     }
 
+    /**
+     * Sends the request prepared by {@link #prepareRequest}. With load balancing, the latency and the outcome
+     * of the request are recorded for the security server the request was sent to.
+     */
+    void sendToProvider(HttpSender httpSender, URI[] addresses, RequestSender requestSender) throws Exception {
+        if (loadBalancer == null || addresses.length < 2) {
+            requestSender.send();
+            return;
+        }
+
+        URI chosen = addresses[0];
+        loadBalancer.requestStarted(chosen);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            requestSender.send();
+            success = true;
+        } finally {
+            // differs from the chosen address if a new connection had to fail over to another server
+            URI target = httpSender.getAttribute(ProviderLoadBalancer.ID_SELECTED_TARGET) instanceof URI selected
+                    ? selected : chosen;
+            if (httpSender.getAttribute(ProviderLoadBalancer.ID_CONNECT_FAILED) != null) {
+                // the failed connection attempts have already been recorded
+                target = null;
+            }
+            loadBalancer.requestFinished(chosen, target, System.nanoTime() - start, success);
+        }
+    }
+
+    @FunctionalInterface
+    interface RequestSender {
+        void send() throws Exception;
+    }
+
     private void updateOpMonitoringServiceSecurityServerAddress(URI[] addresses, HttpSender httpSender) {
         if (addresses.length == 1) {
             opMonitoringData.setServiceSecurityServerAddress(addresses[0].getHost());
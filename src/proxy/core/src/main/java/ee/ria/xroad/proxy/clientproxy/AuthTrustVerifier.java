@@ -86,14 +86,23 @@ public class AuthTrustVerifier {
                     "Could not get provider name from context");
         }
 
-        X509Certificate[] certs = getPeerCertificates(sslSession);
+        verify(service.getClientId(), getPeerCertificates(sslSession), selectedAddress);
+    }
+
+    /**
+     * Verifies that the peer certificates belong to a security server of the service provider.
+     * @param serviceProvider the service provider expected on the other side
+     * @param certs the peer certificate chain
+     * @param selectedAddress address of the peer security server
+     */
+    void verify(ClientId serviceProvider, X509Certificate[] certs, URI selectedAddress) {
         if (certs.length == 0) {
             throw new CodedException(X_SSL_AUTH_FAILED,
                     "Could not get peer certificates from context");
         }
 
         try {
-            verifyAuthCert(service.getClientId(), certs, selectedAddress);
+            verifyAuthCert(serviceProvider, certs, selectedAddress);
         } catch (Exception e) {
             throw translateException(e);
         }
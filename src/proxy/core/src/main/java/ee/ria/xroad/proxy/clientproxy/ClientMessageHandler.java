@@ -50,11 +50,17 @@ import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
  */
 class ClientMessageHandler extends AbstractClientProxyHandler {
 
+    private final Http2Transport http2Transport;
+    private final ProviderLoadBalancer loadBalancer;
+
     ClientMessageHandler(GlobalConfProvider globalConfProvider,
                          KeyConfProvider keyConfProvider,
                          ServerConfProvider serverConfProvider,
-                         CertChainFactory certChainFactory, HttpClient client) {
+                         CertChainFactory certChainFactory, HttpClient client, Http2Transport http2Transport,
+                         ProviderLoadBalancer loadBalancer) {
         super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, client, true);
+        this.http2Transport = http2Transport;
+        this.loadBalancer = loadBalancer;
     }
 
     @Override
@@ -64,7 +70,7 @@ class ClientMessageHandler extends AbstractClientProxyHandler {
         verifyCanProcess(request);
 
         return new ClientMessageProcessor(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory,
-                request, response, client, getIsAuthenticationData(request), opMonitoringData);
+                request, response, client, http2Transport, loadBalancer, getIsAuthenticationData(request), opMonitoringData);
     }
 
     private void verifyCanProcess(RequestWrapper request) {
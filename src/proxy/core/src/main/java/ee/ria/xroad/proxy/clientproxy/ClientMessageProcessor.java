@@ -26,7 +26,6 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertChainFactory;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
@@ -50,6 +49,7 @@ import ee.ria.xroad.proxy.messagelog.MessageLog;
 import ee.ria.xroad.proxy.protocol.ProxyMessage;
 import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
+import ee.ria.xroad.proxy.util.BytePipe;
 
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.OpenTelemetry;
@@ -58,14 +58,11 @@ import io.opentelemetry.instrumentation.annotations.WithSpan;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.HttpClient;
-import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -130,8 +127,9 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     /**
      * Holds the proxy message output stream and associated info.
      */
-    private PipedInputStream reqIns;
-    private volatile PipedOutputStream reqOuts;
+    private final BytePipe requestPipe;
+    private InputStream reqIns;
+    private volatile OutputStream reqOuts;
     private volatile String outputContentType;
 
     /**
@@ -145,6 +143,11 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
      */
     private ProxyMessage response;
 
+    /**
+     * HTTP/2 transport to other security servers, null if HTTP/2 is not enabled.
+     */
+    private final Http2Transport http2Transport;
+
     private static final ExecutorService SOAP_HANDLER_EXECUTOR = createSoapHandlerExecutor();
 
     private static ExecutorService createSoapHandlerExecutor() {
@@ -164,12 +167,15 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
                            ServerConfProvider serverConfProvider,
                            CertChainFactory certChainFactory,
                            RequestWrapper request, ResponseWrapper response,
-                           HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
+                           HttpClient httpClient, Http2Transport http2Transport, ProviderLoadBalancer loadBalancer,
+                           IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
-        super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, request, response, httpClient, clientCert,
-                opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
+        super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, request, response, httpClient,
+                loadBalancer, clientCert, opMonitoringData);
+        this.http2Transport = http2Transport;
+        this.requestPipe = new BytePipe();
+        this.reqIns = requestPipe.getInputStream();
+        this.reqOuts = requestPipe.getOutputStream();
         this.xRequestId = UUID.randomUUID().toString();
     }
 
@@ -259,6 +265,11 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         logResponseMessage();
     }
 
+    @Override
+    protected HttpSender createHttpSender() {
+        return http2Transport != null ? http2Transport.createSender() : super.createHttpSender();
+    }
+
     private void sendRequest(HttpSender httpSender) throws Exception {
         log.trace("sendRequest()");
 
@@ -271,9 +282,14 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             httpSender.addHeader(HEADER_REQUEST_ID, xRequestId);
 
             opMonitoringData.setRequestOutTs(getEpochMillisecond());
-            httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+            sendToProvider(httpSender, addresses,
+                    () -> httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType));
             opMonitoringData.setResponseInTs(getEpochMillisecond());
 
+        } catch (Exception e) {
+            // the request was aborted because the handler thread failed, report the original error
+            checkError();
+            throw e;
         } finally {
             if (reqIns != null) {
                 reqIns.close();
@@ -444,7 +460,8 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
     @WithSpan
     public void handleSoap() {
-        try (SoapMessageHandler handler = new SoapMessageHandler()) {
+        SoapMessageHandler handler = new SoapMessageHandler();
+        try {
             SoapMessageDecoder soapMessageDecoder = new SoapMessageDecoder(jRequest.getContentType(),
                     handler, new SaxSoapParserImpl());
             try {
@@ -456,11 +473,23 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         } catch (Throwable ex) {
             setError(ex);
         } finally {
+            handler.close();
+            closeRequestOutput();
             continueProcessing();
             continueReadingResponse();
         }
     }
 
+    private void closeRequestOutput() {
+        if (executionException != null) {
+            // Make the HTTP sender fail the request instead of completing it with a truncated body.
+            requestPipe.abort(executionException);
+        } else {
+            // Normally closed by the encoder, make sure the HTTP sender never waits for more data.
+            IOUtils.closeQuietly(reqOuts);
+        }
+    }
+
     private final class SoapMessageHandler implements SoapMessageDecoder.Callback {
 
         @Override
@@ -548,18 +577,16 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
 
         private void writeOcspResponses() throws Exception {
-            CertChain chain = keyConfProvider.getAuthKey().getCertChain();
-            // exclude TopCA
-            List<OCSPResp> ocspResponses = keyConfProvider.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot());
-
-            for (OCSPResp ocsp : ocspResponses) {
+            // excludes TopCA
+            for (byte[] ocsp : keyConfProvider.getAuthOcspResponsesEncoded()) {
                 request.ocspResponse(ocsp);
             }
         }
 
         @Override
         public void close() {
-            if (request != null) {
+            // a failed request is aborted, it must not be completed with the closing boundary
+            if (request != null && executionException == null) {
                 try {
                     request.close();
                 } catch (Exception e) {
@@ -105,6 +105,8 @@ public class ClientProxy implements InitializingBean, DisposableBean {
 
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
+    private Http2Transport http2Transport;
+    private ProviderLoadBalancer loadBalancer;
 
     /**
      * Constructs and configures a new client proxy.
@@ -170,8 +172,19 @@ public class ClientProxy implements InitializingBean, DisposableBean {
 
         // Disable request retry
         cb.setRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+        cb.setConnectionReuseStrategy(new ProviderLoadBalancer.FailoverAwareReuseStrategy());
 
         client = cb.build();
+
+        if (SystemProperties.isSslEnabled() && SystemProperties.isClientProxyHttp2Enabled()) {
+            log.info("HTTP/2 is enabled for messages to other security servers");
+            http2Transport = new Http2Transport(globalConfProvider, keyConfProvider, authTrustVerifier, client);
+        }
+
+        if (SystemProperties.isClientProxyProviderLoadBalancingEnabled()) {
+            log.info("Load balancing between the security servers of a service provider is enabled");
+            loadBalancer = new ProviderLoadBalancer();
+        }
     }
 
     private HttpClientConnectionManager getClientConnectionManager() throws Exception {
@@ -285,7 +298,8 @@ public class ClientProxy implements InitializingBean, DisposableBean {
         List<Handler> handlers = new ArrayList<>();
         String handlerClassNames = System.getProperty(CLIENTPROXY_HANDLERS);
 
-        handlers.add(new ClientRestMessageHandler(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, client));
+        handlers.add(new ClientRestMessageHandler(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, client,
+                loadBalancer));
 
         if (!StringUtils.isBlank(handlerClassNames)) {
             var handlerLoader = new HandlerLoader(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory);
@@ -302,7 +316,7 @@ public class ClientProxy implements InitializingBean, DisposableBean {
 
         log.trace("Loading default client handler");
         handlers.add(new ClientMessageHandler(globalConfProvider, keyConfProvider, serverConfProvider,
-                certChainFactory, client)); // default handler
+                certChainFactory, client, http2Transport, loadBalancer)); // default handler
 
         return handlers;
     }
@@ -326,6 +340,9 @@ public class ClientProxy implements InitializingBean, DisposableBean {
             connectionMonitor.shutdown();
         }
 
+        if (http2Transport != null) {
+            http2Transport.close();
+        }
         client.close();
         server.stop();
 
@@ -78,12 +78,16 @@ class ClientRestMessageHandler extends AbstractClientProxyHandler {
     private static final String APPLICATION_JSON = "application/json";
     private static final List<String> XML_TYPES = Arrays.asList(TEXT_XML, APPLICATION_XML, TEXT_ANY);
 
+    private final ProviderLoadBalancer loadBalancer;
+
     ClientRestMessageHandler(GlobalConfProvider globalConfProvider,
                              KeyConfProvider keyConfProvider,
                              ServerConfProvider serverConfProvider,
                              CertChainFactory certChainFactory,
-                             HttpClient client) {
+                             HttpClient client,
+                             ProviderLoadBalancer loadBalancer) {
         super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, client, true);
+        this.loadBalancer = loadBalancer;
     }
 
     @Override
@@ -93,7 +97,7 @@ class ClientRestMessageHandler extends AbstractClientProxyHandler {
         if (target != null && target.startsWith("/r" + RestMessage.PROTOCOL_VERSION + "/")) {
             verifyCanProcess();
             return new ClientRestMessageProcessor(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory,
-                    request, response, client, getIsAuthenticationData(request), opMonitoringData);
+                    request, response, client, loadBalancer, getIsAuthenticationData(request), opMonitoringData);
         }
         return null;
     }
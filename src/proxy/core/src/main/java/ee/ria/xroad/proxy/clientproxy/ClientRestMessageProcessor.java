@@ -26,7 +26,6 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.cert.CertChainFactory;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
@@ -103,10 +102,11 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
                                ServerConfProvider serverConfProvider,
                                CertChainFactory certChainFactory,
                                RequestWrapper request, ResponseWrapper response,
-                               HttpClient httpClient, IsAuthenticationData clientCert,
+                               HttpClient httpClient, ProviderLoadBalancer loadBalancer,
+                               IsAuthenticationData clientCert,
                                OpMonitoringData opMonitoringData) throws Exception {
         super(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory, request, response, httpClient,
-                clientCert, opMonitoringData);
+                loadBalancer, clientCert, opMonitoringData);
         this.xRequestId = UUID.randomUUID().toString();
     }
 
@@ -194,7 +194,8 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
 
         final String contentType = MimeUtils.mpMixedContentType("xtop" + RandomStringUtils.secure().nextAlphabetic(30));
         opMonitoringData.setRequestOutTs(getEpochMillisecond());
-        httpSender.doPost(getServiceAddress(addresses), new ProxyMessageEntity(contentType));
+        sendToProvider(httpSender, addresses,
+                () -> httpSender.doPost(getServiceAddress(addresses), new ProxyMessageEntity(contentType)));
         opMonitoringData.setResponseInTs(getEpochMillisecond());
     }
 
@@ -319,32 +320,36 @@ class ClientRestMessageProcessor extends AbstractClientMessageProcessor {
                 final ProxyMessageEncoder enc = new ProxyMessageEncoder(outstream,
                         Digests.DEFAULT_DIGEST_ALGORITHM, getBoundary(contentType.getValue()));
 
-                final CertChain chain = keyConfProvider.getAuthKey().getCertChain();
-                keyConfProvider.getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot())
-                        .forEach(enc::ocspResponse);
+                for (byte[] ocsp : keyConfProvider.getAuthOcspResponsesEncoded()) {
+                    enc.ocspResponse(ocsp);
+                }
 
                 enc.restRequest(restRequest);
 
                 //Optimize the case without request body (e.g. simple get requests)
-                //TBD: Optimize the case without body logging
                 try (InputStream in = jRequest.getInputStream()) {
                     @SuppressWarnings("checkstyle:magicnumber")
                     byte[] buf = new byte[4096];
                     int count = in.read(buf);
-                    if (count >= 0) {
-                        final CachingStream cache = new CachingStream();
-                        try (TeeInputStream tee = new TeeInputStream(in, cache)) {
-                            cache.write(buf, 0, count);
-                            enc.restBody(buf, count, tee);
-                            enc.sign(keyConfProvider.getSigningCtx(senderId));
-                            MessageLog.log(restRequest, enc.getSignature(), cache.getCachedContents(), true,
-                                    xRequestId);
-                        } finally {
-                            cache.consume();
+                    // the body is hashed while it is streamed to the server proxy, it is cached only for logging
+                    final CachingStream cache = count >= 0 && MessageLog.isBodyLogged(requestServiceId, true)
+                            ? new CachingStream() : null;
+                    try {
+                        if (count >= 0) {
+                            InputStream body = in;
+                            if (cache != null) {
+                                cache.write(buf, 0, count);
+                                body = new TeeInputStream(in, cache);
+                            }
+                            enc.restBody(buf, count, body);
                         }
-                    } else {
                         enc.sign(keyConfProvider.getSigningCtx(senderId));
-                        MessageLog.log(restRequest, enc.getSignature(), null, true, xRequestId);
+                        MessageLog.log(restRequest, enc.getSignature(), cache != null ? cache.getCachedContents() : null,
+                                true, xRequestId);
+                    } finally {
+                        if (cache != null) {
+                            cache.consume();
+                        }
                     }
                 }
 
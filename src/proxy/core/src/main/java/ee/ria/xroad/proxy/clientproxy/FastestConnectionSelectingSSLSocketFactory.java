@@ -64,6 +64,9 @@ import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
  * <p>
  * If an SSL session already exists to one of the provided addresses, then
  * that address is selected immediately without previous selection algorithm.
+ * <p>
+ * If a {@link ProviderLoadBalancer} is set in the context, the addresses are
+ * instead tried one by one in the order chosen by the load balancer.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -113,6 +116,10 @@ class FastestConnectionSelectingSSLSocketFactory
 
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
+
+        if (context.getAttribute(ProviderLoadBalancer.ID_LOAD_BALANCER) instanceof ProviderLoadBalancer balancer) {
+            return connectInOrder(timeout, addressesFromContext, context, balancer);
+        }
         final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
         final FastestSocketSelector selector = new FastestSocketSelector();
 
@@ -188,6 +195,42 @@ class FastestConnectionSelectingSSLSocketFactory
         throw couldNotConnectException(addressesFromContext, deferredException);
     }
 
+    /**
+     * Connects to the addresses in the order chosen by the load balancer, reporting failed attempts to it.
+     */
+    private Socket connectInOrder(int timeout, URI[] addresses, HttpContext context, ProviderLoadBalancer balancer) {
+        Exception deferredException = null;
+        int connectTimeout = timeout;
+        for (URI address : addresses) {
+            FastestSocketSelector selector = new FastestSocketSelector();
+            selector.add(address);
+
+            SocketInfo selectedSocket = null;
+            SSLSocket sslSocket = null;
+            try {
+                selectedSocket = selector.select(connectTimeout);
+                sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
+                prepareAndVerify(sslSocket, address, context);
+                configureSocket(sslSocket);
+                log.trace("Connected to {}", address);
+                updateOpMonitoringData(context, selectedSocket);
+                context.setAttribute(ProviderLoadBalancer.ID_SELECTED_TARGET, address);
+                return sslSocket;
+            } catch (IOException | RuntimeException e) {
+                deferredException = e;
+                log.warn("Failed to connect to {}", address, e);
+                balancer.connectFailed(address);
+                closeQuietly(sslSocket);
+                if (selectedSocket != null) {
+                    closeQuietly(selectedSocket.getSocket());
+                }
+                connectTimeout = Math.max(MIN_TIMEOUT, connectTimeout / 2);
+            }
+        }
+        context.setAttribute(ProviderLoadBalancer.ID_CONNECT_FAILED, Boolean.TRUE);
+        throw couldNotConnectException(addresses, deferredException);
+    }
+
     @Override
     protected void prepareSocket(final SSLSocket socket) throws IOException {
         socket.setEnabledProtocols(new String[]{CryptoUtils.SSL_PROTOCOL});
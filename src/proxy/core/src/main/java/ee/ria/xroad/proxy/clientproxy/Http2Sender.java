@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.HttpSender;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_HTTP_ERROR;
+import static ee.ria.xroad.common.ErrorCodes.X_INVALID_CONTENT_TYPE;
+import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
+import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+
+/**
+ * Sends a streamed request to another security server over the {@link Http2Transport}.
+ * <p>
+ * The target addresses and the service provider are taken from the attributes set by
+ * {@link AbstractClientMessageProcessor#prepareRequest}. The address that worked last time is tried first,
+ * the others are tried only if connecting fails. Other requests are sent with the HTTP/1.1 client.
+ */
+@Slf4j
+class Http2Sender extends HttpSender {
+    private final Http2Transport transport;
+    private final Map<String, String> requestHeaders = new LinkedHashMap<>();
+
+    private Http2Transport.Peer peer;
+    private boolean streamAcquired;
+
+    private String responseContentType;
+    private InputStream responseContent;
+    private Map<String, String> responseHeaders;
+
+    Http2Sender(Http2Transport transport, HttpClient fallbackClient) {
+        super(fallbackClient);
+        this.transport = transport;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        super.addHeader(name, value);
+        if (value != null) {
+            requestHeaders.put(name, value);
+        }
+    }
+
+    @Override
+    public void doPost(URI address, InputStream content, long contentLength, String contentType) throws Exception {
+        URI[] addresses = context.getAttribute(ID_TARGETS) instanceof URI[] targets && targets.length > 0
+                ? targets : new URI[]{address};
+        ServiceId provider = (ServiceId) context.getAttribute(AuthTrustVerifier.ID_PROVIDERNAME);
+        if (provider == null) {
+            throw new CodedException(X_SSL_AUTH_FAILED, "Could not get provider name from context");
+        }
+
+        peer = transport.getPeer(addresses, provider);
+        acquireStream();
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> content))
+                .header("Content-Type", contentType);
+        requestHeaders.forEach(builder::header);
+        if (socketTimeout > 0) {
+            // there is no read timeout on a multiplexed connection, the limit applies to waiting for the response
+            builder.timeout(Duration.ofMillis(socketTimeout));
+        }
+
+        handleResponse(send(builder, peer.addresses()));
+    }
+
+    private void acquireStream() throws InterruptedException {
+        if (!peer.streams().tryAcquire(transport.getStreamAcquireTimeout(), TimeUnit.MILLISECONDS)) {
+            throw new CodedException(X_NETWORK_ERROR, "Too many concurrent requests to %s", peer.key().addresses());
+        }
+        streamAcquired = true;
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest.Builder builder, URI[] addresses) throws Exception {
+        Exception deferredException = null;
+        for (URI target : addresses) {
+            try {
+                HttpResponse<InputStream> response = peer.client().send(builder.uri(target).build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                updateOpMonitoringData(target);
+                context.setAttribute(ProviderLoadBalancer.ID_SELECTED_TARGET, target);
+                return response;
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                // nothing has been sent yet, try the next address
+                log.warn("Failed to connect to {}", target, e);
+                if (context.getAttribute(ProviderLoadBalancer.ID_LOAD_BALANCER) instanceof ProviderLoadBalancer balancer) {
+                    balancer.connectFailed(target);
+                }
+                deferredException = e;
+            } catch (SSLHandshakeException e) {
+                transport.removePeer(peer);
+                throw handshakeFailure(e);
+            }
+        }
+        context.setAttribute(ProviderLoadBalancer.ID_CONNECT_FAILED, Boolean.TRUE);
+        throw new CodedException(X_NETWORK_ERROR, deferredException, "Could not connect to any target host (%s)",
+                peer.key().addresses());
+    }
+
+    private static CodedException handshakeFailure(SSLHandshakeException e) {
+        // the trust manager reports verification failures as the cause of the handshake failure
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CodedException codedException) {
+                return codedException;
+            }
+        }
+        return new CodedException(X_SSL_AUTH_FAILED, e, "TLS handshake failed");
+    }
+
+    private void updateOpMonitoringData(URI target) {
+        if (context.getAttribute(OpMonitoringData.class.getName()) instanceof OpMonitoringData opMonitoringData) {
+            opMonitoringData.setServiceSecurityServerAddress(target.getHost());
+        }
+    }
+
+    private void handleResponse(HttpResponse<InputStream> response) {
+        responseContent = response.body();
+
+        int status = response.statusCode();
+        if (status != HttpStatus.SC_OK && status != HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            throw new CodedException(X_HTTP_ERROR, "Server responded with error %s", status);
+        }
+
+        // HTTP/2 header names are in lower case
+        responseHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        response.headers().map().forEach((name, values) -> {
+            if (!values.isEmpty()) {
+                responseHeaders.put(name, values.getFirst());
+            }
+        });
+
+        responseContentType = responseHeaders.get("Content-Type");
+        if (responseContentType == null) {
+            throw new CodedException(X_INVALID_CONTENT_TYPE, "Could not get content type from response");
+        }
+
+        log.trace("Received response over {}", response.version());
+    }
+
+    @Override
+    public String getResponseContentType() {
+        return responseContentType;
+    }
+
+    @Override
+    public InputStream getResponseContent() {
+        return responseContent;
+    }
+
+    @Override
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (responseContent != null) {
+                // an unread response cancels the stream, the connection stays open
+                responseContent.close();
+            }
+        } catch (IOException e) {
+            log.warn("Closing response stream failed", e);
+        } finally {
+            if (streamAcquired) {
+                streamAcquired = false;
+                peer.streams().release();
+            }
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.AuthTrustManager;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.proxy.conf.AuthKeyManager;
+import ee.ria.xroad.proxy.conf.KeyConfProvider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import java.io.Closeable;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+
+/**
+ * HTTP/2 transport for messages sent by the client proxy to other security servers.
+ * <p>
+ * A peer is the group of security servers that serve a service provider, identified by their addresses
+ * and the service provider. Each peer gets its own
+ * {@link HttpClient}, which keeps one long-lived, mutually authenticated connection per address
+ * and multiplexes all concurrent requests to it as HTTP/2 streams. The protocol is negotiated with ALPN, so
+ * servers without HTTP/2 support are talked to over HTTP/1.1. The number of concurrent requests per peer is
+ * limited, and peers that have been idle for a while are closed.
+ * <p>
+ * The peer certificate is verified during every TLS handshake of the peer, against the service provider of the
+ * peer. Since the provider is part of the peer key, a connection is only used for requests to the provider it
+ * has been verified for, even if several providers are served by the same security servers.
+ */
+@Slf4j
+class Http2Transport implements Closeable {
+    private static final long PEER_IDLE_MINUTES = 10;
+
+    private final GlobalConfProvider globalConfProvider;
+    private final KeyConfProvider keyConfProvider;
+    private final AuthTrustVerifier authTrustVerifier;
+    private final org.apache.http.client.HttpClient fallbackClient;
+    private final int maxStreamsPerPeer;
+    private final int streamAcquireTimeout;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Cache<PeerKey, Peer> peers = CacheBuilder.newBuilder()
+            .expireAfterAccess(PEER_IDLE_MINUTES, TimeUnit.MINUTES)
+            .removalListener(Http2Transport::onPeerRemoved)
+            .build();
+
+    Http2Transport(GlobalConfProvider globalConfProvider, KeyConfProvider keyConfProvider,
+                   AuthTrustVerifier authTrustVerifier,
+                   org.apache.http.client.HttpClient fallbackClient) {
+        this.globalConfProvider = globalConfProvider;
+        this.keyConfProvider = keyConfProvider;
+        this.authTrustVerifier = authTrustVerifier;
+        this.fallbackClient = fallbackClient;
+        this.maxStreamsPerPeer = SystemProperties.getClientProxyHttp2MaxStreamsPerPeer();
+        this.streamAcquireTimeout = SystemProperties.getClientProxyHttp2StreamAcquireTimeout();
+    }
+
+    /**
+     * @return a sender for one request. Requests other than streamed POSTs are sent with the HTTP/1.1 client.
+     */
+    Http2Sender createSender() {
+        return new Http2Sender(this, fallbackClient);
+    }
+
+    /**
+     * @return the time in milliseconds a request waits for a free stream to its peer
+     */
+    int getStreamAcquireTimeout() {
+        return streamAcquireTimeout;
+    }
+
+    Peer getPeer(URI[] addresses, ServiceId provider) {
+        PeerKey key = new PeerKey(Set.copyOf(Arrays.asList(addresses)), provider.getClientId());
+        try {
+            return peers.get(key, () -> createPeer(key, addresses));
+        } catch (ExecutionException e) {
+            throw new CodedException(X_INTERNAL_ERROR, e.getCause(), "Failed to create HTTP/2 client");
+        }
+    }
+
+    /**
+     * Drops the peer, closing its connections. Called when the peer certificate could not be verified,
+     * so that the next request opens new connections.
+     */
+    void removePeer(Peer peer) {
+        peers.asMap().remove(peer.key(), peer);
+    }
+
+    @Override
+    public void close() {
+        peers.invalidateAll();
+        executor.shutdown();
+    }
+
+    private Peer createPeer(PeerKey key, URI[] addresses) throws Exception {
+        log.debug("Creating HTTP/2 client for {}", key);
+
+        PeerTrustManager trustManager = new PeerTrustManager(new AuthTrustManager(globalConfProvider), key.provider());
+        SSLContext sslContext = SSLContext.getInstance(CryptoUtils.SSL_PROTOCOL);
+        sslContext.init(new KeyManager[]{new AuthKeyManager(keyConfProvider)}, new TrustManager[]{trustManager},
+                new SecureRandom());
+
+        SSLParameters sslParameters = new SSLParameters();
+        sslParameters.setProtocols(new String[]{CryptoUtils.SSL_PROTOCOL});
+        sslParameters.setCipherSuites(SystemProperties.getXroadTLSCipherSuites());
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(SystemProperties.getClientProxyTimeout()))
+                .sslContext(sslContext)
+                .sslParameters(sslParameters)
+                .executor(executor)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+
+        return new Peer(key, addresses, client, new Semaphore(maxStreamsPerPeer), trustManager);
+    }
+
+    private static void onPeerRemoved(RemovalNotification<PeerKey, Peer> notification) {
+        Peer peer = notification.getValue();
+        if (peer != null) {
+            log.debug("Closing HTTP/2 client for {} ({})", notification.getKey(), notification.getCause());
+            // lets requests still in progress finish
+            peer.client().shutdown();
+        }
+    }
+
+    /**
+     * Security server addresses and the service provider whose certificate they are expected to present.
+     */
+    record PeerKey(Set<URI> addresses, ClientId provider) {
+    }
+
+    /**
+     * HTTP/2 client, stream limit and trust manager of one group of security servers.
+     */
+    record Peer(PeerKey key, URI[] addresses, HttpClient client, Semaphore streams,
+                X509ExtendedTrustManager trustManager) {
+    }
+
+    /**
+     * Checks the peer certificate against the global configuration and verifies that it belongs to a
+     * security server of the service provider. Host name verification is not done, as in the HTTP/1.1 case.
+     */
+    private final class PeerTrustManager extends X509ExtendedTrustManager {
+        private final AuthTrustManager delegate;
+        private final ClientId provider;
+
+        PeerTrustManager(AuthTrustManager delegate, ClientId provider) {
+            this.delegate = delegate;
+            this.provider = provider;
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+
+            try {
+                authTrustVerifier.verify(provider, chain, new URI("https", null, engine.getPeerHost(), engine.getPeerPort(),
+                        "/", null, null));
+            } catch (Exception e) {
+                throw new CertificateException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            throw new CertificateException("Only engine based TLS connections are supported");
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            throw new CertificateException("Only engine based TLS connections are supported");
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            throw new CertificateException("Client certificates are not accepted");
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            throw new CertificateException("Client certificates are not accepted");
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            throw new CertificateException("Client certificates are not accepted");
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+}
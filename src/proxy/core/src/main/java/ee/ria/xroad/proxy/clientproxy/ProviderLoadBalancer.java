@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.DefaultClientConnectionReuseStrategy;
+import org.apache.http.protocol.HttpContext;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+
+/**
+ * Load balancing between the security servers of a service provider.
+ * <p>
+ * For every server address the balancer tracks the exponentially weighted moving average (EWMA) of the request
+ * latency and of the error rate, and the number of requests in flight. A request goes to the better of two
+ * randomly chosen addresses ("power of two choices"), so that load spreads over all servers while slow or
+ * busy servers get less of it. The remaining addresses follow in the order of their score and are used only
+ * if connecting to the chosen one fails.
+ * <p>
+ * An address that fails repeatedly is ejected for a period that doubles with every ejection. When it returns,
+ * or when it is seen for the first time, its share of the traffic grows gradually (slow start). If all
+ * addresses are ejected, the ejections are ignored.
+ */
+@Slf4j
+final class ProviderLoadBalancer {
+    /**
+     * The identifier of the load balancer for the HttpContext attributes map. When set, the target
+     * addresses are tried in the given order instead of selecting the fastest one to connect.
+     */
+    static final String ID_LOAD_BALANCER = "ee.ria.xroad.serverproxy.loadBalancer";
+
+    /**
+     * The identifier of the address a new connection was opened to, for the HttpContext attributes map.
+     */
+    static final String ID_SELECTED_TARGET = "ee.ria.xroad.serverproxy.selectedTarget";
+
+    /**
+     * The identifier of the flag for the HttpContext attributes map, set when a connection could not be opened
+     * to any of the addresses. The failed attempts have then been recorded with {@link #connectFailed(URI)}.
+     */
+    static final String ID_CONNECT_FAILED = "ee.ria.xroad.serverproxy.connectFailed";
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double ERROR_SMOOTHING = 0.1;
+    private static final double ERROR_PENALTY = 10;
+    private static final double EJECTION_ERROR_RATE = 0.5;
+    private static final int EJECTION_CONSECUTIVE_FAILURES = 5;
+    private static final int MAX_EJECTION_DOUBLINGS = 4;
+    private static final double MIN_SLOW_START_WEIGHT = 0.1;
+    private static final double DEFAULT_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long BASE_EJECTION_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long SLOW_START_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long STATS_EXPIRY_HOURS = 1;
+    private static final int MAX_TRACKED_ADDRESSES = 10000;
+
+    private final LongSupplier nanoClock;
+    private final Cache<URI, AddressStats> stats = CacheBuilder.newBuilder()
+            .expireAfterAccess(STATS_EXPIRY_HOURS, TimeUnit.HOURS)
+            .maximumSize(MAX_TRACKED_ADDRESSES)
+            .build();
+
+    ProviderLoadBalancer() {
+        this(System::nanoTime);
+    }
+
+    ProviderLoadBalancer(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Orders the addresses for a request: the chosen address first, followed by the others from best to worst.
+     * @param addresses addresses of the provider's security servers
+     * @return a new array with the addresses in the order they should be tried
+     */
+    URI[] order(URI[] addresses) {
+        if (addresses.length < 2) {
+            return addresses;
+        }
+
+        long now = nanoClock.getAsLong();
+        AddressStats[] candidates = new AddressStats[addresses.length];
+        int available = 0;
+        double knownLatency = 0;
+        int known = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            candidates[i] = getStats(addresses[i]);
+            if (!candidates[i].isEjected(now)) {
+                available++;
+            }
+            if (candidates[i].hasLatency()) {
+                knownLatency += candidates[i].latencyNanos();
+                known++;
+            }
+        }
+        // addresses without samples are expected to be as fast as the others
+        double defaultLatency = known > 0 ? knownLatency / known : DEFAULT_LATENCY_NANOS;
+        boolean ignoreEjections = available == 0;
+
+        double[] scores = new double[addresses.length];
+        Integer[] indexes = new Integer[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            boolean ejected = !ignoreEjections && candidates[i].isEjected(now);
+            scores[i] = ejected ? Double.POSITIVE_INFINITY : candidates[i].score(now, defaultLatency);
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, Comparator.comparingDouble(i -> scores[i]));
+
+        // power of two choices among the addresses that are not ejected
+        int eligible = ignoreEjections ? addresses.length : available;
+        int chosen = indexes[0];
+        if (eligible > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(eligible);
+            int second = random.nextInt(eligible - 1);
+            if (second >= first) {
+                second++;
+            }
+            chosen = scores[indexes[first]] <= scores[indexes[second]] ? indexes[first] : indexes[second];
+        }
+
+        URI[] ordered = new URI[addresses.length];
+        ordered[0] = addresses[chosen];
+        int position = 1;
+        for (int index : indexes) {
+            if (index != chosen) {
+                ordered[position++] = addresses[index];
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Records the start of a request to the address.
+     */
+    void requestStarted(URI address) {
+        getStats(address).inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records the end of a request started with {@link #requestStarted(URI)}.
+     * @param address the address the request was started for
+     * @param target the address the request was actually sent to, differs from address after a failover,
+     * or null if no connection could be opened (the failed attempts are recorded by {@link #connectFailed(URI)})
+     * @param latencyNanos duration of the request
+     * @param success whether a response was received
+     */
+    void requestFinished(URI address, URI target, long latencyNanos, boolean success) {
+        getStats(address).inFlight.decrementAndGet();
+        if (target == null) {
+            return;
+        }
+
+        AddressStats targetStats = getStats(target);
+        if (success) {
+            targetStats.recordSuccess(latencyNanos);
+        } else {
+            recordFailure(target, targetStats);
+        }
+    }
+
+    /**
+     * Records a failed connection attempt to the address.
+     */
+    void connectFailed(URI address) {
+        recordFailure(address, getStats(address));
+    }
+
+    private void recordFailure(URI address, AddressStats addressStats) {
+        if (addressStats.recordFailure(nanoClock.getAsLong())) {
+            log.warn("Ejected provider address {} after repeated failures", address);
+        }
+    }
+
+    private AddressStats getStats(URI address) {
+        try {
+            return stats.get(address, () -> new AddressStats(nanoClock.getAsLong()));
+        } catch (ExecutionException e) {
+            // the loader does not throw checked exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Keeps connections alive as usual, except a new connection that failed over from the chosen address to
+     * another one. Connections are pooled per chosen address, so such a connection would later be reused for
+     * requests meant for the address it failed over from.
+     */
+    static final class FailoverAwareReuseStrategy extends DefaultClientConnectionReuseStrategy {
+        @Override
+        public boolean keepAlive(HttpResponse response, HttpContext context) {
+            if (context.getAttribute(ID_LOAD_BALANCER) != null
+                    && context.getAttribute(ID_SELECTED_TARGET) instanceof URI target
+                    && context.getAttribute(ID_TARGETS) instanceof URI[] targets
+                    && targets.length > 0 && !target.equals(targets[0])) {
+                return false;
+            }
+            return super.keepAlive(response, context);
+        }
+    }
+
+    private static final class AddressStats {
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private double latencyNanos = -1;
+        private double errorRate;
+        private int consecutiveFailures;
+        private int ejections;
+        private long ejectedUntil;
+        private long slowStartBegin;
+
+        AddressStats(long now) {
+            this.slowStartBegin = now;
+            this.ejectedUntil = now;
+        }
+
+        synchronized boolean hasLatency() {
+            return latencyNanos >= 0;
+        }
+
+        synchronized double latencyNanos() {
+            return latencyNanos;
+        }
+
+        synchronized boolean isEjected(long now) {
+            return now - ejectedUntil < 0;
+        }
+
+        synchronized double score(long now, double defaultLatency) {
+            double latency = latencyNanos >= 0 ? latencyNanos : defaultLatency;
+            double weight = Math.clamp((double) (now - slowStartBegin) / SLOW_START_NANOS, MIN_SLOW_START_WEIGHT, 1);
+
+            return latency * (inFlight.get() + 1) * (1 + ERROR_PENALTY * errorRate) / weight;
+        }
+
+        synchronized void recordSuccess(long latency) {
+            latencyNanos = latencyNanos < 0 ? latency : latencyNanos + LATENCY_SMOOTHING * (latency - latencyNanos);
+            errorRate -= ERROR_SMOOTHING * errorRate;
+            consecutiveFailures = 0;
+            if (ejections > 0 && errorRate < EJECTION_ERROR_RATE / 2) {
+                ejections--;
+            }
+        }
+
+        /**
+         * @return true if the address was ejected because of this failure
+         */
+        synchronized boolean recordFailure(long now) {
+            errorRate += ERROR_SMOOTHING * (1 - errorRate);
+            consecutiveFailures++;
+
+            if (now - ejectedUntil < 0
+                    || consecutiveFailures < EJECTION_CONSECUTIVE_FAILURES && errorRate < EJECTION_ERROR_RATE) {
+                return false;
+            }
+
+            long duration = BASE_EJECTION_NANOS << Math.min(ejections, MAX_EJECTION_DOUBLINGS);
+            ejections++;
+            consecutiveFailures = 0;
+            // still penalized after returning, but not ejected again by the next single failure
+            errorRate = EJECTION_ERROR_RATE / 2;
+            ejectedUntil = now + duration;
+            // the share of traffic grows gradually once the ejection is over
+            slowStartBegin = ejectedUntil;
+            return true;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.security.PrivateKey;
 import java.util.Date;
+import java.util.List;
 
 @Slf4j
 @Getter
@@ -42,12 +43,17 @@ class AuthKeyInfo extends AbstractDateValidatableInfo {
     private final CertChain certChain;
     private final Date notAfter;
     private final Date notBefore;
+    /**
+     * DER encoded OCSP responses of the certificate chain without the trusted root, in chain order.
+     */
+    private final List<byte[]> encodedOcspResponses;
 
-    AuthKeyInfo(PrivateKey pkey, CertChain certChain, Date notBefore, Date notAfter) {
+    AuthKeyInfo(PrivateKey pkey, CertChain certChain, Date notBefore, Date notAfter, List<byte[]> encodedOcspResponses) {
         this.pkey = pkey;
         this.certChain = certChain;
         this.notBefore = notBefore;
         this.notAfter = notAfter;
+        this.encodedOcspResponses = encodedOcspResponses;
     }
 
     AuthKey getAuthKey() {
@@ -52,6 +52,7 @@ import java.lang.ref.WeakReference;
 import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -127,19 +128,37 @@ public class CachingKeyConfImpl extends KeyConfImpl {
                 return NULL_AUTH_KEY;
             }
 
-            AuthKeyInfo info = authKeyInfoCache.get(serverId, () -> getAuthKeyInfo(serverId));
-            if (!info.verifyValidity(new Date())) {
-                // we likely got an old auth key from cache, and refresh should fix this
-                authKeyInfoCache.invalidate(serverId);
-                info = authKeyInfoCache.get(serverId, () -> getAuthKeyInfo(serverId));
-            }
-            return info.getAuthKey();
+            return getValidAuthKeyInfo(serverId).getAuthKey();
         } catch (Exception e) {
             log.error("Failed to get authentication key", e);
             return NULL_AUTH_KEY;
         }
     }
 
+    /**
+     * Returns the OCSP responses that were verified together with the cached authentication key, so that
+     * they are encoded only when the authentication key info is refreshed.
+     */
+    @Override
+    public List<byte[]> getAuthOcspResponsesEncoded() throws Exception {
+        final SecurityServerId serverId = serverConfProvider.getIdentifier();
+        if (serverId == null) {
+            return super.getAuthOcspResponsesEncoded();
+        }
+
+        return getValidAuthKeyInfo(serverId).getEncodedOcspResponses();
+    }
+
+    private AuthKeyInfo getValidAuthKeyInfo(SecurityServerId serverId) throws ExecutionException {
+        AuthKeyInfo info = authKeyInfoCache.get(serverId, () -> getAuthKeyInfo(serverId));
+        if (!info.verifyValidity(new Date())) {
+            // we likely got an old auth key from cache, and refresh should fix this
+            authKeyInfoCache.invalidate(serverId);
+            info = authKeyInfoCache.get(serverId, () -> getAuthKeyInfo(serverId));
+        }
+        return info;
+    }
+
     protected AuthKeyInfo getAuthKeyInfo(SecurityServerId serverId) throws Exception {
         log.debug("Retrieving authentication info for security server '{}'", serverId);
 
@@ -147,8 +166,10 @@ public class CachingKeyConfImpl extends KeyConfImpl {
 
         CertChain certChain = getAuthCertChain(serverId.getXRoadInstance(), keyInfo.getCert().getCertificateBytes());
 
-        List<OCSPResp> ocspResponses = getOcspResponses(certChain.getAdditionalCerts());
+        // same order as the certificates in the chain
+        List<OCSPResp> ocspResponses = new ArrayList<>();
         ocspResponses.add(new OCSPResp(keyInfo.getCert().getOcspBytes()));
+        ocspResponses.addAll(getOcspResponses(certChain.getAdditionalCerts()));
 
         PrivateKey key = loadAuthPrivateKey(keyInfo);
 
@@ -157,8 +178,13 @@ public class CachingKeyConfImpl extends KeyConfImpl {
         CertChainVerifier verifier = new CertChainVerifier(globalConfProvider, certChain);
         verifier.verify(ocspResponses, notBefore);
 
+        List<byte[]> encodedOcspResponses = new ArrayList<>(ocspResponses.size());
+        for (OCSPResp response : ocspResponses) {
+            encodedOcspResponses.add(response.getEncoded());
+        }
+
         final Date notAfter = calculateNotAfter(ocspResponses, certChain.notAfter());
-        return new AuthKeyInfo(key, certChain, notBefore, notAfter);
+        return new AuthKeyInfo(key, certChain, notBefore, notAfter, List.copyOf(encodedOcspResponses));
     }
 
     protected SigningInfo getSigningInfo(ClientId clientId) throws Exception {
@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.conf;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.AuthKey;
 import ee.ria.xroad.common.identifier.ClientId;
 
@@ -96,6 +97,22 @@ public interface KeyConfProvider {
         return responses;
     }
 
+    /**
+     * @return DER encoded OCSP responses of the authentication certificate chain without the trusted root,
+     * in chain order. These are sent along with every request to the service provider.
+     * @throws Exception if a response is not available for some certificate
+     */
+    default List<byte[]> getAuthOcspResponsesEncoded() throws Exception {
+        CertChain chain = getAuthKey().getCertChain();
+
+        List<byte[]> encodedResponses = new ArrayList<>();
+        for (OCSPResp response : getAllOcspResponses(chain.getAllCertsWithoutTrustedRoot())) {
+            encodedResponses.add(response.getEncoded());
+        }
+
+        return encodedResponses;
+    }
+
     /**
      * Updates the existing OCSP response or stores the OCSP response,
      * if it does not exist for the given certificate.
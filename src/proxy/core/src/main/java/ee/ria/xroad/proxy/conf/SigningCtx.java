@@ -28,6 +28,9 @@ package ee.ria.xroad.proxy.conf;
 import ee.ria.xroad.common.signature.SignatureBuilder;
 import ee.ria.xroad.common.signature.SignatureData;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Encapsulates security-related parameters of a given member,
  * such as currently used signing key and cert.
@@ -40,4 +43,18 @@ public interface SigningCtx {
      * @throws Exception in case of any errors
      */
     SignatureData buildSignature(SignatureBuilder builder) throws Exception;
+
+    /**
+     * Creates and signs the signature without blocking the calling thread. The default
+     * implementation builds the signature synchronously.
+     * @param builder the signature builder instance
+     * @return stage that is completed with the signature data
+     */
+    default CompletionStage<SignatureData> buildSignatureAsync(SignatureBuilder builder) {
+        try {
+            return CompletableFuture.completedFuture(buildSignature(builder));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
@@ -40,6 +40,8 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 
@@ -68,14 +70,29 @@ public class SigningCtxImpl implements SigningCtx {
 
     @Override
     public SignatureData buildSignature(SignatureBuilder builder) throws Exception {
+        prepare(builder);
+
+        return builder.build(key, SystemProperties.getProxyMessageSignDigestName());
+    }
+
+    @Override
+    public CompletionStage<SignatureData> buildSignatureAsync(SignatureBuilder builder) {
+        try {
+            prepare(builder);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return builder.buildAsync(key, SystemProperties.getProxyMessageSignDigestName());
+    }
+
+    private void prepare(SignatureBuilder builder) throws Exception {
         List<X509Certificate> extraCerts = getIntermediateCaCerts();
         List<OCSPResp> ocspResponses = getOcspResponses(extraCerts);
 
         builder.addExtraCertificates(extraCerts);
         builder.addOcspResponses(ocspResponses);
         builder.setSigningCert(cert);
-
-        return builder.build(key, SystemProperties.getProxyMessageSignDigestName());
     }
 
     private List<OCSPResp> getOcspResponses(List<X509Certificate> certs) throws Exception {
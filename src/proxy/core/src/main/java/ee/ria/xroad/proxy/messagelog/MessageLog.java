@@ -29,6 +29,7 @@ import ee.ria.xroad.common.DiagnosticsStatus;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.message.RestResponse;
 import ee.ria.xroad.common.message.SoapMessageImpl;
@@ -142,11 +143,33 @@ public final class MessageLog {
         log(request, message, signature, body, clientside, null);
     }
 
+    /**
+     * Tells whether REST message bodies of the given service are stored in the message log. If not,
+     * the body does not need to be cached while it is streamed through the proxy.
+     *
+     * @param service    the service
+     * @param clientSide whether the message is logged by the client proxy
+     * @return true if the message body would be logged
+     */
+    public static boolean isBodyLogged(ServiceId service, boolean clientSide) {
+        assertInitialized();
+        return logManager.isBodyLogged(service, clientSide);
+    }
+
     public static Map<String, DiagnosticsStatus> getDiagnosticStatus() {
         assertInitialized();
         return logManager.getDiagnosticStatus();
     }
 
+    /**
+     * Logs message log statistics, if the message log has been initialized.
+     */
+    public static void logStatistics() {
+        if (logManager != null) {
+            logManager.logStatistics();
+        }
+    }
+
 
     /**
      * Returns a time-stamp record for a given message record.
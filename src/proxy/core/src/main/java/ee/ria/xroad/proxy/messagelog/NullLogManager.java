@@ -28,6 +28,7 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.DiagnosticsStatus;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
@@ -55,6 +56,11 @@ public class NullLogManager extends AbstractLogManager {
         return null;
     }
 
+    @Override
+    public boolean isBodyLogged(ServiceId service, boolean clientSide) {
+        return false;
+    }
+
     @Override
     public Map<String, DiagnosticsStatus> getDiagnosticStatus() {
         throw new RuntimeException("Status not available while using NullLogManager");
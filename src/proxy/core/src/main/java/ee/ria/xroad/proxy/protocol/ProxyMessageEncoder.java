@@ -50,6 +50,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.crypto.Digests.createDigestCalculator;
@@ -142,7 +143,19 @@ public class ProxyMessageEncoder implements ProxyMessageConsumer {
     @Override
     public void ocspResponse(OCSPResp resp) {
         try {
-            byte[] responseEncoded = resp.getEncoded();
+            ocspResponse(resp.getEncoded());
+        } catch (Exception ex) {
+            throw translateException(ex);
+        }
+    }
+
+    /**
+     * Writes an already DER encoded OCSP response.
+     *
+     * @param responseEncoded the encoded OCSP response
+     */
+    public void ocspResponse(byte[] responseEncoded) {
+        try {
             log.trace("writeOcspResponse({} bytes)", responseEncoded.length);
             mpEncoder.startPart(MimeTypes.OCSP_RESPONSE);
             mpEncoder.write(responseEncoded);
@@ -320,6 +333,19 @@ public class ProxyMessageEncoder implements ProxyMessageConsumer {
         signer.sign(securityCtx);
     }
 
+    /**
+     * Signs all the parts without blocking the calling thread. Call after adding SOAP message
+     * and attachments; the signature can be written after the returned stage has completed.
+     *
+     * @param securityCtx signing context to use when signing the parts
+     * @return stage that is completed when the signature has been created
+     */
+    public CompletionStage<Void> signAsync(SigningCtx securityCtx) {
+        log.trace("signAsync()");
+
+        return signer.signAsync(securityCtx);
+    }
+
     /**
      * Writes the signature to stream. Call after sing().
      *
@@ -57,7 +57,6 @@ import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
-import io.opentelemetry.instrumentation.annotations.WithSpan;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -75,6 +74,9 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
 import static ee.ria.xroad.common.ErrorCodes.X_ACCESS_DENIED;
@@ -142,8 +144,21 @@ class ServerMessageProcessor extends MessageProcessorBase {
     }
 
     @Override
-    @WithSpan
     public void process() throws Exception {
+        await(processAsync());
+    }
+
+    /**
+     * Processes the request up to signing the response on the calling thread. The response signature
+     * is created asynchronously and the rest of the processing continues when it is available.
+     * The whole processing, including the continuation, is traced in a single span.
+     */
+    @Override
+    public CompletionStage<Void> processAsync() {
+        return traceAsync("ServerMessageProcessor.process", this::startProcessing);
+    }
+
+    private CompletionStage<Void> startProcessing() {
         log.info("process({})", jRequest.getContentType());
 
         xRequestId = jRequest.getHeaders().get(HEADER_REQUEST_ID);
@@ -152,12 +167,33 @@ class ServerMessageProcessor extends MessageProcessorBase {
         updateOpMonitoringClientSecurityServerAddress();
         updateOpMonitoringServiceSecurityServerAddress();
 
+        CompletionStage<Void> signed;
         try {
             readMessage();
 
             handleRequest();
 
-            sign();
+            signed = sign();
+        } catch (Exception ex) {
+            signed = CompletableFuture.failedFuture(ex);
+        }
+
+        return signed.handleAsync((ignored, failure) -> {
+            completeProcessing(failure);
+            return null;
+        }, continuationExecutor());
+    }
+
+    private void completeProcessing(Throwable failure) {
+        try {
+            if (failure != null) {
+                Throwable cause = unwrapCompletionException(failure);
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw (Exception) cause;
+            }
+
             logResponseMessage();
             writeSignature();
 
@@ -165,7 +201,11 @@ class ServerMessageProcessor extends MessageProcessorBase {
 
             postprocess();
         } catch (Exception ex) {
-            handleException(ex);
+            try {
+                handleException(ex);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
         } finally {
             if (requestMessage != null) {
                 requestMessage.consume();
@@ -485,10 +525,10 @@ class ServerMessageProcessor extends MessageProcessorBase {
         }
     }
 
-    private void sign() throws Exception {
+    private CompletionStage<Void> sign() {
         log.trace("sign({})", requestServiceId.getClientId());
 
-        encoder.sign(responseSigningCtx);
+        return encoder.signAsync(responseSigningCtx);
     }
 
     private void writeSignature() throws Exception {
@@ -40,6 +40,8 @@ import ee.ria.xroad.proxy.util.SSLContextUtil;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.CustomRequestLog;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -47,6 +49,7 @@ import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.Slf4jRequestLogWriter;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.util.resource.ResourceFactory;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.xml.XmlConfiguration;
@@ -226,9 +229,36 @@ public class ServerProxy implements InitializingBean, DisposableBean {
         cf.setSslSessionTimeout(SSL_SESSION_TIMEOUT);
         cf.setSslContext(SSLContextUtil.createXroadSSLContext(globalConfProvider, keyConfProvider));
 
-        return SystemProperties.isAntiDosEnabled()
+        ServerConnector connector = SystemProperties.isAntiDosEnabled()
                 ? new AntiDosConnector(globalConfProvider, server, ACCEPTOR_COUNT, cf)
                 : new ServerConnector(server, ACCEPTOR_COUNT, -1, cf);
+
+        if (SystemProperties.isServerProxyHttp2Enabled()) {
+            enableHttp2(connector, cf);
+        }
+        return connector;
+    }
+
+    /**
+     * Lets client proxies negotiate HTTP/2 with ALPN. Client proxies that do not offer it keep using HTTP/1.1.
+     */
+    private static void enableHttp2(ServerConnector connector, SslContextFactory.Server cf) {
+        HttpConnectionFactory http1 = connector.getConnectionFactory(HttpConnectionFactory.class);
+
+        // share the HTTP configuration, so that both protocols get the same customizers
+        HTTP2ServerConnectionFactory http2 = new HTTP2ServerConnectionFactory(http1.getHttpConfiguration());
+        http2.setMaxConcurrentStreams(SystemProperties.getServerProxyHttp2MaxConcurrentStreams());
+
+        ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory(http2.getProtocol(), http1.getProtocol());
+        alpn.setDefaultProtocol(http1.getProtocol());
+
+        connector.clearConnectionFactories();
+        connector.addConnectionFactory(new SslConnectionFactory(cf, alpn.getProtocol()));
+        connector.addConnectionFactory(alpn);
+        connector.addConnectionFactory(http2);
+        connector.addConnectionFactory(http1);
+
+        log.info("HTTP/2 enabled for client proxy connections (max concurrent streams: {})", http2.getMaxConcurrentStreams());
     }
 
 }
@@ -39,7 +39,6 @@ import ee.ria.xroad.proxy.opmonitoring.OpMonitoring;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 import ee.ria.xroad.proxy.util.PerformanceLogger;
 
-import io.opentelemetry.instrumentation.annotations.WithSpan;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.HttpClient;
 import org.eclipse.jetty.server.Request;
@@ -47,6 +46,8 @@ import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.Callback;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HTTP_METHOD;
@@ -80,9 +81,17 @@ class ServerProxyHandler extends HandlerBase {
         this.opMonitorClient = opMonitorClient;
     }
 
+    /**
+     * Handles the request asynchronously. The request is traced in a span that ends when processing,
+     * which may continue on other threads after this method has returned, has completed.
+     */
     @Override
-    @WithSpan
     public boolean handle(Request request, Response response, Callback callback) throws Exception {
+        MessageProcessorBase.traceAsync("ServerProxyHandler.handle", () -> handleAsync(request, response, callback));
+        return true;
+    }
+
+    private CompletionStage<Void> handleAsync(Request request, Response response, Callback callback) {
         OpMonitoringData opMonitoringData = new OpMonitoringData(PRODUCER, getEpochMillisecond());
 
         long start = PerformanceLogger.log(log, "Received request from " + getRemoteAddr(request));
@@ -92,6 +101,7 @@ class ServerProxyHandler extends HandlerBase {
             response.getHeaders().add("Connection", "close");
         }
 
+        CompletionStage<Void> processing;
         try {
             if (!request.getMethod().equalsIgnoreCase("POST")) {
                 throw new CodedException(X_INVALID_HTTP_METHOD, "Must use POST request method instead of %s",
@@ -103,29 +113,62 @@ class ServerProxyHandler extends HandlerBase {
             ClientProxyVersionVerifier.check(request);
             final MessageProcessorBase processor = createRequestProcessor(RequestWrapper.of(request),
                     ResponseWrapper.of(response), opMonitoringData);
-            processor.process();
+            // The processor may continue on another thread while the response is being signed,
+            // the request is completed once processing has finished.
+            processing = processor.processAsync();
         } catch (Throwable e) { // We want to catch serious errors as well
-            CodedException cex = translateWithPrefix(SERVER_SERVERPROXY_X, e);
+            processing = CompletableFuture.failedFuture(e);
+        }
+
+        return processing.whenComplete((ignored, e) -> {
+            boolean aborted = false;
+            try {
+                if (e != null) {
+                    aborted = handleError(request, response, callback, opMonitoringData,
+                            MessageProcessorBase.unwrapCompletionException(e));
+                }
+            } finally {
+                if (!aborted) {
+                    callback.succeeded();
+                }
+
+                opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
+                OpMonitoring.store(opMonitoringData);
+
+                PerformanceLogger.log(log, start, "Request handled");
+            }
+        });
+    }
 
-            log.error("Request processing error ({})", cex.getFaultDetail(), e);
+    /**
+     * Sends the error to the client. If the response has already been started, e.g. signing failed after
+     * the processor began streaming the response, a fault can no longer be sent and the request is failed instead.
+     * @return true if the request was failed, false if the error response was sent
+     */
+    private boolean handleError(Request request, Response response, Callback callback,
+                                OpMonitoringData opMonitoringData, Throwable e) {
+        CodedException cex = translateWithPrefix(SERVER_SERVERPROXY_X, e);
 
-            opMonitoringData.setFaultCodeAndString(cex);
-            opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
+        log.error("Request processing error ({})", cex.getFaultDetail(), e);
 
-            failure(request, response, callback, cex);
-        } finally {
-            callback.succeeded();
+        opMonitoringData.setFaultCodeAndString(cex);
+        opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
 
-            opMonitoringData.setResponseOutTs(getEpochMillisecond(), false);
-            OpMonitoring.store(opMonitoringData);
+        if (response.isCommitted()) {
+            callback.failed(cex);
+            return true;
+        }
 
-            PerformanceLogger.log(log, start, "Request handled");
+        try {
+            failure(request, response, callback, cex);
+        } catch (IOException ioe) {
+            log.error("Failed to send error response", ioe);
         }
-        return true;
+        return false;
     }
 
-    private MessageProcessorBase createRequestProcessor(RequestWrapper request, ResponseWrapper response,
-                                                        OpMonitoringData opMonitoringData) {
+    MessageProcessorBase createRequestProcessor(RequestWrapper request, ResponseWrapper response,
+                                                OpMonitoringData opMonitoringData) {
 
         if (VALUE_MESSAGE_TYPE_REST.equals(request.getHeaders().get(HEADER_MESSAGE_TYPE))) {
             return new ServerRestMessageProcessor(globalConfProvider, keyConfProvider, serverConfProvider, certChainFactory,
@@ -54,7 +54,6 @@ import ee.ria.xroad.proxy.protocol.ProxyMessageDecoder;
 import ee.ria.xroad.proxy.protocol.ProxyMessageEncoder;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
-import io.opentelemetry.instrumentation.annotations.WithSpan;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.input.TeeInputStream;
@@ -86,6 +85,9 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
 import static ee.ria.xroad.common.ErrorCodes.X_ACCESS_DENIED;
@@ -146,8 +148,21 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
     }
 
     @Override
-    @WithSpan
     public void process() throws Exception {
+        await(processAsync());
+    }
+
+    /**
+     * Processes the request up to signing the response on the calling thread. The response signature
+     * is created asynchronously and the rest of the processing continues when it is available.
+     * The whole processing, including the continuation, is traced in a single span.
+     */
+    @Override
+    public CompletionStage<Void> processAsync() {
+        return traceAsync("ServerRestMessageProcessor.process", this::startProcessing);
+    }
+
+    private CompletionStage<Void> startProcessing() {
         log.info("process({})", jRequest.getContentType());
 
         xRequestId = jRequest.getHeaders().get(HEADER_REQUEST_ID);
@@ -156,16 +171,40 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
         updateOpMonitoringClientSecurityServerAddress();
         updateOpMonitoringServiceSecurityServerAddress();
 
+        CompletionStage<Void> signed;
         try {
             readMessage();
             handleRequest();
-            sign();
+            signed = sign();
+        } catch (Exception ex) {
+            signed = CompletableFuture.failedFuture(ex);
+        }
+
+        return signed.handleAsync((ignored, failure) -> {
+            completeProcessing(failure);
+            return null;
+        }, continuationExecutor());
+    }
+
+    private void completeProcessing(Throwable failure) {
+        try {
+            if (failure != null) {
+                Throwable cause = unwrapCompletionException(failure);
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw (Exception) cause;
+            }
             logResponseMessage();
             writeSignature();
             close();
             postprocess();
         } catch (Exception ex) {
-            handleException(ex);
+            try {
+                handleException(ex);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
         } finally {
             if (requestMessage != null) {
                 requestMessage.consume();
@@ -394,9 +433,9 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
                 restResponseBody == null ? null : restResponseBody.getCachedContents(), false, xRequestId);
     }
 
-    private void sign() throws Exception {
+    private CompletionStage<Void> sign() {
         log.trace("sign({})", requestServiceId.getClientId());
-        encoder.sign(responseSigningCtx);
+        return encoder.signAsync(responseSigningCtx);
     }
 
     private void writeSignature() throws Exception {
@@ -554,9 +593,14 @@ class ServerRestMessageProcessor extends MessageProcessorBase {
             messageEncoder.restResponse(restResponse);
 
             if (response.getEntity() != null) {
-                restResponseBody = new CachingStream();
-                TeeInputStream tee = new TeeInputStream(response.getEntity().getContent(), restResponseBody);
-                messageEncoder.restBody(tee);
+                if (MessageLog.isBodyLogged(requestProxyMessage.getRest().getServiceId(), false)) {
+                    restResponseBody = new CachingStream();
+                    TeeInputStream tee = new TeeInputStream(response.getEntity().getContent(), restResponseBody);
+                    messageEncoder.restBody(tee);
+                } else {
+                    // the body is not logged, hash and forward it without caching
+                    messageEncoder.restBody(response.getEntity().getContent());
+                }
                 EntityUtils.consume(response.getEntity());
             }
 
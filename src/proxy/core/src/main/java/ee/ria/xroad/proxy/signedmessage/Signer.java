@@ -33,6 +33,8 @@ import ee.ria.xroad.common.signature.SignatureData;
 import ee.ria.xroad.common.util.MessageFileNames;
 import ee.ria.xroad.proxy.conf.SigningCtx;
 
+import java.util.concurrent.CompletionStage;
+
 /**
  * Encapsulates message signing functionality. This class does not
  * deal with the signed data itself, it is only interested in hashes
@@ -42,7 +44,7 @@ public class Signer {
 
     private final SignatureBuilder builder = new SignatureBuilder();
 
-    private SignatureData signature;
+    private volatile SignatureData signature;
 
     /** Adds new part to be signed.
      * @param name name of the file in the BDOC container.
@@ -84,6 +86,16 @@ public class Signer {
         signature = ctx.buildSignature(builder);
     }
 
+    /**
+     * Signs the hashes and creates the signature without blocking the calling thread.
+     * The signature data is available after the returned stage has completed.
+     * @param ctx signing context used for signing
+     * @return stage that is completed when the signature has been created
+     */
+    public CompletionStage<Void> signAsync(SigningCtx ctx) {
+        return ctx.buildSignatureAsync(builder).thenAccept(signatureData -> signature = signatureData);
+    }
+
     /**
      * @return the signature data
      */
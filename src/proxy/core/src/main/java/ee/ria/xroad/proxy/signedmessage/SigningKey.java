@@ -29,6 +29,9 @@ import ee.ria.xroad.common.crypto.identifier.DigestAlgorithm;
 import ee.ria.xroad.common.signature.SignatureData;
 import ee.ria.xroad.common.signature.SigningRequest;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * API for implementing signing key.
  */
@@ -42,4 +45,19 @@ public interface SigningKey {
      * @return the signature data
      */
     SignatureData calculateSignature(SigningRequest request, DigestAlgorithm digestAlgoId) throws Exception;
+
+    /**
+     * Calculates signature without blocking the calling thread. The default implementation
+     * calculates the signature synchronously and returns an already completed stage.
+     * @param request signing request information
+     * @param digestAlgoId digest algorithm to use for signing
+     * @return stage that is completed with the signature data
+     */
+    default CompletionStage<SignatureData> calculateSignatureAsync(SigningRequest request, DigestAlgorithm digestAlgoId) {
+        try {
+            return CompletableFuture.completedFuture(calculateSignature(request, digestAlgoId));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
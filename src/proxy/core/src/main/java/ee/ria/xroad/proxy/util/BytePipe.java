@@ -0,0 +1,379 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded in-memory pipe for handing a byte stream from exactly one writer thread to exactly one reader thread.
+ * <p>
+ * Unlike {@link java.io.PipedInputStream}, bytes are passed in large chunks: the writer fills a chunk and
+ * publishes it to a single-producer, single-consumer ring, so the threads synchronize once per chunk instead
+ * of once per kilobyte and never on a shared monitor. A partially filled chunk is published on
+ * {@link OutputStream#flush()} and {@link OutputStream#close()}. The writer blocks when all ring slots are
+ * taken and the reader blocks when there is nothing to read. Chunk buffers are taken from and returned to a
+ * shared pool.
+ * <p>
+ * Closing the input stream makes further writes fail, closing the output stream signals end of stream to the
+ * reader after the remaining chunks have been read. If the writer fails, it calls {@link #abort(Throwable)}
+ * instead, and the reader gets an {@link IOException} rather than a truncated stream. Both ends react to
+ * interrupts by throwing {@link InterruptedIOException}.
+ */
+public final class BytePipe {
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int DEFAULT_MAX_CHUNKS = 16;
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int POOLED_CHUNKS = 256;
+    // lock-free, so that pipes on different threads do not contend on a shared lock for every chunk
+    private static final Queue<byte[]> CHUNK_POOL = new ConcurrentLinkedQueue<>();
+    // the size of a ConcurrentLinkedQueue is not constant time, the pool is bounded by this count instead
+    private static final AtomicInteger POOLED_COUNT = new AtomicInteger();
+
+    private final byte[][] ring;
+    private final int[] lengths;
+    private final int mask;
+
+    // number of chunks published by the writer and taken by the reader
+    private volatile long published;
+    private volatile long consumed;
+
+    private volatile boolean writerClosed;
+    private volatile boolean readerClosed;
+    // written before writerClosed, so that a reader seeing the closed writer also sees the failure
+    private volatile Throwable writerFailure;
+
+    private volatile Thread waitingWriter;
+    private volatile Thread waitingReader;
+
+    private final PipeInputStream inputStream = new PipeInputStream();
+    private final PipeOutputStream outputStream = new PipeOutputStream();
+
+    /**
+     * Creates a pipe holding at most {@value #DEFAULT_MAX_CHUNKS} chunks of {@value #CHUNK_SIZE} bytes.
+     */
+    public BytePipe() {
+        this(DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Creates a pipe holding at most the given number of chunks.
+     * @param maxChunks maximum number of published chunks not yet read, rounded up to a power of two
+     */
+    public BytePipe(int maxChunks) {
+        if (maxChunks < 1) {
+            throw new IllegalArgumentException("Pipe must hold at least one chunk");
+        }
+        int capacity = maxChunks == 1 ? 1 : Integer.highestOneBit(maxChunks - 1) << 1;
+        ring = new byte[capacity][];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the reading end of the pipe
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * @return the writing end of the pipe
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Closes the writing end of the pipe because producing the stream failed. Data not yet published is
+     * discarded and the next read fails with an {@link IOException} caused by the given cause, so that the
+     * reader never takes a partially written stream for a complete one. Has no effect if the writing end
+     * has already been closed.
+     * @param cause the reason of the failure
+     */
+    public void abort(Throwable cause) {
+        outputStream.abort(Objects.requireNonNull(cause));
+    }
+
+    private static byte[] acquireChunk() {
+        byte[] chunk = CHUNK_POOL.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        POOLED_COUNT.decrementAndGet();
+        return chunk;
+    }
+
+    private static void releaseChunk(byte[] chunk) {
+        if (chunk == null) {
+            return;
+        }
+        if (POOLED_COUNT.incrementAndGet() <= POOLED_CHUNKS) {
+            CHUNK_POOL.offer(chunk);
+        } else {
+            // the pool is full, leave the chunk to the garbage collector
+            POOLED_COUNT.decrementAndGet();
+        }
+    }
+
+    private void publish(byte[] chunk, int length) throws IOException {
+        long sequence = published;
+        while (sequence - consumed > mask) {
+            checkWritable();
+            waitingWriter = Thread.currentThread();
+            if (sequence - consumed > mask && !readerClosed) {
+                LockSupport.park(this);
+            }
+            waitingWriter = null;
+            checkInterrupted();
+        }
+        checkWritable();
+
+        int index = (int) sequence & mask;
+        ring[index] = chunk;
+        lengths[index] = length;
+        published = sequence + 1;
+
+        LockSupport.unpark(waitingReader);
+    }
+
+    private void checkWritable() throws IOException {
+        if (readerClosed) {
+            throw new IOException("Pipe closed");
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting on pipe");
+        }
+    }
+
+    private final class PipeOutputStream extends OutputStream {
+        private byte[] chunk;
+        private int position;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureChunk();
+            chunk[position++] = (byte) b;
+            if (position == CHUNK_SIZE) {
+                publishChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+
+            while (len > 0) {
+                ensureChunk();
+                int count = Math.min(len, CHUNK_SIZE - position);
+                System.arraycopy(b, off, chunk, position, count);
+                position += count;
+                off += count;
+                len -= count;
+
+                if (position == CHUNK_SIZE) {
+                    publishChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (position > 0) {
+                publishChunk();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writerClosed) {
+                return;
+            }
+            try {
+                if (!readerClosed) {
+                    flush();
+                }
+            } finally {
+                releaseChunk(chunk);
+                chunk = null;
+                writerClosed = true;
+                LockSupport.unpark(waitingReader);
+            }
+        }
+
+        void abort(Throwable cause) {
+            if (writerClosed) {
+                return;
+            }
+            writerFailure = cause;
+            releaseChunk(chunk);
+            chunk = null;
+            writerClosed = true;
+            LockSupport.unpark(waitingReader);
+        }
+
+        private void ensureChunk() throws IOException {
+            if (writerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            checkWritable();
+            if (chunk == null) {
+                chunk = acquireChunk();
+                position = 0;
+            }
+        }
+
+        private void publishChunk() throws IOException {
+            byte[] full = chunk;
+            int length = position;
+            chunk = null;
+            position = 0;
+            try {
+                publish(full, length);
+            } catch (IOException e) {
+                releaseChunk(full);
+                throw e;
+            }
+        }
+    }
+
+    private final class PipeInputStream extends InputStream {
+        private byte[] chunk;
+        private int position;
+        private int limit;
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            return chunk[position++] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+
+            // continue with further chunks that are already available, but never wait for them
+            int total = 0;
+            do {
+                int count = Math.min(len - total, limit - position);
+                System.arraycopy(chunk, position, b, off + total, count);
+                position += count;
+                total += count;
+            } while (total < len && (position < limit || takeChunk()));
+            return total;
+        }
+
+        @Override
+        public int available() {
+            return chunk != null ? limit - position : 0;
+        }
+
+        @Override
+        public void close() {
+            if (readerClosed) {
+                return;
+            }
+            readerClosed = true;
+            LockSupport.unpark(waitingWriter);
+
+            releaseChunk(chunk);
+            chunk = null;
+            // chunks published but not read are not touched by the writer any more
+            for (long i = consumed; i < published; i++) {
+                int index = (int) i & mask;
+                releaseChunk(ring[index]);
+                ring[index] = null;
+            }
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (readerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            checkAborted();
+            while (chunk == null || position == limit) {
+                if (takeChunk()) {
+                    return true;
+                }
+                if (writerClosed && consumed == published) {
+                    checkAborted();
+                    return false;
+                }
+                waitingReader = Thread.currentThread();
+                if (consumed == published && !writerClosed) {
+                    LockSupport.park(this);
+                }
+                waitingReader = null;
+                checkInterrupted();
+            }
+            return true;
+        }
+
+        private void checkAborted() throws IOException {
+            Throwable failure = writerFailure;
+            if (failure != null) {
+                throw new IOException("Pipe writer failed", failure);
+            }
+        }
+
+        private boolean takeChunk() {
+            long sequence = consumed;
+            if (sequence == published) {
+                return false;
+            }
+
+            int index = (int) sequence & mask;
+            releaseChunk(chunk);
+            chunk = ring[index];
+            limit = lengths[index];
+            position = 0;
+            ring[index] = null;
+            consumed = sequence + 1;
+
+            LockSupport.unpark(waitingWriter);
+            return true;
+        }
+    }
+}
@@ -46,6 +46,11 @@ import ee.ria.xroad.common.util.ResponseWrapper;
 import ee.ria.xroad.common.util.UriUtils;
 import ee.ria.xroad.proxy.conf.KeyConfProvider;
 
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.HttpClient;
 
@@ -56,6 +61,14 @@ import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_SOAPACTION;
@@ -67,6 +80,12 @@ import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
 @Slf4j
 public abstract class MessageProcessorBase {
 
+    /**
+     * Executor for continuing message processing after an asynchronous step (e.g. signing) has completed,
+     * so that the continuation does not run on the thread that completed the step.
+     */
+    private static final ExecutorService CONTINUATION_EXECUTOR = createContinuationExecutor();
+
     protected final GlobalConfProvider globalConfProvider;
     protected final KeyConfProvider keyConfProvider;
     protected final ServerConfProvider serverConfProvider;
@@ -134,6 +153,101 @@ public abstract class MessageProcessorBase {
      */
     public abstract void process() throws Exception;
 
+    /**
+     * Processes the incoming message without holding the calling thread while waiting for
+     * asynchronous steps (e.g. message signing) to complete. The default implementation
+     * processes the message synchronously.
+     *
+     * @return stage that is completed when the message has been processed
+     */
+    public CompletionStage<Void> processAsync() {
+        try {
+            process();
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Returns an executor for running the continuation of an asynchronous processing step. The continuation
+     * runs in the tracing context that is current when this method is called, not in the context of the
+     * thread that completes the step.
+     *
+     * @return executor for running the continuation of an asynchronous processing step
+     */
+    protected static Executor continuationExecutor() {
+        return Context.current().wrap(CONTINUATION_EXECUTOR);
+    }
+
+    /**
+     * Runs asynchronous processing inside a span that ends when the returned stage completes, the counterpart
+     * of {@code @WithSpan} for processing that continues on other threads. The span is current while the
+     * processing is started, so continuations scheduled via {@link #continuationExecutor()} belong to it.
+     *
+     * @param spanName name of the span
+     * @param processing starts the processing
+     * @return stage that is completed after the processing has completed and the span has ended
+     */
+    public static <T> CompletionStage<T> traceAsync(String spanName, Supplier<CompletionStage<T>> processing) {
+        Span span = GlobalOpenTelemetry.getTracer(MessageProcessorBase.class.getName())
+                .spanBuilder(spanName)
+                .startSpan();
+
+        CompletionStage<T> stage;
+        try (Scope ignored = span.makeCurrent()) {
+            stage = processing.get();
+        } catch (RuntimeException | Error e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+
+        return stage.whenComplete((result, failure) -> {
+            if (failure != null) {
+                span.recordException(unwrapCompletionException(failure));
+                span.setStatus(StatusCode.ERROR);
+            }
+            span.end();
+        });
+    }
+
+    /**
+     * Returns the actual cause of a failure reported by a {@link CompletionStage}.
+     *
+     * @param ex exception reported by the stage
+     * @return the cause if the exception is a completion wrapper, the exception itself otherwise
+     */
+    public static Throwable unwrapCompletionException(Throwable ex) {
+        Throwable result = ex;
+        while ((result instanceof CompletionException || result instanceof ExecutionException)
+                && result.getCause() != null) {
+            result = result.getCause();
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the given processing stage to complete and rethrows its failure.
+     *
+     * @param stage the processing stage
+     * @throws Exception the failure of the stage
+     */
+    protected static void await(CompletionStage<Void> stage) throws Exception {
+        try {
+            stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrapCompletionException(e);
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            throw e;
+        }
+    }
+
+    private static ExecutorService createContinuationExecutor() {
+        return Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("message-processor-continuation-", 0L).factory());
+    }
+
     /**
      * Update operational monitoring data with SOAP message header data and
      * the size of the message.
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests batch signer metrics collection.
+ */
+public class BatchSignerMetricsTest {
+
+    @Test
+    public void batchSizesAreCollectedIntoPowerOfTwoBuckets() {
+        assertEquals(0, BatchSignerMetrics.bucketOf(1));
+        assertEquals(1, BatchSignerMetrics.bucketOf(2));
+        assertEquals(1, BatchSignerMetrics.bucketOf(3));
+        assertEquals(2, BatchSignerMetrics.bucketOf(4));
+        assertEquals(BatchSignerMetrics.BUCKETS - 1, BatchSignerMetrics.bucketOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void metricsAreAccumulated() {
+        BatchSignerMetrics metrics = new BatchSignerMetrics("hash");
+
+        metrics.requestDequeued(2_000);
+        metrics.requestDequeued(4_000);
+        metrics.requestExpired();
+        metrics.batchSigned(1, 10_000, true);
+        metrics.batchSigned(5, 30_000, false);
+
+        assertEquals(2, metrics.getBatchCount());
+        assertEquals(6, metrics.getRequestCount());
+        assertEquals(1, metrics.getExpiredRequestCount());
+        assertEquals(1, metrics.getFailedBatchCount());
+        assertEquals(20.0, metrics.getAverageSignMicros(), 0.001);
+        assertEquals(30, metrics.getMaxSignMicros());
+        assertEquals(4, metrics.getMaxQueueWaitMicros());
+
+        long[] expected = new long[BatchSignerMetrics.BUCKETS];
+        expected[0] = 1;
+        expected[2] = 1;
+        assertArrayEquals(expected, metrics.getBatchSizeHistogram());
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.crypto.Digests;
+import ee.ria.xroad.common.crypto.identifier.SignAlgorithm;
+import ee.ria.xroad.common.signature.BatchSigner.SigningRequestWrapper;
+import ee.ria.xroad.common.signature.BatchSigner.WorkerImpl;
+import ee.ria.xroad.common.util.MessageFileNames;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.crypto.identifier.SignAlgorithm.SHA256_WITH_RSA;
+import static ee.ria.xroad.common.crypto.identifier.SignAlgorithm.SHA512_WITH_RSA;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests batching, deferral, expiry and stopping of the batch signer worker.
+ */
+public class BatchSignerTest {
+
+    private static final String KEY_A = "keyA";
+    private static final String KEY_B = "keyB";
+    private static final int MAX_BATCH_SIZE = 10;
+    private static final long LONG_WAIT_MICROS = TimeUnit.SECONDS.toMicros(10);
+    private static final long TIMEOUT_SECONDS = 5;
+
+    static {
+        TestSecurityUtil.initSecurity();
+    }
+
+    private final List<String> signedBatches = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch firstSignStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstSign = new CountDownLatch(1);
+
+    private WorkerImpl worker;
+
+    @After
+    public void tearDown() throws Exception {
+        releaseFirstSign.countDown();
+        if (worker != null) {
+            worker.stop();
+            worker.awaitStopped(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+    }
+
+    /**
+     * Requests queued behind a batch in progress are grouped by key and signature algorithm. Requests that
+     * do not match the batch are deferred and signed next, in arrival order.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void mixedKeysAndAlgorithmsAreSignedInSeparateBatches() throws Exception {
+        worker = createWorker(0);
+
+        CompletableFuture<SignatureData> first = submit(KEY_A, SHA256_WITH_RSA);
+        firstSignStarted.await();
+
+        CompletableFuture<SignatureData> a1 = submit(KEY_A, SHA256_WITH_RSA);
+        CompletableFuture<SignatureData> b1 = submit(KEY_B, SHA256_WITH_RSA);
+        CompletableFuture<SignatureData> a2 = submit(KEY_A, SHA256_WITH_RSA);
+        CompletableFuture<SignatureData> c1 = submit(KEY_A, SHA512_WITH_RSA);
+        releaseFirstSign.countDown();
+
+        assertNull(get(first).getHashChain());
+        assertNotNull(get(a1).getHashChain());
+        assertNotNull(get(a2).getHashChain());
+        assertNull(get(b1).getHashChain());
+        assertNull(get(c1).getHashChain());
+
+        assertEquals(List.of(KEY_A + "/" + SHA256_WITH_RSA.name(), KEY_A + "/" + SHA256_WITH_RSA.name(),
+                KEY_B + "/" + SHA256_WITH_RSA.name(), KEY_A + "/" + SHA512_WITH_RSA.name()), signedBatches);
+        assertEquals(4, worker.getMetrics().getBatchCount());
+        assertEquals(5, worker.getMetrics().getRequestCount());
+    }
+
+    /**
+     * Requests whose signer client timeout has passed while they were queued are dropped without signing.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void expiredRequestsAreNotSigned() throws Exception {
+        worker = createWorker(0);
+
+        CompletableFuture<SignatureData> first = submit(KEY_A, SHA256_WITH_RSA);
+        firstSignStarted.await();
+
+        long expiredCreatedOn = System.currentTimeMillis() - SystemProperties.getSignerClientTimeout() - 1000;
+        CompletableFuture<SignatureData> expired = submit(expiredCreatedOn, KEY_A, SHA256_WITH_RSA);
+        CompletableFuture<SignatureData> valid = submit(KEY_A, SHA256_WITH_RSA);
+        releaseFirstSign.countDown();
+
+        get(first);
+        // the only other request in the batch has expired, so the valid one is signed alone
+        assertNull(get(valid).getHashChain());
+        assertFalse(expired.isDone());
+        assertEquals(2, signedBatches.size());
+        assertEquals(1, worker.getMetrics().getExpiredRequestCount());
+    }
+
+    /**
+     * Stopping the worker fails the requests it has collected, deferred or not yet taken from the queue,
+     * as well as requests submitted after it has stopped.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void stopFailsPendingRequests() throws Exception {
+        worker = createWorker(LONG_WAIT_MICROS);
+
+        CompletableFuture<SignatureData> first = submit(KEY_A, SHA256_WITH_RSA);
+        firstSignStarted.await();
+
+        CompletableFuture<SignatureData> collected = submit(KEY_A, SHA256_WITH_RSA);
+        CompletableFuture<SignatureData> deferred = submit(KEY_B, SHA256_WITH_RSA);
+        releaseFirstSign.countDown();
+        get(first);
+
+        // let the worker collect the next batch and wait for it to fill up
+        Thread.sleep(200);
+        worker.stop();
+
+        assertStopped(collected);
+        assertStopped(deferred);
+        assertStopped(submit(KEY_A, SHA256_WITH_RSA));
+        assertEquals(1, signedBatches.size());
+    }
+
+    /**
+     * The configured number of workers per key is limited to the number of concurrent signings of the token.
+     */
+    @Test
+    public void workersAreLimitedByTokenConcurrency() {
+        assertEquals(4, WorkerImpl.getWorkerCount(4, Map.of(TokenInfo.CONCURRENT_SIGNINGS, "8")));
+        assertEquals(2, WorkerImpl.getWorkerCount(4, Map.of(TokenInfo.CONCURRENT_SIGNINGS, "2")));
+        // a token that does not report its concurrency signs one at a time
+        assertEquals(1, WorkerImpl.getWorkerCount(4, Map.of()));
+        assertEquals(1, WorkerImpl.getWorkerCount(4, Map.of(TokenInfo.CONCURRENT_SIGNINGS, "many")));
+    }
+
+    private WorkerImpl createWorker(long maxWaitMicros) {
+        return new WorkerImpl("certHash", KEY_A, (keyId, algorithm, digest) -> {
+            if (signedBatches.isEmpty()) {
+                firstSignStarted.countDown();
+                releaseFirstSign.await();
+            }
+            signedBatches.add(keyId + "/" + algorithm.name());
+            return new byte[256];
+        }, true, MAX_BATCH_SIZE, maxWaitMicros, 1);
+    }
+
+    private CompletableFuture<SignatureData> submit(String keyId, SignAlgorithm algorithm) throws Exception {
+        return submit(System.currentTimeMillis(), keyId, algorithm);
+    }
+
+    private CompletableFuture<SignatureData> submit(long createdOn, String keyId, SignAlgorithm algorithm)
+            throws Exception {
+        X509Certificate cert = TestCertUtil.getConsumer().certChain[0];
+        byte[] message = "<message/>".getBytes(UTF_8);
+        MessagePart part = new MessagePart(MessageFileNames.MESSAGE, algorithm.digest(),
+                Digests.calculateDigest(algorithm.digest(), message), message);
+
+        CompletableFuture<SignatureData> future = new CompletableFuture<>();
+        worker.handleSignRequest(new SigningRequestWrapper(createdOn, System.nanoTime(), future, keyId, algorithm,
+                new SigningRequest(cert, List.of(part))));
+        return future;
+    }
+
+    private static SignatureData get(CompletableFuture<SignatureData> future) throws Exception {
+        return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void assertStopped(CompletableFuture<SignatureData> future) throws Exception {
+        try {
+            get(future);
+            fail("Expected the request to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CodedException);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.cert.CertChainFactory;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
+import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.RequestWrapper;
+import ee.ria.xroad.common.util.ResponseWrapper;
+import ee.ria.xroad.proxy.conf.KeyConfProvider;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+import org.eclipse.jetty.http.HttpFields;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ee.ria.xroad.common.conf.serverconf.IsAuthentication.NOSSL;
+import static ee.ria.xroad.common.conf.serverconf.model.ClientType.STATUS_REGISTERED;
+import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.SecurityServerType.CLIENT;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link ClientMessageProcessor}.
+ */
+public class ClientMessageProcessorTest {
+    private static final String BOUNDARY = "jetty771207119h3h10dty";
+
+    private static final String REQUEST_START = "--" + BOUNDARY + "\r\n"
+            + "Content-Type: text/xml; charset=\"utf-8\"\r\n"
+            + "\r\n"
+            + "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
+            + "        xmlns:xroad=\"http://x-road.eu/xsd/xroad.xsd\" xmlns:id=\"http://x-road.eu/xsd/identifiers\">\n"
+            + "    <SOAP-ENV:Header>\n"
+            + "        <xroad:client id:objectType=\"MEMBER\">\n"
+            + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+            + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+            + "            <id:memberCode>consumer</id:memberCode>\n"
+            + "        </xroad:client>\n"
+            + "        <xroad:service id:objectType=\"SERVICE\">\n"
+            + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+            + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+            + "            <id:memberCode>producer</id:memberCode>\n"
+            + "            <id:serviceCode>test</id:serviceCode>\n"
+            + "        </xroad:service>\n"
+            + "        <xroad:userId>EE37702211234</xroad:userId>\n"
+            + "        <xroad:id>1234567890</xroad:id>\n"
+            + "        <xroad:protocolVersion>4.0</xroad:protocolVersion>\n"
+            + "    </SOAP-ENV:Header>\n"
+            + "    <SOAP-ENV:Body>\n"
+            + "        <ns1:test xmlns:ns1=\"http://consumer.ee.xroad.net\">test</ns1:test>\n"
+            + "    </SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\r\n"
+            + "--" + BOUNDARY + "\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "\r\n";
+
+    // much more than the request pipe holds, so the attachment fails only after the request has been started
+    private static final long ATTACHMENT_BYTES_BEFORE_FAILURE = 8L * 1024 * 1024;
+
+    /**
+     * The client connection is lost in the middle of an attachment. The request to the server proxy must be
+     * aborted, not completed with a truncated body, and the original error must be reported.
+     */
+    @Test
+    public void requestIsAbortedWhenHandlerFailsMidBody() throws Exception {
+        AtomicReference<Throwable> sendOutcome = new AtomicReference<>();
+
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenAnswer(invocation -> {
+            HttpEntityEnclosingRequest post = invocation.getArgument(0);
+            try {
+                post.getEntity().writeTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                sendOutcome.set(e);
+                throw e;
+            }
+            IllegalStateException completed = new IllegalStateException("Request was completed");
+            sendOutcome.set(completed);
+            throw completed;
+        });
+
+        ClientMessageProcessor processor = createProcessor(httpClient, new SequenceInputStream(
+                new ByteArrayInputStream(REQUEST_START.getBytes(StandardCharsets.UTF_8)),
+                failingAfter(ATTACHMENT_BYTES_BEFORE_FAILURE)));
+
+        CodedException error = assertThrows(CodedException.class, processor::process);
+
+        assertTrue(sendOutcome.get() instanceof IOException);
+        assertSame(error, sendOutcome.get().getCause());
+    }
+
+    private static ClientMessageProcessor createProcessor(HttpClient httpClient, InputStream requestContent)
+            throws Exception {
+        var globalConfProvider = mock(GlobalConfProvider.class);
+        when(globalConfProvider.getProviderAddress(any())).thenReturn(Set.of("127.0.0.1"));
+
+        var serverConfProvider = mock(ServerConfProvider.class);
+        when(serverConfProvider.getMemberStatus(any())).thenReturn(STATUS_REGISTERED);
+        when(serverConfProvider.getIsAuthentication(any())).thenReturn(NOSSL);
+
+        var request = mock(RequestWrapper.class);
+        when(request.getContentType()).thenReturn("multipart/related; charset=UTF-8; boundary=" + BOUNDARY);
+        when(request.getHeaders()).thenReturn(HttpFields.EMPTY);
+        when(request.getInputStream()).thenReturn(requestContent);
+
+        return new ClientMessageProcessor(globalConfProvider, mock(KeyConfProvider.class), serverConfProvider,
+                mock(CertChainFactory.class), request, mock(ResponseWrapper.class), httpClient, null, null,
+                mock(IsAuthenticationData.class), new OpMonitoringData(CLIENT, 100));
+    }
+
+    private static InputStream failingAfter(long bytes) {
+        return new InputStream() {
+            private long remaining = bytes;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0];
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Client connection lost");
+                }
+                int count = (int) Math.min(len, remaining);
+                Arrays.fill(b, off, off + count, (byte) 'a');
+                remaining -= count;
+                return count;
+            }
+        };
+    }
+}
@@ -26,39 +26,90 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.DiagnosticsStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChainFactory;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.messagelog.AbstractLogManager;
+import ee.ria.xroad.common.messagelog.LogMessage;
+import ee.ria.xroad.common.messagelog.RestLogMessage;
+import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.common.util.RequestWrapper;
 import ee.ria.xroad.common.util.ResponseWrapper;
 import ee.ria.xroad.proxy.conf.KeyConfProvider;
+import ee.ria.xroad.proxy.conf.SigningCtx;
+import ee.ria.xroad.proxy.messagelog.MessageLog;
 
 import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.server.Request;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import static ee.ria.xroad.common.conf.serverconf.IsAuthentication.NOSSL;
 import static ee.ria.xroad.common.conf.serverconf.model.ClientType.STATUS_REGISTERED;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.SecurityServerType.CLIENT;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_CLIENT_ID;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class ClientRestMessageProcessorTest {
 
+    private static final String LOG_MANAGER_IMPL_CLASS = SystemProperties.PREFIX + "proxy.messageLogManagerImpl";
+
+    // larger than the first read of the processor and the attachment memory threshold
+    private static final int BODY_SIZE = 3 * 1024 * 1024 + 17;
+
+    private String originalLogManagerImpl;
+
+    @Before
+    public void setUp() throws Exception {
+        originalLogManagerImpl = System.setProperty(LOG_MANAGER_IMPL_CLASS, RecordingLogManager.class.getName());
+        RecordingLogManager.loggedBodies.clear();
+        MessageLog.init(mock(JobManager.class), mock(GlobalConfProvider.class), mock(ServerConfProvider.class));
+    }
+
+    @After
+    public void tearDown() {
+        if (originalLogManagerImpl == null) {
+            System.clearProperty(LOG_MANAGER_IMPL_CLASS);
+        } else {
+            System.setProperty(LOG_MANAGER_IMPL_CLASS, originalLogManagerImpl);
+        }
+    }
+
     @SneakyThrows
     @Test
     public void processShouldAddOpMonitoringData() {
@@ -70,6 +121,136 @@ public class ClientRestMessageProcessorTest {
         verifyOpMonitoringData(opMonitoringData.getData());
     }
 
+    /**
+     * A logged body is read from the client once, while it is sent to the server proxy, and the message log
+     * gets the same bytes from the cache.
+     */
+    @Test
+    public void loggedBodyIsReadOnceAndLoggedUnchanged() throws Exception {
+        RecordingLogManager.bodyLogged = true;
+        byte[] body = randomBody();
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(body));
+
+        byte[] sent = sendBody(source);
+
+        assertEquals(body.length, source.getByteCount());
+        assertEquals(1, RecordingLogManager.loggedBodies.size());
+        assertArrayEquals(body, RecordingLogManager.loggedBodies.get(0));
+        assertTrue(contains(sent, body));
+    }
+
+    /**
+     * A body that is not logged is streamed to the server proxy without caching it.
+     */
+    @Test
+    public void unloggedBodyIsStreamedWithoutCaching() throws Exception {
+        RecordingLogManager.bodyLogged = false;
+        byte[] body = randomBody();
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(body));
+
+        byte[] sent = sendBody(source);
+
+        assertEquals(body.length, source.getByteCount());
+        assertEquals(1, RecordingLogManager.loggedBodies.size());
+        assertNull(RecordingLogManager.loggedBodies.get(0));
+        assertTrue(contains(sent, body));
+    }
+
+    /**
+     * Processes a POST request with the given body and returns the bytes sent to the server proxy.
+     */
+    private byte[] sendBody(CountingInputStream body) throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenAnswer(invocation -> {
+            HttpEntityEnclosingRequest post = invocation.getArgument(0);
+            post.getEntity().writeTo(sent);
+            // the response is not needed
+            throw new IllegalStateException("No response");
+        });
+
+        var globalConfProvider = mock(GlobalConfProvider.class);
+        when(globalConfProvider.getProviderAddress(any())).thenReturn(Set.of("127.0.0.1"));
+        var serverConfProvider = mock(ServerConfProvider.class);
+        when(serverConfProvider.getMemberStatus(any())).thenReturn(STATUS_REGISTERED);
+        when(serverConfProvider.getIsAuthentication(any())).thenReturn(NOSSL);
+        var signingCtx = mock(SigningCtx.class);
+        when(signingCtx.buildSignature(any())).thenReturn(new SignatureData("<signature/>", null, null));
+        var keyConfProvider = mock(KeyConfProvider.class);
+        when(keyConfProvider.getSigningCtx(any())).thenReturn(signingCtx);
+
+        var request = mock(RequestWrapper.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getHttpURI()).thenReturn(
+                HttpURI.build(URI.create("http://localhost:4210/r1/DEV/COM/1234/TestService/pets/pets")));
+        when(request.getHeaders()).thenReturn(
+                HttpFields.from(new PreEncodedHttpField(HEADER_CLIENT_ID, "DEV/COM/1234/TestService")));
+        when(request.getInputStream()).thenReturn(body);
+
+        var processor = new ClientRestMessageProcessor(globalConfProvider, keyConfProvider, serverConfProvider,
+                mock(CertChainFactory.class), request, mock(ResponseWrapper.class), httpClient, null,
+                mock(IsAuthenticationData.class), new OpMonitoringData(CLIENT, 100));
+
+        assertThrows(Exception.class, processor::process);
+
+        return sent.toByteArray();
+    }
+
+    private static byte[] randomBody() {
+        byte[] body = new byte[BODY_SIZE];
+        new Random(42).nextBytes(body);
+        return body;
+    }
+
+    private static boolean contains(byte[] data, byte[] part) {
+        outer:
+        for (int i = 0; i <= data.length - part.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (data[i + j] != part[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Message log that keeps the logged REST bodies.
+     */
+    public static class RecordingLogManager extends AbstractLogManager {
+        static final List<byte[]> loggedBodies = Collections.synchronizedList(new ArrayList<>());
+        static volatile boolean bodyLogged;
+
+        public RecordingLogManager(JobManager jobManager, GlobalConfProvider globalConfProvider,
+                                   ServerConfProvider serverConfProvider) {
+            super(jobManager, globalConfProvider, serverConfProvider);
+        }
+
+        @Override
+        public void log(LogMessage message) throws Exception {
+            if (message instanceof RestLogMessage restMessage) {
+                // the cached body is only available while logging
+                loggedBodies.add(restMessage.getBody() != null ? IOUtils.toByteArray(restMessage.getBody()) : null);
+            }
+        }
+
+        @Override
+        public TimestampRecord timestamp(Long messageRecordId) {
+            return null;
+        }
+
+        @Override
+        public Map<String, DiagnosticsStatus> getDiagnosticStatus() {
+            return Map.of();
+        }
+
+        @Override
+        public boolean isBodyLogged(ServiceId service, boolean clientSide) {
+            return bodyLogged;
+        }
+    }
+
     @SneakyThrows
     private ClientRestMessageProcessor createMockedClientRestMessageProcessor(OpMonitoringData opMonitoringData) {
         var globalConfProvider = mock(GlobalConfProvider.class);
@@ -81,7 +262,7 @@ public class ClientRestMessageProcessorTest {
         var httpClient = mock(HttpClient.class);
         var isAuthenticationData = mock(IsAuthenticationData.class);
         var clientRestMessageProcessor = new ClientRestMessageProcessor(globalConfProvider, keyConfProvider, serverConfProvider,
-                certChainFactory, request, respWrapper, httpClient, isAuthenticationData, opMonitoringData);
+                certChainFactory, request, respWrapper, httpClient, null, isAuthenticationData, opMonitoringData);
         when(serverConfProvider.getMemberStatus(any())).thenReturn(STATUS_REGISTERED);
         when(serverConfProvider.getIsAuthentication(any())).thenReturn(NOSSL);
         return clientRestMessageProcessor;
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.proxy.conf.KeyConfProvider;
+
+import org.apache.http.client.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLEngine;
+
+import java.net.URI;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that {@link Http2Transport} verifies every peer connection against the service provider of the request.
+ */
+public class Http2TransportTest {
+    private static final URI[] ADDRESSES = {URI.create("https://ss1:5500/"), URI.create("https://ss2:5500/")};
+    private static final URI[] REORDERED_ADDRESSES = {ADDRESSES[1], ADDRESSES[0]};
+
+    private static final ClientId PROVIDER_A = ClientId.Conf.create("EE", "GOV", "A");
+    private static final ClientId PROVIDER_B = ClientId.Conf.create("EE", "GOV", "B");
+
+    private static final X509Certificate[] CHAIN = {mock(X509Certificate.class)};
+
+    private AuthTrustVerifier authTrustVerifier;
+    private Http2Transport transport;
+    private SSLEngine engine;
+
+    @Before
+    public void setUp() {
+        authTrustVerifier = mock(AuthTrustVerifier.class);
+        transport = new Http2Transport(mock(GlobalConfProvider.class), mock(KeyConfProvider.class), authTrustVerifier,
+                mock(HttpClient.class));
+
+        engine = mock(SSLEngine.class);
+        when(engine.getPeerHost()).thenReturn("ss1");
+        when(engine.getPeerPort()).thenReturn(5500);
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+    }
+
+    @Test
+    public void peerIsSharedByServicesOfSameProvider() {
+        Http2Transport.Peer peer = transport.getPeer(ADDRESSES, ServiceId.Conf.create(PROVIDER_A, "getRandom"));
+
+        assertSame(peer, transport.getPeer(REORDERED_ADDRESSES, ServiceId.Conf.create(PROVIDER_A, "helloService")));
+    }
+
+    @Test
+    public void differentProvidersOnSameAddressesGetOwnPeers() throws Exception {
+        Http2Transport.Peer peerA = transport.getPeer(ADDRESSES, ServiceId.Conf.create(PROVIDER_A, "getRandom"));
+        Http2Transport.Peer peerB = transport.getPeer(ADDRESSES, ServiceId.Conf.create(PROVIDER_B, "getRandom"));
+
+        assertNotSame(peerA, peerB);
+        assertEquals(PROVIDER_B, peerB.key().provider());
+
+        peerB.trustManager().checkServerTrusted(CHAIN, "RSA", engine);
+
+        verify(authTrustVerifier).verify(eq(PROVIDER_B), eq(CHAIN), eq(URI.create("https://ss1:5500/")));
+        verify(authTrustVerifier, never()).verify(eq(PROVIDER_A), any(X509Certificate[].class), any(URI.class));
+    }
+
+    @Test
+    public void reconnectIsVerifiedAgainstPeerProvider() throws Exception {
+        doThrow(new CodedException(X_SSL_AUTH_FAILED, "Not provider A"))
+                .when(authTrustVerifier).verify(eq(PROVIDER_A), any(X509Certificate[].class), any(URI.class));
+
+        Http2Transport.Peer peerA = transport.getPeer(ADDRESSES, ServiceId.Conf.create(PROVIDER_A, "getRandom"));
+        Http2Transport.Peer peerB = transport.getPeer(ADDRESSES, ServiceId.Conf.create(PROVIDER_B, "getRandom"));
+
+        // the servers are accepted for provider B, new connections of the peer of provider A are still checked against A
+        peerB.trustManager().checkServerTrusted(CHAIN, "RSA", engine);
+        assertSame(peerB, transport.getPeer(ADDRESSES, ServiceId.Conf.create(PROVIDER_B, "getRandom")));
+
+        CertificateException e = assertThrows(CertificateException.class,
+                () -> peerA.trustManager().checkServerTrusted(CHAIN, "RSA", engine));
+        assertEquals(CodedException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void removedPeerIsRecreatedForSameProvider() {
+        ServiceId service = ServiceId.Conf.create(PROVIDER_A, "getRandom");
+        Http2Transport.Peer peer = transport.getPeer(ADDRESSES, service);
+
+        transport.removePeer(peer);
+
+        Http2Transport.Peer recreated = transport.getPeer(ADDRESSES, service);
+        assertNotSame(peer, recreated);
+        assertEquals(PROVIDER_A, recreated.key().provider());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.ID_TARGETS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ProviderLoadBalancer}.
+ */
+public class ProviderLoadBalancerTest {
+    private static final URI FAST = URI.create("https://fast:5500/");
+    private static final URI SLOW = URI.create("https://slow:5500/");
+    private static final URI[] ADDRESSES = {SLOW, FAST};
+
+    private final AtomicLong clock = new AtomicLong();
+    private ProviderLoadBalancer balancer;
+
+    @Before
+    public void setUp() {
+        balancer = new ProviderLoadBalancer(clock::get);
+        // past the slow start period of the new addresses
+        advance(TimeUnit.MINUTES.toNanos(2));
+    }
+
+    @Test
+    public void singleAddressIsReturnedAsIs() {
+        URI[] single = {FAST};
+        assertSame(single, balancer.order(single));
+    }
+
+    @Test
+    public void ordersAllAddresses() {
+        URI[] ordered = balancer.order(ADDRESSES);
+
+        assertEquals(2, ordered.length);
+        assertNotEquals(ordered[0], ordered[1]);
+        assertTrue(List.of(ordered).containsAll(List.of(ADDRESSES)));
+    }
+
+    @Test
+    public void prefersLowerLatency() {
+        record(FAST, TimeUnit.MILLISECONDS.toNanos(10), 20);
+        record(SLOW, TimeUnit.MILLISECONDS.toNanos(500), 20);
+
+        // with two addresses, both are always compared
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FAST, balancer.order(ADDRESSES)[0]);
+        }
+    }
+
+    @Test
+    public void prefersLessLoadedAddress() {
+        record(FAST, TimeUnit.MILLISECONDS.toNanos(10), 20);
+        record(SLOW, TimeUnit.MILLISECONDS.toNanos(20), 20);
+
+        for (int i = 0; i < 5; i++) {
+            balancer.requestStarted(FAST);
+        }
+
+        assertEquals(SLOW, balancer.order(ADDRESSES)[0]);
+    }
+
+    @Test
+    public void ejectsFailingAddressAndRampsItUpAgain() {
+        record(FAST, TimeUnit.MILLISECONDS.toNanos(10), 20);
+        record(SLOW, TimeUnit.MILLISECONDS.toNanos(10), 20);
+
+        for (int i = 0; i < 5; i++) {
+            balancer.connectFailed(FAST);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(SLOW, balancer.order(ADDRESSES)[0]);
+        }
+
+        // back after the ejection, but with a reduced share of the traffic during slow start
+        advance(TimeUnit.SECONDS.toNanos(31));
+        assertEquals(SLOW, balancer.order(ADDRESSES)[0]);
+
+        // fully back once it has been fast again for a while
+        advance(TimeUnit.MINUTES.toNanos(2));
+        record(FAST, TimeUnit.MILLISECONDS.toNanos(2), 20);
+        assertEquals(FAST, balancer.order(ADDRESSES)[0]);
+    }
+
+    @Test
+    public void usesEjectedAddressesWhenAllAreEjected() {
+        for (int i = 0; i < 5; i++) {
+            balancer.connectFailed(FAST);
+            balancer.connectFailed(SLOW);
+        }
+
+        Map<URI, Integer> chosen = choose(1000);
+        assertEquals(2, chosen.size());
+    }
+
+    @Test
+    public void failoverIsRecordedForActualTarget() {
+        record(FAST, TimeUnit.MILLISECONDS.toNanos(10), 20);
+        record(SLOW, TimeUnit.MILLISECONDS.toNanos(10), 20);
+
+        for (int i = 0; i < 5; i++) {
+            balancer.requestStarted(FAST);
+            balancer.requestFinished(FAST, SLOW, 0, false);
+        }
+
+        // the in-flight count of FAST is back to zero and SLOW is ejected
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FAST, balancer.order(ADDRESSES)[0]);
+        }
+    }
+
+    @Test
+    public void failedConnectionIsRecordedOnce() {
+        record(FAST, TimeUnit.MILLISECONDS.toNanos(10), 20);
+        record(SLOW, TimeUnit.MILLISECONDS.toNanos(10), 20);
+
+        // counted twice, these would eject FAST
+        for (int i = 0; i < 3; i++) {
+            balancer.requestStarted(FAST);
+            balancer.connectFailed(FAST);
+            balancer.requestFinished(FAST, null, 0, false);
+        }
+        for (int i = 0; i < 5; i++) {
+            balancer.connectFailed(SLOW);
+        }
+
+        // only SLOW is ejected
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FAST, balancer.order(ADDRESSES)[0]);
+        }
+    }
+
+    @Test
+    public void connectionThatFailedOverIsNotKeptAlive() {
+        ProviderLoadBalancer.FailoverAwareReuseStrategy strategy = new ProviderLoadBalancer.FailoverAwareReuseStrategy();
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setHeader("Content-Length", "0");
+
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ProviderLoadBalancer.ID_LOAD_BALANCER, balancer);
+        context.setAttribute(ID_TARGETS, ADDRESSES);
+        context.setAttribute(ProviderLoadBalancer.ID_SELECTED_TARGET, SLOW);
+        assertTrue(strategy.keepAlive(response, context));
+
+        context.setAttribute(ProviderLoadBalancer.ID_SELECTED_TARGET, FAST);
+        assertFalse(strategy.keepAlive(response, context));
+    }
+
+    private void record(URI address, long latencyNanos, int count) {
+        for (int i = 0; i < count; i++) {
+            balancer.requestStarted(address);
+            balancer.requestFinished(address, address, latencyNanos, true);
+        }
+    }
+
+    private Map<URI, Integer> choose(int rounds) {
+        Map<URI, Integer> chosen = new HashMap<>();
+        for (int i = 0; i < rounds; i++) {
+            chosen.merge(balancer.order(ADDRESSES)[0], 1, Integer::sum);
+        }
+        return chosen;
+    }
+
+    private void advance(long nanos) {
+        clock.addAndGet(nanos);
+    }
+}
@@ -69,6 +69,8 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.core.AllOf.allOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 /**
  * Test to verify that CachingKeyConf works as expected when it comes to threading
@@ -249,6 +251,28 @@ public class CachingKeyConfImplTest {
         testCachingKeyConf.destroy();
     }
 
+    @Test
+    public void testAuthOcspResponsesAreCachedWithAuthKey() throws Exception {
+        AtomicInteger callsToGetAuthKeyInfo = new AtomicInteger(0);
+        final TestCachingKeyConfImpl testCachingKeyConf = new TestCachingKeyConfImpl(
+                callsToGetAuthKeyInfo,
+                UNCHANGED_KEY_CONF,
+                VALID_AUTH_KEY,
+                VALID_SIGNING_INFO,
+                NO_DELAY);
+
+        List<byte[]> responses = testCachingKeyConf.getAuthOcspResponsesEncoded();
+        testCachingKeyConf.getAuthKey();
+        assertSame(responses, testCachingKeyConf.getAuthOcspResponsesEncoded());
+        assertEquals(1, callsToGetAuthKeyInfo.get());
+
+        // refreshing the auth key info also refreshes the responses
+        testCachingKeyConf.invalidateCaches();
+        assertNotSame(responses, testCachingKeyConf.getAuthOcspResponsesEncoded());
+        assertEquals(2, callsToGetAuthKeyInfo.get());
+        testCachingKeyConf.destroy();
+    }
+
     @Test(timeout = 5000)
     public void testAuthKeyReadsWithChangedServerId() throws Exception {
         AtomicInteger callsToGetAuthKeyInfo = new AtomicInteger(0);
@@ -495,7 +519,7 @@ public class CachingKeyConfImplTest {
             dataRefreshes.incrementAndGet();
             delay(cacheReadDelayMs);
 
-            return new AuthKeyInfo(null, null, null, null) {
+            return new AuthKeyInfo(null, null, null, null, new ArrayList<>()) {
                 @Override
                 boolean verifyValidity(Date atDate) {
                     return authKeyIsValid.getAsBoolean();
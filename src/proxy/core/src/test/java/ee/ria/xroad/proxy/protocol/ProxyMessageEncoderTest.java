@@ -49,6 +49,8 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -121,6 +123,28 @@ public class ProxyMessageEncoderTest {
         assertNull(proxyMessage.getFault());
     }
 
+    /**
+     * Test to ensure an already encoded OCSP response is written as is.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void normalMessageWithEncodedOcsp() throws Exception {
+        SoapMessageImpl message = createMessage(getQuery("getstate.query"));
+        SignatureData signature = new SignatureData(IOUtils.toString(getQuery("signature.xml"), UTF_8), null, null);
+        OCSPResp ocsp = getOcsp("src/test/queries/test.ocsp");
+
+        encoder.ocspResponse(ocsp.getEncoded());
+        encoder.soap(message, new HashMap<>());
+        encoder.signature(signature);
+        encoder.close();
+
+        ProxyMessage proxyMessage = decode();
+
+        assertEquals(1, proxyMessage.getOcspResponses().size());
+        assertArrayEquals(ocsp.getEncoded(), proxyMessage.getOcspResponses().getFirst().getEncoded());
+    }
+
     /**
      * Test to ensure a normal message with an attachment is encoded correctly.
      *
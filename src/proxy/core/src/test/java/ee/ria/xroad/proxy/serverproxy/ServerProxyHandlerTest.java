@@ -25,10 +25,15 @@
  */
 package ee.ria.xroad.proxy.serverproxy;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.cert.CertChainFactory;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.conf.serverconf.ServerConfProvider;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.util.RequestWrapper;
+import ee.ria.xroad.common.util.ResponseWrapper;
 import ee.ria.xroad.proxy.conf.KeyConfProvider;
+import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
 import org.apache.http.client.HttpClient;
 import org.eclipse.jetty.http.HttpFields;
@@ -37,10 +42,19 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.Callback;
 import org.junit.Test;
+import org.mockito.MockedStatic;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ServerProxyHandlerTest {
@@ -68,6 +82,85 @@ public class ServerProxyHandlerTest {
         }
     }
 
+    @Test
+    public void shouldCompleteRequestWhenProcessingResumes() throws Exception {
+        final var callback = mock(Callback.class);
+        final var response = getMockedResponse();
+        final var processing = new CompletableFuture<Void>();
+
+        try (var checkMock = mockVersionCheck()) {
+            createHandler(processing).handle(getMockedRequest(), response, callback);
+
+            // the processor waits for the response signature, the request is not completed yet
+            verify(callback, never()).succeeded();
+
+            processing.complete(null);
+
+            verify(callback).succeeded();
+            verify(callback, never()).failed(any());
+            verify(response, never()).write(anyBoolean(), any(ByteBuffer.class), any(Callback.class));
+        }
+    }
+
+    @Test
+    public void shouldSendFaultWhenProcessingFailsBeforeResponseIsStarted() throws Exception {
+        final var callback = mock(Callback.class);
+        final var response = getMockedResponse();
+        final var processing = new CompletableFuture<Void>();
+
+        try (var checkMock = mockVersionCheck()) {
+            createHandler(processing).handle(getMockedRequest(), response, callback);
+
+            processing.completeExceptionally(new CodedException(X_INTERNAL_ERROR, "Signing failed"));
+
+            verify(response).write(eq(true), any(ByteBuffer.class), eq(callback));
+            verify(callback, never()).failed(any());
+        }
+    }
+
+    @Test
+    public void shouldFailRequestWhenProcessingFailsAfterResponseIsStarted() throws Exception {
+        final var callback = mock(Callback.class);
+        final var response = getMockedResponse();
+        final var processing = new CompletableFuture<Void>();
+
+        try (var checkMock = mockVersionCheck()) {
+            createHandler(processing).handle(getMockedRequest(), response, callback);
+
+            // the processor has started streaming the response when signing fails
+            when(response.isCommitted()).thenReturn(true);
+            processing.completeExceptionally(new CodedException(X_INTERNAL_ERROR, "Signing failed"));
+
+            verify(callback).failed(any(CodedException.class));
+            verify(callback, never()).succeeded();
+            verify(response, never()).write(anyBoolean(), any(ByteBuffer.class), any(Callback.class));
+        }
+    }
+
+    private static MockedStatic<ClientProxyVersionVerifier> mockVersionCheck() {
+        var checkMock = mockStatic(ClientProxyVersionVerifier.class);
+        checkMock.when(() -> ClientProxyVersionVerifier.check(any())).thenAnswer(invocation -> null);
+        return checkMock;
+    }
+
+    /**
+     * Creates a handler whose processor completes when the given stage does.
+     */
+    private static ServerProxyHandler createHandler(CompletableFuture<Void> processing) {
+        final var processor = mock(MessageProcessorBase.class);
+        when(processor.processAsync()).thenReturn(processing);
+
+        return new ServerProxyHandler(mock(GlobalConfProvider.class), mock(KeyConfProvider.class),
+                mock(ServerConfProvider.class), mock(CertChainFactory.class), mock(HttpClient.class),
+                mock(HttpClient.class)) {
+            @Override
+            MessageProcessorBase createRequestProcessor(RequestWrapper request, ResponseWrapper response,
+                                                        OpMonitoringData opMonitoringData) {
+                return processor;
+            }
+        };
+    }
+
     private Request getMockedRequest() {
         final var request = mock(Request.class);
         final var connectionMetaData = mock(ConnectionMetaData.class);
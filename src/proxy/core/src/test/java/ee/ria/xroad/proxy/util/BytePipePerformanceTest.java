@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the throughput of {@link BytePipe} and {@link PipedInputStream} when handing a message from a
+ * writer thread to a reader thread, the way the client proxy passes the request to the HTTP sender.
+ * Writes are done in 8 KiB blocks and reads in 4 KiB blocks. Run with optional arguments
+ * {@code <warmup rounds> <measured rounds>}.
+ */
+@Slf4j
+@SuppressWarnings("checkstyle:MagicNumber")
+public final class BytePipePerformanceTest {
+    private static final int[] MESSAGE_SIZES = {10 * 1024, 1024 * 1024, 50 * 1024 * 1024};
+    private static final int WRITE_BLOCK = 8 * 1024;
+    private static final int READ_BLOCK = 4 * 1024;
+
+    private BytePipePerformanceTest() {
+    }
+
+    /**
+     * Main function.
+     * @param args optional warmup and measured round counts
+     * @throws Exception if something goes wrong
+     */
+    public static void main(String[] args) throws Exception {
+        int warmupRounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (int size : MESSAGE_SIZES) {
+            run("PipedInputStream", size, warmupRounds, rounds, () -> {
+                PipedInputStream in = new PipedInputStream();
+                return new Pipe(in, new PipedOutputStream(in));
+            });
+            run("BytePipe", size, warmupRounds, rounds, () -> {
+                BytePipe pipe = new BytePipe();
+                return new Pipe(pipe.getInputStream(), pipe.getOutputStream());
+            });
+        }
+    }
+
+    private static void run(String name, int size, int warmupRounds, int rounds, PipeFactory factory) throws Exception {
+        // small messages are repeated so that a round takes long enough to be measured
+        int messagesPerRound = Math.max(1, 50 * 1024 * 1024 / size);
+
+        for (int i = 0; i < warmupRounds; i++) {
+            transfer(factory, size, messagesPerRound);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            transfer(factory, size, messagesPerRound);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = (double) size * messagesPerRound * rounds / (1024 * 1024);
+
+        log.info("{} message size {} bytes: {} MiB/s", name, size, String.format("%.1f", megabytes / seconds));
+    }
+
+    private static void transfer(PipeFactory factory, int size, int messages) throws Exception {
+        byte[] block = new byte[WRITE_BLOCK];
+        byte[] readBuffer = new byte[READ_BLOCK];
+
+        for (int m = 0; m < messages; m++) {
+            Pipe pipe = factory.create();
+
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try (OutputStream out = pipe.out()) {
+                    for (int written = 0; written < size; written += WRITE_BLOCK) {
+                        out.write(block, 0, Math.min(WRITE_BLOCK, size - written));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            long read = 0;
+            try (InputStream in = pipe.in()) {
+                int count;
+                while ((count = in.read(readBuffer)) != -1) {
+                    read += count;
+                }
+            }
+            writer.join();
+
+            if (read != size) {
+                throw new IllegalStateException("Expected " + size + " bytes, got " + read);
+            }
+        }
+    }
+
+    private record Pipe(InputStream in, OutputStream out) {
+    }
+
+    @FunctionalInterface
+    private interface PipeFactory {
+        Pipe create() throws IOException;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link BytePipe}.
+ */
+public class BytePipeTest {
+
+    @Test
+    public void transfersDataInOrder() throws Exception {
+        byte[] data = randomBytes(5 * BytePipe.CHUNK_SIZE + 123);
+        BytePipe pipe = new BytePipe(2);
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try (OutputStream out = pipe.getOutputStream()) {
+                out.write(data, 0, 10);
+                out.write(data[10]);
+                out.flush();
+                out.write(data, 11, data.length - 11);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (InputStream in = pipe.getInputStream()) {
+            assertEquals(data[0] & 0xFF, in.read());
+            in.transferTo(received);
+        }
+        writer.get(10, TimeUnit.SECONDS);
+
+        byte[] result = received.toByteArray();
+        assertEquals(data.length - 1, result.length);
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(data[i + 1], result[i]);
+        }
+    }
+
+    @Test
+    public void emptyStreamEndsImmediately() throws Exception {
+        BytePipe pipe = new BytePipe();
+        pipe.getOutputStream().close();
+
+        assertEquals(-1, pipe.getInputStream().read());
+        assertArrayEquals(new byte[0], pipe.getInputStream().readAllBytes());
+    }
+
+    @Test
+    public void writerFailsWhenReaderIsClosed() throws Exception {
+        BytePipe pipe = new BytePipe(1);
+        byte[] data = randomBytes(4 * BytePipe.CHUNK_SIZE);
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                pipe.getOutputStream().write(data);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // the writer is blocked on the full pipe until the reader goes away
+        Thread.sleep(100);
+        pipe.getInputStream().close();
+
+        try {
+            writer.get(10, TimeUnit.SECONDS);
+            fail("Writing to a pipe with closed reader should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void blockedReaderIsInterrupted() throws Exception {
+        BytePipe pipe = new BytePipe();
+        Thread reader = Thread.currentThread();
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reader.interrupt();
+        });
+
+        try {
+            pipe.getInputStream().read();
+            fail("Reading from an empty pipe should block until interrupted");
+        } catch (InterruptedIOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void abortedStreamFailsInsteadOfEnding() throws Exception {
+        BytePipe pipe = new BytePipe();
+        IllegalStateException cause = new IllegalStateException("Handler failed");
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                OutputStream out = pipe.getOutputStream();
+                out.write(randomBytes(3 * BytePipe.CHUNK_SIZE + 10));
+                pipe.abort(cause);
+                // closing after the abort must not turn the stream into a complete one
+                out.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        try (InputStream in = pipe.getInputStream()) {
+            in.transferTo(OutputStream.nullOutputStream());
+            fail("Reading an aborted stream should fail");
+        } catch (IOException e) {
+            assertSame(cause, e.getCause());
+        }
+        writer.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void abortAfterCloseIsIgnored() throws Exception {
+        BytePipe pipe = new BytePipe();
+        byte[] data = randomBytes(100);
+
+        try (OutputStream out = pipe.getOutputStream()) {
+            out.write(data);
+        }
+        pipe.abort(new IllegalStateException("Too late"));
+
+        assertArrayEquals(data, pipe.getInputStream().readAllBytes());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
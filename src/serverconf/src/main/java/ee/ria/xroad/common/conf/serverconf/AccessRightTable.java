@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled, immutable access rights of one service. Access rights given to a client directly or via a
+ * local group are indexed by the client; access rights given to global groups are kept per group, since
+ * global group membership is resolved from the global configuration at decision time. Endpoint path
+ * globs are compiled when the table is built.
+ */
+final class AccessRightTable {
+
+    private final Map<ClientId, List<Rule>> clientRules;
+    private final Map<GlobalGroupId, List<Rule>> globalGroupRules;
+
+    private AccessRightTable(Map<ClientId, List<Rule>> clientRules, Map<GlobalGroupId, List<Rule>> globalGroupRules) {
+        this.clientRules = clientRules;
+        this.globalGroupRules = globalGroupRules;
+    }
+
+    /**
+     * Compiles the access rights of a service. Must be called within the session the access rights and the
+     * service owner were loaded in.
+     * @param serviceOwner owner of the service, whose local groups the access rights may refer to
+     * @param accessRights all access rights of the service
+     * @return compiled access rights
+     */
+    static AccessRightTable compile(ClientType serviceOwner, List<AccessRightType> accessRights) {
+        Map<ClientId, List<Rule>> clientRules = new HashMap<>();
+        Map<GlobalGroupId, List<Rule>> globalGroupRules = new HashMap<>();
+
+        for (AccessRightType accessRight : accessRights) {
+            Rule rule = Rule.of(accessRight.getEndpoint());
+            XRoadId subject = accessRight.getSubjectId();
+
+            if (subject instanceof GlobalGroupId globalGroupId) {
+                add(globalGroupRules, GlobalGroupId.Conf.create(globalGroupId.getXRoadInstance(),
+                        globalGroupId.getGroupCode()), rule);
+            } else if (subject instanceof LocalGroupId localGroupId) {
+                for (ClientId member : getLocalGroupMembers(serviceOwner, localGroupId)) {
+                    add(clientRules, member, rule);
+                }
+            } else if (subject instanceof ClientId clientId) {
+                add(clientRules, ClientId.Conf.ensure(clientId), rule);
+            }
+        }
+
+        clientRules.replaceAll((k, v) -> List.copyOf(v));
+        globalGroupRules.replaceAll((k, v) -> List.copyOf(v));
+        return new AccessRightTable(Map.copyOf(clientRules), Map.copyOf(globalGroupRules));
+    }
+
+    /**
+     * @param client the client
+     * @param method request method, may be null
+     * @param normalizedPath normalized request path, may be null
+     * @param globalConfProvider global configuration used to resolve global group membership
+     * @return true if the client is allowed to access the service with the given method and path
+     */
+    boolean isAllowed(ClientId client, String method, String normalizedPath, GlobalConfProvider globalConfProvider) {
+        List<Rule> rules = clientRules.get(client);
+        if (rules != null && matchesAny(rules, method, normalizedPath)) {
+            return true;
+        }
+
+        for (Map.Entry<GlobalGroupId, List<Rule>> entry : globalGroupRules.entrySet()) {
+            if (matchesAny(entry.getValue(), method, normalizedPath)
+                    && globalConfProvider.isSubjectInGlobalGroup(client, entry.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<Rule> rules, String method, String normalizedPath) {
+        for (Rule rule : rules) {
+            if (rule.matches(method, normalizedPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<ClientId> getLocalGroupMembers(ClientType serviceOwner, LocalGroupId groupId) {
+        List<ClientId> members = new ArrayList<>();
+        for (LocalGroupType group : serviceOwner.getLocalGroup()) {
+            if (Objects.equals(groupId.getGroupCode(), group.getGroupCode())) {
+                for (GroupMemberType member : group.getGroupMember()) {
+                    members.add(ClientId.Conf.ensure(member.getGroupMemberId()));
+                }
+            }
+        }
+        return members;
+    }
+
+    private static <K> void add(Map<K, List<Rule>> map, K key, Rule rule) {
+        map.computeIfAbsent(key, k -> new ArrayList<>()).add(rule);
+    }
+
+    /**
+     * Endpoint with the method and the compiled path glob. A null method or path pattern matches anything.
+     */
+    private record Rule(String method, Pattern pathPattern) {
+
+        static Rule of(EndpointType endpoint) {
+            String method = EndpointType.ANY_METHOD.equals(endpoint.getMethod()) ? null : endpoint.getMethod();
+            Pattern pathPattern = EndpointType.ANY_PATH.equals(endpoint.getPath())
+                    ? null : PathGlob.compile(endpoint.getPath());
+            return new Rule(method, pathPattern);
+        }
+
+        boolean matches(String anotherMethod, String anotherPath) {
+            return (method == null || method.equalsIgnoreCase(anotherMethod))
+                    && (pathPattern == null || anotherPath != null && pathPattern.matcher(anotherPath).matches());
+        }
+    }
+}
@@ -37,34 +37,63 @@ import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 
+import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.hibernate.Session;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
 
 /**
  * Caching implementation for ServerConf
- * The long lasting and frequently used operations are cached
+ * The long lasting and frequently used operations are cached.
+ * <p>
+ * By default cached entries expire after the cache period. If a change poll interval is configured, the
+ * entries expire only when they have not been used for the cache period; instead a background thread polls the
+ * server conf change version and, when it changes, reloads the cached entries in a single transaction while
+ * requests keep being served from the previous values. The change version may miss a change whose transaction
+ * commits after a later one, so the entries are also reloaded in the background when they have not been reloaded
+ * for the cache period. Polling starts in {@link #afterPropertiesSet()}, which Spring calls for bean instances;
+ * other callers must call it themselves.
  */
 @Slf4j
-public class CachingServerConfImpl extends ServerConfImpl {
+public class CachingServerConfImpl extends ServerConfImpl implements InitializingBean, DisposableBean {
 
     public static final String TSP_URL = "tsp_url";
 
+    /**
+     * Denied decisions are kept only briefly, so that a newly granted access right or global group membership
+     * takes effect soon even when the server conf is not polled for changes.
+     */
+    static final int DENIED_ACCESS_EXPIRE_SECONDS = 5;
+
     private final int expireSeconds;
+    private final LongSupplier changeVersion;
+    private final int changePollIntervalSeconds;
+    private final ScheduledExecutorService refresher;
+    private final Ticker ticker;
+    private volatile Long confVersion;
+    private volatile long lastRefreshNanos;
     private volatile SecurityServerId.Conf serverId;
     private final Cache<Object, List<String>> tspCache;
     private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
     private final Cache<AclCacheKey, List<EndpointType>> aclCache;
+    private final Cache<ServiceId, AccessRightTable> accessRightCache;
+    private final Cache<AccessDecisionKey, Boolean> deniedAccessCache;
     private final Cache<ClientId, Optional<ClientType>> clientCache;
     private final Cache<String, InternalSSLKey> internalKeyCache;
 
@@ -72,40 +101,158 @@ public class CachingServerConfImpl extends ServerConfImpl {
      * Constructor, creates time based object cache with expireSeconds (or internalKeyExpireSeconds
      * with internal key cache)
      */
-    @SuppressWarnings("checkstyle:MagicNumber")
     public CachingServerConfImpl(GlobalConfProvider globalConfProvider) {
+        this(globalConfProvider, null, SystemProperties.getServerConfChangePollInterval());
+    }
+
+    /**
+     * Constructor
+     * @param globalConfProvider global conf provider
+     * @param changeVersion source of the server conf change version, defaults to {@link #getConfVersion(Session)}
+     * @param changePollIntervalSeconds interval of polling the change version, 0 to use time based expiry instead
+     */
+    public CachingServerConfImpl(GlobalConfProvider globalConfProvider, LongSupplier changeVersion,
+                                 int changePollIntervalSeconds) {
+        this(globalConfProvider, changeVersion, changePollIntervalSeconds, Ticker.systemTicker());
+    }
+
+    @SuppressWarnings("checkstyle:MagicNumber")
+    CachingServerConfImpl(GlobalConfProvider globalConfProvider, LongSupplier changeVersion,
+                          int changePollIntervalSeconds, Ticker ticker) {
         super(globalConfProvider);
+        this.ticker = ticker;
         expireSeconds = SystemProperties.getServerConfCachePeriod();
+        this.changeVersion = changeVersion != null ? changeVersion : () -> tx(this::getConfVersion);
+        this.changePollIntervalSeconds = changePollIntervalSeconds;
+
+        final boolean refreshOnChange = changePollIntervalSeconds > 0;
 
         internalKeyCache = CacheBuilder.newBuilder()
                 .maximumSize(1)
                 .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .build();
 
-        tspCache = CacheBuilder.newBuilder()
+        tspCache = newCacheBuilder(refreshOnChange)
                 .maximumSize(1)
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .build();
 
-        clientCache = CacheBuilder.newBuilder()
+        clientCache = newCacheBuilder(refreshOnChange)
                 .maximumSize(SystemProperties.getServerConfClientCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
                 .build();
 
-        serviceCache = CacheBuilder.newBuilder()
+        serviceCache = newCacheBuilder(refreshOnChange)
                 .maximumSize(SystemProperties.getServerConfServiceCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
                 .build();
 
-        aclCache = CacheBuilder.newBuilder()
+        aclCache = newCacheBuilder(refreshOnChange)
                 .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
                 .maximumWeight(SystemProperties.getServerConfAclCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
                 .build();
 
+        accessRightCache = newCacheBuilder(refreshOnChange)
+                .maximumSize(SystemProperties.getServerConfServiceCacheSize())
+                .recordStats()
+                .build();
+
+        deniedAccessCache = CacheBuilder.newBuilder()
+                .maximumSize(SystemProperties.getServerConfAclCacheSize())
+                .expireAfterWrite(Math.min(expireSeconds, DENIED_ACCESS_EXPIRE_SECONDS), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        if (refreshOnChange) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "serverconf-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            refresher = null;
+        }
+    }
+
+    private CacheBuilder<Object, Object> newCacheBuilder(boolean refreshOnChange) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        // when refreshed in the background, only the entries used since the previous reload are reloaded
+        return refreshOnChange
+                ? builder.ticker(ticker).expireAfterAccess(expireSeconds, TimeUnit.SECONDS)
+                : builder.expireAfterWrite(expireSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts polling the change version, if enabled.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (refresher != null) {
+            refresher.scheduleWithFixedDelay(this::checkForChanges, 0, changePollIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Polls the change version and refreshes the caches if the server conf has changed, or if they have not
+     * been refreshed for the cache period. Runs in the refresher thread, so requests are never blocked by reloads.
+     */
+    void checkForChanges() {
+        try {
+            final long now = ticker.read();
+            final long version = changeVersion.getAsLong();
+            final Long previous = confVersion;
+            if (previous == null || previous != version) {
+                log.debug("Server conf version changed from {} to {}, refreshing caches", previous, version);
+                confVersion = version;
+                if (previous != null) {
+                    refreshCaches();
+                }
+                lastRefreshNanos = now;
+            } else if (now - lastRefreshNanos >= TimeUnit.SECONDS.toNanos(expireSeconds)) {
+                log.debug("Server conf caches not refreshed for {} seconds, refreshing caches", expireSeconds);
+                refreshCaches();
+                lastRefreshNanos = now;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check server conf for changes", e);
+        }
+    }
+
+    private void refreshCaches() {
+        // the loaders join the transaction, so all entries are reloaded in one
+        tx(session -> {
+            if (serverId != null) {
+                serverId = super.getIdentifier();
+            }
+            refresh(tspCache, key -> super.getTspUrl());
+            refresh(clientCache, clientId -> Optional.ofNullable(super.getClient(session, clientId)));
+            refresh(serviceCache, serviceId -> Optional.ofNullable(super.getService(session, serviceId)));
+            refresh(aclCache, key -> super.getAclEndpoints(session, key.client(), key.serviceId()));
+            refresh(accessRightCache, service -> compileAccessRights(session, service));
+            return null;
+        });
+        // denied decisions are cheap to recompute from the refreshed access rights
+        deniedAccessCache.invalidateAll();
+    }
+
+    private static <K, V> void refresh(Cache<K, V> cache, Function<K, V> loader) {
+        // drops the entries that have not been used for the cache period
+        cache.cleanUp();
+        for (K key : List.copyOf(cache.asMap().keySet())) {
+            try {
+                cache.put(key, loader.apply(key));
+            } catch (Exception e) {
+                log.warn("Failed to refresh cached server conf entry {}, evicting it", key, e);
+                cache.invalidate(key);
+            }
+        }
     }
 
     @Override
@@ -211,6 +358,37 @@ public class CachingServerConfImpl extends ServerConfImpl {
         return getService(service).map(ServiceType::getTimeout).orElse(DEFAULT_SERVICE_TIMEOUT);
     }
 
+    @Override
+    public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
+        if (client == null) {
+            return false;
+        }
+
+        // denials are keyed by the path the access rights are matched against, so equivalent paths share them
+        final String normalizedPath = normalizePath(path);
+        final AccessDecisionKey key = new AccessDecisionKey(client, service, method, normalizedPath);
+        if (deniedAccessCache.getIfPresent(key) != null) {
+            return false;
+        }
+
+        final AccessRightTable accessRights;
+        try {
+            accessRights = accessRightCache.get(service, () -> tx(s -> compileAccessRights(s, service)));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CodedException) {
+                throw (CodedException) e.getCause();
+            }
+            log.debug("Failed to compile access rights", e);
+            return false;
+        }
+
+        final boolean allowed = accessRights.isAllowed(client, method, normalizedPath, globalConfProvider);
+        if (!allowed) {
+            deniedAccessCache.put(key, Boolean.FALSE);
+        }
+        return allowed;
+    }
+
     @Override
     protected List<EndpointType> getAclEndpoints(Session session, ClientId client, ServiceId service) {
         final AclCacheKey key = new AclCacheKey(client, service);
@@ -265,6 +443,10 @@ public class CachingServerConfImpl extends ServerConfImpl {
                     serviceCache.stats());
             log.trace("ServerConf.aclCache    : entries: {}, stats: {}", aclCache.size(),
                     aclCache.stats());
+            log.trace("ServerConf.accessRightCache: entries: {}, stats: {}", accessRightCache.size(),
+                    accessRightCache.stats());
+            log.trace("ServerConf.deniedAccessCache: entries: {}, stats: {}", deniedAccessCache.size(),
+                    deniedAccessCache.stats());
         }
     }
 
@@ -277,4 +459,7 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     private record AclCacheKey(ClientId client, ServiceId serviceId) {
     }
+
+    private record AccessDecisionKey(ClientId client, ServiceId serviceId, String method, String path) {
+    }
 }
@@ -390,6 +390,17 @@ public class ServerConfImpl implements ServerConfProvider {
 
     // ------------------------------------------------------------------------
 
+    /**
+     * Returns the change version of the server conf. Every change made to the server conf database adds rows
+     * to the history table (see the update_history triggers), so the latest history row id changes whenever
+     * the configuration does. Row ids are assigned before commit, so a change committed after a change with a
+     * higher id does not change the version; callers must not rely on the version alone.
+     */
+    protected long getConfVersion(Session session) {
+        return session.createNativeQuery("select coalesce(max(id), 0) from history", Long.class)
+                .getSingleResult();
+    }
+
     protected ServerConfType getConf(Session session) {
         return serverConfDao.getConf(session);
     }
@@ -418,16 +429,47 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @SuppressWarnings("squid:S3776")
     private boolean checkAccessRights(Session session, ClientId client, ServiceId service, String method, String path) {
-        final String normalizedPath;
-        if (path == null) {
-            normalizedPath = null;
-        } else {
-            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
-        }
+        final String normalizedPath = normalizePath(path);
         return getAclEndpoints(session, client, service).stream()
                 .anyMatch(ep -> ep.matches(method, normalizedPath));
     }
 
+    static String normalizePath(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
+        } catch (IllegalArgumentException e) {
+            // a malformed path fails the same way whether or not the access rights are checked in a transaction
+            throw translateException(e);
+        }
+    }
+
+    /**
+     * Compiles all access rights of the service, regardless of the subject they are given to.
+     */
+    AccessRightTable compileAccessRights(Session session, ServiceId service) {
+        final ClientType serviceOwner = getClient(session, service.getClientId());
+
+        if (serviceOwner == null) {
+            throw new CodedException(X_UNKNOWN_SERVICE, "Service '%s' owner not found", service);
+        }
+
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<AccessRightType> query = cb.createQuery(AccessRightType.class);
+        final Root<ClientType> root = query.from(ClientType.class);
+        final Join<ClientType, AccessRightType> acl = root.join("acl");
+        final Join<AccessRightType, EndpointType> endpoint = acl.join("endpoint");
+        acl.fetch("endpoint");
+
+        query.select(acl).where(
+                cb.equal(root, serviceOwner),
+                cb.equal(endpoint.get("serviceCode"), service.getServiceCode()));
+
+        return AccessRightTable.compile(serviceOwner, session.createQuery(query).setReadOnly(true).list());
+    }
+
     /**
      * Returns the endpoints the client has access to.
      * <p>
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link AccessRightTable} decisions.
+ */
+public class AccessRightTableTest {
+
+    private static final String SERVICE_CODE = "getRandom";
+
+    private static final ClientId CLIENT = ClientId.Conf.create("XX", "GOV", "1234", "client");
+    private static final ClientId OTHER_CLIENT = ClientId.Conf.create("XX", "GOV", "5678", "other");
+    private static final ClientId GROUP_MEMBER = ClientId.Conf.create("XX", "COM", "4321", "member");
+    private static final GlobalGroupId GLOBAL_GROUP = GlobalGroupId.Conf.create("XX", "security-server-owners");
+
+    private final ClientType serviceOwner = new ClientType();
+    private final List<AccessRightType> accessRights = new ArrayList<>();
+
+    @Test
+    public void clientIsAllowedMatchingMethodAndPath() {
+        grant(CLIENT, "GET", "/api/items");
+
+        AccessRightTable table = compile();
+
+        assertTrue(table.isAllowed(CLIENT, "GET", "/api/items", globalConf()));
+        assertTrue(table.isAllowed(CLIENT, "get", "/api/items", globalConf()));
+        assertFalse(table.isAllowed(CLIENT, "POST", "/api/items", globalConf()));
+        assertFalse(table.isAllowed(CLIENT, "GET", "/api/items/1", globalConf()));
+        assertFalse(table.isAllowed(OTHER_CLIENT, "GET", "/api/items", globalConf()));
+    }
+
+    @Test
+    public void anyMethodAndAnyPathMatchEverything() {
+        grant(CLIENT, EndpointType.ANY_METHOD, EndpointType.ANY_PATH);
+
+        AccessRightTable table = compile();
+
+        assertTrue(table.isAllowed(CLIENT, "DELETE", "/api/items/1", globalConf()));
+        assertTrue(table.isAllowed(CLIENT, null, null, globalConf()));
+        assertFalse(table.isAllowed(OTHER_CLIENT, "GET", "/", globalConf()));
+    }
+
+    @Test
+    public void pathWildcardsMatchSegments() {
+        grant(CLIENT, "GET", "/api/*/details");
+        grant(OTHER_CLIENT, EndpointType.ANY_METHOD, "/api/**");
+
+        AccessRightTable table = compile();
+
+        assertTrue(table.isAllowed(CLIENT, "GET", "/api/1/details", globalConf()));
+        assertFalse(table.isAllowed(CLIENT, "GET", "/api/1/2/details", globalConf()));
+        assertFalse(table.isAllowed(CLIENT, "GET", null, globalConf()));
+        assertTrue(table.isAllowed(OTHER_CLIENT, "PUT", "/api/1/2/details", globalConf()));
+        assertFalse(table.isAllowed(OTHER_CLIENT, "PUT", "/other/1", globalConf()));
+    }
+
+    @Test
+    public void localGroupMembersAreAllowed() {
+        LocalGroupType group = new LocalGroupType();
+        group.setGroupCode("testers");
+        GroupMemberType member = new GroupMemberType();
+        member.setGroupMemberId(GROUP_MEMBER);
+        group.getGroupMember().add(member);
+        serviceOwner.getLocalGroup().add(group);
+
+        grant(LocalGroupId.Conf.create("testers"), "GET", EndpointType.ANY_PATH);
+        grant(LocalGroupId.Conf.create("unknown"), "POST", EndpointType.ANY_PATH);
+
+        AccessRightTable table = compile();
+
+        assertTrue(table.isAllowed(GROUP_MEMBER, "GET", "/", globalConf()));
+        assertFalse(table.isAllowed(GROUP_MEMBER, "POST", "/", globalConf()));
+        assertFalse(table.isAllowed(CLIENT, "GET", "/", globalConf()));
+    }
+
+    @Test
+    public void globalGroupMembershipIsResolvedAtDecisionTime() {
+        grant(GLOBAL_GROUP, EndpointType.ANY_METHOD, "/public/**");
+
+        AccessRightTable table = compile();
+
+        assertTrue(table.isAllowed(CLIENT, "GET", "/public/doc", globalConf(CLIENT)));
+        assertFalse(table.isAllowed(CLIENT, "GET", "/private/doc", globalConf(CLIENT)));
+        assertFalse(table.isAllowed(CLIENT, "GET", "/public/doc", globalConf()));
+        assertTrue(table.isAllowed(OTHER_CLIENT, "GET", "/public/doc", globalConf(OTHER_CLIENT)));
+    }
+
+    private void grant(XRoadId subject, String method, String path) {
+        AccessRightType accessRight = new AccessRightType();
+        accessRight.setSubjectId(subject);
+        accessRight.setEndpoint(new EndpointType(SERVICE_CODE, method, path, false));
+        accessRights.add(accessRight);
+    }
+
+    private AccessRightTable compile() {
+        return AccessRightTable.compile(serviceOwner, accessRights);
+    }
+
+    private static GlobalConfProvider globalConf(ClientId... globalGroupMembers) {
+        Set<ClientId> members = Set.of(globalGroupMembers);
+        return new EmptyGlobalConf() {
+            @Override
+            public boolean isSubjectInGlobalGroup(ClientId subject, GlobalGroupId group) {
+                return GLOBAL_GROUP.equals(group) && members.contains(subject);
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.conf.TestUtil.prepareDB;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests caching of denied access decisions in {@link CachingServerConfImpl}.
+ */
+public class CachingServerConfDeniedAccessTest {
+
+    private static final ClientId OWNER = ClientId.Conf.create("XX", "FooClass", "client-1");
+    private static final ServiceId SERVICE = ServiceId.Conf.create(OWNER, "serviceCode-1-1", "v1");
+    private static final ClientId CLIENT = ClientId.Conf.create("XX", "GOV", "1234", "consumer");
+    private static final GlobalGroupId GLOBAL_GROUP = GlobalGroupId.Conf.create("XX", "consumers");
+
+    private final Set<ClientId> globalGroupMembers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong version = new AtomicLong(1);
+
+    private CachingServerConfImpl serverConf;
+
+    /**
+     * Creates test database with the service accessible to the members of a global group.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        prepareDB();
+
+        doInTransaction(session -> {
+            ClientType owner = new ClientDAOImpl().getClient(session, OWNER);
+            EndpointType endpoint = owner.getEndpoint().stream()
+                    .filter(e -> SERVICE.getServiceCode().equals(e.getServiceCode()))
+                    .findFirst()
+                    .orElseThrow();
+
+            AccessRightType accessRight = new AccessRightType();
+            accessRight.setEndpoint(endpoint);
+            accessRight.setSubjectId(GLOBAL_GROUP);
+            accessRight.setRightsGiven(new Date());
+            owner.getAcl().add(accessRight);
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (serverConf != null) {
+            serverConf.destroy();
+        }
+    }
+
+    @Test
+    public void deniedAccessIsInvalidatedWhenVersionChanges() {
+        serverConf = createServerConf(1);
+        serverConf.checkForChanges();
+
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+
+        globalGroupMembers.add(CLIENT);
+        // the cached denial is returned without evaluating the access rights
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+        // an equivalent path is matched as the normalized path, so it shares the denial
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/other/.."));
+        assertTrue(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/other"));
+
+        version.incrementAndGet();
+        serverConf.checkForChanges();
+        assertTrue(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+    }
+
+    @Test
+    public void deniedAccessExpiresBeforeAccessRights() throws Exception {
+        serverConf = createServerConf(0);
+
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+
+        globalGroupMembers.add(CLIENT);
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(CachingServerConfImpl.DENIED_ACCESS_EXPIRE_SECONDS) + 500);
+        assertTrue(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+    }
+
+    @Test
+    public void malformedPathFailsWithCodedException() {
+        serverConf = createServerConf(0);
+
+        assertThrows(CodedException.class, () -> serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/a b"));
+    }
+
+    @Test
+    public void allowedAccessIsNotAffectedByDenials() {
+        serverConf = createServerConf(0);
+
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "GET", "/"));
+        assertTrue(serverConf.isQueryAllowed(OWNER, SERVICE, "GET", "/"));
+        assertFalse(serverConf.isQueryAllowed(null, SERVICE, "GET", "/"));
+    }
+
+    private CachingServerConfImpl createServerConf(int changePollIntervalSeconds) {
+        return new CachingServerConfImpl(new EmptyGlobalConf() {
+            @Override
+            public boolean isSubjectInGlobalGroup(ClientId subject, GlobalGroupId group) {
+                return GLOBAL_GROUP.equals(group) && globalGroupMembers.contains(subject);
+            }
+        }, version::get, changePollIntervalSeconds);
+    }
+}
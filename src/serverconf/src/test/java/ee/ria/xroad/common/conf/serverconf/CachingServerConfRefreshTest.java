@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import com.google.common.base.Ticker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.conf.TestUtil.prepareDB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests refreshing {@link CachingServerConfImpl} caches when the server conf change version changes.
+ */
+public class CachingServerConfRefreshTest {
+
+    private static final ClientId CLIENT = ClientId.Conf.create("XX", "FooClass", "client-1");
+    private static final ServiceId SERVICE = ServiceId.Conf.create(CLIENT, "serviceCode-1-1", "v1");
+
+    private final AtomicLong version = new AtomicLong(1);
+    private final AtomicInteger versionChecks = new AtomicInteger();
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private CachingServerConfImpl serverConf;
+
+    /**
+     * Creates test database and the server conf polling the test change version.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        prepareDB();
+
+        serverConf = new CachingServerConfImpl(new EmptyGlobalConf() {
+            @Override
+            public boolean isSecurityServerClient(ClientId client, SecurityServerId securityServer) {
+                return true;
+            }
+        }, () -> {
+            versionChecks.incrementAndGet();
+            return version.get();
+        }, 1, new Ticker() {
+            @Override
+            public long read() {
+                return nanoTime.get();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        serverConf.destroy();
+    }
+
+    @Test
+    public void pollingStartsAfterInitialization() throws Exception {
+        Thread.sleep(1500);
+        assertEquals(0, versionChecks.get());
+
+        serverConf.afterPropertiesSet();
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (versionChecks.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(versionChecks.get() > 0);
+    }
+
+    @Test
+    public void cachedServiceIsReloadedWhenVersionChanges() throws Exception {
+        serverConf.checkForChanges();
+        assertEquals("serviceUrl1", serverConf.getServiceAddress(SERVICE));
+
+        updateServiceUrl("changedUrl");
+        serverConf.checkForChanges();
+        assertEquals("serviceUrl1", serverConf.getServiceAddress(SERVICE));
+
+        version.incrementAndGet();
+        serverConf.checkForChanges();
+        assertEquals("changedUrl", serverConf.getServiceAddress(SERVICE));
+    }
+
+    @Test
+    public void accessRightsAreReloadedWhenEndpointChanges() throws Exception {
+        serverConf.checkForChanges();
+        assertTrue(serverConf.isQueryAllowed(CLIENT, SERVICE, "POST", "/"));
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "POST", "/other"));
+
+        updateEndpointPath("/other");
+        serverConf.checkForChanges();
+        assertTrue(serverConf.isQueryAllowed(CLIENT, SERVICE, "POST", "/"));
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "POST", "/other"));
+
+        version.incrementAndGet();
+        serverConf.checkForChanges();
+        assertFalse(serverConf.isQueryAllowed(CLIENT, SERVICE, "POST", "/"));
+        assertTrue(serverConf.isQueryAllowed(CLIENT, SERVICE, "POST", "/other"));
+    }
+
+    @Test
+    public void cachedServiceIsReloadedAfterCachePeriodWhenVersionDoesNotChange() throws Exception {
+        serverConf.checkForChanges();
+        assertEquals("serviceUrl1", serverConf.getServiceAddress(SERVICE));
+
+        // a change committed after a change with a higher history id leaves the version unchanged
+        updateServiceUrl("changedUrl");
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(SystemProperties.getServerConfCachePeriod()) - 1);
+        serverConf.checkForChanges();
+        assertEquals("serviceUrl1", serverConf.getServiceAddress(SERVICE));
+
+        nanoTime.incrementAndGet();
+        serverConf.checkForChanges();
+        assertEquals("changedUrl", serverConf.getServiceAddress(SERVICE));
+    }
+
+    @Test
+    public void entryNotUsedDuringCachePeriodIsNotReloaded() throws Exception {
+        serverConf.checkForChanges();
+        assertEquals("serviceUrl1", serverConf.getServiceAddress(SERVICE));
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(SystemProperties.getServerConfCachePeriod()));
+        serverConf.checkForChanges();
+
+        // the expired entry was not reloaded by the refresh above, so it is loaded on demand
+        updateServiceUrl("changedUrl");
+        assertEquals("changedUrl", serverConf.getServiceAddress(SERVICE));
+    }
+
+    private static void updateServiceUrl(String url) throws Exception {
+        doInTransaction(session -> session
+                .createQuery("update ServiceType set url = :url where serviceCode = :serviceCode")
+                .setParameter("url", url)
+                .setParameter("serviceCode", SERVICE.getServiceCode())
+                .executeUpdate());
+    }
+
+    private static void updateEndpointPath(String path) throws Exception {
+        doInTransaction(session -> session
+                .createQuery("update EndpointType set path = :path where serviceCode = :serviceCode")
+                .setParameter("path", path)
+                .setParameter("serviceCode", SERVICE.getServiceCode())
+                .executeUpdate());
+    }
+}
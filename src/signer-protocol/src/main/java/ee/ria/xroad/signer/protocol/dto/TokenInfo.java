@@ -44,6 +44,12 @@ public class TokenInfo implements Serializable {
 
     public static final String SOFTWARE_MODULE_TYPE = "softToken";
 
+    /**
+     * Key of the {@link #getTokenInfo() token info} entry that holds the number of signatures the signer creates
+     * concurrently with the token. Signatures are created one at a time if the entry is missing.
+     */
+    public static final String CONCURRENT_SIGNINGS = "Concurrent signings";
+
     @JsonIgnore
     TokenInfoProto message;
 
@@ -68,23 +68,18 @@ public class FileBasedOcspCache extends OcspCache {
      */
     @Override
     protected OCSPResp getResponse(Object key, Date atDate) {
-        OCSPResp response = null;
         if (cache.containsKey(key)) { // is the OCSP response in memory?
-            response = super.getResponse(key, atDate);
-            if (response != null) {
-                return response;
-            }
+            // the file holds the same response, so it is not read even if the response has expired
+            return super.getResponse(key, atDate);
         }
 
         File file = getOcspResponseFile(getOcspCachePath(), key);
         try {
-            response = loadResponseFromFileIfNotExpired(file, atDate);
+            return loadResponseFromFileIfNotExpired(file, atDate);
         } catch (Exception e) {
             // Failed to load OCSP response from file
             throw translateException(e);
         }
-
-        return response;
     }
 
     @Override
@@ -101,6 +96,18 @@ public class FileBasedOcspCache extends OcspCache {
         return response;
     }
 
+    @Override
+    protected void evicted(String key) {
+        // a fresh response may have been put meanwhile, its file must be kept
+        if (!cache.containsKey(key)) {
+            File file = getOcspResponseFile(getOcspCachePath(), key);
+            if (file.exists()) {
+                log.trace("Deleting the file '{}' of expired OCSP response", file);
+                delete(file);
+            }
+        }
+    }
+
     void reloadFromDisk() throws Exception {
         Path path = Paths.get(getOcspCachePath());
 
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
 import ee.ria.xroad.common.crypto.identifier.SignAlgorithm;
@@ -57,12 +58,16 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertSha1HexHash;
@@ -73,7 +78,8 @@ import static java.util.Collections.emptyList;
  * This class is responsible for retrieving the OCSP responses from the OCSP
  * server and providing the responses to the message signer.
  * <p>
- * The certificate status is queried from the server at a fixed interval.
+ * The certificate status is queried from the server at a fixed interval. The statuses of different
+ * certificates are queried concurrently, with a limit on the number of concurrent requests per responder.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -90,6 +96,9 @@ public class OcspClientWorker {
 
     private final CertificationServiceDiagnostics certServDiagnostics = new CertificationServiceDiagnostics();
 
+    private final OcspResponderGate responderGate =
+            new OcspResponderGate(SystemProperties.getOcspResponderMaxConcurrentRequests());
+
     public CertificationServiceDiagnostics getDiagnostics() {
         return certServDiagnostics;
     }
@@ -167,27 +176,28 @@ public class OcspClientWorker {
 
         log.info("Fetching OCSP responses for {} certificates", certs.size());
 
-        boolean failed = false;
-        Map<String, OCSPResp> statuses = new HashMap<>();
-
-        for (X509Certificate subject : certs) {
-            try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate()));
-                if (status != null) {
-                    String subjectHash = calculateCertSha1HexHash(subject);
-                    statuses.put(subjectHash, status);
-                } else {
-                    failed = true;
-                }
-            } catch (Exception e) {
-                failed = true;
-
-                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+        OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                globalConfProvider.getGlobalConfExtensions().shouldVerifyOcspNextUpdate());
+        AtomicBoolean failed = new AtomicBoolean();
+        Map<String, OCSPResp> statuses = new ConcurrentHashMap<>();
+
+        int parallelism = Math.clamp(SystemProperties.getOcspFetchParallelism(), 1, certs.size());
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("ocsp-fetch-", 0).daemon().factory())) {
+            for (X509Certificate subject : certs) {
+                executor.execute(() -> {
+                    if (!fetchCertStatus(subject, verifierOptions, statuses)) {
+                        failed.set(true);
+                    }
+                });
             }
         }
+
+        logResponderStats();
+
         if (ocspClientExecuteScheduler != null) {
-            if (failed) {
+            if (failed.get()) {
                 ocspClientExecuteScheduler.failure();
             } else {
                 ocspClientExecuteScheduler.success();
@@ -201,6 +211,30 @@ public class OcspClientWorker {
         }
     }
 
+    private boolean fetchCertStatus(X509Certificate subject, OcspVerifierOptions verifierOptions,
+                                    Map<String, OCSPResp> statuses) {
+        try {
+            OCSPResp status = queryCertStatus(subject, verifierOptions);
+            if (status != null) {
+                statuses.put(calculateCertSha1HexHash(subject), status);
+
+                return true;
+            }
+        } catch (Exception e) {
+            log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+        }
+
+        return false;
+    }
+
+    private void logResponderStats() {
+        responderGate.takeStats().forEach((responderURI, stats) ->
+                log.info("OCSP responder {} since the previous refresh: {} requests, {} errors, average {} ms, "
+                                + "max {} ms", responderURI, stats.requests(), stats.errors(),
+                        TimeUnit.NANOSECONDS.toMillis(stats.averageNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(stats.maxNanos())));
+    }
+
     List<X509Certificate> getCertsForOcsp() {
         Set<X509Certificate> certs = new HashSet<>();
 
@@ -266,15 +300,20 @@ public class OcspClientWorker {
             int errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID;
 
             try {
-                log.debug("Fetching response from: {}", responderURI);
-                final OCSPResp response = ocspClient
-                        .fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+                final OCSPResp response = responderGate.call(responderURI, () -> {
+                    log.debug("Fetching response from: {}", responderURI);
+                    OCSPResp fetched = ocspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
 
-                if (response != null) {
-                    log.debug("Verifying response: {}", response);
-                    verifier.verifyValidity(response, subject, issuer);
-                    log.debug("Verified OCSP response for certificate '{}'", subject.getSubjectX500Principal());
+                    if (fetched != null) {
+                        log.debug("Verifying response: {}", fetched);
+                        verifier.verifyValidity(fetched, subject, issuer);
+                        log.debug("Verified OCSP response for certificate '{}'", subject.getSubjectX500Principal());
+                    }
+
+                    return fetched;
+                });
 
+                if (response != null) {
                     reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.RETURN_SUCCESS, prevUpdate,
                             nextUpdate);
 
@@ -289,6 +328,10 @@ public class OcspClientWorker {
             } catch (CodedException e) {
                 log.warn("Received OCSP response that failed verification", e);
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_UNVERIFIED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw e;
             } catch (Exception e) {
                 log.error("Unable to fetch response from responder at {}", responderURI, e);
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID;
@@ -307,19 +350,22 @@ public class OcspClientWorker {
 
         String subjectName = issuer.getSubjectDN().toString();
 
-        CertificationServiceStatus serviceStatus;
+        // statuses are reported concurrently by the OCSP fetch threads
+        synchronized (certServDiagnostics) {
+            CertificationServiceStatus serviceStatus;
 
-        Map<String, CertificationServiceStatus> serviceStatusMap =
-                certServDiagnostics.getCertificationServiceStatusMap();
+            Map<String, CertificationServiceStatus> serviceStatusMap =
+                    certServDiagnostics.getCertificationServiceStatusMap();
 
-        if (!serviceStatusMap.containsKey(subjectName)) {
-            serviceStatus = new CertificationServiceStatus(subjectName);
-            serviceStatusMap.put(subjectName, serviceStatus);
-        } else {
-            serviceStatus = serviceStatusMap.get(subjectName);
-        }
+            if (!serviceStatusMap.containsKey(subjectName)) {
+                serviceStatus = new CertificationServiceStatus(subjectName);
+                serviceStatusMap.put(subjectName, serviceStatus);
+            } else {
+                serviceStatus = serviceStatusMap.get(subjectName);
+            }
 
-        serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+            serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+        }
     }
 
     void updateCertStatuses(Map<String, OCSPResp> statuses) throws Exception {
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrent requests sent to each OCSP responder and collects per-responder request
+ * statistics. A request that does not produce a response, or fails, is counted as an error.
+ */
+final class OcspResponderGate {
+
+    /**
+     * Request statistics of an OCSP responder.
+     * @param requests number of requests sent
+     * @param errors number of requests that failed
+     * @param averageNanos average request duration
+     * @param maxNanos longest request duration
+     */
+    record ResponderStats(long requests, long errors, long averageNanos, long maxNanos) {
+    }
+
+    private final int maxConcurrentRequests;
+    private final Map<String, Responder> responders = new ConcurrentHashMap<>();
+
+    OcspResponderGate(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Sends a request to the responder once the number of concurrent requests to it is below the limit.
+     * @param responderURI the responder URI
+     * @param request the request
+     * @param <T> the type of the response
+     * @return the response
+     * @throws Exception if the request failed or the thread was interrupted while waiting
+     */
+    <T> T call(String responderURI, Callable<T> request) throws Exception {
+        Responder responder = responders.computeIfAbsent(responderURI, uri -> new Responder(maxConcurrentRequests));
+
+        responder.permits.acquire();
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T response = request.call();
+            success = response != null;
+
+            return response;
+        } finally {
+            responder.permits.release();
+            responder.record(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Returns the request statistics collected since the previous call and starts collecting new ones.
+     * @return request statistics by responder URI, for responders that have been sent requests
+     */
+    Map<String, ResponderStats> takeStats() {
+        Map<String, ResponderStats> stats = new TreeMap<>();
+        responders.forEach((uri, responder) -> {
+            ResponderStats responderStats = responder.takeStats();
+            if (responderStats.requests() > 0) {
+                stats.put(uri, responderStats);
+            }
+        });
+
+        return stats;
+    }
+
+    private static final class Responder {
+        private final Semaphore permits;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Responder(int maxConcurrentRequests) {
+            this.permits = new Semaphore(maxConcurrentRequests);
+        }
+
+        void record(long nanos, boolean success) {
+            requests.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        ResponderStats takeStats() {
+            long count = requests.sumThenReset();
+
+            return new ResponderStats(count, errors.sumThenReset(),
+                    count == 0 ? 0 : totalNanos.sumThenReset() / count, maxNanos.getAndSet(0));
+        }
+    }
+}
@@ -43,7 +43,6 @@ import ee.ria.xroad.signer.tokenmanager.merge.MergeOntoFileTokensStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeAddedCertificatesListener;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy.MergeResult;
-import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
@@ -70,12 +69,19 @@ import static java.util.Collections.unmodifiableList;
 
 /**
  * Manages the current state of tokens, their keys and certificates.
+ * <p>
+ * Modifications are done under the class lock. Lookups use an immutable {@link TokenRegistry} snapshot without
+ * locking. Modifications discard the snapshot, and the next lookup builds a new one, so a series of modifications
+ * is published at once.
  */
 @Slf4j
 public final class TokenManager {
 
     private static volatile List<Token> currentTokens = new ArrayList<>();
 
+    // snapshot of currentTokens for lookups, null if the tokens have been modified after it was built
+    private static volatile TokenRegistry registry;
+
     private static boolean initialized;
 
     // configure the implementation somewhere else if multiple implementations created
@@ -96,7 +102,10 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+            registry = null;
+        }
 
         initialized = true;
     }
@@ -138,6 +147,7 @@ public final class TokenManager {
             synchronized (TokenManager.class) {
                 result = mergeStrategy.merge(fileTokens, currentTokens);
                 currentTokens = result.getResultTokens();
+                registry = null;
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -156,10 +166,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return currentTokens.stream()
-                .map(Token::toDTO)
-                .toList();
+    public static List<TokenInfo> listTokens() {
+        return registry().getTokens();
     }
 
     /**
@@ -188,6 +196,7 @@ public final class TokenManager {
         token.setAvailable(true);
 
         currentTokens.add(token);
+        registry = null;
 
         return token.toDTO();
     }
@@ -210,13 +219,11 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(Token::toDTO)
-                .findFirst().orElse(null);
+        TokenRegistry.TokenEntry token = registry().getToken(tokenId);
+        return token != null ? token.token() : null;
     }
 
     /**
@@ -224,80 +231,79 @@ public final class TokenManager {
      * @return the token info DTO for the token
      * @throws Exception if key was not found
      */
-    public static synchronized TokenInfo findTokenInfoForKeyId(String keyId) {
+    public static TokenInfo findTokenInfoForKeyId(String keyId) {
         log.trace("getTokenInfoForKeyId({})", keyId);
-        String tokenId = findTokenIdForKeyId(keyId);
-        return getTokenInfo(tokenId);
+
+        return findKeyEntry(keyId).token();
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        TokenRegistry.KeyEntry key = findKeyEntry(keyId);
+        return new TokenAndKey(key.token().getId(), key.key());
     }
 
     /**
      * @param certHash the certificate hash in HEX
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
         log.trace("findTokenAndKeyIdForCertHash({})", certHash);
 
-        String keyId = forCert((k, c) -> certHash.equals(c.getSha256hash()), (k, c) -> k.getId())
-                .orElseThrow(() -> certWithHashNotFound(certHash));
+        TokenRegistry snapshot = registry();
+        TokenRegistry.CertEntry cert = snapshot.getCertBySha256Hash(certHash);
+        if (cert == null) {
+            throw certWithHashNotFound(certHash);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        return toTokenInfoAndKeyId(snapshot, cert.key().getId());
     }
 
     /**
      * @param certRequestId the certificate request id
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
         log.trace("findTokenAndKeyIdForCertRequestId({})", certRequestId);
 
-        String keyId = forCertRequest((k, c) -> certRequestId.equals(c.getId()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> csrWithIdNotFound(certRequestId));
+        TokenRegistry snapshot = registry();
+        TokenRegistry.CertRequestEntry certRequest = snapshot.getCertRequest(certRequestId);
+        if (certRequest == null) {
+            throw csrWithIdNotFound(certRequestId);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        return toTokenInfoAndKeyId(snapshot, certRequest.key().getId());
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        return findKeyEntry(keyId).token().getId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE), Token::getId).orElse(null);
+    public static String getSoftwareTokenId() {
+        return registry().getSoftwareTokenId();
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                Token::getModuleId).orElse(null);
+    public static String getModuleId(String tokenId) {
+        TokenRegistry.TokenEntry token = registry().getToken(tokenId);
+        return token != null ? token.moduleId() : null;
     }
 
     /**
@@ -317,47 +323,25 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        TokenRegistry.KeyEntry key = registry().getKey(keyId);
+        return key != null ? key.key() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
-        List<KeyInfo> keyInfo = new ArrayList<>();
-
-        for (Token token : currentTokens) {
-            if (token.isInActive()) {
-                // Ignore inactive (not usable) tokens
-                continue;
-            }
-
-            for (Key key : token.getKeys()) {
-                if (!key.isValidForSigning()) {
-                    // Ignore authentication keys
-                    continue;
-                }
-
-                for (Cert cert : key.getCerts()) {
-                    if (cert.isInvalid()) {
-                        // Ignore inactive and invalid certificates
-                        continue;
-                    }
+        // only signing keys of active tokens with active certificates of the client are indexed
+        List<KeyInfo> keyInfo = registry().getSigningKeys(clientId);
 
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
-                        log.debug("Found key '{}' for client '{}'",
-                                key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
-                    }
-                }
-            }
+        if (log.isDebugEnabled()) {
+            keyInfo.forEach(key -> log.debug("Found key '{}' for client '{}'", key.getId(), clientId));
         }
 
         return keyInfo;
@@ -381,43 +365,42 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(String certId) {
+    public static CertificateInfo getCertificateInfo(String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO()).orElse(null);
+        TokenRegistry.CertEntry cert = registry().getCert(certId);
+        return cert != null ? cert.cert() : null;
     }
 
     /**
      * @param certHash the certificate hash in HEX
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(String certHash) {
+    public static CertificateInfo getCertificateInfoForCertHash(String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getSha256hash()), (k, c) -> c.toDTO()).orElse(null);
+        TokenRegistry.CertEntry cert = registry().getCertBySha256Hash(certHash);
+        return cert != null ? cert.cert() : null;
     }
 
     /**
      * @param certSha1Hash the certificate SHA-1 hash in HEX
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCerHash(String certSha1Hash) {
+    public static X509Certificate getCertificateForCerHash(String certSha1Hash) {
         log.trace("getCertificateForCertHash({})", certSha1Hash);
 
-        return forCert((k, c) -> certSha1Hash.equals(c.getSha1hash()), (k, c) -> c.getCertificate()).orElse(null);
+        TokenRegistry.CertEntry cert = registry().getCertBySha1Hash(certSha1Hash);
+        return cert != null ? cert.certificate() : null;
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
-                .flatMap(k -> k.getCerts().stream())
-                .map(Cert::toDTO)
-                .toList();
+        return registry().getCerts();
     }
 
     /**
@@ -433,6 +416,7 @@ public final class TokenManager {
             c.setOcspResponse(response);
             return null;
         });
+        registry = null;
     }
 
     /**
@@ -440,47 +424,47 @@ public final class TokenManager {
      * @param memberId the member id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String keyId, ClientId memberId) {
+    public static CertRequestInfo getCertRequestInfo(String keyId, ClientId memberId) {
         log.trace("getCertRequestInfo({}, {})", keyId, memberId);
 
-        Key key = findKey(keyId);
+        KeyInfo key = findKeyEntry(keyId).key();
         return key.getCertRequests().stream()
                 .filter(c -> key.getUsage() == KeyUsageInfo.AUTHENTICATION
                         || memberId.equals(c.getMemberId()))
-                .map(c -> c.toDTO()).findFirst().orElse(null);
+                .findFirst().orElse(null);
     }
 
     /**
      * @param certReqId cert request id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String certReqId) {
+    public static CertRequestInfo getCertRequestInfo(String certReqId) {
         log.trace("getCertRequestInfo({})", certReqId);
 
-        return forCertRequest((k, c) -> certReqId.equals(c.getId()),
-                (k, c) -> c.toDTO())
-                .orElse(null);
+        TokenRegistry.CertRequestEntry certRequest = registry().getCertRequest(certReqId);
+        return certRequest != null ? certRequest.certRequest() : null;
     }
 
     /**
      * @param certHash the certificate hash in HEX
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getSha256hash()), (k, c) -> k.toDTO()).orElse(null);
+        TokenRegistry.CertEntry cert = registry().getCertBySha256Hash(certHash);
+        return cert != null ? cert.key() : null;
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        TokenRegistry.CertEntry cert = registry().getCert(certId);
+        return cert != null ? cert.key() : null;
     }
 
     /**
@@ -498,20 +482,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenEntry(tokenId).token().isAvailable();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenEntry(tokenId).token().isActive();
     }
 
     /**
@@ -529,6 +513,7 @@ public final class TokenManager {
         Token token = findToken(tokenId);
         token.setAvailable(available);
         token.setModuleId(tokenType.getModuleType());
+        registry = null;
     }
 
     /**
@@ -541,6 +526,7 @@ public final class TokenManager {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
 
         findToken(tokenId).setAvailable(available);
+        registry = null;
     }
 
     /**
@@ -554,6 +540,7 @@ public final class TokenManager {
         log.trace("setTokenActive({}, {})", tokenId, active);
 
         findToken(tokenId).setActive(active);
+        registry = null;
     }
 
     /**
@@ -567,16 +554,17 @@ public final class TokenManager {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
 
         findToken(tokenId).setFriendlyName(friendlyName);
+        registry = null;
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenEntry(tokenId).token().getStatus();
     }
 
     /**
@@ -590,6 +578,7 @@ public final class TokenManager {
         log.trace("setTokenStatus({}, {})", tokenId, status);
 
         findToken(tokenId).setStatus(status);
+        registry = null;
     }
 
     /**
@@ -603,16 +592,17 @@ public final class TokenManager {
         log.trace("setKeyAvailable({}, {})", keyId, available);
 
         findKey(keyId).setAvailable(available);
+        registry = null;
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyEntry(keyId).key().isAvailable();
     }
 
     /**
@@ -626,6 +616,7 @@ public final class TokenManager {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
 
         findKey(keyId).setFriendlyName(friendlyName);
+        registry = null;
     }
 
     /**
@@ -638,6 +629,7 @@ public final class TokenManager {
         log.trace("setKeyLabel({}, {})", keyId, label);
 
         findKey(keyId).setLabel(label);
+        registry = null;
     }
 
     /**
@@ -651,6 +643,7 @@ public final class TokenManager {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
 
         findKey(keyId).setUsage(keyUsage);
+        registry = null;
     }
 
     /**
@@ -670,6 +663,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        registry = null;
 
         return key.toDTO();
     }
@@ -683,8 +677,11 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
+        boolean removed = forKey((t, k) -> k.getId().equals(keyId),
                 (t, k) -> t.getKeys().remove(k)).orElse(false);
+        registry = null;
+
+        return removed;
     }
 
     /**
@@ -698,6 +695,7 @@ public final class TokenManager {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
 
         findKey(keyId).setPublicKey(publicKeyBase64);
+        registry = null;
     }
 
     /**
@@ -715,6 +713,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        registry = null;
     }
 
     /**
@@ -734,6 +733,7 @@ public final class TokenManager {
         cert.setStatus(initialStatus);
 
         key.addCert(cert);
+        registry = null;
     }
 
     /**
@@ -747,6 +747,7 @@ public final class TokenManager {
         log.trace("setCertActive({}, {})", certId, active);
 
         findCert(certId).setActive(active);
+        registry = null;
     }
 
     /**
@@ -760,6 +761,7 @@ public final class TokenManager {
         log.trace("setCertStatus({}, {})", certId, status);
 
         findCert(certId).setStatus(status);
+        registry = null;
     }
 
     /**
@@ -773,6 +775,7 @@ public final class TokenManager {
         log.trace("setRenewedCertHash({}, {})", certId, hash);
 
         findCert(certId).setRenewedCertHash(hash);
+        registry = null;
     }
 
     /**
@@ -786,6 +789,7 @@ public final class TokenManager {
         log.trace("setRenewalError({}, {})", certId, errorMessage);
 
         findCert(certId).setRenewalError(errorMessage);
+        registry = null;
     }
 
     /**
@@ -799,6 +803,7 @@ public final class TokenManager {
         log.trace("setNextPlannedRenewal({}, {})", certId, nextRenewalTime);
 
         findCert(certId).setNextAutomaticRenewalTime(nextRenewalTime);
+        registry = null;
     }
 
     /**
@@ -810,8 +815,11 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
+        boolean removed = forCert((k, c) -> c.getId().equals(certId),
                 (k, c) -> k.getCerts().remove(c)).orElse(false);
+        registry = null;
+
+        return removed;
     }
 
     /**
@@ -841,6 +849,7 @@ public final class TokenManager {
         }
 
         key.setUsage(keyUsage);
+        registry = null;
 
         for (CertRequest certRequest : key.getCertRequests()) {
             ClientId crMember = certRequest.getMemberId();
@@ -875,7 +884,7 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
+        String keyId = forCertRequest((k, c) -> c.getId().equals(certReqId),
                 (k, c) -> {
                     if (!k.getCertRequests().remove(c)) {
                         return null;
@@ -883,6 +892,9 @@ public final class TokenManager {
 
                     return k.getId();
                 }).orElse(null);
+        registry = null;
+
+        return keyId;
     }
 
     /**
@@ -892,21 +904,69 @@ public final class TokenManager {
      * @param info    the token info
      */
     public static synchronized void setTokenInfo(String tokenId, Map<String, String> info) {
-        findToken(tokenId).setInfo(info);
+        Token token = findToken(tokenId);
+
+        // token info is set after every token worker action, but rarely changes
+        if (!token.getTokenInfo().equals(info)) {
+            token.setInfo(info);
+            registry = null;
+        }
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        return findTokenEntry(tokenId).batchSigningEnabled();
     }
 
     // ------------------------------------------------------------------------
 
+    private static TokenRegistry registry() {
+        TokenRegistry current = registry;
+        return current != null ? current : rebuildRegistry();
+    }
+
+    private static synchronized TokenRegistry rebuildRegistry() {
+        if (registry == null) {
+            log.trace("rebuildRegistry()");
+
+            registry = new TokenRegistry(currentTokens);
+        }
+
+        return registry;
+    }
+
+    private static TokenRegistry.TokenEntry findTokenEntry(String tokenId) {
+        TokenRegistry.TokenEntry token = registry().getToken(tokenId);
+        if (token == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return token;
+    }
+
+    private static TokenRegistry.KeyEntry findKeyEntry(String keyId) {
+        TokenRegistry.KeyEntry key = registry().getKey(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return key;
+    }
+
+    private static TokenInfoAndKeyId toTokenInfoAndKeyId(TokenRegistry snapshot, String keyId) {
+        TokenRegistry.KeyEntry key = snapshot.getKey(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return new TokenInfoAndKeyId(key.token(), keyId);
+    }
+
     private static <T> Optional<T> forToken(Function<Token, Boolean> tester, Function<Token, T> mapper) {
         for (Token token : currentTokens) {
             if (tester.apply(token)) {
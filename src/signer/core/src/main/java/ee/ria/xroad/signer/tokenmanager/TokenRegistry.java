@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the tokens, their keys, certificates and certificate requests, indexed by id, certificate
+ * hash and member id. The snapshot holds only value objects, so it can be read by any number of threads without
+ * locking. {@link TokenManager} replaces the snapshot after the tokens have been modified.
+ * <p>
+ * If an id occurs more than once, lookups return the first occurrence, as a linear search over the tokens would.
+ */
+final class TokenRegistry {
+
+    record TokenEntry(TokenInfo token, String moduleId, boolean batchSigningEnabled) {
+    }
+
+    record KeyEntry(TokenInfo token, KeyInfo key) {
+    }
+
+    record CertEntry(KeyInfo key, CertificateInfo cert, X509Certificate certificate) {
+    }
+
+    record CertRequestEntry(KeyInfo key, CertRequestInfo certRequest) {
+    }
+
+    // order is the position of the certificate among all certificates, used for keeping the lookup results in order
+    private record MemberKey(int order, KeyInfo key) {
+    }
+
+    private final List<TokenInfo> tokens;
+    private final List<CertificateInfo> certs;
+    private final String softwareTokenId;
+
+    private final Map<String, TokenEntry> tokensById;
+    private final Map<String, KeyEntry> keysById;
+    private final Map<String, CertEntry> certsById;
+    private final Map<String, CertEntry> certsBySha256Hash;
+    private final Map<String, CertEntry> certsBySha1Hash;
+    private final Map<String, CertRequestEntry> certRequestsById;
+    private final Map<ClientId, List<MemberKey>> signingKeysByMember;
+
+    TokenRegistry(List<Token> modelTokens) {
+        List<TokenInfo> tokenList = new ArrayList<>();
+        List<CertificateInfo> certList = new ArrayList<>();
+        String softTokenId = null;
+
+        Map<String, TokenEntry> tokenMap = new HashMap<>();
+        Map<String, KeyEntry> keyMap = new HashMap<>();
+        Map<String, CertEntry> certMap = new HashMap<>();
+        Map<String, CertEntry> sha256Map = new HashMap<>();
+        Map<String, CertEntry> sha1Map = new HashMap<>();
+        Map<String, CertRequestEntry> certRequestMap = new HashMap<>();
+        Map<ClientId, List<MemberKey>> memberKeyMap = new HashMap<>();
+
+        for (Token token : modelTokens) {
+            TokenInfo tokenInfo = token.toDTO();
+
+            tokenList.add(tokenInfo);
+            tokenMap.putIfAbsent(token.getId(), new TokenEntry(tokenInfo, token.getModuleId(), token.isBatchSigningEnabled()));
+
+            if (softTokenId == null && SoftwareModuleType.TYPE.equals(token.getType())) {
+                softTokenId = token.getId();
+            }
+
+            // the value objects are in the same order as the model objects they were created from
+            List<KeyInfo> keyInfos = tokenInfo.getKeyInfo();
+
+            for (int i = 0; i < keyInfos.size(); i++) {
+                Key key = token.getKeys().get(i);
+                KeyInfo keyInfo = keyInfos.get(i);
+
+                keyMap.putIfAbsent(key.getId(), new KeyEntry(tokenInfo, keyInfo));
+
+                List<CertificateInfo> certInfos = keyInfo.getCerts();
+
+                for (int j = 0; j < certInfos.size(); j++) {
+                    Cert cert = key.getCerts().get(j);
+                    CertEntry certEntry = new CertEntry(keyInfo, certInfos.get(j), cert.getCertificate());
+
+                    certList.add(certEntry.cert());
+                    certMap.putIfAbsent(cert.getId(), certEntry);
+
+                    if (cert.getSha256hash() != null) {
+                        sha256Map.putIfAbsent(cert.getSha256hash(), certEntry);
+                    }
+
+                    if (cert.getSha1hash() != null) {
+                        sha1Map.putIfAbsent(cert.getSha1hash(), certEntry);
+                    }
+
+                    if (!token.isInActive() && key.isValidForSigning() && !cert.isInvalid()) {
+                        memberKeyMap.computeIfAbsent(cert.getMemberId(), m -> new ArrayList<>())
+                                .add(new MemberKey(certList.size(), keyInfo));
+                    }
+                }
+
+                List<CertRequestInfo> certRequestInfos = keyInfo.getCertRequests();
+
+                for (int j = 0; j < certRequestInfos.size(); j++) {
+                    CertRequest certRequest = key.getCertRequests().get(j);
+
+                    certRequestMap.putIfAbsent(certRequest.getId(), new CertRequestEntry(keyInfo, certRequestInfos.get(j)));
+                }
+            }
+        }
+
+        memberKeyMap.replaceAll((member, keys) -> List.copyOf(keys));
+
+        this.tokens = List.copyOf(tokenList);
+        this.certs = List.copyOf(certList);
+        this.softwareTokenId = softTokenId;
+        this.tokensById = Map.copyOf(tokenMap);
+        this.keysById = Map.copyOf(keyMap);
+        this.certsById = Map.copyOf(certMap);
+        this.certsBySha256Hash = Map.copyOf(sha256Map);
+        this.certsBySha1Hash = Map.copyOf(sha1Map);
+        this.certRequestsById = Map.copyOf(certRequestMap);
+        this.signingKeysByMember = Map.copyOf(memberKeyMap);
+    }
+
+    List<TokenInfo> getTokens() {
+        return tokens;
+    }
+
+    List<CertificateInfo> getCerts() {
+        return certs;
+    }
+
+    String getSoftwareTokenId() {
+        return softwareTokenId;
+    }
+
+    TokenEntry getToken(String tokenId) {
+        return tokenId != null ? tokensById.get(tokenId) : null;
+    }
+
+    KeyEntry getKey(String keyId) {
+        return keyId != null ? keysById.get(keyId) : null;
+    }
+
+    CertEntry getCert(String certId) {
+        return certId != null ? certsById.get(certId) : null;
+    }
+
+    CertEntry getCertBySha256Hash(String certHash) {
+        return certHash != null ? certsBySha256Hash.get(certHash) : null;
+    }
+
+    CertEntry getCertBySha1Hash(String certSha1Hash) {
+        return certSha1Hash != null ? certsBySha1Hash.get(certSha1Hash) : null;
+    }
+
+    CertRequestEntry getCertRequest(String certRequestId) {
+        return certRequestId != null ? certRequestsById.get(certRequestId) : null;
+    }
+
+    /**
+     * Returns the signing keys of active tokens that have a valid certificate issued to the client, or to the
+     * member of the client if the client is a subsystem. A key is listed once for every matching certificate.
+     * @param clientId the client id
+     * @return the signing keys in token order
+     */
+    List<KeyInfo> getSigningKeys(ClientId clientId) {
+        List<MemberKey> ofClient = signingKeysByMember.getOrDefault(clientId, List.of());
+        List<MemberKey> ofMember = List.of();
+
+        if (clientId.getObjectType() == XRoadObjectType.SUBSYSTEM) {
+            ClientId memberId = ClientId.Conf.create(clientId.getXRoadInstance(), clientId.getMemberClass(),
+                    clientId.getMemberCode());
+            ofMember = signingKeysByMember.getOrDefault(memberId, List.of());
+        }
+
+        List<KeyInfo> keys = new ArrayList<>(ofClient.size() + ofMember.size());
+        int i = 0;
+        int j = 0;
+
+        while (i < ofClient.size() || j < ofMember.size()) {
+            if (j == ofMember.size() || (i < ofClient.size() && ofClient.get(i).order() < ofMember.get(j).order())) {
+                keys.add(ofClient.get(i++).key());
+            } else {
+                keys.add(ofMember.get(j++).key());
+            }
+        }
+
+        return keys;
+    }
+}
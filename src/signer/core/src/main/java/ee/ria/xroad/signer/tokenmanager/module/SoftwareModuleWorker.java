@@ -69,6 +69,7 @@ public class SoftwareModuleWorker extends AbstractModuleWorker {
     private void initTokenInfo(TokenInfo tokenInfo) {
         Map<String, String> info = new HashMap<>();
         info.put("Type", "Software");
+        info.put(TokenInfo.CONCURRENT_SIGNINGS, "1");
 
         TokenManager.setTokenInfo(tokenInfo.getId(), info);
     }
@@ -189,7 +189,14 @@ public abstract class AbstractTokenWorker implements TokenWorker, WorkerWithLife
     }
 
     /**
-     * Execute additional code post every token worker action.
+     * @return true if {@link #handleSign(SignReq)} may be called concurrently by several threads, false by default
+     */
+    public boolean isConcurrentSigningSupported() {
+        return false;
+    }
+
+    /**
+     * Execute additional code post every token worker action. Called concurrently after concurrent sign actions.
      */
     public abstract void onActionHandled();
 
@@ -34,16 +34,22 @@ import org.niis.xroad.signer.proto.GenerateKeyReq;
 import org.niis.xroad.signer.proto.SignCertificateReq;
 import org.niis.xroad.signer.proto.SignReq;
 
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 
 /**
- * A blocking (calls to token are synchronized) token worker.
+ * A blocking (calls to token are synchronized) token worker. If the underlying worker supports concurrent
+ * signing, sign requests are handled in parallel with each other, but still exclusively of all other calls.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class BlockingTokenWorker implements TokenWorker, WorkerWithLifecycle {
     private final AbstractTokenWorker tokenWorker;
 
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     @Override
     public void handleActivateToken(ActivateTokenReq message) {
         synchronizedAction(() -> tokenWorker.handleActivateToken(message));
@@ -66,21 +72,25 @@ public class BlockingTokenWorker implements TokenWorker, WorkerWithLifecycle {
 
     @Override
     public byte[] handleSign(SignReq request) {
+        if (tokenWorker.isConcurrentSigningSupported()) {
+            return concurrentAction(() -> tokenWorker.handleSign(request));
+        }
+
         return synchronizedAction(() -> tokenWorker.handleSign(request));
     }
 
     @Override
-    public synchronized byte[] handleSignCertificate(SignCertificateReq request) {
+    public byte[] handleSignCertificate(SignCertificateReq request) {
         return synchronizedAction(() -> tokenWorker.handleSignCertificate(request));
     }
 
     @Override
-    public synchronized void initializeToken(char[] pin) {
+    public void initializeToken(char[] pin) {
         synchronizedAction(() -> tokenWorker.initializeToken(pin));
     }
 
     @Override
-    public synchronized void handleUpdateTokenPin(char[] oldPin, char[] newPin) {
+    public void handleUpdateTokenPin(char[] oldPin, char[] newPin) {
         synchronizedAction(() -> tokenWorker.handleUpdateTokenPin(oldPin, newPin));
     }
 
@@ -120,24 +130,49 @@ public class BlockingTokenWorker implements TokenWorker, WorkerWithLifecycle {
     }
 
 
-    private synchronized <T> T synchronizedAction(ThrowingSupplier<T, Exception> action) {
+    private <T> T synchronizedAction(ThrowingSupplier<T, Exception> action) {
+        lock.writeLock().lock();
         try {
             return action.get();
         } catch (Exception e) {
             throw translateException(e);
         } finally {
-            tokenWorker.onActionHandled();
+            try {
+                tokenWorker.onActionHandled();
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
     }
 
 
-    private synchronized void synchronizedAction(ThrowingRunnable<Exception> action) {
+    private void synchronizedAction(ThrowingRunnable<Exception> action) {
+        lock.writeLock().lock();
         try {
             action.run();
         } catch (Exception e) {
             throw translateException(e);
         } finally {
-            tokenWorker.onActionHandled();
+            try {
+                tokenWorker.onActionHandled();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private <T> T concurrentAction(ThrowingSupplier<T, Exception> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } catch (Exception e) {
+            throw translateException(e);
+        } finally {
+            try {
+                tokenWorker.onActionHandled();
+            } finally {
+                lock.readLock().unlock();
+            }
         }
     }
 }
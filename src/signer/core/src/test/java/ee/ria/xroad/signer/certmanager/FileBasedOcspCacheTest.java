@@ -26,6 +26,7 @@
 package ee.ria.xroad.signer.certmanager;
 
 import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
 import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
@@ -34,7 +35,9 @@ import ee.ria.xroad.common.util.TimeUtils;
 import org.bouncycastle.cert.ocsp.CertificateStatus;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 import java.io.File;
@@ -43,8 +46,11 @@ import java.security.cert.X509Certificate;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -59,6 +65,9 @@ public class FileBasedOcspCacheTest {
     static X509Certificate signer;
     static PrivateKey signerKey;
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     /**
      * Test.
      *
@@ -108,6 +117,60 @@ public class FileBasedOcspCacheTest {
         assertNull(spy.get("foo"));
     }
 
+    /**
+     * Test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void expiredResponseInMemoryIsNotLoadedFromFile() throws Exception {
+        Date thisUpdate = Date.from(TimeUtils.now().minus(1, ChronoUnit.DAYS));
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, null);
+
+        FileBasedOcspCache spy = Mockito.spy(new FileBasedOcspCache(globalConfProvider));
+
+        Mockito.doNothing().when(spy).saveResponseToFile(
+                Mockito.any(File.class), Mockito.any(OCSPResp.class));
+
+        spy.put("foo", ocsp);
+
+        assertNull(spy.get("foo"));
+        Mockito.verify(spy, Mockito.never()).loadResponseFromFile(Mockito.any(File.class));
+    }
+
+    /**
+     * Test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void evictExpiredDeletesFiles() throws Exception {
+        OCSPResp expired = OcspTestUtils.createOCSPResponse(subject, issuer, signer, signerKey,
+                CertificateStatus.GOOD, Date.from(TimeUtils.now().minus(1, ChronoUnit.DAYS)), null);
+        OCSPResp fresh = OcspTestUtils.createOCSPResponse(subject, issuer, signer, signerKey,
+                CertificateStatus.GOOD, Date.from(TimeUtils.now().plus(1, ChronoUnit.DAYS)), null);
+
+        String originalPath = System.setProperty(SystemProperties.OCSP_CACHE_PATH,
+                tempFolder.getRoot().getAbsolutePath());
+        try {
+            FileBasedOcspCache cache = new FileBasedOcspCache(globalConfProvider);
+            cache.put("expired", expired);
+            cache.put("fresh", fresh);
+
+            assertEquals(1, cache.evictExpired());
+
+            assertFalse(new File(tempFolder.getRoot(), "expired.ocsp").exists());
+            assertTrue(new File(tempFolder.getRoot(), "fresh.ocsp").exists());
+        } finally {
+            if (originalPath == null) {
+                System.clearProperty(SystemProperties.OCSP_CACHE_PATH);
+            } else {
+                System.setProperty(SystemProperties.OCSP_CACHE_PATH, originalPath);
+            }
+        }
+    }
+
     /**
      * Test.
      *
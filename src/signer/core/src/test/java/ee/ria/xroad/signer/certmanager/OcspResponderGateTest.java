@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link OcspResponderGate}.
+ */
+public class OcspResponderGateTest {
+
+    private static final String RESPONDER_A = "http://ocsp-a.example.com";
+    private static final String RESPONDER_B = "http://ocsp-b.example.com";
+
+    /**
+     * Tests that the number of concurrent requests is limited per responder.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void limitsConcurrentRequestsPerResponder() throws Exception {
+        OcspResponderGate gate = new OcspResponderGate(2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch otherResponderCalled = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 16; i++) {
+                executor.execute(() -> call(gate, RESPONDER_A, () -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    active.decrementAndGet();
+
+                    return "response";
+                }));
+            }
+
+            // requests to another responder are not blocked by the busy one
+            executor.execute(() -> call(gate, RESPONDER_B, () -> {
+                otherResponderCalled.countDown();
+
+                return "response";
+            }));
+
+            assertTrue(otherResponderCalled.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(2, maxActive.get());
+        assertEquals(16, gate.getStats().get(RESPONDER_A).requests());
+        assertEquals(1, gate.getStats().get(RESPONDER_B).requests());
+    }
+
+    /**
+     * Tests that failed and empty responses are counted as errors.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void countsErrors() throws Exception {
+        OcspResponderGate gate = new OcspResponderGate(1);
+
+        assertEquals("response", gate.call(RESPONDER_A, () -> "response"));
+        assertNull(gate.call(RESPONDER_A, () -> null));
+        assertThrows(IOException.class, () -> gate.call(RESPONDER_A, () -> {
+            throw new IOException("Connection refused");
+        }));
+
+        Map<String, OcspResponderGate.ResponderStats> stats = gate.takeStats();
+        assertEquals(1, stats.size());
+        assertEquals(3, stats.get(RESPONDER_A).requests());
+        assertEquals(2, stats.get(RESPONDER_A).errors());
+        assertTrue(stats.get(RESPONDER_A).maxNanos() >= stats.get(RESPONDER_A).averageNanos());
+
+        // a failed request must release its permit
+        assertEquals("response", gate.call(RESPONDER_A, () -> "response"));
+
+        // statistics are collected anew after they have been taken
+        stats = gate.takeStats();
+        assertEquals(1, stats.get(RESPONDER_A).requests());
+        assertEquals(0, stats.get(RESPONDER_A).errors());
+        assertTrue(gate.takeStats().isEmpty());
+    }
+
+    private static void call(OcspResponderGate gate, String responderURI,
+                             Callable<String> request) {
+        try {
+            gate.call(responderURI, request);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.crypto.identifier.SignMechanism;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+import ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenType;
+import ee.ria.xroad.signer.util.TokenAndKey;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token manager lookup contention test program. Concurrent callers look up keys the way signer RPC handlers do,
+ * while a writer thread updates the token status, as the OCSP and token workers do. Compares the lock-free
+ * {@link TokenManager} lookups with lookups that take a lock and scan the tokens linearly.
+ */
+@Slf4j
+public final class TokenManagerPerformanceTest {
+
+    private static final int NUM_KEYS = 200;
+
+    private static final int[] NUM_CALLERS = {1, 4, 16, 64};
+
+    private static final long DURATION_MILLIS = 2_000;
+
+    // interval between token updates
+    private static final long WRITE_INTERVAL_MILLIS = 10;
+
+    private TokenManagerPerformanceTest() {
+    }
+
+    /**
+     * Main program access point.
+     *
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        byte[] certBytes = TestCertUtil.getConsumer().certChain[0].getEncoded();
+        String tokenId = TokenManager.createToken(new SoftwareTokenType(Map.of())).getId();
+        TokenManager.setTokenActive(tokenId, true);
+
+        LinearTokenLookup linear = new LinearTokenLookup(tokenId);
+        String[] keyIds = new String[NUM_KEYS];
+        ClientId[] clientIds = new ClientId[NUM_KEYS];
+
+        for (int i = 0; i < NUM_KEYS; i++) {
+            keyIds[i] = "key" + i;
+            clientIds[i] = ClientId.Conf.create("EE", "GOV", "member" + i);
+
+            TokenManager.addKey(tokenId, keyIds[i], null, SignMechanism.CKM_RSA_PKCS);
+            TokenManager.setKeyAvailable(keyIds[i], true);
+            TokenManager.setKeyUsage(keyIds[i], KeyUsageInfo.SIGNING);
+            TokenManager.addCert(keyIds[i], ClientId.Conf.create("EE", "GOV", "member" + i), true, true,
+                    "registered", "cert" + i, certBytes);
+
+            linear.addKey(keyIds[i], (ClientId.Conf) clientIds[i], certBytes);
+        }
+
+        for (int callers : NUM_CALLERS) {
+            double linearRate = run(callers, () -> {
+                int i = ThreadLocalRandom.current().nextInt(NUM_KEYS);
+                linear.findTokenAndKey(keyIds[i]);
+                linear.getKeyInfo(clientIds[i]);
+            }, () -> linear.setTokenStatus(TokenStatusInfo.OK));
+
+            double snapshotRate = run(callers, () -> {
+                int i = ThreadLocalRandom.current().nextInt(NUM_KEYS);
+                TokenManager.findTokenAndKey(keyIds[i]);
+                TokenManager.getKeyInfo(clientIds[i]);
+            }, () -> TokenManager.setTokenStatus(tokenId, TokenStatusInfo.OK));
+
+            log.info("{} callers: locked linear scan {} lookups/s, snapshot {} lookups/s",
+                    callers, Math.round(linearRate), Math.round(snapshotRate));
+        }
+    }
+
+    private static double run(int callers, Runnable lookup, Runnable update) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder lookups = new LongAdder();
+        CountDownLatch done = new CountDownLatch(callers);
+
+        for (int i = 0; i < callers; i++) {
+            Thread.ofPlatform().daemon().start(() -> {
+                while (running.get()) {
+                    lookup.run();
+                    lookups.increment();
+                }
+                done.countDown();
+            });
+        }
+
+        Thread writer = Thread.ofPlatform().daemon().start(() -> {
+            while (running.get()) {
+                update.run();
+                try {
+                    Thread.sleep(WRITE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+        done.await();
+        writer.join();
+
+        return lookups.sum() * (double) TimeUnit.SECONDS.toMillis(1) / DURATION_MILLIS;
+    }
+
+    /**
+     * Lookups as they were done before the token registry: under a lock, scanning the tokens and creating
+     * the value objects on every call.
+     */
+    private static final class LinearTokenLookup {
+
+        private final List<Token> tokens = new ArrayList<>();
+
+        LinearTokenLookup(String tokenId) {
+            Token token = new Token(SoftwareModuleType.TYPE, tokenId);
+            token.setAvailable(true);
+            token.setActive(true);
+            tokens.add(token);
+        }
+
+        synchronized void addKey(String keyId, ClientId.Conf memberId, byte[] certBytes) {
+            Token token = tokens.getFirst();
+            Key key = new Key(token, keyId, SignMechanism.CKM_RSA_PKCS);
+            key.setAvailable(true);
+            key.setUsage(KeyUsageInfo.SIGNING);
+
+            Cert cert = new Cert("cert-" + keyId);
+            cert.setActive(true);
+            cert.setMemberId(memberId);
+            cert.setCertificate(certBytes);
+
+            key.addCert(cert);
+            token.addKey(key);
+        }
+
+        synchronized void setTokenStatus(TokenStatusInfo status) {
+            tokens.getFirst().setStatus(status);
+        }
+
+        synchronized TokenAndKey findTokenAndKey(String keyId) {
+            for (Token token : tokens) {
+                for (Key key : token.getKeys()) {
+                    if (key.getId().equals(keyId)) {
+                        return new TokenAndKey(token.getId(), key.toDTO());
+                    }
+                }
+            }
+            return null;
+        }
+
+        synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+            List<KeyInfo> keyInfo = new ArrayList<>();
+            for (Token token : tokens) {
+                for (Key key : token.getKeys()) {
+                    for (Cert cert : key.getCerts()) {
+                        if (!token.isInActive() && key.isValidForSigning() && !cert.isInvalid()
+                                && TokenManager.certBelongsToMember(cert.toDTO(), clientId)) {
+                            keyInfo.add(key.toDTO());
+                        }
+                    }
+                }
+            }
+            return keyInfo;
+        }
+    }
+}
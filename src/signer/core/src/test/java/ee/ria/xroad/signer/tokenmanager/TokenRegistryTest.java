@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.crypto.identifier.SignMechanism;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link TokenRegistry} lookups.
+ */
+public class TokenRegistryTest {
+
+    private static final ClientId.Conf MEMBER = ClientId.Conf.create("EE", "GOV", "member");
+    private static final ClientId.Conf OTHER_MEMBER = ClientId.Conf.create("EE", "GOV", "other");
+    private static final ClientId.Conf SUBSYSTEM = ClientId.Conf.create("EE", "GOV", "member", "sub");
+
+    private final X509Certificate consumerCert = TestCertUtil.getConsumer().certChain[0];
+    private final X509Certificate producerCert = TestCertUtil.getProducer().certChain[0];
+
+    private Token softToken;
+    private Token hardToken;
+
+    @Before
+    public void setUp() {
+        softToken = token(SoftwareModuleType.TYPE, "0");
+        hardToken = token("hsm", "hsm-token");
+        hardToken.setModuleId("hsm-module");
+        hardToken.setBatchSigningEnabled(false);
+    }
+
+    @Test
+    public void findsTokensKeysAndCerts() {
+        Key key = signingKey(softToken, "key");
+        Cert cert = cert(key, "cert", MEMBER, consumerCert);
+        key.addCertRequest(new CertRequest("csr", MEMBER, "CN=member", null, null));
+
+        TokenRegistry registry = new TokenRegistry(List.of(softToken, hardToken));
+
+        assertEquals(2, registry.getTokens().size());
+        assertEquals("0", registry.getSoftwareTokenId());
+        assertEquals("hsm-module", registry.getToken("hsm-token").moduleId());
+        assertFalse(registry.getToken("hsm-token").batchSigningEnabled());
+
+        assertEquals("0", registry.getKey("key").token().getId());
+        assertEquals("key", registry.getCert("cert").key().getId());
+        assertEquals("cert", registry.getCertBySha256Hash(cert.getSha256hash()).cert().getId());
+        assertSame(consumerCert, registry.getCertBySha1Hash(cert.getSha1hash()).certificate());
+        assertEquals("key", registry.getCertRequest("csr").key().getId());
+        assertEquals(1, registry.getCerts().size());
+
+        assertNull(registry.getToken("missing"));
+        assertNull(registry.getKey(null));
+        assertNull(registry.getCertBySha256Hash("missing"));
+    }
+
+    @Test
+    public void returnsFirstOccurrenceOfDuplicateId() {
+        signingKey(softToken, "key").setLabel("first");
+        signingKey(hardToken, "key").setLabel("second");
+
+        TokenRegistry registry = new TokenRegistry(List.of(softToken, hardToken));
+
+        assertEquals("first", registry.getKey("key").key().getLabel());
+        assertEquals("0", registry.getKey("key").token().getId());
+    }
+
+    @Test
+    public void findsSigningKeysOfMemberAndSubsystemInTokenOrder() {
+        Key memberKey = signingKey(softToken, "member-key");
+        cert(memberKey, "member-cert", MEMBER, consumerCert);
+        Key subsystemKey = signingKey(hardToken, "subsystem-key");
+        cert(subsystemKey, "subsystem-cert", SUBSYSTEM, producerCert);
+        Key otherKey = signingKey(hardToken, "other-key");
+        cert(otherKey, "other-cert", OTHER_MEMBER, producerCert);
+
+        TokenRegistry registry = new TokenRegistry(List.of(softToken, hardToken));
+
+        assertEquals(List.of("member-key"), keyIds(registry.getSigningKeys(MEMBER)));
+        assertEquals(List.of("member-key", "subsystem-key"), keyIds(registry.getSigningKeys(SUBSYSTEM)));
+        assertEquals(List.of("other-key"), keyIds(registry.getSigningKeys(OTHER_MEMBER)));
+    }
+
+    @Test
+    public void doesNotFindUnusableSigningKeys() {
+        Key unavailableKey = signingKey(softToken, "unavailable");
+        unavailableKey.setAvailable(false);
+        cert(unavailableKey, "cert1", MEMBER, consumerCert);
+
+        Key authKey = signingKey(softToken, "auth");
+        authKey.setUsage(KeyUsageInfo.AUTHENTICATION);
+        cert(authKey, "cert2", MEMBER, consumerCert);
+
+        Key inactiveCertKey = signingKey(softToken, "inactive-cert");
+        cert(inactiveCertKey, "cert3", MEMBER, consumerCert).setActive(false);
+
+        Key inactiveTokenKey = signingKey(hardToken, "inactive-token");
+        cert(inactiveTokenKey, "cert4", MEMBER, producerCert);
+        hardToken.setActive(false);
+
+        TokenRegistry registry = new TokenRegistry(List.of(softToken, hardToken));
+
+        assertTrue(registry.getSigningKeys(MEMBER).isEmpty());
+        assertEquals(4, registry.getCerts().size());
+    }
+
+    private static Token token(String type, String id) {
+        Token token = new Token(type, id);
+        token.setAvailable(true);
+        token.setActive(true);
+        return token;
+    }
+
+    private static Key signingKey(Token token, String keyId) {
+        Key key = new Key(token, keyId, SignMechanism.CKM_RSA_PKCS);
+        key.setAvailable(true);
+        key.setUsage(KeyUsageInfo.SIGNING);
+        token.addKey(key);
+        return key;
+    }
+
+    private static Cert cert(Key key, String certId, ClientId.Conf memberId, X509Certificate certificate) {
+        Cert cert = new Cert(certId);
+        cert.setActive(true);
+        cert.setMemberId(memberId);
+        cert.setCertificate(certificate);
+        key.addCert(cert);
+        return cert;
+    }
+
+    private static List<String> keyIds(List<KeyInfo> keys) {
+        return keys.stream().map(KeyInfo::getId).toList();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.niis.xroad.signer.proto.SignReq;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link BlockingTokenWorker} locking of sign requests.
+ */
+public class BlockingTokenWorkerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final byte[] SIGNATURE = {1, 2, 3};
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private AbstractTokenWorker tokenWorker;
+    private BlockingTokenWorker blockingWorker;
+
+    @Before
+    public void setUp() {
+        tokenWorker = mock(AbstractTokenWorker.class);
+        blockingWorker = new BlockingTokenWorker(tokenWorker);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void signsRunConcurrentlyWhenSupported() throws Exception {
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+
+        CyclicBarrier bothSigning = new CyclicBarrier(2);
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> {
+            bothSigning.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return SIGNATURE;
+        });
+
+        Future<byte[]> first = executor.submit(() -> blockingWorker.handleSign(SignReq.getDefaultInstance()));
+        Future<byte[]> second = executor.submit(() -> blockingWorker.handleSign(SignReq.getDefaultInstance()));
+
+        assertArrayEquals(SIGNATURE, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertArrayEquals(SIGNATURE, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        verify(tokenWorker, times(2)).onActionHandled();
+    }
+
+    @Test
+    public void signsAreSerializedWhenConcurrencyIsNotSupported() throws Exception {
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(false);
+
+        AtomicInteger signing = new AtomicInteger();
+        AtomicInteger maxSigning = new AtomicInteger();
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> {
+            maxSigning.accumulateAndGet(signing.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            signing.decrementAndGet();
+            return SIGNATURE;
+        });
+
+        Future<byte[]> first = executor.submit(() -> blockingWorker.handleSign(SignReq.getDefaultInstance()));
+        Future<byte[]> second = executor.submit(() -> blockingWorker.handleSign(SignReq.getDefaultInstance()));
+
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, maxSigning.get());
+        verify(tokenWorker, times(2)).onActionHandled();
+    }
+
+    @Test
+    public void otherActionsWaitForConcurrentSigns() throws Exception {
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+
+        CountDownLatch signing = new CountDownLatch(1);
+        CountDownLatch releaseSign = new CountDownLatch(1);
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> {
+            signing.countDown();
+            releaseSign.await();
+            return SIGNATURE;
+        });
+
+        CountDownLatch keyDeleted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            keyDeleted.countDown();
+            return null;
+        }).when(tokenWorker).handleDeleteKey(any());
+
+        Future<byte[]> sign = executor.submit(() -> blockingWorker.handleSign(SignReq.getDefaultInstance()));
+        signing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Future<?> delete = executor.submit(() -> blockingWorker.handleDeleteKey("keyId"));
+        assertFalse(keyDeleted.await(200, TimeUnit.MILLISECONDS));
+
+        releaseSign.countDown();
+
+        sign.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        delete.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, keyDeleted.getCount());
+    }
+
+    @Test
+    public void failedConcurrentSignIsTranslatedAndHandled() {
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(true);
+        when(tokenWorker.handleSign(any())).thenThrow(new IllegalStateException("sign failed"));
+
+        assertThrows(CodedException.class, () -> blockingWorker.handleSign(SignReq.getDefaultInstance()));
+        verify(tokenWorker).onActionHandled();
+    }
+}